@@ -1,21 +1,39 @@
 package flight;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 public class AdminStrategy implements UserStrategy {
+    private static final int ALERT_HISTORY_SIZE = 20;
+    private static final String BACKGROUND_SUFFIX = "&";
+    // reports that ask for no input, so they can run without the console
+    private static final Set<String> BACKGROUND_COMMANDS = Set.of(
+            "/helicopter_flight_hours_resource", "/special_flights_summary", "/regular_flights_summary",
+            "/helicopter_max_flights_info", "/crew_max_earnings_flights", "/alerts", "/resource_forecast", "/verify_db");
+    // commands that take their argument on the same line, with its hint for /help
+    private static final Map<String, String> ARGUMENT_COMMANDS = Map.of("/progress", "<ID задачи>", "/cancel", "<ID задачи>", "/plan_flights", "<файл>");
+
     private final Map<String, Supplier<Boolean>> commands;
     private final ConnectionHandler connectionHandler;
     private final ConsoleManager consoleManager;
+    private final BackgroundJobs jobs = new BackgroundJobs();
+    private String argument;
 
     public AdminStrategy(ConsoleManager consoleManager, ConnectionHandler connectionHandler) {
         this.consoleManager = consoleManager;
@@ -50,10 +68,22 @@ public class AdminStrategy implements UserStrategy {
             printCrewOrMemberFlightsInfo();
             return false;
         });
+        commands.put("/distribution", () -> {
+            printDistribution();
+            return false;
+        });
+        commands.put("/find_pilot", () -> {
+            findPilot();
+            return false;
+        });
         commands.put("/add_flight", () -> {
             addFlightWithResourceCheck();
             return false;
         });
+        commands.put("/plan_flights", () -> {
+            planFlights();
+            return false;
+        });
         commands.put("/update_flight_info", () -> {
             updateFlightInfo();
             return false;
@@ -62,10 +92,22 @@ public class AdminStrategy implements UserStrategy {
             deleteFlight();
             return false;
         });
+        commands.put("/bulk_update_flights", () -> {
+            bulkUpdateFlights();
+            return false;
+        });
+        commands.put("/bulk_delete_flights", () -> {
+            bulkDeleteFlights();
+            return false;
+        });
         commands.put("/calculate_crew_earnings_period", () -> {
             calculateCrewEarningsForPeriod();
             return false;
         });
+        commands.put("/earnings_trend", () -> {
+            printEarningsTrend();
+            return false;
+        });
         commands.put("/pilot_earnings_period", () -> {
             printPilotEarningsForPeriod();
             return false;
@@ -74,6 +116,42 @@ public class AdminStrategy implements UserStrategy {
             printPilotEarningsForSpecificFlights();
             return false;
         });
+        commands.put("/archive_flights", () -> {
+            archiveFlights();
+            return false;
+        });
+        commands.put("/replica_status", () -> {
+            printReplicaStatus();
+            return false;
+        });
+        commands.put("/pool_status", () -> {
+            printPoolStatus();
+            return false;
+        });
+        commands.put("/verify_db", () -> {
+            verifyDatabase();
+            return false;
+        });
+        commands.put("/alerts", () -> {
+            printResourceAlerts();
+            return false;
+        });
+        commands.put("/resource_forecast", () -> {
+            printResourceForecast();
+            return false;
+        });
+        commands.put("/jobs", () -> {
+            printJobs();
+            return false;
+        });
+        commands.put("/progress", () -> {
+            printJobProgress();
+            return false;
+        });
+        commands.put("/cancel", () -> {
+            cancelJob();
+            return false;
+        });
         commands.put("/help", () -> {
             printHelp();
             return false;
@@ -84,27 +162,70 @@ public class AdminStrategy implements UserStrategy {
     private void printHelp() {
         final StringBuilder helpMessage = new StringBuilder("Available commands:\n");
         for (String command : commands.keySet()) {
-            helpMessage.append(" - ").append(command).append("\n");
+            helpMessage.append(" - ").append(command).append(ARGUMENT_COMMANDS.containsKey(command) ? " " + ARGUMENT_COMMANDS.get(command) : "").append("\n");
         }
+        helpMessage.append("Отчеты без ввода параметров можно запустить в фоне, добавив ' &' после команды.\n");
         consoleManager.printMessage(helpMessage.toString());
     }
 
     @Override
     public void apply(User user) {
-        Supplier<Boolean> func;
-        do {
-            String input = consoleManager.getInput(
-                    String.class,
-                    "Введите команду:",
-                    "Неизвестная команда",
-                    commands::containsKey
-            );
-            if ("/back".equalsIgnoreCase(input)) {
-                consoleManager.printMessage("Returning to previous menu or exiting.");
-                break;
+        try {
+            while (true) {
+                String input = consoleManager.getInput(
+                        String.class,
+                        "Введите команду:",
+                        "Неизвестная команда",
+                        this::isCommand
+                );
+                if ("/back".equalsIgnoreCase(input)) {
+                    consoleManager.printMessage("Returning to previous menu or exiting.");
+                    break;
+                }
+                String[] parts = input.trim().split("\\s+", 2);
+                argument = parts.length > 1 ? parts[1] : null;
+                if (BACKGROUND_SUFFIX.equals(argument)) {
+                    startJob(parts[0]);
+                } else if (runCommand(parts[0])) {
+                    break;
+                }
             }
-            func = commands.get(input);
-        } while (func != null && !func.get());
+        } finally {
+            stopJobs();
+        }
+    }
+
+    private boolean isCommand(String input) {
+        String[] parts = input.trim().split("\\s+", 2);
+        if (!commands.containsKey(parts[0])) {
+            return false;
+        }
+        return parts.length == 1
+                || (BACKGROUND_SUFFIX.equals(parts[1]) && BACKGROUND_COMMANDS.contains(parts[0]))
+                || ARGUMENT_COMMANDS.containsKey(parts[0]);
+    }
+
+    private boolean runCommand(String command) {
+        QueryContext context = new QueryContext(queryTimeout(command));
+        boolean[] exit = {false};
+        context.run(() -> exit[0] = commands.get(command).get());
+        if (context.isTimedOut()) {
+            consoleManager.printMessage("Запрос прерван: превышено время выполнения (%d с.). Запустите отчет в фоне: %s &".formatted(context.getTimeoutSeconds(), command));
+        }
+        return exit[0];
+    }
+
+    private void startJob(String command) {
+        BackgroundJobs.Job job = jobs.start(command, queryTimeout("background"),
+                console -> new AdminStrategy(console, connectionHandler).commands.get(command).get());
+        consoleManager.printMessage("Задача %d запущена в фоне: %s. Ход выполнения: /progress %d, отмена: /cancel %d".formatted(job.getId(), command, job.getId(), job.getId()));
+        consoleManager.printMessage("");
+    }
+
+    // query.timeout.<command without the slash>, or query.timeout.default; 0 means no limit
+    private int queryTimeout(String command) {
+        String value = connectionHandler.getProperty("query.timeout." + command.replaceFirst("^/", ""));
+        return Integer.parseInt(value != null ? value : connectionHandler.getProperty("query.timeout.default"));
     }
 
     private Predicate<String> notBack() {
@@ -142,30 +263,18 @@ public class AdminStrategy implements UserStrategy {
 
     private void printHelicopterFlightHoursAndResource() {
         consoleManager.printMessage("Информация по налету и ресурсу вертолетов:");
-        final String sql = """
-                SELECT
-                   h.seria_num as seria,
-                   h.hours_before_repair as flight_limit,
-                   COALESCE(SUM(f.flight_hours), 0.0) as hours_after_repair
-                FROM helicopter h
-                LEFT JOIN flight f ON h.id = f.helicopter_id AND f.date >= h.repair_date
-                GROUP BY h.id, h.seria_num, h.hours_before_repair, h.repair_date
-                ORDER BY h.seria_num;
-                """;
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            ResultSet resultSet = statement.executeQuery();
-            if (!resultSet.isBeforeFirst()) {
+        try {
+            List<FlightStore.Resource> resources = connectionHandler.getFlightStore().getResources();
+            printReplicaLag();
+            if (resources.isEmpty()) {
                 consoleManager.printMessage("Данные по вертолетам не найдены.");
                 return;
             }
-            consoleManager.printMessage("Серийный номер | Ресурс (часы) | Налетано после ремонта (часы) | Остаток ресурса (часы)");
-            while (resultSet.next()) {
-                String seriaNum = resultSet.getString("seria");
-                double flightLimit = resultSet.getDouble("flight_limit");
-                double hoursAfterRepair = resultSet.getDouble("hours_after_repair");
-                double remainingHours = flightLimit - hoursAfterRepair;
-                consoleManager.printMessage("%s | %.2f | %.2f | %.2f".formatted(seriaNum, flightLimit, hoursAfterRepair, remainingHours));
+            TableRenderer table = table()
+                    .column("Серийный номер", 10).column("Ресурс (часы)", 0).column("Налетано после ремонта (часы)", 0).column("Остаток ресурса (часы)", 0)
+                    .printHeader();
+            for (FlightStore.Resource resource : resources) {
+                table.text(resource.seriaNum()).decimal(resource.limit()).decimal(resource.flownAfterRepair()).decimal(resource.remaining()).endRow();
             }
             consoleManager.printMessage("");
         } catch (SQLException e) {
@@ -193,48 +302,19 @@ public class AdminStrategy implements UserStrategy {
         String endDateStr = consoleManager.getInput(String.class, "Введите конечную дату периода (YYYY-MM-DD или /back):", "Неверный формат даты.", dateValidatorNotBack());
         if ("/back".equalsIgnoreCase(endDateStr)) return;
 
-        final String sql = """
-                SELECT
-                   f.id as flight_id,
-                   f.date,
-                   f.code,
-                   f.goods_weight,
-                   f.passangers,
-                   f.flight_hours,
-                   f.price
-                FROM flight f
-                WHERE f.helicopter_id = ? AND f.date BETWEEN ? AND ?
-                ORDER BY f.date;
-                """;
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, helicopterId);
-            statement.setString(2, startDateStr);
-            statement.setString(3, endDateStr);
-            ResultSet resultSet = statement.executeQuery();
-
-            if (!resultSet.isBeforeFirst()) {
+        try {
+            List<Flight> flights = connectionHandler.getFlightStore().getFlights(helicopterId, startDateStr, endDateStr);
+            if (flights.isEmpty()) {
                 consoleManager.printMessage("Рейсы для вертолета с ID " + helicopterId + " за указанный период не найдены.");
                 return;
             }
             consoleManager.printMessage("Рейсы вертолета ID " + helicopterId + " с " + startDateStr + " по " + endDateStr + ":");
-            consoleManager.printMessage("ID Рейса | Дата | Тип | Груз (кг) | Пассажиры | Часы налета | Стоимость");
+            printFlights(flights);
             double totalGoods = 0;
             int totalPassengers = 0;
-            while (resultSet.next()) {
-                int flightId = resultSet.getInt("flight_id");
-                String flightDate = resultSet.getString("date");
-                String code = resultSet.getString("code");
-                double goodsWeight = resultSet.getDouble("goods_weight");
-                int passengers = resultSet.getInt("passangers");
-                double flightHours = resultSet.getDouble("flight_hours");
-                double price = resultSet.getDouble("price");
-
-                consoleManager.printMessage("%d | %s | %s | %.2f | %d | %.2f | %.2f".formatted(
-                        flightId, flightDate, code, goodsWeight, passengers, flightHours, price
-                ));
-                totalGoods += goodsWeight;
-                totalPassengers += passengers;
+            for (Flight flight : flights) {
+                totalGoods += flight.goodsWeight();
+                totalPassengers += flight.passengers();
             }
             consoleManager.printMessage("----------------------------------------------------");
             consoleManager.printMessage("Итого за период: Общая масса грузов = %.2f кг, Общее количество пассажиров = %d".formatted(totalGoods, totalPassengers));
@@ -246,29 +326,15 @@ public class AdminStrategy implements UserStrategy {
 
     private void printSpecialFlightsSummary() {
         consoleManager.printMessage("Сводка по спецрейсам:");
-        final String sql = """
-                SELECT
-                   COUNT(f.id) as total_flights,
-                   COALESCE(SUM(f.goods_weight), 0.0) as total_goods_weight,
-                   COALESCE(SUM(f.price), 0.0) as total_money_earned
-                FROM flight f
-                WHERE f.code = 'special';
-                """;
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                int totalFlights = resultSet.getInt("total_flights");
-                double totalGoodsWeight = resultSet.getDouble("total_goods_weight");
-                double totalMoneyEarned = resultSet.getDouble("total_money_earned");
-
-                if (totalFlights == 0) {
-                    consoleManager.printMessage("Спецрейсы не выполнялись.");
-                } else {
-                    consoleManager.printMessage("Общее количество спецрейсов: " + totalFlights);
-                    consoleManager.printMessage("Общая масса перевезенных грузов (спецрейсы): %.2f кг".formatted(totalGoodsWeight));
-                    consoleManager.printMessage("Общая сумма заработанных денег (спецрейсы): %.2f".formatted(totalMoneyEarned));
-                }
+        try {
+            FlightStore.FlightTotals totals = connectionHandler.getFlightStore().sumFlightsByCode("special");
+            printReplicaLag();
+            if (totals.flights() == 0) {
+                consoleManager.printMessage("Спецрейсы не выполнялись.");
+            } else {
+                consoleManager.printMessage("Общее количество спецрейсов: " + totals.flights());
+                consoleManager.printMessage("Общая масса перевезенных грузов (спецрейсы): %.2f кг".formatted(totals.goodsWeight()));
+                consoleManager.printMessage("Общая сумма заработанных денег (спецрейсы): %.2f".formatted(totals.moneyEarned()));
             }
             consoleManager.printMessage("");
         } catch (SQLException e) {
@@ -280,29 +346,15 @@ public class AdminStrategy implements UserStrategy {
 
     private void printRegularFlightsSummary() {
         consoleManager.printMessage("Сводка по обычным рейсам:");
-        final String sql = """
-                SELECT
-                   COUNT(f.id) as total_flights,
-                   COALESCE(SUM(f.goods_weight), 0.0) as total_goods_weight,
-                   COALESCE(SUM(f.price), 0.0) as total_money_earned
-                FROM flight f
-                WHERE f.code = 'usual';
-                """;
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.next()) {
-                int totalFlights = resultSet.getInt("total_flights");
-                double totalGoodsWeight = resultSet.getDouble("total_goods_weight");
-                double totalMoneyEarned = resultSet.getDouble("total_money_earned");
-
-                if (totalFlights == 0) {
-                    consoleManager.printMessage("Обычные рейсы не выполнялись.");
-                } else {
-                    consoleManager.printMessage("Общее количество обычных рейсов: " + totalFlights);
-                    consoleManager.printMessage("Общая масса перевезенных грузов (обычные рейсы): %.2f кг".formatted(totalGoodsWeight));
-                    consoleManager.printMessage("Общая сумма заработанных денег (обычные рейсы): %.2f".formatted(totalMoneyEarned));
-                }
+        try {
+            FlightStore.FlightTotals totals = connectionHandler.getFlightStore().sumFlightsByCode("usual");
+            printReplicaLag();
+            if (totals.flights() == 0) {
+                consoleManager.printMessage("Обычные рейсы не выполнялись.");
+            } else {
+                consoleManager.printMessage("Общее количество обычных рейсов: " + totals.flights());
+                consoleManager.printMessage("Общая масса перевезенных грузов (обычные рейсы): %.2f кг".formatted(totals.goodsWeight()));
+                consoleManager.printMessage("Общая сумма заработанных денег (обычные рейсы): %.2f".formatted(totals.moneyEarned()));
             }
             consoleManager.printMessage("");
         } catch (SQLException e) {
@@ -312,75 +364,39 @@ public class AdminStrategy implements UserStrategy {
 
     private void printHelicopterWithMaxFlightsInfo() {
         consoleManager.printMessage("Информация по вертолету с максимальным количеством рейсов:");
-        final String findMaxFlightsHelicopterSql = """
-                   SELECT helicopter_id, COUNT(id) as flight_count
-                   FROM flight
-                   GROUP BY helicopter_id
-                   ORDER BY flight_count DESC
-                   LIMIT 1;
-                """;
-        int helicopterIdWithMaxFlights = -1;
-        long maxFlights = 0;
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(findMaxFlightsHelicopterSql)) {
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                helicopterIdWithMaxFlights = rs.getInt("helicopter_id");
-                maxFlights = rs.getLong("flight_count");
-            } else {
+        FlightStore.HelicopterValue top;
+        try {
+            Optional<FlightStore.HelicopterValue> found = connectionHandler.getFlightStore().findHelicopterWithMaxFlights();
+            printReplicaLag();
+            if (found.isEmpty()) {
                 consoleManager.printMessage("Нет данных о рейсах для определения вертолета.");
                 return;
             }
+            top = found.get();
         } catch (SQLException e) {
             consoleManager.printMessage("Ошибка при поиске вертолета с макс. рейсами: " + e.getMessage());
             return;
         }
 
-        consoleManager.printMessage("Вертолет с ID " + helicopterIdWithMaxFlights + " выполнил максимальное количество рейсов: " + maxFlights);
-        final String helicopterInfoSql = """
-                   SELECT
-                       h.seria_num,
-                       h.mark,
-                       (SELECT SUM(f.price) FROM flight f WHERE f.helicopter_id = h.id) as total_earned_money
-                   FROM helicopter h
-                   WHERE h.id = ?;
-                """;
-
-        final String crewInfoSql = """
-                   SELECT
-                       p.tabel_num,
-                       p.last_name,
-                       p.position
-                   FROM pilot p
-                   WHERE p.helicopter_id = ?;
-                """;
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement helicopterStmt = connection.prepareStatement(helicopterInfoSql);
-             PreparedStatement crewStmt = connection.prepareStatement(crewInfoSql)) {
-
-            helicopterStmt.setInt(1, helicopterIdWithMaxFlights);
-            ResultSet helicopterRs = helicopterStmt.executeQuery();
-            if (helicopterRs.next()) {
-                consoleManager.printMessage("Серийный номер: " + helicopterRs.getString("seria_num"));
-                consoleManager.printMessage("Марка: " + helicopterRs.getString("mark"));
-                consoleManager.printMessage("Общая сумма заработанных денег этим вертолетом: %.2f".formatted(helicopterRs.getDouble("total_earned_money")));
+        int helicopterIdWithMaxFlights = top.helicopterId();
+        consoleManager.printMessage("Вертолет с ID " + helicopterIdWithMaxFlights + " выполнил максимальное количество рейсов: " + (long) top.value());
+        try {
+            FlightStore store = connectionHandler.getFlightStore();
+            Optional<FlightStore.Helicopter> helicopter = store.getHelicopter(helicopterIdWithMaxFlights);
+            if (helicopter.isPresent()) {
+                consoleManager.printMessage("Серийный номер: " + helicopter.get().seriaNum());
+                consoleManager.printMessage("Марка: " + helicopter.get().mark());
+                consoleManager.printMessage("Общая сумма заработанных денег этим вертолетом: %.2f".formatted(store.getHelicopterTotals(helicopterIdWithMaxFlights).moneyEarned()));
             }
 
             consoleManager.printMessage("\nСведения об экипаже вертолета ID " + helicopterIdWithMaxFlights + ":");
-            crewStmt.setInt(1, helicopterIdWithMaxFlights);
-            ResultSet crewRs = crewStmt.executeQuery();
-            if (!crewRs.isBeforeFirst()) {
+            List<FlightStore.CrewMember> crew = store.getCrew(helicopterIdWithMaxFlights);
+            if (crew.isEmpty()) {
                 consoleManager.printMessage("Данные об экипаже не найдены.");
             } else {
-                consoleManager.printMessage("Табельный номер | Фамилия | Должность");
-                while (crewRs.next()) {
-                    consoleManager.printMessage("%s | %s | %s".formatted(
-                            crewRs.getString("tabel_num"),
-                            crewRs.getString("last_name"),
-                            crewRs.getString("position")
-                    ));
+                TableRenderer table = table().column("Табельный номер", 0).column("Фамилия", 20).column("Должность", 0).printHeader();
+                for (FlightStore.CrewMember member : crew) {
+                    table.text(member.tabelNum()).text(member.lastName()).text(member.position()).endRow();
                 }
             }
             consoleManager.printMessage("");
@@ -393,67 +409,30 @@ public class AdminStrategy implements UserStrategy {
     private void printCrewWithMaxEarningsFlights() {
         consoleManager.printMessage("Информация по экипажу (вертолету) с максимальным заработком:");
 
-        final String findMaxEarningHelicopterSql = """
-                  SELECT f.helicopter_id, SUM(f.price) as total_earnings
-                  FROM flight f
-                  GROUP BY f.helicopter_id
-                  ORDER BY total_earnings DESC
-                  LIMIT 1;
-                """;
-        int helicopterIdWithMaxEarnings = -1;
-        double maxEarnings = 0;
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(findMaxEarningHelicopterSql)) {
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                helicopterIdWithMaxEarnings = rs.getInt("helicopter_id");
-                maxEarnings = rs.getDouble("total_earnings");
-            } else {
+        FlightStore.HelicopterValue top;
+        try {
+            Optional<FlightStore.HelicopterValue> found = connectionHandler.getFlightStore().findHelicopterWithMaxEarnings();
+            printReplicaLag();
+            if (found.isEmpty()) {
                 consoleManager.printMessage("Нет данных о рейсах для определения самого доходного экипажа (вертолета).");
                 return;
             }
+            top = found.get();
         } catch (SQLException e) {
             consoleManager.printMessage("Ошибка при поиске самого доходного экипажа (вертолета): " + e.getMessage());
             return;
         }
 
-        consoleManager.printMessage("Экипаж вертолета с ID " + helicopterIdWithMaxEarnings + " заработал максимальную сумму: %.2f".formatted(maxEarnings));
+        int helicopterIdWithMaxEarnings = top.helicopterId();
+        consoleManager.printMessage("Экипаж вертолета с ID " + helicopterIdWithMaxEarnings + " заработал максимальную сумму: %.2f".formatted(top.value()));
         consoleManager.printMessage("\nСведения о рейсах этого экипажа (вертолета):");
 
-        final String flightsInfoSql = """
-                  SELECT
-                      f.id as flight_id,
-                      f.date,
-                      f.code,
-                      f.goods_weight,
-                      f.passangers,
-                      f.flight_hours,
-                      f.price
-                  FROM flight f
-                  WHERE f.helicopter_id = ?
-                  ORDER BY f.date;
-                """;
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(flightsInfoSql)) {
-            statement.setInt(1, helicopterIdWithMaxEarnings);
-            ResultSet resultSet = statement.executeQuery();
-
-            if (!resultSet.isBeforeFirst()) {
+        try {
+            List<Flight> flights = connectionHandler.getFlightStore().getFlights(helicopterIdWithMaxEarnings, null, null);
+            if (flights.isEmpty()) {
                 consoleManager.printMessage("Рейсы для данного экипажа (вертолета) не найдены.");
             } else {
-                consoleManager.printMessage("ID Рейса | Дата | Тип | Груз (кг) | Пассажиры | Часы налета | Стоимость");
-                while (resultSet.next()) {
-                    consoleManager.printMessage("%d | %s | %s | %.2f | %d | %.2f | %.2f".formatted(
-                            resultSet.getInt("flight_id"),
-                            resultSet.getString("date"),
-                            resultSet.getString("code"),
-                            resultSet.getDouble("goods_weight"),
-                            resultSet.getInt("passangers"),
-                            resultSet.getDouble("flight_hours"),
-                            resultSet.getDouble("price")
-                    ));
-                }
+                printFlights(flights);
             }
             consoleManager.printMessage("");
         } catch (SQLException e) {
@@ -461,6 +440,76 @@ public class AdminStrategy implements UserStrategy {
         }
     }
 
+    private void printDistribution() {
+        consoleManager.printMessage("Распределение длительности, груза и стоимости рейсов (перцентили).");
+        String helicopterIdStr = consoleManager.getInput(String.class, "Введите ID вертолета, all для всего парка (или /back):", "Неверный ID.", notBack());
+        if ("/back".equalsIgnoreCase(helicopterIdStr)) return;
+        Integer helicopterId = null;
+        if (!"all".equalsIgnoreCase(helicopterIdStr.trim())) {
+            try {
+                helicopterId = Integer.parseInt(helicopterIdStr.trim());
+            } catch (NumberFormatException e) {
+                consoleManager.printMessage("Некорректный ID вертолета.");
+                return;
+            }
+        }
+        String code = consoleManager.getInput(String.class, "Тип рейса (usual/special, all для всех или /back):", "Неверный тип.",
+                s -> "all".equalsIgnoreCase(s) || flightCodeValidatorNotBack().test(s));
+        if ("/back".equalsIgnoreCase(code)) return;
+
+        FlightDistributions distributions = connectionHandler.getFlightDistributions();
+        try {
+            List<FlightDistributions.Percentiles> percentiles = distributions.getPercentiles(helicopterId, "all".equalsIgnoreCase(code) ? null : code.toLowerCase());
+            if (percentiles.get(0).count() == 0) {
+                consoleManager.printMessage("Рейсы не найдены.");
+                return;
+            }
+            consoleManager.printMessage("Рейсов: %d (оценка с точностью %.0f%%)".formatted(percentiles.get(0).count(), distributions.getAccuracy() * 100));
+            TableRenderer table = table().column("Показатель", 11).column("Мин.", 10).column("p50", 10).column("p90", 10).column("p95", 10)
+                    .column("p99", 10).column("Макс.", 10).printHeader();
+            for (FlightDistributions.Percentiles row : percentiles) {
+                String name = switch (row.metric()) {
+                    case FLIGHT_HOURS -> "Часы налета";
+                    case GOODS_WEIGHT -> "Груз (кг)";
+                    case PRICE -> "Стоимость";
+                };
+                table.text(name).decimal(row.min()).decimal(row.p50()).decimal(row.p90()).decimal(row.p95()).decimal(row.p99()).decimal(row.max()).endRow();
+            }
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при доступе к базе данных: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void findPilot() {
+        String query = consoleManager.getInput(String.class, "Введите фамилию, табельный номер или должность (или начало слова, /back для отмены):", "Пустой запрос.", s -> s != null && !s.isBlank());
+        if ("/back".equalsIgnoreCase(query)) return;
+
+        PilotIndex index = connectionHandler.getPilotIndex();
+        try {
+            List<PilotIndex.Match> matches = index.search(query);
+            if (matches.isEmpty()) {
+                consoleManager.printMessage("Пилоты не найдены.");
+                return;
+            }
+            if (matches.get(0).distance() > 0) {
+                consoleManager.printMessage("Точных совпадений нет, похожие результаты:");
+            }
+            TableRenderer table = table()
+                    .column("ID пилота", 0).column("Табельный номер", 0).column("Фамилия", 20).column("Должность", 20).column("ID вертолета", 0)
+                    .column("Серийный номер", 0).column("Рейсов за " + index.getRecentDays() + " дн.", 0).column("Налет (часы)", 0).column("Заработок", 12)
+                    .printHeader();
+            for (PilotIndex.Match match : matches) {
+                ReferenceCache.PilotRef pilot = match.pilot();
+                table.number(pilot.id()).text(pilot.tabelNum()).text(pilot.lastName()).text(pilot.position()).number(pilot.helicopterId())
+                        .text(match.seriaNum()).number(match.recentFlights()).decimal(match.recentHours()).decimal(match.recentEarnings()).endRow();
+            }
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при доступе к базе данных: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
     private void printCrewOrMemberFlightsInfo() {
         consoleManager.printMessage("Поиск рейсов по экипажу (вертолету) или члену экипажа (пилоту).");
         String searchType = consoleManager.getInput(String.class, "Искать по ID вертолета (введите 'H') или ID пилота (введите 'P')? (/back для отмены):", "Неверный выбор.", s -> "H".equalsIgnoreCase(s) || "P".equalsIgnoreCase(s) || "/back".equalsIgnoreCase(s));
@@ -479,27 +528,12 @@ public class AdminStrategy implements UserStrategy {
 
 
             consoleManager.printMessage("Рейсы экипажа вертолета ID " + helicopterId + ":");
-            final String sql = """
-                       SELECT f.id, f.date, f.code, f.goods_weight, f.passangers, f.flight_hours, f.price
-                       FROM flight f
-                       WHERE f.helicopter_id = ?
-                       ORDER BY f.date;
-                    """;
-            try (Connection connection = connectionHandler.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setInt(1, helicopterId);
-                ResultSet resultSet = statement.executeQuery();
-                if (!resultSet.isBeforeFirst()) {
+            try {
+                List<Flight> flights = connectionHandler.getFlightStore().getFlights(helicopterId, null, null);
+                if (flights.isEmpty()) {
                     consoleManager.printMessage("Рейсы не найдены.");
                 } else {
-                    consoleManager.printMessage("ID Рейса | Дата | Тип | Груз (кг) | Пассажиры | Часы налета | Стоимость");
-                    while (resultSet.next()) {
-                        consoleManager.printMessage("%d | %s | %s | %.2f | %d | %.2f | %.2f".formatted(
-                                resultSet.getInt("id"), resultSet.getString("date"), resultSet.getString("code"),
-                                resultSet.getDouble("goods_weight"), resultSet.getInt("passangers"),
-                                resultSet.getDouble("flight_hours"), resultSet.getDouble("price")
-                        ));
-                    }
+                    printFlights(flights);
                 }
                 consoleManager.printMessage("");
             } catch (SQLException e) {
@@ -517,29 +551,17 @@ public class AdminStrategy implements UserStrategy {
             }
 
             consoleManager.printMessage("Рейсы, выполненные на вертолете, к которому приписан пилот ID " + pilotId + ":");
-            final String sql = """
-                       SELECT f.id, f.date, f.code, f.goods_weight, f.passangers, f.flight_hours, f.price, h.seria_num as helicopter_seria
-                       FROM flight f
-                       JOIN helicopter h ON f.helicopter_id = h.id
-                       JOIN pilot p ON h.id = p.helicopter_id
-                       WHERE p.id = ?
-                       ORDER BY f.date;
-                    """;
-            try (Connection connection = connectionHandler.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setInt(1, pilotId);
-                ResultSet resultSet = statement.executeQuery();
-                if (!resultSet.isBeforeFirst()) {
+            try {
+                FlightStore store = connectionHandler.getFlightStore();
+                OptionalInt helicopterId = store.getPilotHelicopter(pilotId);
+                Optional<FlightStore.Helicopter> helicopter = helicopterId.isPresent() ? store.getHelicopter(helicopterId.getAsInt()) : Optional.empty();
+                List<Flight> flights = helicopter.isPresent() ? store.getFlights(helicopter.get().id(), null, null) : List.of();
+                if (flights.isEmpty()) {
                     consoleManager.printMessage("Рейсы не найдены для данного пилота (или пилот не приписан к вертолету с рейсами).");
                 } else {
-                    consoleManager.printMessage("ID Рейса | Дата | Тип | Груз (кг) | Пассажиры | Часы налета | Стоимость | Вертолет (серия)");
-                    while (resultSet.next()) {
-                        consoleManager.printMessage("%d | %s | %s | %.2f | %d | %.2f | %.2f | %s".formatted(
-                                resultSet.getInt("id"), resultSet.getString("date"), resultSet.getString("code"),
-                                resultSet.getDouble("goods_weight"), resultSet.getInt("passangers"),
-                                resultSet.getDouble("flight_hours"), resultSet.getDouble("price"),
-                                resultSet.getString("helicopter_seria")
-                        ));
+                    TableRenderer table = flightTable().column("Вертолет (серия)", 0).printHeader();
+                    for (Flight flight : flights) {
+                        flightRow(table, flight).text(helicopter.get().seriaNum()).endRow();
                     }
                 }
                 consoleManager.printMessage("");
@@ -613,66 +635,87 @@ public class AdminStrategy implements UserStrategy {
             return;
         }
 
-        final String checkResourceSql = """
-                   SELECT h.hours_before_repair, h.repair_date, COALESCE(SUM(f.flight_hours), 0.0) as flown_after_repair
-                   FROM helicopter h
-                   LEFT JOIN flight f ON f.helicopter_id = h.id AND f.date >= h.repair_date
-                   WHERE h.id = ?
-                   GROUP BY h.id, h.hours_before_repair, h.repair_date;
-                """;
-        final String insertFlightSql = "INSERT INTO flight (date, helicopter_id, code, goods_weight, passangers, flight_hours, price) VALUES (?, ?, ?, ?, ?, ?, ?);";
+        try {
+            FlightStore.AddResult result = connectionHandler.getFlightStore()
+                    .addFlight(new Flight(0, dateStr, helicopterId, code, goodsWeight, passengers, flightHours, price));
+            if (result.resource().isEmpty()) {
+                consoleManager.printMessage("Вертолет с ID " + helicopterId + " не найден.");
+            } else if (!result.added()) {
+                FlightStore.Resource resource = result.resource().get();
+                consoleManager.printMessage("Ошибка: Добавление этого рейса превысит ресурс летного времени вертолета.");
+                consoleManager.printMessage("Ресурс: " + resource.limit() + ", налетано после ремонта: " + resource.flownAfterRepair() + ", планируется: " + flightHours);
+                consoleManager.printMessage("Остаток ресурса: " + resource.remaining());
+            } else {
+                publishChanges();
+                consoleManager.printMessage("Рейс успешно добавлен.");
+            }
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при добавлении рейса в БД: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
 
-        try (Connection connection = connectionHandler.getConnection()) {
-            connection.setAutoCommit(false);
+    private void planFlights() {
+        consoleManager.printMessage("Распределение планируемых рейсов по вертолетам с учетом остатка ресурса.");
+        String pathStr = argument != null ? argument : consoleManager.getInput(String.class,
+                "Файл плана, строки 'дата,тип,часы' (или /back):", "Пустой путь.", s -> s != null && !s.isBlank());
+        if ("/back".equalsIgnoreCase(pathStr)) return;
+        Path path = Path.of(pathStr.trim());
 
-            try (PreparedStatement checkStmt = connection.prepareStatement(checkResourceSql)) {
-                checkStmt.setInt(1, helicopterId);
-                ResultSet rs = checkStmt.executeQuery();
+        List<FlightPlanner.PlannedFlight> flights;
+        try {
+            flights = FlightPlanner.read(path);
+        } catch (IOException e) {
+            consoleManager.printMessage("Не удалось прочитать файл плана: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            consoleManager.printMessage("Ошибка в файле плана: " + e.getMessage());
+            return;
+        }
 
-                if (!rs.next()) {
-                    consoleManager.printMessage("Вертолет с ID " + helicopterId + " не найден.");
-                    connection.rollback();
-                    return;
-                }
+        FlightPlanner.Plan plan;
+        try {
+            plan = FlightPlanner.plan(flights, connectionHandler.getFlightStore().getCurrentResources());
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при доступе к базе данных: " + e.getMessage());
+            return;
+        }
+        consoleManager.printMessage("Рейсов в плане: %d, назначено: %d, не назначено: %d".formatted(flights.size(), plan.schedule().size(), plan.unassigned().size()));
 
-                double hoursBeforeRepair = rs.getDouble("hours_before_repair");
-                double flownAfterRepair = rs.getDouble("flown_after_repair");
+        TableRenderer loads = table().column("ID вертолета", 0).column("Серийный номер", 10).column("Остаток ресурса (часы)", 0)
+                .column("Рейсов по плану", 0).column("Часы по плану", 0).column("Остаток после плана", 0).printHeader();
+        for (FlightPlanner.Load load : plan.loads()) {
+            loads.number(load.resource().helicopterId()).text(load.resource().seriaNum()).decimal(load.resource().remaining())
+                    .number(load.flights()).decimal(load.hours()).decimal(load.remaining()).endRow();
+        }
 
-                if (flownAfterRepair + flightHours > hoursBeforeRepair) {
-                    consoleManager.printMessage("Ошибка: Добавление этого рейса превысит ресурс летного времени вертолета.");
-                    consoleManager.printMessage("Ресурс: " + hoursBeforeRepair + ", налетано после ремонта: " + flownAfterRepair + ", планируется: " + flightHours);
-                    consoleManager.printMessage("Остаток ресурса: " + (hoursBeforeRepair - flownAfterRepair));
-                    connection.rollback();
-                    return;
-                }
+        int printRows = Integer.parseInt(connectionHandler.getProperty("plan.print_rows"));
+        if (!plan.schedule().isEmpty() && plan.schedule().size() <= printRows) {
+            consoleManager.printMessage("График:");
+            TableRenderer schedule = table().column("Дата", 10).column("Тип", 7).column("Часы", 0).column("ID вертолета", 0).column("Серийный номер", 10)
+                    .printHeader();
+            for (FlightPlanner.Assignment assignment : plan.schedule()) {
+                schedule.text(assignment.flight().date()).text(assignment.flight().code()).decimal(assignment.flight().hours())
+                        .number(assignment.resource().helicopterId()).text(assignment.resource().seriaNum()).endRow();
             }
-
-            try (PreparedStatement insertStmt = connection.prepareStatement(insertFlightSql)) {
-                insertStmt.setString(1, dateStr);
-                insertStmt.setInt(2, helicopterId);
-                insertStmt.setString(3, code);
-                insertStmt.setDouble(4, goodsWeight);
-                insertStmt.setInt(5, passengers);
-                insertStmt.setDouble(6, flightHours);
-                insertStmt.setDouble(7, price);
-
-                int affectedRows = insertStmt.executeUpdate();
-                if (affectedRows > 0) {
-                    connection.commit();
-                    consoleManager.printMessage("Рейс успешно добавлен.");
-                } else {
-                    connection.rollback();
-                    consoleManager.printMessage("Не удалось добавить рейс.");
-                }
-            } catch (SQLException e) {
-                connection.rollback();
-                consoleManager.printMessage("Ошибка при добавлении рейса в БД: " + e.getMessage());
-            } finally {
-                connection.setAutoCommit(true);
+        }
+        if (!plan.unassigned().isEmpty()) {
+            consoleManager.printMessage("Не хватает ресурса ни у одного вертолета:");
+            TableRenderer unassigned = table().column("Строка", 0).column("Дата", 10).column("Тип", 7).column("Часы", 0).printHeader();
+            for (FlightPlanner.PlannedFlight flight : plan.unassigned().subList(0, Math.min(printRows, plan.unassigned().size()))) {
+                unassigned.number(flight.line()).text(flight.date()).text(flight.code()).decimal(flight.hours()).endRow();
+            }
+            if (plan.unassigned().size() > printRows) {
+                consoleManager.printMessage("... показаны первые %d из %d.".formatted(printRows, plan.unassigned().size()));
             }
+        }
 
-        } catch (SQLException e) {
-            consoleManager.printMessage("Ошибка соединения с БД: " + e.getMessage());
+        Path schedulePath = path.resolveSibling(path.getFileName() + ".schedule.csv");
+        try {
+            FlightPlanner.write(plan, schedulePath);
+            consoleManager.printMessage("Полный график записан в " + schedulePath);
+        } catch (IOException e) {
+            consoleManager.printMessage("Не удалось записать график: " + e.getMessage());
         }
         consoleManager.printMessage("");
     }
@@ -718,64 +761,31 @@ public class AdminStrategy implements UserStrategy {
         if ("/back".equalsIgnoreCase(priceStr)) return;
 
 
-        StringBuilder sqlBuilder = new StringBuilder("UPDATE flight SET ");
-        boolean firstField = true;
-
-        if (!dateStr.isEmpty()) {
-            sqlBuilder.append("date = ?");
-            firstField = false;
-        }
-        if (!helicopterIdStr.isEmpty()) {
-            if (!firstField) sqlBuilder.append(", ");
-            sqlBuilder.append("helicopter_id = ?");
-            firstField = false;
-        }
-        if (!code.isEmpty()) {
-            if (!firstField) sqlBuilder.append(", ");
-            sqlBuilder.append("code = ?");
-            firstField = false;
-        }
-        if (!goodsWeightStr.isEmpty()) {
-            if (!firstField) sqlBuilder.append(", ");
-            sqlBuilder.append("goods_weight = ?");
-            firstField = false;
-        }
-        if (!passengersStr.isEmpty()) {
-            if (!firstField) sqlBuilder.append(", ");
-            sqlBuilder.append("passangers = ?");
-            firstField = false;
-        }
-        if (!flightHoursStr.isEmpty()) {
-            if (!firstField) sqlBuilder.append(", ");
-            sqlBuilder.append("flight_hours = ?");
-        }
-        if (!priceStr.isEmpty()) {
-            if (!firstField) sqlBuilder.append(", ");
-            sqlBuilder.append("price = ?");
-        }
-
-
-        if (firstField) {
+        if (dateStr.isEmpty() && helicopterIdStr.isEmpty() && code.isEmpty() && goodsWeightStr.isEmpty()
+                && passengersStr.isEmpty() && flightHoursStr.isEmpty() && priceStr.isEmpty()) {
             consoleManager.printMessage("Нет данных для обновления.");
             return;
         }
 
-        sqlBuilder.append(" WHERE id = ?;");
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sqlBuilder.toString())) {
-            int paramIndex = 1;
-            if (!dateStr.isEmpty()) statement.setString(paramIndex++, dateStr);
-            if (!helicopterIdStr.isEmpty()) statement.setInt(paramIndex++, Integer.parseInt(helicopterIdStr));
-            if (!code.isEmpty()) statement.setString(paramIndex++, code);
-            if (!goodsWeightStr.isEmpty()) statement.setDouble(paramIndex++, Double.parseDouble(goodsWeightStr));
-            if (!passengersStr.isEmpty()) statement.setInt(paramIndex++, Integer.parseInt(passengersStr));
-            if (!flightHoursStr.isEmpty()) statement.setDouble(paramIndex++, Double.parseDouble(flightHoursStr));
-            if (!priceStr.isEmpty()) statement.setDouble(paramIndex++, Double.parseDouble(priceStr));
-
-            statement.setInt(paramIndex, flightId);
-            int affectedRows = statement.executeUpdate();
-            if (affectedRows > 0) {
+        try {
+            Integer helicopterId = helicopterIdStr.isEmpty() ? null : Integer.parseInt(helicopterIdStr);
+            Double goodsWeight = goodsWeightStr.isEmpty() ? null : Double.parseDouble(goodsWeightStr);
+            Integer passengers = passengersStr.isEmpty() ? null : Integer.parseInt(passengersStr);
+            Double flightHours = flightHoursStr.isEmpty() ? null : Double.parseDouble(flightHoursStr);
+            Double price = priceStr.isEmpty() ? null : Double.parseDouble(priceStr);
+
+            Optional<Flight> before = connectionHandler.getFlightStore().updateFlight(flightId, flight -> new Flight(
+                    flight.id(),
+                    dateStr.isEmpty() ? flight.date() : dateStr,
+                    helicopterId == null ? flight.helicopterId() : helicopterId,
+                    code.isEmpty() ? flight.code() : code,
+                    goodsWeight == null ? flight.goodsWeight() : goodsWeight,
+                    passengers == null ? flight.passengers() : passengers,
+                    flightHours == null ? flight.flightHours() : flightHours,
+                    price == null ? flight.price() : price
+            ));
+            if (before.isPresent()) {
+                publishChanges();
                 consoleManager.printMessage("Информация о рейсе ID " + flightId + " успешно обновлена.");
             } else {
                 consoleManager.printMessage("Рейс с ID " + flightId + " не найден или данные не изменены.");
@@ -814,12 +824,10 @@ public class AdminStrategy implements UserStrategy {
         }
 
         if ("yes".equalsIgnoreCase(confirmation)) {
-            final String sql = "DELETE FROM flight WHERE id = ?;";
-            try (Connection connection = connectionHandler.getConnection();
-                 PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setInt(1, flightId);
-                int affectedRows = statement.executeUpdate();
-                if (affectedRows > 0) {
+            try {
+                Optional<Flight> deleted = connectionHandler.getFlightStore().deleteFlight(flightId);
+                if (deleted.isPresent()) {
+                    publishChanges();
                     consoleManager.printMessage("Рейс с ID " + flightId + " успешно удален.");
                 } else {
                     consoleManager.printMessage("Рейс с ID " + flightId + " не найден.");
@@ -831,6 +839,144 @@ public class AdminStrategy implements UserStrategy {
         consoleManager.printMessage("");
     }
 
+    private void bulkUpdateFlights() {
+        consoleManager.printMessage("Массовое обновление рейсов:");
+        FlightStore.FlightFilter filter = readFlightFilter();
+        if (filter == null) return;
+
+        consoleManager.printMessage("Введите новые значения (оставьте пустым, если не хотите менять, или /back для отмены):");
+        String dateStr = consoleManager.getInput(String.class, "Новая дата рейса (YYYY-MM-DD или /back):", "Неверный формат.", s -> s.isEmpty() || dateValidatorNotBack().test(s));
+        if ("/back".equalsIgnoreCase(dateStr)) return;
+        String helicopterIdStr = consoleManager.getInput(String.class, "Новый ID вертолета (или /back):", "Неверный ID.", s -> s.isEmpty() || "/back".equalsIgnoreCase(s) || s.matches("\\d+"));
+        if ("/back".equalsIgnoreCase(helicopterIdStr)) return;
+        String code = consoleManager.getInput(String.class, "Новый тип рейса (usual/special или /back):", "Неверный тип.", s -> s.isEmpty() || flightCodeValidatorNotBack().test(s));
+        if ("/back".equalsIgnoreCase(code)) return;
+        String goodsWeightStr = consoleManager.getInput(String.class, "Новый вес груза (кг) (или /back):", "Неверное значение.", s -> s.isEmpty() || notBack().test(s));
+        if ("/back".equalsIgnoreCase(goodsWeightStr)) return;
+        String passengersStr = consoleManager.getInput(String.class, "Новое количество пассажиров (или /back):", "Неверное значение.", s -> s.isEmpty() || notBack().test(s));
+        if ("/back".equalsIgnoreCase(passengersStr)) return;
+        String flightHoursStr = consoleManager.getInput(String.class, "Новая продолжительность полета (часы) (или /back):", "Неверное значение.", s -> s.isEmpty() || notBack().test(s));
+        if ("/back".equalsIgnoreCase(flightHoursStr)) return;
+        String priceStr = consoleManager.getInput(String.class, "Новая стоимость рейса (или /back):", "Неверное значение.", s -> s.isEmpty() || notBack().test(s));
+        if ("/back".equalsIgnoreCase(priceStr)) return;
+
+        FlightStore.FlightPatch patch;
+        try {
+            patch = new FlightStore.FlightPatch(
+                    dateStr.isEmpty() ? null : dateStr,
+                    helicopterIdStr.isEmpty() ? null : Integer.parseInt(helicopterIdStr),
+                    code.isEmpty() ? null : code,
+                    goodsWeightStr.isEmpty() ? null : Double.parseDouble(goodsWeightStr),
+                    passengersStr.isEmpty() ? null : Integer.parseInt(passengersStr),
+                    flightHoursStr.isEmpty() ? null : Double.parseDouble(flightHoursStr),
+                    priceStr.isEmpty() ? null : Double.parseDouble(priceStr));
+        } catch (NumberFormatException e) {
+            consoleManager.printMessage("Ошибка в формате введенных числовых данных.");
+            return;
+        }
+        if (patch.equals(new FlightStore.FlightPatch(null, null, null, null, null, null, null))) {
+            consoleManager.printMessage("Нет данных для обновления.");
+            return;
+        }
+
+        try {
+            FlightStore store = connectionHandler.getFlightStore();
+            if (patch.helicopterId() != null && store.getHelicopter(patch.helicopterId()).isEmpty()) {
+                consoleManager.printMessage("Вертолет с ID " + patch.helicopterId() + " не найден.");
+                return;
+            }
+            if (!confirmBulkChange(store.countFlights(filter), "обновлено")) return;
+
+            FlightStore.BulkResult result = store.bulkUpdateFlights(filter, patch);
+            if (!result.applied()) {
+                consoleManager.printMessage("Ошибка: обновление превысит ресурс летного времени вертолетов, изменения отменены.");
+                for (FlightStore.Resource resource : result.exceeded()) {
+                    consoleManager.printMessage("Вертолет ID %d: ресурс %.2f, налетано после ремонта было бы %.2f".formatted(
+                            resource.helicopterId(), resource.limit(), resource.flownAfterRepair()));
+                }
+            } else {
+                publishChanges();
+                consoleManager.printMessage("Обновлено рейсов: " + result.before().size());
+            }
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при массовом обновлении рейсов: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void bulkDeleteFlights() {
+        consoleManager.printMessage("Массовое удаление рейсов:");
+        FlightStore.FlightFilter filter = readFlightFilter();
+        if (filter == null) return;
+
+        try {
+            FlightStore store = connectionHandler.getFlightStore();
+            if (!confirmBulkChange(store.countFlights(filter), "удалено")) return;
+
+            List<Flight> deleted = store.bulkDeleteFlights(filter);
+            publishChanges();
+            consoleManager.printMessage("Удалено рейсов: " + deleted.size());
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при массовом удалении рейсов: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    // Пустой ответ не ограничивает отбор; null, если ввод отменен или условия не заданы
+    private FlightStore.FlightFilter readFlightFilter() {
+        consoleManager.printMessage("Условия отбора рейсов (оставьте пустым, чтобы не ограничивать, или /back для отмены):");
+        String flightIdsStr = consoleManager.getInput(String.class, "ID рейсов через запятую или путь к файлу с ID через @ (или /back):", "Неверный ввод.", s -> s != null);
+        if ("/back".equalsIgnoreCase(flightIdsStr)) return null;
+        String helicopterIdStr = consoleManager.getInput(String.class, "ID вертолета (или /back):", "Неверный ID.", s -> s.isEmpty() || "/back".equalsIgnoreCase(s) || s.matches("\\d+"));
+        if ("/back".equalsIgnoreCase(helicopterIdStr)) return null;
+        String startDateStr = consoleManager.getInput(String.class, "Начальная дата (YYYY-MM-DD или /back):", "Неверный формат.", s -> s.isEmpty() || dateValidatorNotBack().test(s));
+        if ("/back".equalsIgnoreCase(startDateStr)) return null;
+        String endDateStr = consoleManager.getInput(String.class, "Конечная дата (YYYY-MM-DD или /back):", "Неверный формат.", s -> s.isEmpty() || dateValidatorNotBack().test(s));
+        if ("/back".equalsIgnoreCase(endDateStr)) return null;
+        String code = consoleManager.getInput(String.class, "Тип рейса (usual/special или /back):", "Неверный тип.", s -> s.isEmpty() || flightCodeValidatorNotBack().test(s));
+        if ("/back".equalsIgnoreCase(code)) return null;
+
+        int[] flightIds = null;
+        if (!flightIdsStr.isBlank()) {
+            try {
+                flightIds = parseFlightIds(flightIdsStr);
+            } catch (NumberFormatException e) {
+                consoleManager.printMessage("Некорректный ID рейса в списке: " + e.getMessage());
+                return null;
+            } catch (IOException e) {
+                consoleManager.printMessage("Не удалось прочитать файл с ID рейсов: " + e.getMessage());
+                return null;
+            }
+        }
+        FlightStore.FlightFilter filter = new FlightStore.FlightFilter(flightIds,
+                helicopterIdStr.isEmpty() ? null : Integer.parseInt(helicopterIdStr),
+                startDateStr.isEmpty() ? null : startDateStr,
+                endDateStr.isEmpty() ? null : endDateStr,
+                code.isEmpty() ? null : code);
+        if (filter.isEmpty()) {
+            consoleManager.printMessage("Нужно задать хотя бы одно условие отбора.");
+            return null;
+        }
+        return filter;
+    }
+
+    private boolean confirmBulkChange(int count, String action) {
+        if (count == 0) {
+            consoleManager.printMessage("Рейсы по заданным условиям не найдены.");
+            return false;
+        }
+        String confirmation = consoleManager.getInput(String.class,
+                "Будет " + action + " рейсов: " + count + ". Продолжить? (yes/no или /back):",
+                "Неверный ввод. Введите 'yes' или 'no'.",
+                s -> "yes".equalsIgnoreCase(s) || "no".equalsIgnoreCase(s) || "/back".equalsIgnoreCase(s)
+        );
+        if (!"yes".equalsIgnoreCase(confirmation)) {
+            consoleManager.printMessage("Операция отменена.");
+            return false;
+        }
+        return true;
+    }
+
     private void calculateCrewEarningsForPeriod() {
         consoleManager.printMessage("Расчет заработка экипажей (вертолетов) за период.");
 
@@ -841,44 +987,77 @@ public class AdminStrategy implements UserStrategy {
         if ("/back".equalsIgnoreCase(endDateStr)) return;
 
 
-        final String calculateSql = """
-                  SELECT helicopter_id, SUM(price) as earnings
-                  FROM flight
-                  WHERE date BETWEEN ? AND ?
-                  GROUP BY helicopter_id;
-                """;
-        try (Connection connection = connectionHandler.getConnection()) {
-            try (PreparedStatement calcStmt = connection.prepareStatement(calculateSql)) {
+        try {
+            Map<Integer, Double> earnings = connectionHandler.getFlightStore().getEarningsByHelicopter(startDateStr, endDateStr);
+            printReplicaLag();
+            if (earnings.isEmpty()) {
+                consoleManager.printMessage("Нет данных о рейсах за указанный период для расчета.");
+                return;
+            }
+            TableRenderer table = table().column("ID вертолета", 0).column("Заработок отряда", 0).printHeader();
+            for (Map.Entry<Integer, Double> entry : new TreeMap<>(earnings).entrySet()) {
+                table.number(entry.getKey()).decimal(entry.getValue()).endRow();
+            }
+            consoleManager.printMessage("Расчеты по " + earnings.size() + " экипажам (вертолетам) за период с " + startDateStr + " по " + endDateStr + " сохранены.");
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при расчете или сохранении заработка: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
 
-                calcStmt.setString(1, startDateStr);
-                calcStmt.setString(2, endDateStr);
-                ResultSet rs = calcStmt.executeQuery();
+    private void printEarningsTrend() {
+        consoleManager.printMessage("Помесячная динамика заработка, налета и рейсов вертолетов.");
 
-                if (!rs.isBeforeFirst()) {
-                    consoleManager.printMessage("Нет данных о рейсах за указанный период для расчета.");
-                    connection.rollback();
-                    return;
-                }
-                consoleManager.printMessage("ID вертолета|Заработок отряда");
-                int count = 0;
-                while (rs.next()) {
-                    int helicopterId = rs.getInt("helicopter_id");
-                    double earnings = rs.getDouble("earnings");
-                    consoleManager.printMessage(helicopterId + "|" + earnings);
-                    count++;
+        String startDateStr = consoleManager.getInput(String.class, "Начальная дата периода (YYYY-MM-DD или /back):", "Неверный формат.", dateValidatorNotBack());
+        if ("/back".equalsIgnoreCase(startDateStr)) return;
+
+        String endDateStr = consoleManager.getInput(String.class, "Конечная дата периода (YYYY-MM-DD или /back):", "Неверный формат.", dateValidatorNotBack());
+        if ("/back".equalsIgnoreCase(endDateStr)) return;
+
+        try {
+            FlightStore store = connectionHandler.getFlightStore();
+            List<FlightStore.MonthlyTotals> totals = store.getMonthlyTotals(startDateStr, endDateStr);
+            printReplicaLag();
+            if (totals.isEmpty()) {
+                consoleManager.printMessage("Нет данных о рейсах за указанный период.");
+                return;
+            }
+            TableRenderer table = table()
+                    .column("ID вертолета", 0).column("Серийный номер", 0).column("Месяц", 7).column("Рейсов", 0).column("Часы налета", 0)
+                    .column("Заработок", 12).column("К пред. месяцу", 14)
+                    .printHeader();
+            Map<String, FlightStore.MonthlyTotals> fleet = new TreeMap<>();
+            int helicopterId = -1;
+            String seriaNum = null;
+            for (FlightStore.MonthlyTotals month : totals) {
+                if (month.helicopterId() != helicopterId) {
+                    helicopterId = month.helicopterId();
+                    seriaNum = store.getHelicopter(helicopterId).map(FlightStore.Helicopter::seriaNum).orElse(null);
                 }
-                consoleManager.printMessage("Расчеты по " + count + " экипажам (вертолетам) за период с " + startDateStr + " по " + endDateStr + " сохранены.");
+                table.number(month.helicopterId()).text(seriaNum).text(month.month()).number(month.flights()).decimal(month.hours()).decimal(month.earnings());
+                change(table, month.earningsChange()).endRow();
+                fleet.merge(month.month(), month, (a, b) -> new FlightStore.MonthlyTotals(0, a.month(), a.flights() + b.flights(), a.hours() + b.hours(), a.earnings() + b.earnings(), null));
+            }
 
-            } catch (SQLException e) {
-                connection.rollback();
-                consoleManager.printMessage("Ошибка при расчете или сохранении заработка: " + e.getMessage());
+            consoleManager.printMessage("\nИтого по парку:");
+            TableRenderer summary = table().column("Месяц", 7).column("Рейсов", 0).column("Часы налета", 0).column("Заработок", 12).column("К пред. месяцу", 14)
+                    .printHeader();
+            Double previous = null;
+            for (FlightStore.MonthlyTotals month : fleet.values()) {
+                summary.text(month.month()).number(month.flights()).decimal(month.hours()).decimal(month.earnings());
+                change(summary, previous == null ? null : month.earnings() - previous).endRow();
+                previous = month.earnings();
             }
         } catch (SQLException e) {
-            consoleManager.printMessage("Ошибка соединения с БД: " + e.getMessage());
+            consoleManager.printMessage("Ошибка при доступе к базе данных: " + e.getMessage());
         }
         consoleManager.printMessage("");
     }
 
+    private TableRenderer change(TableRenderer table, Double change) {
+        return change == null ? table.text(null) : table.decimal(change);
+    }
+
     private void printPilotEarningsForPeriod() {
         consoleManager.printMessage("Расчет заработка указанного летчика за период.");
 
@@ -898,30 +1077,14 @@ public class AdminStrategy implements UserStrategy {
         String endDateStr = consoleManager.getInput(String.class, "Конечная дата периода (YYYY-MM-DD или /back):", "Неверный формат.", dateValidatorNotBack());
         if ("/back".equalsIgnoreCase(endDateStr)) return;
 
-        final String sql = """
-                  SELECT SUM(f.price) as total_helicopter_earnings
-                  FROM flight f
-                  JOIN pilot p ON f.helicopter_id = p.helicopter_id
-                  WHERE p.id = ? AND f.date BETWEEN ? AND ?;
-                """;
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setInt(1, pilotId);
-            statement.setString(2, startDateStr);
-            statement.setString(3, endDateStr);
-            ResultSet rs = statement.executeQuery();
-
-            if (rs.next()) {
-                double totalEarnings = rs.getDouble("total_helicopter_earnings");
-                if (rs.wasNull()) {
-                    consoleManager.printMessage("Для пилота ID " + pilotId + " за период с " + startDateStr + " по " + endDateStr + " не найдено рейсов вертолета, к которому он приписан, или нет данных о заработке.");
-                } else {
-                    consoleManager.printMessage("Общая сумма, заработанная вертолетом пилота ID " + pilotId +
-                            " за период с " + startDateStr + " по " + endDateStr + ": %.2f".formatted(totalEarnings));
-                    consoleManager.printMessage("(Это сумма рейсов вертолета. Система не хранит индивидуальные начисления пилотам.)");
-                }
+        try {
+            OptionalDouble totalEarnings = sumPilotEarnings(pilotId, startDateStr, endDateStr, null, null);
+            if (totalEarnings.isEmpty()) {
+                consoleManager.printMessage("Для пилота ID " + pilotId + " за период с " + startDateStr + " по " + endDateStr + " не найдено рейсов вертолета, к которому он приписан, или нет данных о заработке.");
             } else {
-                consoleManager.printMessage("Нет данных для пилота ID " + pilotId + " за указанный период.");
+                consoleManager.printMessage("Общая сумма, заработанная вертолетом пилота ID " + pilotId +
+                        " за период с " + startDateStr + " по " + endDateStr + ": %.2f".formatted(totalEarnings.getAsDouble()));
+                consoleManager.printMessage("(Это сумма рейсов вертолета. Система не хранит индивидуальные начисления пилотам.)");
             }
             consoleManager.printMessage("");
         } catch (SQLException e) {
@@ -953,76 +1116,43 @@ public class AdminStrategy implements UserStrategy {
                 "Неверный выбор.", s -> "ids".equalsIgnoreCase(s) || "type".equalsIgnoreCase(s) || "/back".equalsIgnoreCase(s));
         if ("/back".equalsIgnoreCase(flightTypeChoice)) return;
 
-        StringBuilder sqlBuilder = new StringBuilder(
-                "SELECT SUM(f.price) as total_earnings " +
-                        "FROM flight f " +
-                        "JOIN pilot p ON f.helicopter_id = p.helicopter_id " +
-                        "WHERE p.id = ? AND f.date BETWEEN ? AND ? "
-        );
-
-        try (Connection connection = connectionHandler.getConnection()) {
+        try {
             if ("ids".equalsIgnoreCase(flightTypeChoice)) {
-                String flightIdsStr = consoleManager.getInput(String.class, "Введите ID рейсов через запятую (например, 1,2,3 или /back):", "Неверный ввод.", notBack());
+                String flightIdsStr = consoleManager.getInput(String.class, "Введите ID рейсов через запятую (например, 1,2,3), путь к файлу с ID через @ (например, @flights.txt) или /back:", "Неверный ввод.", notBack());
                 if ("/back".equalsIgnoreCase(flightIdsStr)) return;
 
-                sqlBuilder.append("AND f.id IN (");
-                String[] ids = flightIdsStr.split(",");
-                for (int i = 0; i < ids.length; i++) {
-                    sqlBuilder.append("?");
-                    if (i < ids.length - 1) {
-                        sqlBuilder.append(",");
-                    }
+                int[] flightIds;
+                try {
+                    flightIds = parseFlightIds(flightIdsStr);
+                } catch (NumberFormatException e) {
+                    consoleManager.printMessage("Некорректный ID рейса в списке: " + e.getMessage());
+                    return;
+                } catch (IOException e) {
+                    consoleManager.printMessage("Не удалось прочитать файл с ID рейсов: " + e.getMessage());
+                    return;
                 }
-                sqlBuilder.append(");");
-
-                try (PreparedStatement statement = connection.prepareStatement(sqlBuilder.toString())) {
-                    statement.setInt(1, pilotId);
-                    statement.setString(2, startDateStr);
-                    statement.setString(3, endDateStr);
-                    int paramIdx = 4;
-                    for (String id : ids) {
-                        try {
-                            statement.setInt(paramIdx++, Integer.parseInt(id.trim()));
-                        } catch (NumberFormatException e) {
-                            consoleManager.printMessage("Некорректный ID рейса в списке: " + id);
-                            return;
-                        }
-                    }
-                    ResultSet rs = statement.executeQuery();
-                    if (rs.next()) {
-                        double totalEarnings = rs.getDouble("total_earnings");
-                        if (rs.wasNull()) {
-                            consoleManager.printMessage("Для пилота ID " + pilotId + " по указанным рейсам (" + flightIdsStr + ") за период не найдено данных о заработке.");
-                        } else {
-                            consoleManager.printMessage("Общая сумма, заработанная вертолетом пилота ID " + pilotId +
-                                    " за рейсы (" + flightIdsStr + ") в период: %.2f".formatted(totalEarnings));
-                        }
-                    } else {
-                        consoleManager.printMessage("Нет данных.");
-                    }
+                if (flightIds.length == 0) {
+                    consoleManager.printMessage("Список ID рейсов пуст.");
+                    return;
+                }
+
+                OptionalDouble totalEarnings = sumPilotEarnings(pilotId, startDateStr, endDateStr, null, flightIds);
+                if (totalEarnings.isEmpty()) {
+                    consoleManager.printMessage("Для пилота ID " + pilotId + " по указанным рейсам (" + flightIds.length + " шт.) за период не найдено данных о заработке.");
+                } else {
+                    consoleManager.printMessage("Общая сумма, заработанная вертолетом пилота ID " + pilotId +
+                            " за указанные рейсы (" + flightIds.length + " шт.) в период: %.2f".formatted(totalEarnings.getAsDouble()));
                 }
             } else if ("type".equalsIgnoreCase(flightTypeChoice)) {
                 String flightCode = consoleManager.getInput(String.class, "Введите тип рейса (usual/special или /back):", "Неверный тип.", flightCodeValidatorNotBack());
                 if ("/back".equalsIgnoreCase(flightCode)) return;
 
-                sqlBuilder.append("AND f.code = ?;");
-                try (PreparedStatement statement = connection.prepareStatement(sqlBuilder.toString())) {
-                    statement.setInt(1, pilotId);
-                    statement.setString(2, startDateStr);
-                    statement.setString(3, endDateStr);
-                    statement.setString(4, flightCode);
-                    ResultSet rs = statement.executeQuery();
-                    if (rs.next()) {
-                        double totalEarnings = rs.getDouble("total_earnings");
-                        if (rs.wasNull()) {
-                            consoleManager.printMessage("Для пилота ID " + pilotId + " по рейсам типа '" + flightCode + "' за период не найдено данных о заработке.");
-                        } else {
-                            consoleManager.printMessage("Общая сумма, заработанная вертолетом пилота ID " + pilotId +
-                                    " за рейсы типа '" + flightCode + "' в период: %.2f".formatted(totalEarnings));
-                        }
-                    } else {
-                        consoleManager.printMessage("Нет данных.");
-                    }
+                OptionalDouble totalEarnings = sumPilotEarnings(pilotId, startDateStr, endDateStr, flightCode, null);
+                if (totalEarnings.isEmpty()) {
+                    consoleManager.printMessage("Для пилота ID " + pilotId + " по рейсам типа '" + flightCode + "' за период не найдено данных о заработке.");
+                } else {
+                    consoleManager.printMessage("Общая сумма, заработанная вертолетом пилота ID " + pilotId +
+                            " за рейсы типа '" + flightCode + "' в период: %.2f".formatted(totalEarnings.getAsDouble()));
                 }
             }
             consoleManager.printMessage("(Это сумма рейсов вертолета. Система не хранит индивидуальные начисления пилотам.)");
@@ -1031,4 +1161,259 @@ public class AdminStrategy implements UserStrategy {
             consoleManager.printMessage("Ошибка при расчете заработка летчика: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private void printResourceAlerts() {
+        ResourceAlerts alerts = connectionHandler.getResourceAlerts();
+        consoleManager.printMessage("Порог оповещения: остаток ресурса меньше %.0f%% или %.2f ч.".formatted(alerts.getPercentRemaining(), alerts.getHoursRemaining()));
+        try {
+            List<ResourceAlerts.Resource> active = alerts.getActiveAlerts();
+            if (active.isEmpty()) {
+                consoleManager.printMessage("Вертолетов с ресурсом ниже порога нет.");
+            } else {
+                TableRenderer table = table()
+                        .column("ID вертолета", 0).column("Ресурс (часы)", 0).column("Налетано после ремонта (часы)", 0).column("Остаток ресурса (часы)", 0)
+                        .printHeader();
+                for (ResourceAlerts.Resource resource : active) {
+                    table.number(resource.helicopterId()).decimal(resource.limit()).decimal(resource.flown()).decimal(resource.remaining()).endRow();
+                }
+            }
+
+            List<String> recent = alerts.getRecentAlerts(ALERT_HISTORY_SIZE);
+            if (!recent.isEmpty()) {
+                consoleManager.printMessage("Последние оповещения (время|ID вертолета|ресурс|налетано|остаток):");
+                recent.forEach(consoleManager::printMessage);
+            }
+            alerts.getWriteError().ifPresent(e -> consoleManager.printMessage(
+                    "Не удалось записать оповещения в журнал, они хранятся в памяти до следующей записи: " + e.getMessage()));
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при доступе к базе данных: " + e.getMessage());
+        } catch (IOException e) {
+            consoleManager.printMessage("Не удалось прочитать журнал оповещений: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void printResourceForecast() {
+        ResourceForecast forecast = connectionHandler.getResourceForecast();
+        try {
+            List<ResourceForecast.Forecast> forecasts = forecast.getForecasts();
+            if (forecasts.isEmpty()) {
+                consoleManager.printMessage("Данные по вертолетам не найдены.");
+                return;
+            }
+            consoleManager.printMessage("Прогноз по среднему налету за %d дн. до %s:".formatted(forecast.getWindowDays(), forecast.getWindowEnd()));
+            TableRenderer table = table()
+                    .column("Серийный номер", 10).column("Остаток ресурса (часы)", 0).column("Средний налет (часы/день)", 0).column("Ресурс будет исчерпан", 0)
+                    .printHeader();
+            for (ResourceForecast.Forecast f : forecasts) {
+                String depletion;
+                if (f.remaining() <= 0) {
+                    depletion = "уже исчерпан";
+                } else if (f.depletionDate() == null) {
+                    depletion = "нет полетов за период";
+                } else {
+                    depletion = f.depletionDate().toString();
+                }
+                table.text(f.seriaNum()).decimal(f.remaining()).decimal(f.hoursPerDay()).text(depletion).endRow();
+            }
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при доступе к базе данных: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void printReplicaStatus() {
+        if (!connectionHandler.isReplicaEnabled()) {
+            consoleManager.printMessage("Реплика для отчетов не используется: отчеты читают основную БД.");
+        } else {
+            connectionHandler.getReplicaLag().ifPresentOrElse(
+                    lag -> consoleManager.printMessage("Реплика для отчетов: снимок БД, отставание %d с.".formatted(lag.toSeconds())),
+                    () -> consoleManager.printMessage("Первый снимок БД для отчетов еще создается.")
+            );
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void printPoolStatus() {
+        TableRenderer table = table()
+                .column("Пул", 8).column("Лимит", 0).column("Выдано сейчас", 0).column("В очереди", 0).column("Всего выдано", 0).column("Отклонено", 0).column("Среднее удержание (мс)", 0)
+                .printHeader();
+        connectionHandler.getPoolMetrics().forEach((pool, metrics) -> table.text(pool).decimal(metrics.limit()).number(metrics.inFlight()).number(metrics.waiting())
+                .number(metrics.admitted()).number(metrics.shed()).decimal(metrics.averageHoldMillis()).endRow());
+        consoleManager.printMessage("");
+    }
+
+    private void verifyDatabase() {
+        consoleManager.printMessage("Проверка целостности рейсов: вертолеты без записи, недопустимые значения и даты, превышение ресурса.");
+        consoleManager.printMessage("(Рейсы проверяются частями параллельно, запись в БД во время проверки не блокируется.)");
+        int maxFindings = Integer.parseInt(connectionHandler.getProperty("verify.max_findings"));
+        TableRenderer table = table().column("Проблема", 16).column("Шард", 0).column("ID рейса", 8).column("ID вертолета", 0).column("Подробности", 0)
+                .printHeader();
+        long[] printed = {0};
+        try {
+            DatabaseVerifier.Report report = connectionHandler.getDatabaseVerifier().verify(finding -> {
+                if (printed[0]++ < maxFindings) {
+                    table.text(finding.kind().name()).number(finding.shard()).text(finding.flightId() == null ? "-" : finding.flightId().toString())
+                            .number(finding.helicopterId()).text(finding.detail()).endRow();
+                }
+            });
+            if (report.total() > maxFindings) {
+                consoleManager.printMessage("... показаны первые %d из %d.".formatted(maxFindings, report.total()));
+            }
+            consoleManager.printMessage("Проверено рейсов: %d (%d частей) за %.1f с.".formatted(report.rows(), report.chunks(), report.elapsed().toMillis() / 1000.0));
+            if (report.total() == 0) {
+                consoleManager.printMessage("Проблем не найдено.");
+            } else {
+                report.counts().forEach((kind, count) -> consoleManager.printMessage(" - %s: %d".formatted(kind, count)));
+            }
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при проверке БД: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void archiveFlights() {
+        consoleManager.printMessage("Перенос старых рейсов в архив.");
+        consoleManager.printMessage("(Рейсы, выполненные после последнего ремонта вертолета, не переносятся.)");
+
+        String beforeDateStr = consoleManager.getInput(String.class, "Перенести рейсы до даты (YYYY-MM-DD или /back):", "Неверный формат.", dateValidatorNotBack());
+        if ("/back".equalsIgnoreCase(beforeDateStr)) return;
+
+        try {
+            consoleManager.printMessage("Перенесено в архив рейсов: " + connectionHandler.getFlightStore().archiveFlightsBefore(beforeDateStr));
+        } catch (SQLException e) {
+            consoleManager.printMessage("Ошибка при переносе рейсов в архив: " + e.getMessage());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void printJobs() {
+        List<BackgroundJobs.Job> list = jobs.list();
+        if (list.isEmpty()) {
+            consoleManager.printMessage("Фоновых задач нет. Запуск: <команда> &");
+            return;
+        }
+        TableRenderer table = table().column("ID задачи", 0).column("Команда", 34).column("Состояние", 9).column("Время (с.)", 0).column("Шаги SQLite", 0)
+                .printHeader();
+        for (BackgroundJobs.Job job : list) {
+            table.number(job.getId()).text(job.getCommand()).text(job.getState().name()).decimal(job.getElapsed().toMillis() / 1000.0, 1)
+                    .number(job.getSteps()).endRow();
+        }
+        consoleManager.printMessage("");
+    }
+
+    // Jobs use this session's connection handler, which Tenants may close once the session's lease is released
+    private void stopJobs() {
+        int cancelled = jobs.cancelAll();
+        if (cancelled > 0) {
+            consoleManager.printMessage("Отменено фоновых задач при выходе: " + cancelled);
+        }
+    }
+
+    private void printJobProgress() {
+        Optional<BackgroundJobs.Job> found = readJob();
+        if (found.isEmpty()) return;
+        BackgroundJobs.Job job = found.get();
+        consoleManager.printMessage("Задача %d (%s): %s, %.1f с., шагов SQLite: %d".formatted(
+                job.getId(), job.getCommand(), job.getState(), job.getElapsed().toMillis() / 1000.0, job.getSteps()));
+        String output = job.getOutput();
+        if (!output.isEmpty()) {
+            consoleManager.printMessage(job.getState() == BackgroundJobs.State.RUNNING ? "Вывод на данный момент:" : "Результат:");
+            consoleManager.printMessage(output.stripTrailing());
+        }
+        consoleManager.printMessage("");
+    }
+
+    private void cancelJob() {
+        Optional<BackgroundJobs.Job> found = readJob();
+        if (found.isEmpty()) return;
+        if (jobs.cancel(found.get().getId())) {
+            consoleManager.printMessage("Задача " + found.get().getId() + " отменяется, состояние: /progress " + found.get().getId());
+        } else {
+            consoleManager.printMessage("Задача " + found.get().getId() + " уже завершена: " + found.get().getState());
+        }
+        consoleManager.printMessage("");
+    }
+
+    // The id may follow the command on the same line
+    private Optional<BackgroundJobs.Job> readJob() {
+        String idStr = argument != null ? argument : consoleManager.getInput(String.class, "Введите ID задачи (или /back):", "Неверный ID.", s -> s != null && !s.isBlank());
+        if ("/back".equalsIgnoreCase(idStr)) return Optional.empty();
+        Optional<BackgroundJobs.Job> job;
+        try {
+            job = jobs.get(Integer.parseInt(idStr.trim()));
+        } catch (NumberFormatException e) {
+            consoleManager.printMessage("Некорректный ID задачи.");
+            return Optional.empty();
+        }
+        if (job.isEmpty()) {
+            consoleManager.printMessage("Задача с ID " + idStr.trim() + " не найдена.");
+        }
+        return job;
+    }
+
+    private void printReplicaLag() {
+        connectionHandler.getReplicaLag().ifPresent(lag ->
+                consoleManager.printMessage("(Отчет построен по снимку БД, отставание: %d с.)".formatted(lag.toSeconds())));
+    }
+
+    private void printFlights(List<Flight> flights) {
+        TableRenderer table = flightTable().printHeader();
+        for (Flight flight : flights) {
+            flightRow(table, flight).endRow();
+        }
+    }
+
+    private TableRenderer table() {
+        return new TableRenderer(consoleManager, " | ");
+    }
+
+    private TableRenderer flightTable() {
+        return table().column("ID Рейса", 0).column("Дата", 10).column("Тип", 7).column("Груз (кг)", 10)
+                .column("Пассажиры", 0).column("Часы налета", 0).column("Стоимость", 12);
+    }
+
+    private TableRenderer flightRow(TableRenderer table, Flight flight) {
+        return table.number(flight.id()).text(flight.date()).text(flight.code()).decimal(flight.goodsWeight())
+                .number(flight.passengers()).decimal(flight.flightHours()).decimal(flight.price());
+    }
+
+    private OptionalDouble sumPilotEarnings(int pilotId, String startDate, String endDate, String code, int[] flightIds) throws SQLException {
+        FlightStore store = connectionHandler.getFlightStore();
+        OptionalInt helicopterId = store.getPilotHelicopter(pilotId);
+        return helicopterId.isPresent()
+                ? store.sumEarnings(helicopterId.getAsInt(), startDate, endDate, code, flightIds)
+                : OptionalDouble.empty();
+    }
+
+    // Изменение уже записано в flight_change вместе с коммитом; здесь оно переносится в журнал и представления
+    private void publishChanges() {
+        try {
+            connectionHandler.syncChanges();
+        } catch (IOException e) {
+            consoleManager.printMessage("Не удалось записать изменение в журнал, представления будут перечитаны из базы: " + e.getMessage());
+            connectionHandler.reloadChangeViews();
+        } catch (SQLException e) {
+            consoleManager.printMessage("Не удалось прочитать изменения из БД, журнал догонит их позже: " + e.getMessage());
+        }
+    }
+
+    private int[] parseFlightIds(String input) throws IOException {
+        String source = input.trim();
+        if (source.startsWith("@")) {
+            source = Files.readString(Path.of(source.substring(1).trim()));
+        }
+        int[] ids = new int[16];
+        int count = 0;
+        for (String token : source.split("[,;\\s]+")) {
+            if (token.isEmpty()) continue;
+            if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+            try {
+                ids[count++] = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException(token);
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+}
@@ -1,24 +1,103 @@
 package flight;
 
-import lombok.AllArgsConstructor;
-
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 
-@AllArgsConstructor
 public class AuthManager {
+    private static final String LOGIN_EXISTS_SQL = "select id from auth where login = ?;";
+    private static final String CORRECT_PASSWORD_SQL = "select id from auth where login = ? and password = ?;";
+    private static final String GET_USER_SQL = "select role, pilot_id from auth where login = ? and password = ?;";
+
     private final ConsoleManager consoleManager;
-    private final ConnectionHandler connectionHandler;
+    private final Tenants tenants;
+    private ConnectionHandler connectionHandler;
+    private Tenants.Lease lease;
+
+    public AuthManager(ConsoleManager consoleManager, ConnectionHandler connectionHandler) {
+        this.consoleManager = consoleManager;
+        this.tenants = null;
+        this.connectionHandler = connectionHandler;
+    }
+
+    // Asks for the operating base before the login and signs in to its database
+    public AuthManager(ConsoleManager consoleManager, Tenants tenants) {
+        this.consoleManager = consoleManager;
+        this.tenants = tenants;
+    }
+
+    public CompletableFuture<Void> warmUp() {
+        if (connectionHandler == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return connectionHandler.warmUp(LOGIN_EXISTS_SQL, CORRECT_PASSWORD_SQL, GET_USER_SQL);
+    }
+
+    /** Database of the last successful {@link #getAuth}. */
+    public ConnectionHandler getConnectionHandler() {
+        return connectionHandler;
+    }
+
+    /** Lets the base of the last sign-in be closed when it is idle; the next {@link #getAuth} asks for a base again. */
+    public void signOut() {
+        if (lease != null) {
+            lease.close();
+            lease = null;
+            connectionHandler = null;
+        }
+    }
 
     public User getAuth() {
         while (true) {
+            if (tenants != null) {
+                signOut();
+                lease = tenants.open(getBase());
+                connectionHandler = lease.getConnectionHandler();
+            }
             String login = getLogin();
             String password = getPassword(login);
-            if(password != null) {
-                return getUser(login, password);
+            User user = password != null ? getUser(login, password) : null;
+            if(user != null) {
+                return user;
+            }
+        }
+    }
+
+    private String getBase() {
+        while (true) {
+            String baseInput = consoleManager.getInput(
+                    String.class,
+                    "Input base:",
+                    "Unknown base!",
+                    s -> tenants.exists(s) || s.equals("/end") || s.equals("/help")
+            );
+
+            if (baseInput.equals("/end")) {
+                System.exit(0);
+            }
+
+            if (baseInput.equals("/help")) {
+                String bases;
+                try {
+                    bases = String.join(", ", tenants.names());
+                } catch (IOException e) {
+                    bases = "can't list bases: " + e.getMessage();
+                }
+                final String help = """
+                           Bases: %s
+                           Available commands:
+                            - /end - end program
+                            - /help - check commands
+                           """.formatted(bases);
+
+                consoleManager.printMessage(help);
+                continue;
             }
+
+            return baseInput;
         }
     }
 
@@ -81,43 +160,39 @@ public class AuthManager {
     }
 
     private boolean loginExists(String login) {
-        final String sql = "select id from auth where login = ?;";
-
         try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = connection.prepareStatement(LOGIN_EXISTS_SQL)) {
 
             statement.setString(1, login);
             ResultSet resultSet = statement.executeQuery();
             return resultSet.next();
+        } catch (DatabaseBusyException ex) {
+            consoleManager.printMessage(ex.getMessage());
+            return false;
         } catch (SQLException ex) {
-            throw new RuntimeException("Error with db");
+            throw new RuntimeException("Error with db", ex);
         }
     }
 
     private boolean correctPassword(String login, String password) {
-        final String sql = "select id from auth where login = ? and password = ?;";
-
         try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = connection.prepareStatement(CORRECT_PASSWORD_SQL)) {
 
             statement.setString(1, login);
             statement.setString(2, password);
             ResultSet resultSet = statement.executeQuery();
             return resultSet.next();
+        } catch (DatabaseBusyException ex) {
+            consoleManager.printMessage(ex.getMessage());
+            return false;
         } catch (SQLException ex) {
-            throw new RuntimeException("Error with db");
+            throw new RuntimeException("Error with db", ex);
         }
     }
 
     private User getUser(String login, String password) {
-        final String sql = """
-                select a.role, a.pilot_id, p.helicopter_id
-                from auth a 
-                left join pilot p on p.id = a.pilot_id
-                where a.login = ? and a.password = ?;
-                """;
         try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+             PreparedStatement statement = connection.prepareStatement(GET_USER_SQL)) {
 
             statement.setString(1, login);
             statement.setString(2, password);
@@ -125,12 +200,15 @@ public class AuthManager {
             if (rs.next()) {
                 String role = rs.getString(1);
                 int pilotId = rs.getInt(2);
-                int helicopterId = rs.getInt(3);
+                ReferenceCache.PilotRef pilot = connectionHandler.getReferenceCache().get().pilot(pilotId);
+                int helicopterId = pilot == null ? 0 : pilot.helicopterId();
                 consoleManager.printMessage("Successful sign in!\n");
                 return new User(UserRole.valueOf(role.toUpperCase()), pilotId, helicopterId);
             }
+        } catch (DatabaseBusyException ex) {
+            consoleManager.printMessage(ex.getMessage());
         } catch (SQLException ex) {
-            throw new RuntimeException("Error with db");
+            throw new RuntimeException("Error with db", ex);
         }
         return null;
     }
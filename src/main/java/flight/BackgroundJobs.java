@@ -0,0 +1,167 @@
+package flight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Commands of one admin session that run on virtual threads while the console stays free.
+ * <p>
+ * A job prints into its own buffer instead of the console; the buffer is shown by {@code /progress}.
+ * Its statements run in a {@link QueryContext}, which is what {@link #cancel} and the time limit act on.
+ * Only the last {@code keepFinished} finished jobs are kept, together with their output.
+ */
+public class BackgroundJobs {
+    private static final int DEFAULT_KEEP_FINISHED = 20;
+
+    public enum State {RUNNING, DONE, CANCELLED, TIMED_OUT, FAILED}
+
+    public static final class Job {
+        private final int id;
+        private final String command;
+        private final QueryContext context;
+        private final Instant startedAt = Instant.now();
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private volatile State state = State.RUNNING;
+        private volatile Instant finishedAt;
+        private Thread thread;
+
+        private Job(int id, String command, QueryContext context) {
+            this.id = id;
+            this.command = command;
+            this.context = context;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public Duration getElapsed() {
+            Instant end = finishedAt;
+            return Duration.between(startedAt, end == null ? Instant.now() : end);
+        }
+
+        public long getSteps() {
+            return context.getSteps();
+        }
+
+        // ByteArrayOutputStream is synchronized, so this is safe while the job is still printing
+        public String getOutput() {
+            return output.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<Integer, Job> jobs = new ConcurrentSkipListMap<>();
+    private final int keepFinished;
+
+    public BackgroundJobs() {
+        this(DEFAULT_KEEP_FINISHED);
+    }
+
+    public BackgroundJobs(int keepFinished) {
+        this.keepFinished = keepFinished;
+    }
+
+    /** Runs {@code body} with a console that writes into the job's output. */
+    public Job start(String command, int timeoutSeconds, Consumer<ConsoleManager> body) {
+        pruneFinished();
+        Job job = new Job(ids.incrementAndGet(), command, new QueryContext(timeoutSeconds));
+        ConsoleManager console = new ConsoleManager(new PrintStream(job.output, true, StandardCharsets.UTF_8), new Scanner(""));
+        jobs.put(job.id, job);
+        synchronized (job) {
+            job.thread = Thread.ofVirtual().name("job-" + job.id).start(() -> {
+                State result = State.DONE;
+                try {
+                    job.context.run(() -> body.accept(console));
+                } catch (RuntimeException e) {
+                    console.printMessage("Ошибка: " + e.getMessage());
+                    result = State.FAILED;
+                }
+                if (job.context.isCancelled()) {
+                    result = State.CANCELLED;
+                } else if (job.context.isTimedOut()) {
+                    result = State.TIMED_OUT;
+                }
+                job.finishedAt = Instant.now();
+                job.state = result;
+            });
+        }
+        return job;
+    }
+
+    public List<Job> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public Optional<Job> get(int id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /** Interrupts the job's running statement; false if there is no such job or it has already finished. */
+    public boolean cancel(int id) {
+        Job job = jobs.get(id);
+        if (job == null || job.state != State.RUNNING) {
+            return false;
+        }
+        job.context.cancel();
+        synchronized (job) {
+            job.thread.interrupt();
+        }
+        return true;
+    }
+
+    /** Cancels every running job and waits until all of them have finished; returns how many were cancelled. */
+    public int cancelAll() {
+        int cancelled = 0;
+        for (Job job : list()) {
+            if (cancel(job.id)) {
+                cancelled++;
+            }
+        }
+        for (Job job : list()) {
+            Thread thread;
+            synchronized (job) {
+                thread = job.thread;
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return cancelled;
+    }
+
+    // Oldest first, since the map is ordered by id
+    private void pruneFinished() {
+        long finished = jobs.values().stream().filter(job -> job.state != State.RUNNING).count();
+        Iterator<Job> oldest = jobs.values().iterator();
+        while (finished > keepFinished && oldest.hasNext()) {
+            if (oldest.next().state != State.RUNNING) {
+                oldest.remove();
+                finished--;
+            }
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package flight;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link FlightStore} that answers reads from an {@link InMemoryFlightStore} and writes through to SQLite.
+ * <p>
+ * The memory copy follows the {@link FlightChangeLog}, so changes committed by other processes or straight in
+ * SQL reach it too; it knows, per shard, the last {@code flight_change} record it contains. It is saved to a
+ * {@link FlightSnapshot} periodically and on close. On startup the snapshot is read back, flights added since are
+ * pulled from each shard by id and the log is replayed; the result is used only if every shard's last change
+ * record and highest flight id match the database, otherwise the full table is read.
+ */
+public class CachedFlightStore implements FlightStore {
+    private final ConnectionHandler connectionHandler;
+    private final SqliteFlightStore database;
+    private final FlightChangeLog changeLog;
+    private final Path snapshotPath;
+    private final ScheduledExecutorService snapshotWriter;
+    private final Consumer<FlightChange> listener = this::apply;
+    private final Object loadLock = new Object();
+    private final Object snapshotLock = new Object();
+    private volatile InMemoryFlightStore memory;
+    private volatile boolean stale;
+    // guarded by this: what the memory copy contains
+    private long[] feedSequences;
+    private long appliedSequence;
+    private boolean gap;
+    private ReferenceCache.Snapshot reference;
+    // guarded by snapshotLock
+    private long savedVersion = -1;
+
+    private CachedFlightStore(ConnectionHandler connectionHandler, FlightChangeLog changeLog, Path snapshotPath, Duration snapshotInterval) {
+        this.connectionHandler = connectionHandler;
+        this.database = new SqliteFlightStore(connectionHandler);
+        this.changeLog = changeLog;
+        this.snapshotPath = snapshotPath;
+        this.snapshotWriter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "flight-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        changeLog.addListener(listener);
+        long seconds = snapshotInterval.toSeconds();
+        snapshotWriter.scheduleWithFixedDelay(() -> {
+            try {
+                saveSnapshot();
+            } catch (IOException ignored) {
+                // the next run or close() tries again
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public static CachedFlightStore open(ConnectionHandler connectionHandler, Path snapshotPath, Duration snapshotInterval) throws SQLException {
+        FlightChangeLog changeLog;
+        try {
+            changeLog = connectionHandler.getChangeLog();
+        } catch (IOException e) {
+            throw new SQLException("Can't open the change log: " + e.getMessage(), e);
+        }
+        CachedFlightStore store = new CachedFlightStore(connectionHandler, changeLog, snapshotPath, snapshotInterval);
+        try {
+            if (!Files.exists(snapshotPath) || !store.restore()) {
+                store.load();
+            }
+        } catch (SQLException | RuntimeException e) {
+            store.snapshotWriter.shutdownNow();
+            changeLog.removeListener(store.listener);
+            throw e;
+        }
+        return store;
+    }
+
+    // Reads the snapshot and catches it up; false if it can't be trusted and the full table must be read
+    private boolean restore() throws SQLException {
+        InMemoryFlightStore restored = new InMemoryFlightStore();
+        FlightSnapshot.Header header;
+        try {
+            header = FlightSnapshot.read(snapshotPath, restored);
+        } catch (IOException e) {
+            return false;
+        }
+        int shardCount = connectionHandler.getShardCount();
+        if (header.shardMaxIds().length != shardCount || changeLog.lastSequence() < header.changeSequence()) {
+            return false;
+        }
+
+        restored.loadReferenceData(connectionHandler);
+        connectionHandler.scatter((shard, connection) -> restored.loadFlights(connection, "main.flight", header.shardMaxIds()[shard], false));
+        try {
+            install(restored, header.feedSequences(), header.changeSequence());
+            connectionHandler.syncChanges();
+        } catch (IOException e) {
+            return false;
+        }
+
+        // The log may have lost records, or the table may have been changed with the triggers off
+        long[] databaseSequences = new long[shardCount];
+        int[] maxIds = new int[shardCount];
+        connectionHandler.scatter((shard, connection) -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT MAX(id) FROM main.flight;")) {
+                long sequence = FlightChangeFeed.lastSequence(connection);
+                int maxId = rs.next() ? rs.getInt(1) : 0;
+                synchronized (maxIds) {
+                    databaseSequences[shard] = sequence;
+                    maxIds[shard] = maxId;
+                }
+                return maxId;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+        synchronized (this) {
+            if (gap || !Arrays.equals(feedSequences, databaseSequences)) {
+                return false;
+            }
+            for (int maxId : maxIds) {
+                if (maxId != 0 && memory.getFlight(maxId).isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Reads the full table; changes committed meanwhile are applied from the log once it is installed
+    private void load() throws SQLException {
+        long sequence = changeLog.lastSequence();
+        long[] loadedSequences = new long[connectionHandler.getShardCount()];
+        InMemoryFlightStore loaded = InMemoryFlightStore.load(connectionHandler, loadedSequences);
+        try {
+            install(loaded, loadedSequences, sequence);
+        } catch (IOException e) {
+            throw new SQLException("Can't replay the change log: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized void install(InMemoryFlightStore loaded, long[] loadedSequences, long sequence) throws IOException {
+        memory = loaded;
+        feedSequences = loadedSequences.clone();
+        appliedSequence = sequence;
+        gap = false;
+        reference = null;
+        changeLog.reader(sequence + 1).replay(this::apply);
+    }
+
+    private synchronized void apply(FlightChange change) {
+        if (feedSequences == null || change.sequence() <= appliedSequence) {
+            return;
+        }
+        appliedSequence = change.sequence();
+        int shard = change.shard();
+        if (shard >= 0 && shard < feedSequences.length) {
+            if (change.sourceSequence() <= feedSequences[shard]) {
+                return;
+            }
+            if (change.sourceSequence() != feedSequences[shard] + 1) {
+                gap = true;
+                stale = true;
+            }
+            feedSequences[shard] = change.sourceSequence();
+        }
+        if (change.type() == FlightChange.Type.DELETE) {
+            // a flight moved to another shard is inserted there and deleted here, in either order
+            memory.removeFlight(change.before().id(), change.before().helicopterId());
+        } else {
+            memory.upsertFlight(change.after());
+        }
+    }
+
+    /** Makes the next read load the full table again, for when a committed change could not reach the change log. */
+    public void reload() {
+        stale = true;
+        dropSnapshot();
+    }
+
+    // The memory copy after picking up the changes and reference data committed since the last check
+    private InMemoryFlightStore current() throws SQLException {
+        connectionHandler.syncChangesIfDue();
+        if (stale) {
+            synchronized (loadLock) {
+                if (stale) {
+                    stale = false;
+                    load();
+                }
+            }
+        }
+        ReferenceCache.Snapshot latest = connectionHandler.getReferenceCache().get();
+        synchronized (this) {
+            if (latest != reference) {
+                memory.replaceReferenceData(latest);
+                reference = latest;
+            }
+            return memory;
+        }
+    }
+
+    /** Deletes the snapshot, which may now miss a change the log cannot replay; the next save writes a full one. */
+    public void dropSnapshot() {
+        synchronized (snapshotLock) {
+            try {
+                Files.deleteIfExists(snapshotPath);
+            } catch (IOException ignored) {
+                // restore() rejects it anyway once it no longer matches the database
+            }
+            savedVersion = -1;
+        }
+    }
+
+    /** Writes the snapshot unless nothing changed since the last one. */
+    public void saveSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            InMemoryFlightStore saved;
+            long sequence;
+            long[] sequences;
+            // the flights may run ahead of what is recorded here, never behind: a replayed change is applied again harmlessly
+            synchronized (this) {
+                if (stale || feedSequences == null) {
+                    return;
+                }
+                saved = memory;
+                sequence = appliedSequence;
+                sequences = feedSequences.clone();
+            }
+            long version = saved.version();
+            if (version == savedVersion) {
+                return;
+            }
+            FlightSnapshot.write(saved, snapshotPath, sequence, sequences, connectionHandler);
+            savedVersion = version;
+        }
+    }
+
+    @Override
+    public List<Resource> getResources() throws SQLException {
+        return current().getResources();
+    }
+
+    @Override
+    public Optional<Resource> getResource(int helicopterId) throws SQLException {
+        return current().getResource(helicopterId);
+    }
+
+    @Override
+    public Optional<Helicopter> getHelicopter(int helicopterId) throws SQLException {
+        return current().getHelicopter(helicopterId);
+    }
+
+    @Override
+    public List<CrewMember> getCrew(int helicopterId) throws SQLException {
+        return current().getCrew(helicopterId);
+    }
+
+    @Override
+    public OptionalInt getPilotHelicopter(int pilotId) throws SQLException {
+        return current().getPilotHelicopter(pilotId);
+    }
+
+    @Override
+    public List<Flight> getFlights(int helicopterId, String startDate, String endDate) throws SQLException {
+        return current().getFlights(helicopterId, startDate, endDate);
+    }
+
+    @Override
+    public HelicopterTotals getHelicopterTotals(int helicopterId) throws SQLException {
+        return current().getHelicopterTotals(helicopterId);
+    }
+
+    @Override
+    public Optional<HelicopterSummary> getHelicopterSummary(int helicopterId) throws SQLException {
+        return current().getHelicopterSummary(helicopterId);
+    }
+
+    @Override
+    public FlightTotals sumFlightsByCode(String code) throws SQLException {
+        return current().sumFlightsByCode(code);
+    }
+
+    @Override
+    public Optional<HelicopterValue> findHelicopterWithMaxFlights() throws SQLException {
+        return current().findHelicopterWithMaxFlights();
+    }
+
+    @Override
+    public Optional<HelicopterValue> findHelicopterWithMaxEarnings() throws SQLException {
+        return current().findHelicopterWithMaxEarnings();
+    }
+
+    @Override
+    public Map<Integer, Double> getEarningsByHelicopter(String startDate, String endDate) throws SQLException {
+        return current().getEarningsByHelicopter(startDate, endDate);
+    }
+
+    @Override
+    public List<MonthlyTotals> getMonthlyTotals(String startDate, String endDate) throws SQLException {
+        return current().getMonthlyTotals(startDate, endDate);
+    }
+
+    @Override
+    public OptionalDouble sumEarnings(int helicopterId, String startDate, String endDate, String code, int[] flightIds) throws SQLException {
+        return current().sumEarnings(helicopterId, startDate, endDate, code, flightIds);
+    }
+
+    // Archive moves made by other processes do not reach the memory copy, so point lookups ask SQLite
+    @Override
+    public Optional<Flight> getFlight(int flightId) throws SQLException {
+        return database.getFlight(flightId);
+    }
+
+    @Override
+    public AddResult addFlight(Flight flight) throws SQLException {
+        AddResult result = database.addFlight(flight);
+        if (result.added()) {
+            memory.upsertFlight(result.flight());
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Flight> updateFlight(int flightId, UnaryOperator<Flight> change) throws SQLException {
+        Optional<Flight> before = database.updateFlight(flightId, change);
+        if (before.isPresent()) {
+            database.getFlight(flightId).ifPresent(memory::upsertFlight);
+        }
+        return before;
+    }
+
+    @Override
+    public Optional<Flight> deleteFlight(int flightId) throws SQLException {
+        Optional<Flight> deleted = database.deleteFlight(flightId);
+        deleted.ifPresent(flight -> memory.removeFlight(flightId));
+        return deleted;
+    }
+
+    @Override
+    public int countFlights(FlightFilter filter) throws SQLException {
+        return database.countFlights(filter);
+    }
+
+    @Override
+    public BulkResult bulkUpdateFlights(FlightFilter filter, FlightPatch patch) throws SQLException {
+        BulkResult result = database.bulkUpdateFlights(filter, patch);
+        result.after().forEach(memory::upsertFlight);
+        return result;
+    }
+
+    @Override
+    public List<Flight> bulkDeleteFlights(FlightFilter filter) throws SQLException {
+        List<Flight> deleted = database.bulkDeleteFlights(filter);
+        deleted.forEach(flight -> memory.removeFlight(flight.id()));
+        return deleted;
+    }
+
+    @Override
+    public int archiveFlightsBefore(String beforeDate) throws SQLException {
+        int archived = database.archiveFlightsBefore(beforeDate);
+        memory.archiveFlightsBefore(beforeDate);
+        return archived;
+    }
+
+    @Override
+    public void close() {
+        snapshotWriter.shutdownNow();
+        changeLog.removeListener(listener);
+        try {
+            saveSnapshot();
+        } catch (IOException ignored) {
+            // the next start falls back to a full load
+        }
+    }
+}
@@ -2,33 +2,524 @@ package flight;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import lombok.NoArgsConstructor;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import org.sqlite.SQLiteConfig;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-@NoArgsConstructor
-public class ConnectionHandler {
+public class ConnectionHandler implements AutoCloseable {
     private static final String PROPERTIES_NAME = "application.properties";
-    private static final Properties properties = new Properties();
-    private static final HikariConfig config = new HikariConfig();
-    private static final HikariDataSource dataSource;
+    private static final String SQLITE_URL_PREFIX = "jdbc:sqlite:";
+    private static final Properties defaults = new Properties();
+    // applied in order, each once per database; append new steps, never reorder or remove them
+    private static final List<Migration> MIGRATIONS = List.of(
+            FlightArchive::createIndexes,
+            ReferenceCache::createVersionTable,
+            FlightChangeFeed::createTables
+    );
+    // flight_change records are dropped once this many more of them are in the change log
+    private static final long PRUNE_EVERY = 1000;
 
     static {
         try {
-            properties.load(ConnectionHandler.class.getClassLoader().getResourceAsStream(PROPERTIES_NAME));
-            config.setJdbcUrl(properties.getProperty("db.url"));
-            config.setMaximumPoolSize(Integer.parseInt(properties.getProperty("db.pool_size")));
-            config.setConnectionTimeout(Long.parseLong(properties.getProperty("db.time_out")));
-            dataSource = new HikariDataSource(config);
+            defaults.load(ConnectionHandler.class.getClassLoader().getResourceAsStream(PROPERTIES_NAME));
         } catch (IOException e) {
             throw new RuntimeException("Can't load properties", e);
         }
     }
 
+    private final Properties properties;
+    private final MetricsTrackerFactory metricsTrackerFactory;
+    private final AtomicLong changeGeneration = new AtomicLong();
+    private volatile ConnectionLimiter pool;
+    private volatile FlightShards shards;
+    private volatile SnapshotReplica replica;
+    private volatile FlightChangeLog changeLog;
+    private volatile long changesSyncedAt;
+    private final Object pruneLock = new Object();
+    private long[] prunedChanges = new long[0];
+    private volatile ResourceAlerts resourceAlerts;
+    private volatile ResourceForecast resourceForecast;
+    private volatile FlightDistributions flightDistributions;
+    private volatile PilotIndex pilotIndex;
+    private volatile ReferenceCache referenceCache;
+    private volatile FlightStore flightStore;
+    private volatile FlightQueryService queryService;
+    private volatile DatabaseVerifier databaseVerifier;
+
+    public ConnectionHandler() {
+        this(new Properties());
+    }
+
+    public ConnectionHandler(Properties overrides) {
+        this(overrides, null);
+    }
+
+    // metricsTrackerFactory, if not null, is installed into every pool (primary and shards)
+    public ConnectionHandler(Properties overrides, MetricsTrackerFactory metricsTrackerFactory) {
+        this.properties = new Properties();
+        this.metricsTrackerFactory = metricsTrackerFactory;
+        defaults.stringPropertyNames().forEach(name -> properties.setProperty(name, System.getProperty(name, defaults.getProperty(name))));
+        overrides.stringPropertyNames().forEach(name -> properties.setProperty(name, overrides.getProperty(name)));
+    }
+
+    @FunctionalInterface
+    public interface ShardTask<T> {
+        T run(int shard, Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Migration {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    public String getProperty(String name) {
+        return properties.getProperty(name);
+    }
+
     public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        return getPool().getConnection();
+    }
+
+    public int getShardCount() {
+        return getShards().count();
+    }
+
+    public int shardOf(int helicopterId) {
+        return getShards().shardOf(helicopterId);
+    }
+
+    public Connection getShardConnection(int shard) throws SQLException {
+        return getShards().getConnection(shard);
+    }
+
+    // Unpooled and unable to write, for long scans that must not take connections from the writers
+    public Connection getReadOnlyConnection(int shard) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(Integer.parseInt(getProperty("db.time_out")));
+        String url = getShardCount() > 1 ? getProperty("db.shard_url_pattern").formatted(shard) : getProperty("db.url");
+        return QueryContext.track(config.createConnection(url));
+    }
+
+    public FlightArchive getArchive(int shard) {
+        return getShards().getArchive(shard);
+    }
+
+    public String flightIdExpression(int shard) {
+        return getShards().flightIdExpression(shard);
+    }
+
+    public <T> List<T> scatter(ShardTask<T> task) throws SQLException {
+        return getShards().scatter(task);
+    }
+
+    // Heavy reports read the snapshot when the replica is enabled (unsharded layout only) and current
+    public <T> List<T> scatterReport(ShardTask<T> task) throws SQLException {
+        SnapshotReplica snapshotReplica = getReplica();
+        if (snapshotReplica == null || !snapshotReplica.isCurrent()) {
+            return scatter(task);
+        }
+        try (Connection connection = snapshotReplica.getConnection()) {
+            return List.of(task.run(0, connection));
+        }
+    }
+
+    /**
+     * Runs a move of flights to the archive on every shard. The replica's flights are joined with the live archive,
+     * so reports read the primary from the start of the move until the replica is copied again right after it.
+     */
+    public <T> List<T> scatterArchiving(ShardTask<T> task) throws SQLException {
+        SnapshotReplica snapshotReplica = getReplica();
+        if (snapshotReplica == null) {
+            return scatter(task);
+        }
+        snapshotReplica.invalidate();
+        List<T> results;
+        try {
+            results = scatter(task);
+        } finally {
+            // a refresh that started during the move may have copied the flights before it
+            snapshotReplica.invalidate();
+        }
+        try {
+            snapshotReplica.refresh();
+        } catch (SQLException ignored) {
+            // reports keep reading the primary until a periodic refresh succeeds
+        }
+        return results;
+    }
+
+    // store.type=memory answers reads from a copy in memory that is restored from snapshot.path at startup
+    public FlightStore getFlightStore() throws SQLException {
+        if (flightStore == null) {
+            synchronized (this) {
+                if (flightStore == null) {
+                    flightStore = "memory".equals(getProperty("store.type"))
+                            ? CachedFlightStore.open(this, Path.of(getProperty("snapshot.path")), Duration.ofSeconds(Long.parseLong(getProperty("snapshot.interval_sec"))))
+                            : new SqliteFlightStore(this);
+                }
+            }
+        }
+        return flightStore;
+    }
+
+    public FlightChangeLog getChangeLog() throws IOException {
+        if (changeLog == null) {
+            synchronized (this) {
+                if (changeLog == null) {
+                    FlightChangeLog log = new FlightChangeLog(Path.of(getProperty("changelog.dir")), Integer.parseInt(getProperty("changelog.segment_bytes")));
+                    log.addListener(getResourceAlerts());
+                    log.addListener(getResourceForecast());
+                    log.addListener(getFlightDistributions());
+                    changeLog = log;
+                }
+            }
+        }
+        return changeLog;
+    }
+
+    /**
+     * Copies the flight changes every shard committed, by this process or any other, from {@code flight_change}
+     * into the change log and hands them to the views. The log directory must belong to this database alone,
+     * since the copied records are pruned from the database.
+     */
+    public long syncChanges() throws IOException, SQLException {
+        FlightChangeLog log = getChangeLog();
+        int count = getShardCount();
+        long sequence = log.sync(count, (shard, after, limit) -> {
+            try (Connection connection = getShardConnection(shard)) {
+                return FlightChangeFeed.read(connection, shard, after, limit);
+            }
+        });
+        changesSyncedAt = System.nanoTime();
+        pruneChanges(log, count);
+        return sequence;
+    }
+
+    /**
+     * {@link #syncChanges()} at most once per {@code changelog.check_interval_ms}, for readers that follow the
+     * log; a log that can't be written makes the views read the database again instead.
+     */
+    public void syncChangesIfDue() throws SQLException {
+        long interval = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(getProperty("changelog.check_interval_ms")));
+        if (changesSyncedAt != 0 && System.nanoTime() - changesSyncedAt < interval) {
+            return;
+        }
+        try {
+            syncChanges();
+        } catch (IOException e) {
+            changesSyncedAt = System.nanoTime();
+            reloadChangeViews();
+        }
+    }
+
+    // A committed change that did not reach the change log is invisible to the views following the log,
+    // so each of them drops its state and reads the database again
+    public void reloadChangeViews() {
+        changeGeneration.incrementAndGet();
+        getResourceAlerts().reset();
+        getResourceForecast().reset();
+        getFlightDistributions().reset();
+        if (flightStore instanceof CachedFlightStore cached) {
+            cached.reload();
+        }
+    }
+
+    /** Bumped by {@link #reloadChangeViews()}; a view loaded under an older value must be read again. */
+    public long getChangeGeneration() {
+        return changeGeneration.get();
+    }
+
+    public ResourceAlerts getResourceAlerts() {
+        if (resourceAlerts == null) {
+            synchronized (this) {
+                if (resourceAlerts == null) {
+                    resourceAlerts = new ResourceAlerts(
+                            this,
+                            Double.parseDouble(getProperty("alerts.percent_remaining")),
+                            Double.parseDouble(getProperty("alerts.hours_remaining")),
+                            Path.of(getProperty("alerts.log_path"))
+                    );
+                }
+            }
+        }
+        return resourceAlerts;
+    }
+
+    public ResourceForecast getResourceForecast() {
+        if (resourceForecast == null) {
+            synchronized (this) {
+                if (resourceForecast == null) {
+                    resourceForecast = new ResourceForecast(this, Integer.parseInt(getProperty("forecast.window_days")));
+                }
+            }
+        }
+        return resourceForecast;
+    }
+
+    public FlightDistributions getFlightDistributions() {
+        if (flightDistributions == null) {
+            synchronized (this) {
+                if (flightDistributions == null) {
+                    // kept next to the change log, whose sequence numbers the saved file refers to
+                    flightDistributions = new FlightDistributions(this, Double.parseDouble(getProperty("distribution.accuracy")),
+                            Path.of(getProperty("changelog.dir")).resolve("flightDistributions.bin"));
+                }
+            }
+        }
+        return flightDistributions;
+    }
+
+    public ReferenceCache getReferenceCache() {
+        if (referenceCache == null) {
+            synchronized (this) {
+                if (referenceCache == null) {
+                    referenceCache = new ReferenceCache(this, Long.parseLong(getProperty("reference.check_interval_ms")));
+                }
+            }
+        }
+        return referenceCache;
+    }
+
+    public PilotIndex getPilotIndex() {
+        if (pilotIndex == null) {
+            synchronized (this) {
+                if (pilotIndex == null) {
+                    pilotIndex = new PilotIndex(this, Integer.parseInt(getProperty("pilot_search.recent_days")), Integer.parseInt(getProperty("pilot_search.max_results")));
+                }
+            }
+        }
+        return pilotIndex;
+    }
+
+    public FlightQueryService getQueryService() {
+        if (queryService == null) {
+            synchronized (this) {
+                if (queryService == null) {
+                    queryService = new FlightQueryService(this, Integer.parseInt(getProperty("query.fetch_size")));
+                }
+            }
+        }
+        return queryService;
+    }
+
+    public DatabaseVerifier getDatabaseVerifier() {
+        if (databaseVerifier == null) {
+            synchronized (this) {
+                if (databaseVerifier == null) {
+                    databaseVerifier = new DatabaseVerifier(this, Integer.parseInt(getProperty("verify.chunk_rows")), Integer.parseInt(getProperty("verify.threads")));
+                }
+            }
+        }
+        return databaseVerifier;
+    }
+
+    // Admission control state of the primary pool and, when sharded, of every shard pool
+    public Map<String, ConnectionLimiter.Metrics> getPoolMetrics() {
+        Map<String, ConnectionLimiter.Metrics> metrics = new LinkedHashMap<>();
+        metrics.put("primary", getPool().getMetrics());
+        if (getShardCount() > 1) {
+            for (int shard = 0; shard < getShardCount(); shard++) {
+                metrics.put("shard " + shard, getShards().getMetrics(shard));
+            }
+        }
+        return metrics;
+    }
+
+    public boolean isReplicaEnabled() {
+        return getReplica() != null;
+    }
+
+    public Optional<Duration> getReplicaLag() {
+        SnapshotReplica snapshotReplica = getReplica();
+        return snapshotReplica == null ? Optional.empty() : snapshotReplica.getLag();
+    }
+
+    public CompletableFuture<Void> warmUp(String... statements) {
+        return CompletableFuture.runAsync(() -> {
+            try (Connection connection = getConnection()) {
+                for (String sql : statements) {
+                    connection.prepareStatement(sql).close();
+                }
+            } catch (SQLException e) {
+                throw new CompletionException("Warm-up of the connection pool failed", e);
+            }
+        }, task -> {
+            Thread thread = new Thread(task, "db-warm-up");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (flightStore != null) {
+            flightStore.close();
+        }
+        if (flightDistributions != null) {
+            try {
+                flightDistributions.save();
+            } catch (IOException ignored) {
+                // the next start replays the change log from the previous file or rebuilds it
+            }
+        }
+        if (changeLog != null) {
+            changeLog.close();
+        }
+        if (replica != null) {
+            replica.close();
+        }
+        if (shards != null) {
+            shards.close();
+        }
+        if (pool != null) {
+            pool.getDataSource().close();
+        }
+    }
+
+    private void pruneChanges(FlightChangeLog log, int count) throws SQLException {
+        synchronized (pruneLock) {
+            if (prunedChanges.length < count) {
+                prunedChanges = Arrays.copyOf(prunedChanges, count);
+            }
+            for (int shard = 0; shard < count; shard++) {
+                long cursor = log.cursor(shard);
+                if (cursor - prunedChanges[shard] >= PRUNE_EVERY) {
+                    try (Connection connection = getShardConnection(shard)) {
+                        FlightChangeFeed.prune(connection, cursor);
+                    }
+                    prunedChanges[shard] = cursor;
+                }
+            }
+        }
+    }
+
+    private ConnectionLimiter getPool() {
+        if (pool == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    ConnectionLimiter created = createPool(getProperty("db.url"));
+                    migrate(created);
+                    pool = created;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private FlightShards getShards() {
+        if (shards == null) {
+            synchronized (this) {
+                if (shards == null) {
+                    shards = createShards();
+                }
+            }
+        }
+        return shards;
+    }
+
+    private SnapshotReplica getReplica() {
+        if (!Boolean.parseBoolean(getProperty("db.replica.enabled")) || getShardCount() > 1) {
+            return null;
+        }
+        if (replica == null) {
+            synchronized (this) {
+                if (replica == null) {
+                    SnapshotReplica created = new SnapshotReplica(
+                            this,
+                            Path.of(getProperty("db.replica.path")),
+                            Duration.ofSeconds(Long.parseLong(getProperty("db.replica.interval_sec"))),
+                            Integer.parseInt(getProperty("db.replica.pages_per_step")),
+                            Integer.parseInt(getProperty("db.pool_size"))
+                    );
+                    created.start();
+                    replica = created;
+                }
+            }
+        }
+        return replica;
+    }
+
+    private FlightShards createShards() {
+        int count = Integer.parseInt(getProperty("db.shards"));
+        if (count <= 1) {
+            return FlightShards.single(getPool(), new FlightArchive(Path.of(getProperty("db.archive_path"))));
+        }
+
+        List<ConnectionLimiter> pools = new ArrayList<>(count);
+        List<FlightArchive> archives = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            pools.add(createPool(getProperty("db.shard_url_pattern").formatted(shard)));
+            archives.add(new FlightArchive(Path.of(getProperty("db.shard_archive_pattern").formatted(shard))));
+        }
+        FlightShards created = FlightShards.open(getPool(), new FlightArchive(Path.of(getProperty("db.archive_path"))), pools, archives,
+                getProperty("db.url").substring(SQLITE_URL_PREFIX.length()));
+        // a new shard gets only the tables of the primary, the rest of the schema comes from the migrations
+        pools.forEach(ConnectionHandler::migrate);
+        return created;
+    }
+
+    /**
+     * Brings the schema of the database behind {@code pool} up to what the code expects, once, when the pool is
+     * opened. {@code PRAGMA user_version} counts the migrations applied, so an up-to-date database costs one read.
+     */
+    private static void migrate(ConnectionLimiter pool) {
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            int version;
+            try (ResultSet rs = statement.executeQuery("PRAGMA user_version;")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+            for (int i = version; i < MIGRATIONS.size(); i++) {
+                connection.setAutoCommit(false);
+                try {
+                    MIGRATIONS.get(i).apply(connection);
+                    statement.execute("PRAGMA user_version = " + (i + 1) + ";");
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Can't migrate the database", e);
+        }
+    }
+
+    private ConnectionLimiter createPool(String url) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(Integer.parseInt(getProperty("db.pool_size")));
+        config.setConnectionTimeout(Long.parseLong(getProperty("db.time_out")));
+        if (metricsTrackerFactory != null) {
+            config.setMetricsTrackerFactory(metricsTrackerFactory);
+        }
+        return new ConnectionLimiter(
+                new HikariDataSource(config),
+                Boolean.parseBoolean(getProperty("db.limiter.enabled")),
+                Integer.parseInt(getProperty("db.limiter.min_limit")),
+                Long.parseLong(getProperty("db.limiter.latency_target_ms")),
+                Integer.parseInt(getProperty("db.limiter.queue_size")),
+                Long.parseLong(getProperty("db.limiter.queue_timeout_ms"))
+        );
     }
 }
@@ -0,0 +1,294 @@
+package flight;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive admission control in front of a connection pool.
+ * <p>
+ * At most {@code limit} connections are handed out at once. The limit follows AIMD on statement latency,
+ * Vegas-style: the work of a statement is its execute call plus every step through its result set, and
+ * statements are taken in windows of {@link #WINDOW_SAMPLES}. A window's fastest statement is compared with
+ * the baseline, the minimum of the last {@link #BASELINE_WINDOWS} windows; when even that statement ran slower
+ * than the baseline by more than the latency target while several connections were out, the database is
+ * queueing. A heavy report among fast statements does not move a window's minimum, and a baseline that stays
+ * higher for all of its windows is the new normal. A queueing window or a failed checkout multiplies the limit
+ * by {@link #BACKOFF}, at most once per target period; a statement run while the limiter is saturated grows it
+ * by {@code 1/limit}. How long a caller holds the connection between statements does not count. Callers over
+ * the limit wait in a bounded queue and get a {@link DatabaseBusyException} when it is full or their wait runs
+ * out.
+ */
+public class ConnectionLimiter {
+    private static final double BACKOFF = 0.8;
+    private static final int WINDOW_SAMPLES = 8;
+    private static final int BASELINE_WINDOWS = 16;
+    private static final Set<String> EXECUTE_METHODS = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch");
+
+    public record Metrics(double limit, int inFlight, int waiting, long admitted, long shed, double averageHoldMillis) {
+    }
+
+    private final HikariDataSource dataSource;
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // minima of the last windows, oldest overwritten first
+    private final long[] windowMinima = new long[BASELINE_WINDOWS];
+    private int windowCount;
+    private int windowNext;
+    private long windowMin = Long.MAX_VALUE;
+    private int windowSamples;
+    private int windowPeak;
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long admitted;
+    private long shed;
+    private long holdNanos;
+    private long lastDecrease;
+
+    public ConnectionLimiter(HikariDataSource dataSource, boolean enabled, int minLimit, long latencyTargetMillis, int queueSize, long queueTimeoutMillis) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.maxLimit = dataSource.getMaximumPoolSize();
+        this.minLimit = Math.min(minLimit, maxLimit);
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        this.queueSize = queueSize;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.limit = maxLimit;
+        this.lastDecrease = System.nanoTime();
+    }
+
+    public HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (!enabled) {
+            return QueryContext.track(dataSource.getConnection());
+        }
+        acquire();
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            release(System.nanoTime() - start, true);
+            throw e;
+        }
+        return QueryContext.track(wrap(connection, start));
+    }
+
+    public Metrics getMetrics() {
+        lock.lock();
+        try {
+            return new Metrics(enabled ? limit : maxLimit, inFlight, waiting, admitted, shed,
+                    admitted == 0 ? 0 : holdNanos / 1e6 / admitted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire() throws SQLException {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (waiting >= queueSize) {
+                    shed++;
+                    throw new DatabaseBusyException();
+                }
+                waiting++;
+                try {
+                    long nanos = queueTimeoutNanos;
+                    while (inFlight >= (int) limit) {
+                        if (nanos <= 0) {
+                            shed++;
+                            throw new DatabaseBusyException();
+                        }
+                        nanos = released.awaitNanos(nanos);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DatabaseBusyException();
+                } finally {
+                    waiting--;
+                }
+            }
+            inFlight++;
+            windowPeak = Math.max(windowPeak, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long heldNanos, boolean failed) {
+        lock.lock();
+        try {
+            inFlight--;
+            admitted++;
+            holdNanos += heldNanos;
+            if (failed) {
+                decrease();
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void statementCompleted(long nanos) {
+        lock.lock();
+        try {
+            windowMin = Math.min(windowMin, nanos);
+            windowSamples++;
+            if (inFlight >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            if (windowSamples == WINDOW_SAMPLES) {
+                closeWindow();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWindow() {
+        long baseline = Long.MAX_VALUE;
+        for (int i = 0; i < windowCount; i++) {
+            baseline = Math.min(baseline, windowMinima[i]);
+        }
+        if (windowPeak > 1 && baseline != Long.MAX_VALUE && windowMin - baseline > latencyTargetNanos) {
+            decrease();
+        }
+        windowMinima[windowNext] = windowMin;
+        windowNext = (windowNext + 1) % BASELINE_WINDOWS;
+        windowCount = Math.min(windowCount + 1, BASELINE_WINDOWS);
+        windowMin = Long.MAX_VALUE;
+        windowSamples = 0;
+        windowPeak = inFlight;
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        if (now - lastDecrease >= latencyTargetNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            lastDecrease = now;
+        }
+    }
+
+    private Connection wrap(Connection connection, long start) {
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                try {
+                    connection.close();
+                } finally {
+                    if (!closed[0]) {
+                        closed[0] = true;
+                        release(System.nanoTime() - start, false);
+                    }
+                }
+                return null;
+            }
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement statement && method.getName().endsWith("Statement")) {
+                return timed(statement);
+            }
+            return result;
+        });
+    }
+
+    // Times the work of each execution, reported once its results are drained or closed
+    private Statement timed(Statement statement) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        long[] work = {-1};
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (EXECUTE_METHODS.contains(name)) {
+                complete(work);
+                Object result = timedStep(work, statement, method, args);
+                if (result instanceof ResultSet rs) {
+                    return draining(rs, work);
+                }
+                if (!Boolean.TRUE.equals(result) || !"execute".equals(name)) {
+                    complete(work);
+                }
+                return result;
+            }
+            if ("getResultSet".equals(name)) {
+                Object result = invoke(statement, method, args);
+                return result instanceof ResultSet rs ? draining(rs, work) : result;
+            }
+            if ("close".equals(name)) {
+                try {
+                    return invoke(statement, method, args);
+                } finally {
+                    complete(work);
+                }
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private ResultSet draining(ResultSet rs, long[] work) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            if ("next".equals(method.getName())) {
+                Object more = timedStep(work, rs, method, args);
+                if (!Boolean.TRUE.equals(more)) {
+                    complete(work);
+                }
+                return more;
+            }
+            if ("close".equals(method.getName())) {
+                try {
+                    return invoke(rs, method, args);
+                } finally {
+                    complete(work);
+                }
+            }
+            return invoke(rs, method, args);
+        });
+    }
+
+    private static Object timedStep(long[] work, Object target, Method method, Object[] args) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return invoke(target, method, args);
+        } finally {
+            work[0] = Math.max(work[0], 0) + System.nanoTime() - start;
+        }
+    }
+
+    private void complete(long[] work) {
+        if (work[0] >= 0) {
+            statementCompleted(work[0]);
+            work[0] = -1;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -1,18 +1,23 @@
 package flight;
 
-import lombok.AllArgsConstructor;
-
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
-@AllArgsConstructor
 public class ConsoleManager {
     private static final Map<Class<?>, Function<String, ?>> functions;
     private PrintStream OUT;
     private Scanner SCANNER;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer rowBytes = ByteBuffer.allocate(1024);
+    private final CharBuffer lineSeparator = CharBuffer.wrap(System.lineSeparator());
+    private CharBuffer rowChars;
 
     static {
         functions = Map.of(
@@ -22,6 +27,38 @@ public class ConsoleManager {
         );
     }
 
+    public ConsoleManager(PrintStream OUT, Scanner SCANNER) {
+        this.OUT = OUT;
+        this.SCANNER = SCANNER;
+        this.encoder = OUT == null ? null : OUT.charset().newEncoder();
+    }
+
+    // Encodes the first length chars of row plus a line separator into a reused byte buffer, so a row allocates nothing
+    public synchronized void printRow(char[] row, int length) {
+        if (rowChars == null || !rowChars.hasArray() || rowChars.array() != row) {
+            rowChars = CharBuffer.wrap(row);
+        }
+        rowChars.limit(length).position(0);
+        encoder.reset();
+        encode(rowChars, false);
+        encode(lineSeparator.rewind(), true);
+        while (encoder.flush(rowBytes) == CoderResult.OVERFLOW) {
+            drain();
+        }
+        drain();
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) {
+        while (encoder.encode(chars, rowBytes, endOfInput) == CoderResult.OVERFLOW) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        OUT.write(rowBytes.array(), 0, rowBytes.position());
+        rowBytes.clear();
+    }
+
     public void printMessage(String message) {
         OUT.println(message);
     }
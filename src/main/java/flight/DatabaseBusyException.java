@@ -0,0 +1,14 @@
+package flight;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown by {@link ConnectionLimiter} when a request is shed instead of waiting for a connection.
+ */
+public class DatabaseBusyException extends SQLTransientConnectionException {
+    private static final long serialVersionUID = 1L;
+
+    public DatabaseBusyException() {
+        super("Database is busy, please retry in a moment");
+    }
+}
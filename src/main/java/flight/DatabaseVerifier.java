@@ -0,0 +1,314 @@
+package flight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Checks flights for what the schema does not enforce: orphans, out-of-range values, invalid dates and
+ * helicopters flown past {@code hours_before_repair}.
+ * <p>
+ * The {@code flight} table of every shard is split into rowid ranges of {@code chunkRows}, which are read
+ * by {@code threads} workers on read-only connections outside the pools. Each range is a short statement of
+ * its own, so a writer waits for at most one range instead of the whole scan. Findings reach the consumer
+ * as their range completes, so they are not in id order; resource totals are summed per range and checked
+ * at the end. Archived flights are not verified. Helicopters and pilots are read from the primary database once
+ * and copied into a temp table of every worker connection, since the shards do not hold them.
+ */
+public class DatabaseVerifier {
+    private static final String HELICOPTERS_TABLE = "temp.verify_helicopter";
+    private static final String BOUNDS_SQL = "SELECT MIN(rowid), MAX(rowid), COUNT(*) FROM flight;";
+    // Only the rows with a problem leave SQLite. Every text sorts above every number, so "x >= 0 AND x < ''"
+    // is a type and a range check in one comparison; the cheap checks come first since OR stops at the first hit.
+    private static final String FLIGHTS_SQL = """
+            SELECT f.id, f.helicopter_id, f.date, f.code, f.goods_weight, f.passangers, f.flight_hours, f.price,
+                h.id IS NULL as orphan, h.max_weight, h.creation_date, date(f.date) IS NULL OR date(f.date) != f.date as bad_date
+            FROM flight f
+            LEFT JOIN %s h ON h.id = f.helicopter_id
+            WHERE f.rowid BETWEEN ? AND ? AND (
+                f.code NOT IN ('usual', 'special')
+                OR (f.goods_weight >= 0 AND f.goods_weight < '') IS NOT 1
+                OR (f.passangers >= 0 AND f.passangers < '') IS NOT 1
+                OR (f.flight_hours > 0 AND f.flight_hours < '') IS NOT 1
+                OR (f.price >= 0 AND f.price < '') IS NOT 1
+                OR h.id IS NULL OR f.date < h.creation_date OR f.goods_weight > h.max_weight
+                OR date(f.date) IS NULL OR date(f.date) != f.date
+            );
+            """.formatted(HELICOPTERS_TABLE);
+    private static final String FLOWN_SQL = """
+            SELECT f.helicopter_id, SUM(f.flight_hours) as flown
+            FROM flight f
+            JOIN %s h ON h.id = f.helicopter_id
+            WHERE f.rowid BETWEEN ? AND ? AND f.date >= h.repair_date
+            GROUP BY f.helicopter_id;
+            """.formatted(HELICOPTERS_TABLE);
+    private static final String HELICOPTERS_SQL = """
+            SELECT id, max_weight, hours_before_repair, creation_date, repair_date,
+                date(creation_date) IS NULL OR date(creation_date) != creation_date
+                    OR date(repair_date) IS NULL OR date(repair_date) != repair_date OR repair_date < creation_date as bad_date
+            FROM helicopter;
+            """;
+    private static final String ORPHAN_PILOTS_SQL = """
+            SELECT p.id, p.helicopter_id
+            FROM pilot p
+            LEFT JOIN helicopter h ON h.id = p.helicopter_id
+            WHERE h.id IS NULL;
+            """;
+
+    public enum Kind {ORPHAN, OUT_OF_RANGE, INVALID_DATE, RESOURCE_OVERRUN}
+
+    /** {@code flightId} is {@code null} for findings about a helicopter or a pilot. */
+    public record Finding(Kind kind, int shard, Integer flightId, int helicopterId, String detail) {
+    }
+
+    public record Report(long rows, int chunks, Map<Kind, Long> counts, Duration elapsed) {
+        public long total() {
+            return counts.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    private record Chunk(int shard, long first, long last) {
+    }
+
+    // The columns are kept as SQLite returned them, so the flight checks see the same types as in the primary
+    private record Helicopter(int id, Object maxWeight, Object creationDate, Object repairDate, double hoursBeforeRepair) {
+    }
+
+    private final ConnectionHandler connectionHandler;
+    private final int chunkRows;
+    private final int threads;
+
+    public DatabaseVerifier(ConnectionHandler connectionHandler, int chunkRows, int threads) {
+        this.connectionHandler = connectionHandler;
+        this.chunkRows = chunkRows;
+        this.threads = threads;
+    }
+
+    /** Passes every finding to {@code findings}, one call at a time, and returns the totals. */
+    public Report verify(Consumer<Finding> findings) throws SQLException {
+        long started = System.nanoTime();
+        Map<Kind, Long> counts = new EnumMap<>(Kind.class);
+        Consumer<Finding> sink = finding -> {
+            synchronized (counts) {
+                counts.merge(finding.kind(), 1L, Long::sum);
+                findings.accept(finding);
+            }
+        };
+
+        int shards = connectionHandler.getShardCount();
+        Map<Integer, Helicopter> helicopters;
+        try (Connection connection = connectionHandler.getConnection()) {
+            helicopters = verifyReferences(connection, sink);
+        }
+        Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+        long rows = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            try (Connection connection = connectionHandler.getReadOnlyConnection(shard)) {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery(BOUNDS_SQL)) {
+                    rs.next();
+                    rows += rs.getLong(3);
+                    for (long first = rs.getLong(1); rs.getLong(3) > 0 && first <= rs.getLong(2); first += chunkRows) {
+                        chunks.add(new Chunk(shard, first, Math.min(first + chunkRows - 1, rs.getLong(2))));
+                    }
+                }
+            }
+        }
+        int chunkCount = chunks.size();
+
+        List<Map<Integer, Double>> flown = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            flown.add(new HashMap<>());
+        }
+        runWorkers(chunks, helicopters, sink, flown);
+
+        for (int shard = 0; shard < shards; shard++) {
+            for (Map.Entry<Integer, Double> entry : flown.get(shard).entrySet()) {
+                Helicopter helicopter = helicopters.get(entry.getKey());
+                if (entry.getValue() > helicopter.hoursBeforeRepair()) {
+                    sink.accept(new Finding(Kind.RESOURCE_OVERRUN, shard, null, entry.getKey(),
+                            "flown %.2f of hours_before_repair %.0f".formatted(entry.getValue(), helicopter.hoursBeforeRepair())));
+                }
+            }
+        }
+        return new Report(rows, chunkCount, counts, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private void runWorkers(Queue<Chunk> chunks, Map<Integer, Helicopter> helicopters, Consumer<Finding> sink,
+                            List<Map<Integer, Double>> flown) throws SQLException {
+        int workers = Math.max(1, Math.min(threads, chunks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "db-verify");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Void>> futures = new ArrayList<>(workers);
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(QueryContext.propagate(() -> {
+                    verifyChunks(chunks, helicopters, sink, flown);
+                    return null;
+                })));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Database verification interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Database verification failed", e.getCause());
+        } finally {
+            // the other workers stop at their next chunk
+            chunks.clear();
+            executor.shutdownNow();
+        }
+    }
+
+    // One read-only connection per shard and worker, opened on the worker's first chunk of that shard
+    private void verifyChunks(Queue<Chunk> chunks, Map<Integer, Helicopter> helicopters, Consumer<Finding> sink,
+                              List<Map<Integer, Double>> flown) throws SQLException {
+        Connection[] connections = new Connection[flown.size()];
+        try {
+            Chunk chunk;
+            while ((chunk = chunks.poll()) != null) {
+                QueryContext context = QueryContext.current();
+                if (context != null && (context.isCancelled() || context.isTimedOut())) {
+                    throw new SQLException("Database verification stopped");
+                }
+                if (connections[chunk.shard()] == null) {
+                    connections[chunk.shard()] = connectionHandler.getReadOnlyConnection(chunk.shard());
+                    loadHelicopters(connections[chunk.shard()], helicopters);
+                }
+                verifyFlights(chunk, connections[chunk.shard()], sink);
+                sumFlown(chunk, connections[chunk.shard()], flown.get(chunk.shard()));
+            }
+        } finally {
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private void verifyFlights(Chunk chunk, Connection connection, Consumer<Finding> sink) throws SQLException {
+        List<Finding> found = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(FLIGHTS_SQL)) {
+            statement.setLong(1, chunk.first());
+            statement.setLong(2, chunk.last());
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                int id = rs.getInt("id");
+                int helicopterId = rs.getInt("helicopter_id");
+                if (rs.getBoolean("orphan")) {
+                    found.add(new Finding(Kind.ORPHAN, chunk.shard(), id, helicopterId, "no helicopter " + helicopterId));
+                }
+                String date = rs.getString("date");
+                String creationDate = rs.getString("creation_date");
+                if (rs.getBoolean("bad_date")) {
+                    found.add(new Finding(Kind.INVALID_DATE, chunk.shard(), id, helicopterId, "date '" + date + "'"));
+                } else if (creationDate != null && date.compareTo(creationDate) < 0) {
+                    found.add(new Finding(Kind.INVALID_DATE, chunk.shard(), id, helicopterId, "date " + date + " before creation_date " + creationDate));
+                }
+                String code = rs.getString("code");
+                if (!"usual".equals(code) && !"special".equals(code)) {
+                    found.add(new Finding(Kind.OUT_OF_RANGE, chunk.shard(), id, helicopterId, "code '" + code + "'"));
+                }
+                checkValue(rs, "goods_weight", 0, chunk, found);
+                checkValue(rs, "passangers", 0, chunk, found);
+                checkValue(rs, "flight_hours", Double.MIN_VALUE, chunk, found);
+                checkValue(rs, "price", 0, chunk, found);
+                Object maxWeight = rs.getObject("max_weight");
+                if (maxWeight instanceof Number max && rs.getObject("goods_weight") instanceof Number weight && weight.doubleValue() > max.doubleValue()) {
+                    found.add(new Finding(Kind.OUT_OF_RANGE, chunk.shard(), id, helicopterId, "goods_weight %s above max_weight %s".formatted(weight, max)));
+                }
+            }
+        }
+        found.forEach(sink);
+    }
+
+    // A value is in range when it is stored as a number not below min
+    private static void checkValue(ResultSet rs, String column, double min, Chunk chunk, List<Finding> found) throws SQLException {
+        Object value = rs.getObject(column);
+        if (!(value instanceof Number number) || number.doubleValue() < min) {
+            found.add(new Finding(Kind.OUT_OF_RANGE, chunk.shard(), rs.getInt("id"), rs.getInt("helicopter_id"),
+                    value instanceof String ? column + " '" + value + "'" : column + " " + value));
+        }
+    }
+
+    private void sumFlown(Chunk chunk, Connection connection, Map<Integer, Double> flown) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(FLOWN_SQL)) {
+            statement.setLong(1, chunk.first());
+            statement.setLong(2, chunk.last());
+            ResultSet rs = statement.executeQuery();
+            synchronized (flown) {
+                while (rs.next()) {
+                    flown.merge(rs.getInt("helicopter_id"), rs.getDouble("flown"), Double::sum);
+                }
+            }
+        }
+    }
+
+    // The reference tables of the primary are small, so they are read whole; their findings are reported for shard 0
+    private Map<Integer, Helicopter> verifyReferences(Connection connection, Consumer<Finding> sink) throws SQLException {
+        int shard = 0;
+        Map<Integer, Helicopter> helicopters = new HashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery(HELICOPTERS_SQL);
+            while (rs.next()) {
+                int id = rs.getInt("id");
+                Helicopter helicopter = new Helicopter(id, rs.getObject("max_weight"), rs.getObject("creation_date"), rs.getObject("repair_date"),
+                        rs.getDouble("hours_before_repair"));
+                helicopters.put(id, helicopter);
+                if (rs.getDouble("max_weight") <= 0 || helicopter.hoursBeforeRepair() <= 0) {
+                    sink.accept(new Finding(Kind.OUT_OF_RANGE, shard, null, id,
+                            "max_weight %s, hours_before_repair %s".formatted(rs.getString("max_weight"), rs.getString("hours_before_repair"))));
+                }
+                if (rs.getBoolean("bad_date")) {
+                    sink.accept(new Finding(Kind.INVALID_DATE, shard, null, id,
+                            "creation_date '%s', repair_date '%s'".formatted(rs.getString("creation_date"), rs.getString("repair_date"))));
+                }
+            }
+            rs = statement.executeQuery(ORPHAN_PILOTS_SQL);
+            while (rs.next()) {
+                sink.accept(new Finding(Kind.ORPHAN, shard, null, rs.getInt("helicopter_id"), "pilot " + rs.getInt("id") + " has no helicopter"));
+            }
+        }
+        return helicopters;
+    }
+
+    private static void loadHelicopters(Connection connection, Map<Integer, Helicopter> helicopters) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + HELICOPTERS_TABLE + " (id integer PRIMARY KEY, max_weight, creation_date, repair_date);");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + HELICOPTERS_TABLE + " VALUES (?, ?, ?, ?);")) {
+            for (Helicopter helicopter : helicopters.values()) {
+                insert.setInt(1, helicopter.id());
+                insert.setObject(2, helicopter.maxWeight());
+                insert.setObject(3, helicopter.creationDate());
+                insert.setObject(4, helicopter.repairDate());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package flight;
+
+public record Flight(int id, String date, int helicopterId, String code, double goodsWeight, int passengers, double flightHours, double price) {
+}
@@ -0,0 +1,163 @@
+package flight;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Cold storage for old flights in a separate SQLite file that is attached as schema {@code archive}.
+ * <p>
+ * Only flights made before their helicopter's {@code repair_date} are archived, so resource totals
+ * since repair never need the archive. Queries ask {@link #flightsFrom} for the flight source and
+ * get the archive only when their period starts at or before the newest archived date.
+ */
+public class FlightArchive {
+    private static final String SCHEMA = "archive";
+    private static final String ALL_FLIGHTS = "(SELECT * FROM main.flight UNION ALL SELECT * FROM archive.flight)";
+    private static final String ARCHIVABLE = """
+            date < ? AND date < (SELECT r.repair_date FROM %s r WHERE r.id = helicopter_id)
+            """.formatted(ReferenceCache.REPAIR_TABLE);
+
+    private final Path archivePath;
+    private volatile String horizon;
+    private volatile boolean horizonLoaded;
+
+    public FlightArchive(Path archivePath) {
+        this.archivePath = archivePath;
+    }
+
+    public Path getPath() {
+        return archivePath;
+    }
+
+    public String flightsFrom(Connection connection, String startDate) throws SQLException {
+        return needsArchive(connection, startDate) ? ALL_FLIGHTS : "flight";
+    }
+
+    /** The same source as {@link #flightsFrom}, table by table, for queries that read each one in index order. */
+    public List<String> flightTables(Connection connection, String startDate) throws SQLException {
+        return needsArchive(connection, startDate) ? List.of("main.flight", "archive.flight") : List.of("flight");
+    }
+
+    /** Indexes keyset pages over the live flights use; a migration of every database, primary and shards. */
+    public static void createIndexes(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            createIndexes(statement, "main");
+        }
+    }
+
+    /** Moves flights in chunks; the connection's {@link ReferenceCache#REPAIR_TABLE} must be filled. */
+    public int archiveBefore(Connection connection, String beforeDate, int chunkSize) throws SQLException {
+        attach(connection);
+        final String chunkEndSql = "SELECT MAX(id) FROM (SELECT id FROM main.flight WHERE " + ARCHIVABLE + " ORDER BY id LIMIT ?);";
+        final String copySql = "INSERT INTO archive.flight SELECT * FROM main.flight WHERE id <= ? AND " + ARCHIVABLE + ";";
+        final String deleteSql = "DELETE FROM main.flight WHERE id <= ? AND " + ARCHIVABLE + ";";
+
+        int moved = 0;
+        connection.setAutoCommit(false);
+        try (PreparedStatement chunkEndStmt = connection.prepareStatement(chunkEndSql);
+             PreparedStatement copyStmt = connection.prepareStatement(copySql);
+             PreparedStatement deleteStmt = connection.prepareStatement(deleteSql)) {
+            while (true) {
+                chunkEndStmt.setString(1, beforeDate);
+                chunkEndStmt.setInt(2, chunkSize);
+                ResultSet rs = chunkEndStmt.executeQuery();
+                int chunkEnd = rs.next() ? rs.getInt(1) : 0;
+                if (chunkEnd == 0) {
+                    connection.rollback();
+                    break;
+                }
+
+                // a move to the archive changes no flight, so it stays out of the change feed
+                FlightChangeFeed.mute(connection);
+                copyStmt.setInt(1, chunkEnd);
+                copyStmt.setString(2, beforeDate);
+                copyStmt.executeUpdate();
+                deleteStmt.setInt(1, chunkEnd);
+                deleteStmt.setString(2, beforeDate);
+                moved += deleteStmt.executeUpdate();
+                FlightChangeFeed.unmute(connection);
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            horizonLoaded = false;
+        }
+        return moved;
+    }
+
+    private boolean needsArchive(Connection connection, String startDate) throws SQLException {
+        String archivedUpTo = getHorizon(connection);
+        if (archivedUpTo == null || (startDate != null && startDate.compareTo(archivedUpTo) > 0)) {
+            return false;
+        }
+        attach(connection);
+        return true;
+    }
+
+    private String getHorizon(Connection connection) throws SQLException {
+        if (!horizonLoaded) {
+            synchronized (this) {
+                if (!horizonLoaded) {
+                    horizon = Files.exists(archivePath) ? loadHorizon(connection) : null;
+                    horizonLoaded = true;
+                }
+            }
+        }
+        return horizon;
+    }
+
+    private String loadHorizon(Connection connection) throws SQLException {
+        attach(connection);
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(date) FROM archive.flight;")) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    // Attaches the archive as schema archive, creating its table if needed; the archive stays attached to the connection
+    void attach(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA database_list;")) {
+            while (rs.next()) {
+                if (SCHEMA.equals(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+
+        try (PreparedStatement attachStmt = connection.prepareStatement("ATTACH DATABASE ? AS " + SCHEMA + ";")) {
+            attachStmt.setString(1, archivePath.toString());
+            attachStmt.execute();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS archive.flight (
+                        id integer NOT NULL PRIMARY KEY,
+                        date date NOT NULL,
+                        helicopter_id integer NOT NULL,
+                        code varchar(20) NOT NULL,
+                        goods_weight real NOT NULL,
+                        passangers integer NOT NULL,
+                        flight_hours real NOT NULL,
+                        price real NOT NULL
+                    );
+                    """);
+            createIndexes(statement, SCHEMA);
+        }
+    }
+
+    // (date, id) serves listings of all helicopters, (helicopter_id, date, id) those of one
+    private static void createIndexes(Statement statement, String schema) throws SQLException {
+        statement.execute("CREATE INDEX IF NOT EXISTS %s.flight_date_id ON flight (date, id);".formatted(schema));
+        statement.execute("CREATE INDEX IF NOT EXISTS %s.flight_helicopter_date_id ON flight (helicopter_id, date, id);".formatted(schema));
+    }
+}
@@ -0,0 +1,17 @@
+package flight;
+
+/**
+ * One flight mutation. {@code shard} and {@code sourceSequence} name the database and the {@code flight_change}
+ * record it was copied from; a change appended directly to the log has shard -1.
+ */
+public record FlightChange(long sequence, Type type, Flight before, Flight after, int shard, long sourceSequence) {
+    public enum Type {
+        INSERT,
+        UPDATE,
+        DELETE
+    }
+
+    public FlightChange(long sequence, Type type, Flight before, Flight after) {
+        this(sequence, type, before, after, -1, 0);
+    }
+}
@@ -0,0 +1,118 @@
+package flight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The database side of the {@link FlightChangeLog}: triggers on {@code flight} record every insert, update and
+ * delete in {@code flight_change} inside the transaction that makes it, whoever the writer is, so a change is
+ * committed together with its record or not at all. The log copies the records in {@code seq} order.
+ * <p>
+ * Moving flights to the archive is not a change of the data; {@link #mute} switches the triggers off for the
+ * rest of the caller's transaction.
+ */
+public final class FlightChangeFeed {
+    private static final String TABLE = "flight_change";
+    private static final String MUTE_TABLE = "flight_change_mute";
+    private static final String[] COLUMNS = {"id", "date", "helicopter_id", "code", "goods_weight", "passangers", "flight_hours", "price"};
+    private static final String READ_SQL = "SELECT * FROM " + TABLE + " WHERE seq > ? ORDER BY seq LIMIT ?;";
+
+    private FlightChangeFeed() {
+    }
+
+    /** The change table and the triggers that fill it; a migration run once per database when it is opened. */
+    public static void createTables(Connection connection) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        for (String column : COLUMNS) {
+            columns.append(", old_").append(column).append(", new_").append(column);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (seq integer PRIMARY KEY AUTOINCREMENT, type integer NOT NULL" + columns + ");");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + MUTE_TABLE + " (id integer PRIMARY KEY CHECK (id = 0));");
+            createTrigger(statement, FlightChange.Type.INSERT, "NEW");
+            createTrigger(statement, FlightChange.Type.UPDATE, "OLD", "NEW");
+            createTrigger(statement, FlightChange.Type.DELETE, "OLD");
+        }
+    }
+
+    /** Changes committed after {@code sequence}, oldest first, at most {@code limit} of them. */
+    static List<FlightChange> read(Connection connection, int shard, long sequence, int limit) throws SQLException {
+        List<FlightChange> changes = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(READ_SQL)) {
+            statement.setLong(1, sequence);
+            statement.setInt(2, limit);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                FlightChange.Type type = FlightChange.Type.values()[rs.getInt("type")];
+                Flight before = type == FlightChange.Type.INSERT ? null : readFlight(rs, "old_");
+                Flight after = type == FlightChange.Type.DELETE ? null : readFlight(rs, "new_");
+                changes.add(new FlightChange(0, type, before, after, shard, rs.getLong("seq")));
+            }
+        }
+        return changes;
+    }
+
+    /** The sequence of the last change this database committed, as seen by the caller's transaction. */
+    static long lastSequence(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = '" + TABLE + "';")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /** Drops the records up to {@code sequence}, once they are in the change log. */
+    static void prune(Connection connection, long sequence) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE seq <= ?;")) {
+            statement.setLong(1, sequence);
+            statement.executeUpdate();
+        }
+    }
+
+    static void mute(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT OR IGNORE INTO " + MUTE_TABLE + " VALUES (0);");
+        }
+    }
+
+    static void unmute(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM " + MUTE_TABLE + ";");
+        }
+    }
+
+    private static void createTrigger(Statement statement, FlightChange.Type type, String... images) throws SQLException {
+        StringBuilder columns = new StringBuilder("type");
+        StringBuilder values = new StringBuilder(String.valueOf(type.ordinal()));
+        for (String image : images) {
+            String prefix = "OLD".equals(image) ? "old_" : "new_";
+            for (String column : COLUMNS) {
+                columns.append(", ").append(prefix).append(column);
+                values.append(", ").append(image).append('.').append(column);
+            }
+        }
+        statement.execute("""
+                CREATE TRIGGER IF NOT EXISTS flight_change_%s AFTER %s ON flight
+                WHEN NOT EXISTS (SELECT 1 FROM %s)
+                BEGIN INSERT INTO %s (%s) VALUES (%s); END;
+                """.formatted(type.name().toLowerCase(Locale.ROOT), type.name(), MUTE_TABLE, TABLE, columns, values));
+    }
+
+    private static Flight readFlight(ResultSet rs, String prefix) throws SQLException {
+        return new Flight(
+                rs.getInt(prefix + "id"),
+                rs.getString(prefix + "date"),
+                rs.getInt(prefix + "helicopter_id"),
+                rs.getString(prefix + "code"),
+                rs.getDouble(prefix + "goods_weight"),
+                rs.getInt(prefix + "passangers"),
+                rs.getDouble(prefix + "flight_hours"),
+                rs.getDouble(prefix + "price")
+        );
+    }
+}
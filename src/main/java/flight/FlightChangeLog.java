@@ -0,0 +1,361 @@
+package flight;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of flight mutations in memory-mapped segment files.
+ * <p>
+ * Each segment is named after the sequence number of its first record and starts with
+ * {@code [int header size][int shards][long cursor per shard]}: the last {@code flight_change} record of each
+ * shard copied before it. A record is {@code [int size][byte type][byte images][short shard][long sequence]
+ * [long source sequence][before row][after row]}, padded to 8 bytes; its size is published last, so a zero
+ * size marks the end of written data.
+ * <p>
+ * Any number of processes may share the directory: every write takes a file lock and first reads what the
+ * others appended, so sequences are never reused and each process hands every record to its listeners in
+ * log order.
+ */
+public class FlightChangeLog implements AutoCloseable {
+    static final VarHandle SIZE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOCK_NAME = "writer.lock";
+    private static final int HEADER_BYTES = 24;
+    private static final int ROW_BYTES = 41;
+    private static final int SYNC_BATCH = 1000;
+    private static final byte HAS_BEFORE = 1;
+    private static final byte HAS_AFTER = 2;
+    private static final String[] CODES = {"usual", "special"};
+    // a file lock is held by the whole process, so logs of one directory in this process also share a monitor
+    private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    /** Reads the {@code flight_change} records of a shard after the given one, oldest first. */
+    @FunctionalInterface
+    public interface Source {
+        List<FlightChange> changesAfter(int shard, long sourceSequence, int limit) throws SQLException;
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final Object monitor;
+    private final List<Consumer<FlightChange>> listeners = new CopyOnWriteArrayList<>();
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private int position;
+    private long nextSequence;
+    private long[] cursors = new long[0];
+
+    public FlightChangeLog(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        Path lockPath = directory.resolve(LOCK_NAME);
+        lockChannel = FileChannel.open(lockPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        monitor = MONITORS.computeIfAbsent(lockPath.toRealPath(), path -> new Object());
+
+        synchronized (monitor) {
+            try (FileLock ignored = lockChannel.lock()) {
+                List<Long> segments = listSegments(directory);
+                for (int i = segments.size() - 1; i >= 0 && segment == null; i--) {
+                    openSegment(segments.get(i));
+                }
+                if (segment == null) {
+                    createSegment(1);
+                } else {
+                    scan(null);
+                }
+            }
+        }
+    }
+
+    /** Appends a change no database recorded, for tools and tests; it carries shard -1. */
+    public synchronized long append(FlightChange.Type type, Flight before, Flight after) throws IOException {
+        FlightChange change;
+        synchronized (monitor) {
+            List<FlightChange> written = new ArrayList<>();
+            try (FileLock ignored = lockChannel.lock()) {
+                catchUp(written);
+                change = write(type, before, after, -1, 0);
+                written.add(change);
+            }
+            deliver(written);
+        }
+        return change.sequence();
+    }
+
+    /**
+     * Copies every {@code flight_change} record of {@code shards} shards that is not in the log yet, in the order
+     * each shard committed them, and hands the new records, including those other processes appended, to the
+     * listeners. Returns the last sequence of the log.
+     */
+    public synchronized long sync(int shards, Source source) throws IOException, SQLException {
+        synchronized (monitor) {
+            List<FlightChange> written = new ArrayList<>();
+            try (FileLock ignored = lockChannel.lock()) {
+                catchUp(written);
+                if (cursors.length < shards) {
+                    cursors = Arrays.copyOf(cursors, shards);
+                }
+                for (int shard = 0; shard < shards; shard++) {
+                    List<FlightChange> changes;
+                    do {
+                        changes = source.changesAfter(shard, cursors[shard], SYNC_BATCH);
+                        for (FlightChange change : changes) {
+                            written.add(write(change.type(), change.before(), change.after(), shard, change.sourceSequence()));
+                        }
+                    } while (changes.size() == SYNC_BATCH);
+                }
+            } finally {
+                deliver(written);
+            }
+            return nextSequence - 1;
+        }
+    }
+
+    /** The last {@code flight_change} record of {@code shard} that is in the log, as far as this process has read. */
+    public synchronized long cursor(int shard) {
+        synchronized (monitor) {
+            return shard < cursors.length ? cursors[shard] : 0;
+        }
+    }
+
+    public void addListener(Consumer<FlightChange> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<FlightChange> listener) {
+        listeners.remove(listener);
+    }
+
+    /** The last sequence this process appended or read; {@link #sync} also picks up those of other processes. */
+    public synchronized long lastSequence() {
+        synchronized (monitor) {
+            return nextSequence - 1;
+        }
+    }
+
+    public FlightChangeReader reader(long fromSequence) throws IOException {
+        return new FlightChangeReader(directory, fromSequence);
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (monitor) {
+            segment.force();
+            try {
+                lockChannel.close();
+            } catch (IOException ignored) {
+                // the lock goes with the process anyway
+            }
+        }
+    }
+
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        bases.sort(null);
+        return bases;
+    }
+
+    static MappedByteBuffer map(Path directory, long base, int segmentBytes, FileChannel.MapMode mode) throws IOException {
+        Path path = segmentPath(directory, base);
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            long size = mode == FileChannel.MapMode.READ_ONLY || channel.size() > 0 ? channel.size() : segmentBytes;
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    /** Where the records of a segment start, or 0 while its header is being written. */
+    static int firstRecord(ByteBuffer segment) {
+        return segment.capacity() < Integer.BYTES ? 0 : (int) SIZE.getAcquire(segment, 0);
+    }
+
+    static FlightChange readRecord(ByteBuffer buffer, int position) {
+        FlightChange.Type type = FlightChange.Type.values()[buffer.get(position + 4)];
+        byte images = buffer.get(position + 5);
+        int shard = buffer.getShort(position + 6);
+        long sequence = buffer.getLong(position + 8);
+        long sourceSequence = buffer.getLong(position + 16);
+        int rowPosition = position + HEADER_BYTES;
+        Flight before = null;
+        if ((images & HAS_BEFORE) != 0) {
+            before = readRow(buffer, rowPosition);
+            rowPosition += ROW_BYTES;
+        }
+        Flight after = (images & HAS_AFTER) != 0 ? readRow(buffer, rowPosition) : null;
+        return new FlightChange(sequence, type, before, after, shard, sourceSequence);
+    }
+
+    // Reads what other processes appended since this one last looked, including segments they started
+    private void catchUp(List<FlightChange> read) throws IOException {
+        scan(read);
+        for (long base : listSegments(directory)) {
+            if (base > segmentBase) {
+                openSegment(base);
+                scan(read);
+            }
+        }
+    }
+
+    private void scan(List<FlightChange> read) {
+        int size;
+        while (position + Integer.BYTES <= segment.capacity() && (size = (int) SIZE.getAcquire(segment, position)) > 0) {
+            FlightChange change = readRecord(segment, position);
+            if (read != null) {
+                read.add(change);
+            }
+            advance(change);
+            position += size;
+        }
+    }
+
+    private FlightChange write(FlightChange.Type type, Flight before, Flight after, int shard, long sourceSequence) throws IOException {
+        int size = recordSize(before, after);
+        if (position + size + Integer.BYTES > segment.capacity()) {
+            segment.force();
+            createSegment(nextSequence);
+        }
+
+        FlightChange change = new FlightChange(nextSequence, type, before, after, shard, sourceSequence);
+        segment.put(position + 4, (byte) type.ordinal());
+        segment.put(position + 5, (byte) ((before != null ? HAS_BEFORE : 0) | (after != null ? HAS_AFTER : 0)));
+        segment.putShort(position + 6, (short) shard);
+        segment.putLong(position + 8, change.sequence());
+        segment.putLong(position + 16, sourceSequence);
+        int rowPosition = position + HEADER_BYTES;
+        if (before != null) {
+            writeRow(segment, rowPosition, before);
+            rowPosition += ROW_BYTES;
+        }
+        if (after != null) {
+            writeRow(segment, rowPosition, after);
+        }
+        SIZE.setRelease(segment, position, size);
+        position += size;
+        advance(change);
+        return change;
+    }
+
+    private void advance(FlightChange change) {
+        nextSequence = change.sequence() + 1;
+        if (change.shard() >= 0) {
+            if (change.shard() >= cursors.length) {
+                cursors = Arrays.copyOf(cursors, change.shard() + 1);
+            }
+            cursors[change.shard()] = Math.max(cursors[change.shard()], change.sourceSequence());
+        }
+    }
+
+    private void deliver(List<FlightChange> changes) {
+        if (!listeners.isEmpty()) {
+            for (FlightChange change : changes) {
+                listeners.forEach(listener -> listener.accept(change));
+            }
+        }
+    }
+
+    private void openSegment(long base) throws IOException {
+        MappedByteBuffer mapped = map(directory, base, segmentBytes, FileChannel.MapMode.READ_WRITE);
+        int first = firstRecord(mapped);
+        if (first == 0) {
+            // the process creating it died before writing the header, so nothing was written after it either
+            Files.deleteIfExists(segmentPath(directory, base));
+            return;
+        }
+        segment = mapped;
+        segmentBase = base;
+        position = first;
+        nextSequence = base;
+        long[] saved = new long[mapped.getInt(4)];
+        for (int shard = 0; shard < saved.length; shard++) {
+            saved[shard] = mapped.getLong(8 + shard * Long.BYTES);
+        }
+        if (saved.length > cursors.length) {
+            cursors = Arrays.copyOf(cursors, saved.length);
+        }
+        for (int shard = 0; shard < saved.length; shard++) {
+            cursors[shard] = Math.max(cursors[shard], saved[shard]);
+        }
+    }
+
+    private void createSegment(long base) throws IOException {
+        segment = map(directory, base, segmentBytes, FileChannel.MapMode.READ_WRITE);
+        segmentBase = base;
+        nextSequence = base;
+        segment.putInt(4, cursors.length);
+        for (int shard = 0; shard < cursors.length; shard++) {
+            segment.putLong(8 + shard * Long.BYTES, cursors[shard]);
+        }
+        position = 8 + cursors.length * Long.BYTES;
+        SIZE.setRelease(segment, 0, position);
+    }
+
+    private static Path segmentPath(Path directory, long base) {
+        return directory.resolve("%020d%s".formatted(base, SEGMENT_SUFFIX));
+    }
+
+    private static int recordSize(Flight before, Flight after) {
+        int size = HEADER_BYTES + (before != null ? ROW_BYTES : 0) + (after != null ? ROW_BYTES : 0);
+        return (size + 7) & ~7;
+    }
+
+    private static void writeRow(ByteBuffer buffer, int position, Flight flight) {
+        buffer.putInt(position, flight.id());
+        buffer.putInt(position + 4, (int) LocalDate.parse(flight.date()).toEpochDay());
+        buffer.putInt(position + 8, flight.helicopterId());
+        buffer.put(position + 12, encodeCode(flight.code()));
+        buffer.putDouble(position + 13, flight.goodsWeight());
+        buffer.putInt(position + 21, flight.passengers());
+        buffer.putDouble(position + 25, flight.flightHours());
+        buffer.putDouble(position + 33, flight.price());
+    }
+
+    private static Flight readRow(ByteBuffer buffer, int position) {
+        return new Flight(
+                buffer.getInt(position),
+                LocalDate.ofEpochDay(buffer.getInt(position + 4)).toString(),
+                buffer.getInt(position + 8),
+                CODES[buffer.get(position + 12)],
+                buffer.getDouble(position + 13),
+                buffer.getInt(position + 21),
+                buffer.getDouble(position + 25),
+                buffer.getDouble(position + 33)
+        );
+    }
+
+    private static byte encodeCode(String code) {
+        for (byte i = 0; i < CODES.length; i++) {
+            if (CODES[i].equals(code)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown flight code: " + code);
+    }
+}
@@ -0,0 +1,105 @@
+package flight;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tails a {@link FlightChangeLog} from a given sequence number; {@link #poll()} returns {@code null}
+ * when the reader has caught up with the writer.
+ */
+public class FlightChangeReader {
+    private final Path directory;
+    private long segmentBase;
+    private MappedByteBuffer segment;
+    private int position;
+    private FlightChange pending;
+
+    FlightChangeReader(Path directory, long fromSequence) throws IOException {
+        this.directory = directory;
+
+        List<Long> segments = FlightChangeLog.listSegments(directory);
+        for (long base : segments) {
+            if (base <= fromSequence || segment == null) {
+                open(base);
+            }
+        }
+
+        FlightChange change;
+        do {
+            change = poll();
+        } while (change != null && change.sequence() < fromSequence);
+        pending = change;
+    }
+
+    public FlightChange poll() throws IOException {
+        if (pending != null) {
+            FlightChange change = pending;
+            pending = null;
+            return change;
+        }
+        while (true) {
+            FlightChange change = readAtPosition();
+            if (change != null) {
+                return change;
+            }
+            long next = nextSegment();
+            if (next < 0) {
+                return null;
+            }
+            // the writer may have finished this segment between the read above and the rotation
+            change = readAtPosition();
+            if (change != null) {
+                return change;
+            }
+            open(next);
+        }
+    }
+
+    public long replay(Consumer<FlightChange> consumer) throws IOException {
+        long applied = 0;
+        FlightChange change;
+        while ((change = poll()) != null) {
+            consumer.accept(change);
+            applied++;
+        }
+        return applied;
+    }
+
+    private FlightChange readAtPosition() {
+        if (segment == null) {
+            return null;
+        }
+        if (position == 0 && (position = FlightChangeLog.firstRecord(segment)) == 0) {
+            return null;
+        }
+        if (position + Integer.BYTES > segment.capacity()) {
+            return null;
+        }
+        int size = (int) FlightChangeLog.SIZE.getAcquire(segment, position);
+        if (size <= 0) {
+            return null;
+        }
+        FlightChange change = FlightChangeLog.readRecord(segment, position);
+        position += size;
+        return change;
+    }
+
+    private long nextSegment() throws IOException {
+        for (long base : FlightChangeLog.listSegments(directory)) {
+            if (segment == null || base > segmentBase) {
+                return base;
+            }
+        }
+        return -1;
+    }
+
+    private void open(long base) throws IOException {
+        segmentBase = base;
+        position = 0;
+        segment = FlightChangeLog.map(directory, base, 0, FileChannel.MapMode.READ_ONLY);
+    }
+}
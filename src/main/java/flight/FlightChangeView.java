@@ -0,0 +1,161 @@
+package flight;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * State derived from the flight table that follows the {@link FlightChangeLog}.
+ * <p>
+ * The state is built by the first reader, without any lock the log's writers need; changes delivered meanwhile
+ * are skipped. Each shard is read in one transaction together with its last {@code flight_change} record, so
+ * the state says exactly which changes it contains: after the build the log is replayed from where it stood,
+ * and a change is applied only when it is newer than that baseline.
+ */
+abstract class FlightChangeView<S> implements Consumer<FlightChange> {
+    protected record Loaded<S>(S state, long sequence, long[] baseline) {
+    }
+
+    protected final ConnectionHandler connectionHandler;
+    private final Object loadLock = new Object();
+    private S state;
+    private long appliedSequence;
+    private long[] baseline = new long[0];
+    private long resets;
+
+    protected FlightChangeView(ConnectionHandler connectionHandler) {
+        this.connectionHandler = connectionHandler;
+    }
+
+    /** Loads the state and says which changes it contains; runs on the reader's thread. */
+    protected abstract Loaded<S> load(FlightChangeLog changeLog) throws IOException, SQLException;
+
+    /** Applies a change the state does not contain yet; called holding this view's monitor. */
+    protected abstract void apply(S state, FlightChange change);
+
+    /** Whether the state was loaded from data that changed outside the flight table, so it must be loaded again. */
+    protected boolean isStale(S state) throws SQLException {
+        return false;
+    }
+
+    /** Drops the state; the next reader loads it again. */
+    public synchronized void reset() {
+        state = null;
+        resets++;
+    }
+
+    @Override
+    public final synchronized void accept(FlightChange change) {
+        if (state == null || change.sequence() <= appliedSequence) {
+            return;
+        }
+        appliedSequence = change.sequence();
+        if (change.shard() < 0 || change.shard() >= baseline.length || change.sourceSequence() > baseline[change.shard()]) {
+            apply(state, change);
+        }
+    }
+
+    /**
+     * The current state, loaded if needed, after picking up the changes committed since the last check. Must not
+     * be called holding this view's monitor, since a load would then stall the log's writers.
+     */
+    protected final S state() throws SQLException {
+        connectionHandler.syncChangesIfDue();
+        S current;
+        synchronized (this) {
+            current = state;
+        }
+        if (current != null && !isStale(current)) {
+            return current;
+        }
+        synchronized (loadLock) {
+            synchronized (this) {
+                if (current != null && state == current) {
+                    state = null;
+                    resets++;
+                }
+            }
+            while (true) {
+                long resetsBefore;
+                synchronized (this) {
+                    if (state != null) {
+                        return state;
+                    }
+                    resetsBefore = resets;
+                }
+                FlightChangeLog changeLog;
+                Loaded<S> loaded;
+                try {
+                    changeLog = connectionHandler.getChangeLog();
+                    loaded = load(changeLog);
+                } catch (IOException e) {
+                    throw new SQLException("Can't load " + getClass().getSimpleName() + ": " + e.getMessage(), e);
+                }
+                synchronized (this) {
+                    if (resets != resetsBefore) {
+                        continue;
+                    }
+                    state = loaded.state();
+                    appliedSequence = loaded.sequence();
+                    baseline = loaded.baseline();
+                    try {
+                        changeLog.reader(appliedSequence + 1).replay(this::accept);
+                    } catch (IOException e) {
+                        state = null;
+                        throw new SQLException("Can't replay the change log into " + getClass().getSimpleName(), e);
+                    }
+                    // a replayed change may have made the view drop the state again
+                    if (state != null) {
+                        return state;
+                    }
+                }
+            }
+        }
+    }
+
+    /** The state if it is loaded, without loading it; read under this view's monitor. */
+    protected final S loadedState() {
+        return state;
+    }
+
+    /** The last change the state contains; read under this view's monitor. */
+    protected final long appliedSequence() {
+        return appliedSequence;
+    }
+
+    protected final long[] baseline() {
+        return baseline.clone();
+    }
+
+    /**
+     * Runs {@code task} on every shard, or on the replica if {@code report}, each in a read transaction that also
+     * records the shard's last {@code flight_change} record in {@code baseline}. {@code prepare} runs on the same
+     * connection before the transaction, for what SQLite does not allow inside one, like attaching the archive.
+     */
+    protected final <T> List<T> scatterWithBaseline(boolean report, long[] baseline, ConnectionHandler.ShardTask<?> prepare,
+                                                    ConnectionHandler.ShardTask<T> task) throws SQLException {
+        ConnectionHandler.ShardTask<T> consistent = (shard, connection) -> {
+            prepare.run(shard, connection);
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                long cursor = FlightChangeFeed.lastSequence(connection);
+                T result = task.run(shard, connection);
+                synchronized (baseline) {
+                    baseline[shard] = cursor;
+                }
+                return result;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+        };
+        return report ? connectionHandler.scatterReport(consistent) : connectionHandler.scatter(consistent);
+    }
+
+    /** A baseline of every shard, to be filled by {@link #scatterWithBaseline}. */
+    protected final long[] newBaseline() {
+        return new long[connectionHandler.getShardCount()];
+    }
+}
@@ -0,0 +1,227 @@
+package flight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Quantile sketches of flight hours, cargo weight and price for every helicopter and flight code.
+ * <p>
+ * The sketches follow the {@link FlightChangeLog}: an insert adds the row, a delete removes it and an update
+ * does both. They are saved with the sequence of the last change they contain, on close and after a full
+ * build; the first report reads the file and replays the change log from that sequence, so the flight table is
+ * scanned only when there is no usable file. A report merges at most one sketch per helicopter and code.
+ */
+public class FlightDistributions extends FlightChangeView<Map<FlightDistributions.Key, QuantileSketch[]>> {
+    private static final int MAGIC = 0x464C4452;
+    private static final String FLIGHTS_SQL = "SELECT helicopter_id, code, flight_hours, goods_weight, price FROM %s;";
+
+    public enum Metric {
+        FLIGHT_HOURS(Flight::flightHours),
+        GOODS_WEIGHT(Flight::goodsWeight),
+        PRICE(Flight::price);
+
+        private final ToDoubleFunction<Flight> value;
+
+        Metric(ToDoubleFunction<Flight> value) {
+            this.value = value;
+        }
+    }
+
+    public record Percentiles(Metric metric, long count, double min, double p50, double p90, double p95, double p99, double max) {
+    }
+
+    record Key(int helicopterId, String code) {
+    }
+
+    private final double accuracy;
+    private final Path path;
+    private final Object fileLock = new Object();
+    private boolean rebuild;
+
+    public FlightDistributions(ConnectionHandler connectionHandler, double accuracy, Path path) {
+        super(connectionHandler);
+        this.accuracy = accuracy;
+        this.path = path;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    /** Drops the sketches and the saved file's claim to be current; the next use rebuilds them from the flight table. */
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        rebuild = true;
+    }
+
+    /** Percentiles of every metric; {@code null} arguments take all helicopters or all codes. */
+    public List<Percentiles> getPercentiles(Integer helicopterId, String code) throws SQLException {
+        Map<Key, QuantileSketch[]> sketches = state();
+        QuantileSketch[] merged = newSketches();
+        synchronized (this) {
+            sketches.forEach((key, own) -> {
+                if ((helicopterId == null || helicopterId == key.helicopterId()) && (code == null || code.equals(key.code()))) {
+                    for (int m = 0; m < merged.length; m++) {
+                        merged[m].merge(own[m]);
+                    }
+                }
+            });
+        }
+        List<Percentiles> percentiles = new ArrayList<>(merged.length);
+        for (Metric metric : Metric.values()) {
+            QuantileSketch sketch = merged[metric.ordinal()];
+            percentiles.add(new Percentiles(metric, sketch.count(), sketch.quantile(0), sketch.quantile(0.5), sketch.quantile(0.9),
+                    sketch.quantile(0.95), sketch.quantile(0.99), sketch.quantile(1)));
+        }
+        return percentiles;
+    }
+
+    /** Writes the sketches together with the last change they contain, replacing the file atomically. */
+    public synchronized void save() throws IOException {
+        Map<Key, QuantileSketch[]> sketches = loadedState();
+        if (sketches != null) {
+            write(new Loaded<>(sketches, appliedSequence(), baseline()));
+        }
+    }
+
+    // Runs on the reader's thread with the log's writers going on; a change they deliver meanwhile is replayed afterwards
+    @Override
+    protected Loaded<Map<Key, QuantileSketch[]>> load(FlightChangeLog changeLog) throws IOException, SQLException {
+        boolean useFile;
+        synchronized (this) {
+            useFile = !rebuild;
+            rebuild = false;
+        }
+        if (useFile && Files.exists(path)) {
+            try {
+                Loaded<Map<Key, QuantileSketch[]>> saved = read();
+                if (saved.sequence() <= changeLog.lastSequence()) {
+                    return saved;
+                }
+            } catch (IOException e) {
+                // rebuilt from the flight table below
+            }
+        }
+
+        long sequence = changeLog.lastSequence();
+        long[] baseline = newBaseline();
+        Map<Key, QuantileSketch[]> built = new HashMap<>();
+        scatterWithBaseline(false, baseline, (shard, connection) -> connectionHandler.getArchive(shard).flightsFrom(connection, null), (shard, connection) -> {
+            String from = connectionHandler.getArchive(shard).flightsFrom(connection, null);
+            try (PreparedStatement statement = connection.prepareStatement(FLIGHTS_SQL.formatted(from))) {
+                ResultSet rs = statement.executeQuery();
+                Map<Key, QuantileSketch[]> own = new HashMap<>();
+                while (rs.next()) {
+                    QuantileSketch[] row = own.computeIfAbsent(new Key(rs.getInt("helicopter_id"), rs.getString("code")), key -> newSketches());
+                    row[Metric.FLIGHT_HOURS.ordinal()].add(rs.getDouble("flight_hours"));
+                    row[Metric.GOODS_WEIGHT.ordinal()].add(rs.getDouble("goods_weight"));
+                    row[Metric.PRICE.ordinal()].add(rs.getDouble("price"));
+                }
+                // a helicopter's flights are all on one shard, so the keys never collide
+                synchronized (built) {
+                    built.putAll(own);
+                }
+            }
+            return true;
+        });
+        Loaded<Map<Key, QuantileSketch[]>> loaded = new Loaded<>(built, sequence, baseline);
+        write(loaded);
+        return loaded;
+    }
+
+    @Override
+    protected void apply(Map<Key, QuantileSketch[]> sketches, FlightChange change) {
+        if (change.before() != null) {
+            update(sketches, change.before(), false);
+        }
+        if (change.after() != null) {
+            update(sketches, change.after(), true);
+        }
+    }
+
+    private void write(Loaded<Map<Key, QuantileSketch[]>> loaded) throws IOException {
+        synchronized (fileLock) {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeDouble(accuracy);
+                out.writeLong(loaded.sequence());
+                out.writeInt(loaded.baseline().length);
+                for (long cursor : loaded.baseline()) {
+                    out.writeLong(cursor);
+                }
+                out.writeInt(loaded.state().size());
+                for (Map.Entry<Key, QuantileSketch[]> entry : loaded.state().entrySet()) {
+                    out.writeInt(entry.getKey().helicopterId());
+                    out.writeUTF(entry.getKey().code());
+                    for (QuantileSketch sketch : entry.getValue()) {
+                        sketch.write(out);
+                    }
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private Loaded<Map<Key, QuantileSketch[]>> read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readDouble() != accuracy) {
+                throw new IOException("Flight distributions were saved in another format or accuracy: " + path);
+            }
+            long sequence = in.readLong();
+            long[] baseline = new long[in.readInt()];
+            for (int shard = 0; shard < baseline.length; shard++) {
+                baseline[shard] = in.readLong();
+            }
+            int entries = in.readInt();
+            Map<Key, QuantileSketch[]> loaded = new HashMap<>(entries * 2);
+            for (int i = 0; i < entries; i++) {
+                Key key = new Key(in.readInt(), in.readUTF());
+                QuantileSketch[] row = new QuantileSketch[Metric.values().length];
+                for (int m = 0; m < row.length; m++) {
+                    row[m] = QuantileSketch.read(in);
+                }
+                loaded.put(key, row);
+            }
+            return new Loaded<>(loaded, sequence, baseline);
+        }
+    }
+
+    private void update(Map<Key, QuantileSketch[]> sketches, Flight flight, boolean add) {
+        QuantileSketch[] row = sketches.computeIfAbsent(new Key(flight.helicopterId(), flight.code()), key -> newSketches());
+        for (Metric metric : Metric.values()) {
+            double value = metric.value.applyAsDouble(flight);
+            if (add) {
+                row[metric.ordinal()].add(value);
+            } else {
+                row[metric.ordinal()].remove(value);
+            }
+        }
+    }
+
+    private QuantileSketch[] newSketches() {
+        QuantileSketch[] row = new QuantileSketch[Metric.values().length];
+        for (int m = 0; m < row.length; m++) {
+            row[m] = new QuantileSketch(accuracy);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,166 @@
+package flight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Assigns planned flights to helicopters so that none goes over its resource.
+ * <p>
+ * The remaining resource of the fleet is read once. Flights are placed longest first, each on the helicopter
+ * with the most resource left, taken from a priority queue; the longest flights are the hardest to fit, and
+ * when the helicopter at the head of the queue cannot take a flight no other can, so it is unassignable
+ * right away. A plan of {@code n} flights for {@code m} helicopters costs {@code O(n log n + n log m)}.
+ */
+public final class FlightPlanner {
+    /** {@code line} is the flight's line in the plan file, for messages and a stable order. */
+    public record PlannedFlight(int line, String date, String code, double hours) {
+    }
+
+    public record Assignment(PlannedFlight flight, FlightStore.Resource resource) {
+    }
+
+    /** Planned hours of one helicopter; {@code remaining} is the resource left after the plan. */
+    public record Load(FlightStore.Resource resource, int flights, double hours) {
+        public double remaining() {
+            return resource.remaining() - hours;
+        }
+    }
+
+    /** {@code schedule} is ordered by date, then by line; {@code loads} by helicopter id. */
+    public record Plan(List<Assignment> schedule, List<PlannedFlight> unassigned, List<Load> loads) {
+    }
+
+    private static final class Slot {
+        private final FlightStore.Resource resource;
+        private double flown;
+        private double hours;
+        private int flights;
+
+        private Slot(FlightStore.Resource resource) {
+            this.resource = resource;
+            this.flown = resource.flownAfterRepair();
+        }
+
+        // the same test as FlightStore.addFlight, so every assigned flight would also be accepted there
+        private boolean fits(double flightHours) {
+            return flown + flightHours <= resource.limit();
+        }
+
+        private double remaining() {
+            return resource.limit() - flown;
+        }
+    }
+
+    private FlightPlanner() {
+    }
+
+    /**
+     * Reads {@code date,code,hours} lines; commas, semicolons or whitespace separate the fields, and blank
+     * lines, {@code #} comments and a header line starting with {@code date} are skipped.
+     */
+    public static List<PlannedFlight> read(Path path) throws IOException {
+        List<PlannedFlight> flights = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String text;
+            int line = 0;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                text = text.strip();
+                if (text.isEmpty() || text.startsWith("#") || (flights.isEmpty() && text.regionMatches(true, 0, "date", 0, 4))) {
+                    continue;
+                }
+                flights.add(parse(line, text));
+            }
+        }
+        return flights;
+    }
+
+    public static Plan plan(List<PlannedFlight> flights, List<FlightStore.Resource> resources) {
+        PriorityQueue<Slot> queue = new PriorityQueue<>(Math.max(1, resources.size()), Comparator
+                .comparingDouble(Slot::remaining).reversed()
+                .thenComparingInt(slot -> slot.resource.helicopterId()));
+        List<Slot> slots = new ArrayList<>(resources.size());
+        for (FlightStore.Resource resource : resources) {
+            Slot slot = new Slot(resource);
+            slots.add(slot);
+            queue.add(slot);
+        }
+
+        List<PlannedFlight> longestFirst = new ArrayList<>(flights);
+        longestFirst.sort(Comparator.comparingDouble(PlannedFlight::hours).reversed().thenComparingInt(PlannedFlight::line));
+        List<Assignment> schedule = new ArrayList<>(flights.size());
+        List<PlannedFlight> unassigned = new ArrayList<>();
+        for (PlannedFlight flight : longestFirst) {
+            Slot slot = queue.peek();
+            if (slot == null || !slot.fits(flight.hours())) {
+                unassigned.add(flight);
+                continue;
+            }
+            queue.poll();
+            slot.flown += flight.hours();
+            slot.hours += flight.hours();
+            slot.flights++;
+            queue.add(slot);
+            schedule.add(new Assignment(flight, slot.resource));
+        }
+
+        schedule.sort(Comparator.comparing((Assignment assignment) -> assignment.flight().date()).thenComparingInt(assignment -> assignment.flight().line()));
+        unassigned.sort(Comparator.comparingInt(PlannedFlight::line));
+        slots.sort(Comparator.comparingInt(slot -> slot.resource.helicopterId()));
+        List<Load> loads = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            loads.add(new Load(slot.resource, slot.flights, slot.hours));
+        }
+        return new Plan(schedule, unassigned, loads);
+    }
+
+    /** Writes the schedule and then the unassigned flights, which have no helicopter, as CSV. */
+    public static void write(Plan plan, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("date,code,hours,helicopter_id,seria_num\n");
+            for (Assignment assignment : plan.schedule()) {
+                PlannedFlight flight = assignment.flight();
+                writer.write(flight.date() + "," + flight.code() + "," + flight.hours() + ","
+                        + assignment.resource().helicopterId() + "," + assignment.resource().seriaNum() + "\n");
+            }
+            for (PlannedFlight flight : plan.unassigned()) {
+                writer.write(flight.date() + "," + flight.code() + "," + flight.hours() + ",,\n");
+            }
+        }
+    }
+
+    private static PlannedFlight parse(int line, String text) {
+        String[] fields = text.split("\\s*[,;]\\s*|\\s+");
+        if (fields.length != 3) {
+            throw new IllegalArgumentException("line " + line + ": expected date,code,hours but got '" + text + "'");
+        }
+        try {
+            LocalDate.parse(fields[0]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("line " + line + ": invalid date '" + fields[0] + "'");
+        }
+        String code = fields[1].toLowerCase();
+        if (!"usual".equals(code) && !"special".equals(code)) {
+            throw new IllegalArgumentException("line " + line + ": unknown flight code '" + fields[1] + "'");
+        }
+        double hours;
+        try {
+            hours = Double.parseDouble(fields[2]);
+        } catch (NumberFormatException e) {
+            hours = Double.NaN;
+        }
+        if (!(hours > 0) || Double.isInfinite(hours)) {
+            throw new IllegalArgumentException("line " + line + ": invalid hours '" + fields[2] + "'");
+        }
+        return new PlannedFlight(line, fields[0], code, hours);
+    }
+}
@@ -0,0 +1,224 @@
+package flight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Flight listings and reports as {@link Flow.Publisher} streams for exports and other programmatic consumers.
+ * <p>
+ * Rows are read in pages of at most {@code fetchSize} and never more than the subscriber has requested. Each
+ * page is one keyset query on a freshly borrowed connection that is returned before the rows are delivered,
+ * so a slow subscriber holds no connection or read transaction, and cancel or completion has nothing left to
+ * release. Shards are read one after another; within a shard rows keep the order of their query.
+ */
+public class FlightQueryService {
+    private static final String FLIGHT_COLUMNS = "id, date, helicopter_id, code, goods_weight, passangers, flight_hours, price";
+
+    @FunctionalInterface
+    private interface PageQuery<T> {
+        // rows ordered by key and following {@code last} ({@code null} for the first page), at most {@code limit}
+        PreparedStatement prepare(int shard, Connection connection, T last, int limit) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    private final ConnectionHandler connectionHandler;
+    private final int fetchSize;
+    private final Executor executor;
+
+    public FlightQueryService(ConnectionHandler connectionHandler, int fetchSize) {
+        this.connectionHandler = connectionHandler;
+        this.fetchSize = fetchSize;
+        this.executor = task -> Thread.ofVirtual().name("flight-query").start(task);
+    }
+
+    /** Flights including archived ones, ordered by date, then id; {@code null} arguments do not narrow the list. */
+    public Flow.Publisher<Flight> flights(Integer helicopterId, String startDate, String endDate) {
+        int[] shards = helicopterId == null ? allShards() : new int[]{connectionHandler.shardOf(helicopterId)};
+        return publish(shards, (shard, connection, last, limit) -> {
+            List<String> tables = connectionHandler.getArchive(shard).flightTables(connection, startDate);
+            PreparedStatement statement = connection.prepareStatement(flightsPageSql(tables, helicopterId != null));
+            int index = 1;
+            for (int table = 0; table < tables.size(); table++) {
+                if (helicopterId != null) {
+                    statement.setInt(index++, helicopterId);
+                }
+                statement.setString(index++, startDate == null ? "" : startDate);
+                statement.setString(index++, endDate == null ? "9999-12-31" : endDate);
+                statement.setString(index++, last == null ? "" : last.date());
+                statement.setString(index++, last == null ? "" : last.date());
+                statement.setInt(index++, last == null ? Integer.MIN_VALUE : last.id());
+            }
+            statement.setInt(index, limit);
+            return statement;
+        }, rs -> new Flight(rs.getInt("id"), rs.getString("date"), rs.getInt("helicopter_id"), rs.getString("code"),
+                rs.getDouble("goods_weight"), rs.getInt("passangers"), rs.getDouble("flight_hours"), rs.getDouble("price")));
+    }
+
+    /**
+     * One page of {@link #flights}. Each table is read along its {@code (date, id)} or {@code (helicopter_id, date, id)}
+     * index from the keyset on, and live and archived flights are merged, so a page costs its own rows, not a sort.
+     */
+    public static String flightsPageSql(List<String> tables, boolean byHelicopter) {
+        final String sql = """
+                SELECT %s
+                FROM %s f
+                WHERE %s f.date >= ? AND f.date <= ? AND (f.date > ? OR (f.date = ? AND f.id > ?))
+                """;
+        List<String> selects = new ArrayList<>(tables.size());
+        for (String table : tables) {
+            selects.add(sql.formatted(FLIGHT_COLUMNS, table, byHelicopter ? "f.helicopter_id = ? AND" : ""));
+        }
+        return String.join("UNION ALL\n", selects) + "ORDER BY date, id\nLIMIT ?;";
+    }
+
+    /** Earnings per helicopter for an inclusive period, ordered by helicopter id within each shard. */
+    public Flow.Publisher<FlightStore.HelicopterValue> earningsByHelicopter(String startDate, String endDate) {
+        final String sql = """
+                SELECT helicopter_id, SUM(price) as earnings
+                FROM %s
+                WHERE date BETWEEN ? AND ? AND helicopter_id > ?
+                GROUP BY helicopter_id
+                ORDER BY helicopter_id
+                LIMIT ?;
+                """;
+        return publish(allShards(), (shard, connection, last, limit) -> {
+            PreparedStatement statement = connection.prepareStatement(sql.formatted(connectionHandler.getArchive(shard).flightsFrom(connection, startDate)));
+            statement.setString(1, startDate);
+            statement.setString(2, endDate);
+            statement.setInt(3, last == null ? Integer.MIN_VALUE : last.helicopterId());
+            statement.setInt(4, limit);
+            return statement;
+        }, rs -> new FlightStore.HelicopterValue(rs.getInt("helicopter_id"), rs.getDouble("earnings")));
+    }
+
+    private int[] allShards() {
+        return IntStream.range(0, connectionHandler.getShardCount()).toArray();
+    }
+
+    private <T> Flow.Publisher<T> publish(int[] shards, PageQuery<T> query, RowReader<T> reader) {
+        return subscriber -> {
+            Objects.requireNonNull(subscriber);
+            subscriber.onSubscribe(new PageSubscription<>(subscriber, shards, query, reader));
+        };
+    }
+
+    private final class PageSubscription<T> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final int[] shards;
+        private final PageQuery<T> query;
+        private final RowReader<T> reader;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException invalidRequest;
+        // read and written by the drain loop only
+        private int shardIndex;
+        private T last;
+        private boolean done;
+
+        private PageSubscription(Flow.Subscriber<? super T> subscriber, int[] shards, PageQuery<T> query, RowReader<T> reader) {
+            this.subscriber = subscriber;
+            this.shards = shards;
+            this.query = query;
+            this.reader = reader;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " rows, the demand must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        // Only one drain runs at a time; a request made meanwhile (also from onNext) makes it loop once more
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    drainPages();
+                } catch (SQLException | RuntimeException e) {
+                    done = true;
+                    if (!cancelled) {
+                        subscriber.onError(e);
+                    }
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainPages() throws SQLException {
+            while (!done && !cancelled) {
+                if (invalidRequest != null) {
+                    done = true;
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                if (shardIndex == shards.length) {
+                    done = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                long requested = demand.get();
+                if (requested == 0) {
+                    return;
+                }
+                int limit = (int) Math.min(requested, fetchSize);
+                List<T> page = readPage(shards[shardIndex], limit);
+                if (page.size() < limit) {
+                    shardIndex++;
+                    last = null;
+                } else {
+                    last = page.get(page.size() - 1);
+                }
+                demand.addAndGet(-page.size());
+                for (T row : page) {
+                    if (cancelled) {
+                        return;
+                    }
+                    subscriber.onNext(row);
+                }
+            }
+        }
+
+        private List<T> readPage(int shard, int limit) throws SQLException {
+            try (Connection connection = connectionHandler.getShardConnection(shard);
+                 PreparedStatement statement = query.prepare(shard, connection, last, limit)) {
+                statement.setFetchSize(limit);
+                ResultSet rs = statement.executeQuery();
+                List<T> page = new ArrayList<>(limit);
+                while (rs.next()) {
+                    page.add(reader.read(rs));
+                }
+                return page;
+            }
+        }
+    }
+}
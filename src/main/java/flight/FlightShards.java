@@ -0,0 +1,257 @@
+package flight;
+
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Flight data split by {@code helicopter_id} over several SQLite files, each with its own pool.
+ * <p>
+ * Every shard has the schema of the primary but only the flights of its helicopters, live and archived;
+ * helicopters and pilots stay in the primary alone and reach shard queries through the {@link ReferenceCache}.
+ * A new shard file is filled from the primary database on first open. Once every shard is filled, the
+ * primary's flights are deleted and the primary is marked with the shard count, so a missing shard or another
+ * layout is refused instead of being read as empty. New flight ids are {@code id % shardCount == shard} above
+ * the largest id copied from the primary, so ids stay unique across shards.
+ */
+public class FlightShards implements AutoCloseable {
+    private static final String SHARD_INFO_TABLE = "shard_info";
+    private static final String SHARD_LAYOUT_TABLE = "shard_layout";
+
+    private final List<ConnectionLimiter> pools;
+    private final List<FlightArchive> archives;
+    private final long[] idBases;
+    private final ExecutorService executor;
+
+    private FlightShards(List<ConnectionLimiter> pools, List<FlightArchive> archives, long[] idBases) {
+        this.pools = pools;
+        this.archives = archives;
+        this.idBases = idBases;
+        this.executor = pools.size() == 1 ? null : Executors.newFixedThreadPool(pools.size(), task -> {
+            Thread thread = new Thread(task, "flight-shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static FlightShards single(ConnectionLimiter pool, FlightArchive archive) {
+        try (Connection connection = pool.getConnection()) {
+            int sharded = shardedInto(connection);
+            if (sharded != 0) {
+                throw new IllegalStateException("The flights of the primary database were moved to " + sharded + " shards");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Can't open the flight database", e);
+        }
+        return new FlightShards(List.of(pool), List.of(archive), new long[]{0});
+    }
+
+    public static FlightShards open(ConnectionLimiter primary, FlightArchive primaryArchive, List<ConnectionLimiter> pools,
+                                    List<FlightArchive> archives, String primaryPath) {
+        long[] idBases = new long[pools.size()];
+        try (Connection primaryConnection = primary.getConnection()) {
+            int sharded = shardedInto(primaryConnection);
+            if (sharded != 0 && sharded != pools.size()) {
+                throw new IllegalStateException("The flights of the primary database were moved to " + sharded + " shards, not " + pools.size());
+            }
+            for (int shard = 0; shard < pools.size(); shard++) {
+                try (Connection connection = pools.get(shard).getConnection()) {
+                    idBases[shard] = initShard(connection, primaryPath, primaryArchive, archives.get(shard), shard, pools.size(), sharded != 0);
+                } catch (SQLException e) {
+                    throw new RuntimeException("Can't open flight shard " + shard, e);
+                }
+            }
+            if (sharded == 0) {
+                moveToShards(primaryConnection, pools.size());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Can't open the flight database", e);
+        }
+        return new FlightShards(pools, archives, idBases);
+    }
+
+    public int count() {
+        return pools.size();
+    }
+
+    public int shardOf(int helicopterId) {
+        return Math.floorMod(helicopterId, pools.size());
+    }
+
+    public Connection getConnection(int shard) throws SQLException {
+        return pools.get(shard).getConnection();
+    }
+
+    public ConnectionLimiter.Metrics getMetrics(int shard) {
+        return pools.get(shard).getMetrics();
+    }
+
+    public FlightArchive getArchive(int shard) {
+        return archives.get(shard);
+    }
+
+    public String flightIdExpression(int shard) {
+        int count = pools.size();
+        if (count == 1) {
+            return "NULL";
+        }
+        return "(SELECT ((MAX(COALESCE(MAX(id), 0), %d) - %d) / %d + 1) * %d + %d FROM flight)"
+                .formatted(idBases[shard], shard, count, count, shard);
+    }
+
+    public <T> List<T> scatter(ConnectionHandler.ShardTask<T> task) throws SQLException {
+        if (executor == null) {
+            try (Connection connection = getConnection(0)) {
+                return List.of(task.run(0, connection));
+            }
+        }
+
+        List<Future<T>> futures = new ArrayList<>(pools.size());
+        for (int shard = 0; shard < pools.size(); shard++) {
+            final int current = shard;
+            futures.add(executor.submit(QueryContext.propagate(() -> {
+                try (Connection connection = getConnection(current)) {
+                    return task.run(current, connection);
+                }
+            })));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Shard query interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Shard query failed", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        pools.forEach(limiter -> limiter.getDataSource().close());
+    }
+
+    // The shard count the primary's flights were moved to, 0 while they are still in the primary
+    private static int shardedInto(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + SHARD_LAYOUT_TABLE + "';");
+            if (!rs.next()) {
+                return 0;
+            }
+            rs = statement.executeQuery("SELECT shard_count FROM " + SHARD_LAYOUT_TABLE + ";");
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static long initShard(Connection connection, String primaryPath, FlightArchive primaryArchive, FlightArchive archive,
+                                  int shard, int count, boolean primarySharded) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + SHARD_INFO_TABLE + "';");
+            if (!rs.next()) {
+                if (primarySharded) {
+                    throw new IllegalStateException("Shard " + shard + " is missing, but the flights of the primary database were already moved to the shards");
+                }
+                copyFromPrimary(connection, primaryPath, primaryArchive, archive, shard, count);
+            }
+
+            rs = statement.executeQuery("SELECT shard_index, shard_count, id_base FROM " + SHARD_INFO_TABLE + ";");
+            if (!rs.next() || rs.getInt("shard_index") != shard || rs.getInt("shard_count") != count) {
+                throw new IllegalStateException("Shard " + shard + " was created for a different shard layout");
+            }
+            return rs.getLong("id_base");
+        }
+    }
+
+    private static void copyFromPrimary(Connection connection, String primaryPath, FlightArchive primaryArchive, FlightArchive archive,
+                                        int shard, int count) throws SQLException {
+        String shardFilter = " WHERE helicopter_id %% %d = %d".formatted(count, shard);
+        boolean hasArchive = Files.exists(primaryArchive.getPath());
+        // ATTACH is not allowed inside the transaction
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS src;")) {
+            attach.setString(1, primaryPath);
+            attach.execute();
+        }
+        if (hasArchive) {
+            archive.attach(connection);
+            try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS src_archive;")) {
+                attach.setString(1, primaryArchive.getPath().toString());
+                attach.execute();
+            }
+        }
+
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            List<String[]> tables = new ArrayList<>();
+            ResultSet rs = statement.executeQuery("SELECT name, sql FROM src.sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%';");
+            while (rs.next()) {
+                tables.add(new String[]{rs.getString("name"), rs.getString("sql")});
+            }
+
+            for (String[] table : tables) {
+                statement.execute(table[1]);
+                // the shard records its own changes from here on, and reference data is read from the primary alone
+                if ("flight".equals(table[0])) {
+                    statement.execute("INSERT INTO main.flight SELECT * FROM src.flight" + shardFilter + ";");
+                }
+            }
+            if (hasArchive) {
+                statement.execute("INSERT INTO archive.flight SELECT * FROM src_archive.flight" + shardFilter + ";");
+            }
+
+            statement.execute("CREATE TABLE " + SHARD_INFO_TABLE + " (shard_index integer NOT NULL, shard_count integer NOT NULL, id_base integer NOT NULL);");
+            statement.execute("INSERT INTO " + SHARD_INFO_TABLE + " SELECT %d, %d, COALESCE(MAX(id), 0) FROM src.flight;".formatted(shard, count));
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DETACH DATABASE src;");
+                if (hasArchive) {
+                    statement.execute("DETACH DATABASE src_archive;");
+                }
+            }
+        }
+    }
+
+    // Every shard has its flights, so the primary's copy is dead weight; the archive file of the primary is left as it was
+    private static void moveToShards(Connection connection, int count) throws SQLException {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + SHARD_LAYOUT_TABLE + " (shard_count integer NOT NULL);");
+            statement.execute("INSERT INTO " + SHARD_LAYOUT_TABLE + " VALUES (" + count + ");");
+            FlightChangeFeed.mute(connection);
+            statement.execute("DELETE FROM flight;");
+            FlightChangeFeed.prune(connection, Long.MAX_VALUE);
+            FlightChangeFeed.unmute(connection);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
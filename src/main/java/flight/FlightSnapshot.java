@@ -0,0 +1,155 @@
+package flight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary image of the flights held by an {@link InMemoryFlightStore}.
+ * <p>
+ * Layout: {@code [int magic][int version][int records][int lastFlightId][long changeSequence][int crc][int shards]},
+ * then the highest flight id of every shard, then from an 8-byte boundary the last {@code flight_change} record of
+ * every shard the flights contain, then fixed-width records
+ * {@code [int id][int epochDay][int helicopterId][int passengers][double goodsWeight][double hours][double price][byte code][byte archived][6 pad]}.
+ * The CRC32C covers everything except the magic, the version and itself.
+ * <p>
+ * The file is mapped for reading, but the records are copied into the store rather than served from the
+ * mapping: {@link InMemoryFlightStore} keeps every helicopter's flights in sorted arrays that take inserts and
+ * deletes, which a read-only image cannot. A restart thus costs one sequential pass over the file instead of a
+ * scan of every shard.
+ */
+public class FlightSnapshot {
+    private static final int MAGIC = 0x464C534E;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int CRC_OFFSET = 24;
+    private static final int RECORD_BYTES = 48;
+
+    /**
+     * What a loaded snapshot knows about the database: {@code shardMaxIds[shard]} is the highest flight id
+     * the shard held, {@code changeSequence} the last change-log record and {@code feedSequences[shard]} the
+     * last {@code flight_change} record of the shard already reflected in the flights.
+     */
+    public record Header(int records, int lastFlightId, long changeSequence, int[] shardMaxIds, long[] feedSequences) {
+    }
+
+    private FlightSnapshot() {
+    }
+
+    /**
+     * Writes the store's flights to {@code path}, replacing it atomically.
+     * {@code changeSequence} and {@code feedSequences} must be read before the call, so the image never lags behind them.
+     */
+    public static Header write(InMemoryFlightStore store, Path path, long changeSequence, long[] feedSequences,
+                               ConnectionHandler connectionHandler) throws IOException {
+        int shardCount = connectionHandler.getShardCount();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        Header header;
+        synchronized (store) {
+            int records = store.flightCount();
+            int recordsOffset = recordsOffset(shardCount);
+            int[] shardMaxIds = new int[shardCount];
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsOffset + (long) records * RECORD_BYTES);
+                int[] position = {recordsOffset};
+                store.forEachFlight((id, day, helicopterId, code, goodsWeight, passengers, hours, price, archived) -> {
+                    int shard = connectionHandler.shardOf(helicopterId);
+                    shardMaxIds[shard] = Math.max(shardMaxIds[shard], id);
+                    int at = position[0];
+                    buffer.putInt(at, id);
+                    buffer.putInt(at + 4, day);
+                    buffer.putInt(at + 8, helicopterId);
+                    buffer.putInt(at + 12, passengers);
+                    buffer.putDouble(at + 16, goodsWeight);
+                    buffer.putDouble(at + 24, hours);
+                    buffer.putDouble(at + 32, price);
+                    buffer.put(at + 40, code);
+                    buffer.put(at + 41, archived ? (byte) 1 : 0);
+                    position[0] = at + RECORD_BYTES;
+                });
+                for (int shard = 0; shard < shardCount; shard++) {
+                    buffer.putInt(HEADER_BYTES + shard * Integer.BYTES, shardMaxIds[shard]);
+                    buffer.putLong(feedOffset(shardCount) + shard * Long.BYTES, feedSequences[shard]);
+                }
+                header = new Header(records, store.lastFlightId(), changeSequence, shardMaxIds, feedSequences.clone());
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, records);
+                buffer.putInt(12, header.lastFlightId());
+                buffer.putLong(16, changeSequence);
+                buffer.putInt(28, shardCount);
+                buffer.putInt(CRC_OFFSET, checksum(buffer, shardCount, records));
+                buffer.force();
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return header;
+    }
+
+    /**
+     * Maps {@code path} and copies its flights into {@code store}.
+     *
+     * @throws IOException if the file is missing, truncated, of another version or fails its checksum
+     */
+    public static Header read(Path path, InMemoryFlightStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a flight snapshot of version " + VERSION + ": " + path);
+            }
+            int records = buffer.getInt(8);
+            int shardCount = buffer.getInt(28);
+            int recordsOffset = recordsOffset(shardCount);
+            if (records < 0 || shardCount < 1 || channel.size() != recordsOffset + (long) records * RECORD_BYTES) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+            if (checksum(buffer, shardCount, records) != buffer.getInt(CRC_OFFSET)) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+
+            int[] shardMaxIds = new int[shardCount];
+            long[] feedSequences = new long[shardCount];
+            for (int shard = 0; shard < shardCount; shard++) {
+                shardMaxIds[shard] = buffer.getInt(HEADER_BYTES + shard * Integer.BYTES);
+                feedSequences[shard] = buffer.getLong(feedOffset(shardCount) + shard * Long.BYTES);
+            }
+            synchronized (store) {
+                for (int i = 0, at = recordsOffset; i < records; i++, at += RECORD_BYTES) {
+                    store.putFlight(buffer.getInt(at), buffer.getInt(at + 4), buffer.getInt(at + 8), buffer.get(at + 40),
+                            buffer.getDouble(at + 16), buffer.getInt(at + 12), buffer.getDouble(at + 24), buffer.getDouble(at + 32),
+                            buffer.get(at + 41) != 0);
+                }
+            }
+            return new Header(records, buffer.getInt(12), buffer.getLong(16), shardMaxIds, feedSequences);
+        }
+    }
+
+    private static int feedOffset(int shardCount) {
+        return (HEADER_BYTES + shardCount * Integer.BYTES + 7) & ~7;
+    }
+
+    private static int recordsOffset(int shardCount) {
+        return feedOffset(shardCount) + shardCount * Long.BYTES;
+    }
+
+    private static int checksum(ByteBuffer buffer, int shardCount, int records) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(8, CRC_OFFSET - 8));
+        crc.update(buffer.slice(CRC_OFFSET + 4, recordsOffset(shardCount) - CRC_OFFSET - 4 + records * RECORD_BYTES));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,185 @@
+package flight;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.function.UnaryOperator;
+
+/**
+ * Every query and mutation the admin and pilot commands perform on helicopters, pilots and flights.
+ * <p>
+ * Flight lists are ordered by date, then id; reads include archived flights, while
+ * {@link #getFlight}, {@link #updateFlight} and {@link #deleteFlight} see only flights that are
+ * not archived. Ties in the "max" reports go to the lowest helicopter id.
+ */
+public interface FlightStore extends AutoCloseable {
+
+    record Helicopter(int id, String seriaNum, String mark) {
+    }
+
+    record CrewMember(String tabelNum, String lastName, String position) {
+    }
+
+    record Resource(int helicopterId, String seriaNum, double limit, String repairDate, double flownAfterRepair) {
+        public double remaining() {
+            return limit - flownAfterRepair;
+        }
+    }
+
+    record FlightTotals(int flights, double goodsWeight, double moneyEarned) {
+        public FlightTotals plus(FlightTotals other) {
+            return new FlightTotals(flights + other.flights, goodsWeight + other.goodsWeight, moneyEarned + other.moneyEarned);
+        }
+    }
+
+    record HelicopterTotals(int flights, long passengers, double goodsWeight, double moneyEarned) {
+    }
+
+    record HelicopterValue(int helicopterId, double value) {
+    }
+
+    /**
+     * One helicopter in one calendar month ({@code YYYY-MM}); {@code earningsChange} is the difference from the
+     * helicopter's previous month in the period, {@code null} for the first month.
+     */
+    record MonthlyTotals(int helicopterId, String month, int flights, double hours, double earnings, Double earningsChange) {
+    }
+
+    /** What a pilot session shows for its helicopter, read at once. */
+    record HelicopterSummary(Resource resource, List<Flight> flights, HelicopterTotals totals) {
+    }
+
+    /**
+     * Result of {@link #addFlight}: {@code resource} is empty when the helicopter does not exist,
+     * {@code flight} is {@code null} when the flight would exceed the remaining resource.
+     */
+    record AddResult(Optional<Resource> resource, Flight flight) {
+        public boolean added() {
+            return flight != null;
+        }
+    }
+
+    /**
+     * Selects flights that are not archived; every criterion that is not {@code null} must match.
+     * Dates are inclusive bounds. {@code flightIds} is kept as a sorted copy, so a lookup is a binary search.
+     */
+    record FlightFilter(int[] flightIds, Integer helicopterId, String startDate, String endDate, String code) {
+        public FlightFilter {
+            if (flightIds != null) {
+                flightIds = flightIds.clone();
+                Arrays.sort(flightIds);
+            }
+        }
+
+        public boolean isEmpty() {
+            return flightIds == null && helicopterId == null && startDate == null && endDate == null && code == null;
+        }
+
+        public boolean matches(Flight flight) {
+            return (flightIds == null || Arrays.binarySearch(flightIds, flight.id()) >= 0)
+                    && (helicopterId == null || helicopterId == flight.helicopterId())
+                    && (startDate == null || flight.date().compareTo(startDate) >= 0)
+                    && (endDate == null || flight.date().compareTo(endDate) <= 0)
+                    && (code == null || code.equals(flight.code()));
+        }
+    }
+
+    /** New values for a bulk update; {@code null} fields are left as they are. */
+    record FlightPatch(String date, Integer helicopterId, String code, Double goodsWeight, Integer passengers, Double flightHours, Double price) {
+        public Flight applyTo(Flight flight) {
+            return new Flight(flight.id(),
+                    date != null ? date : flight.date(),
+                    helicopterId != null ? helicopterId : flight.helicopterId(),
+                    code != null ? code : flight.code(),
+                    goodsWeight != null ? goodsWeight : flight.goodsWeight(),
+                    passengers != null ? passengers : flight.passengers(),
+                    flightHours != null ? flightHours : flight.flightHours(),
+                    price != null ? price : flight.price());
+        }
+    }
+
+    /**
+     * Result of {@link #bulkUpdateFlights}: the rows before and after the change, ordered by id, or, when the
+     * update was rolled back, the resources it would have exceeded.
+     */
+    record BulkResult(List<Flight> before, List<Flight> after, List<Resource> exceeded) {
+        public boolean applied() {
+            return exceeded.isEmpty();
+        }
+    }
+
+    List<Resource> getResources() throws SQLException;
+
+    /** Like {@link #getResources()}, but never from the read replica, for decisions that must see the latest writes. */
+    default List<Resource> getCurrentResources() throws SQLException {
+        return getResources();
+    }
+
+    Optional<Resource> getResource(int helicopterId) throws SQLException;
+
+    Optional<Helicopter> getHelicopter(int helicopterId) throws SQLException;
+
+    List<CrewMember> getCrew(int helicopterId) throws SQLException;
+
+    OptionalInt getPilotHelicopter(int pilotId) throws SQLException;
+
+    /** Flights of one helicopter; {@code null} bounds mean an open period. */
+    List<Flight> getFlights(int helicopterId, String startDate, String endDate) throws SQLException;
+
+    HelicopterTotals getHelicopterTotals(int helicopterId) throws SQLException;
+
+    /** Resource, every flight and totals of a helicopter from one read; empty if it does not exist. */
+    Optional<HelicopterSummary> getHelicopterSummary(int helicopterId) throws SQLException;
+
+    FlightTotals sumFlightsByCode(String code) throws SQLException;
+
+    Optional<HelicopterValue> findHelicopterWithMaxFlights() throws SQLException;
+
+    Optional<HelicopterValue> findHelicopterWithMaxEarnings() throws SQLException;
+
+    Map<Integer, Double> getEarningsByHelicopter(String startDate, String endDate) throws SQLException;
+
+    /**
+     * Helicopter x month totals for an inclusive period, ordered by helicopter id, then month. Every helicopter that
+     * flew in the period gets a row for each month of it, zero when it did not fly that month.
+     */
+    List<MonthlyTotals> getMonthlyTotals(String startDate, String endDate) throws SQLException;
+
+    /**
+     * Earnings of a helicopter for a period, optionally narrowed to one flight code and/or a list of
+     * flight ids; empty when no flight matches.
+     */
+    OptionalDouble sumEarnings(int helicopterId, String startDate, String endDate, String code, int[] flightIds) throws SQLException;
+
+    Optional<Flight> getFlight(int flightId) throws SQLException;
+
+    /** Inserts the flight with a new id if the helicopter has enough resource left. */
+    AddResult addFlight(Flight flight) throws SQLException;
+
+    /** Applies {@code change} to the flight atomically and returns the previous row, or empty if not found. */
+    Optional<Flight> updateFlight(int flightId, UnaryOperator<Flight> change) throws SQLException;
+
+    Optional<Flight> deleteFlight(int flightId) throws SQLException;
+
+    int countFlights(FlightFilter filter) throws SQLException;
+
+    /**
+     * Updates every flight matching {@code filter} at once. The update is rolled back if it leaves any affected
+     * helicopter over its resource limit with more hours than before.
+     */
+    BulkResult bulkUpdateFlights(FlightFilter filter, FlightPatch patch) throws SQLException;
+
+    /** Deletes every flight matching {@code filter} at once and returns the deleted rows ordered by id. */
+    List<Flight> bulkDeleteFlights(FlightFilter filter) throws SQLException;
+
+    /** Moves flights made before {@code beforeDate} and before their helicopter's last repair to the archive. */
+    int archiveFlightsBefore(String beforeDate) throws SQLException;
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,673 @@
+package flight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.ToDoubleFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link FlightStore} held entirely in memory.
+ * <p>
+ * Flights of each helicopter live in parallel primitive arrays sorted by date and id, so period
+ * queries are a binary search plus a sequential scan. Flights, helicopters and pilots are looked up
+ * through {@link IntObjectHashMap}s keyed by unboxed ids. Archiving only marks flights, since reads
+ * include the archive anyway.
+ */
+public class InMemoryFlightStore implements FlightStore {
+    private static final String[] CODES = {"usual", "special"};
+
+    private record HelicopterRow(int id, String seriaNum, String mark, double limit, String repairDate, int repairDay) {
+    }
+
+    private record PilotRow(int id, String tabelNum, String lastName, String position, int helicopterId) {
+    }
+
+    private final IntObjectHashMap<HelicopterRow> helicopters = new IntObjectHashMap<>();
+    private final IntObjectHashMap<PilotRow> pilots = new IntObjectHashMap<>();
+    private final IntObjectHashMap<FlightSeries> seriesByHelicopter = new IntObjectHashMap<>();
+    private final IntObjectHashMap<FlightSeries> seriesByFlight = new IntObjectHashMap<>();
+    private int lastFlightId;
+    private long version;
+
+    public static InMemoryFlightStore load(ConnectionHandler connectionHandler) throws SQLException {
+        return load(connectionHandler, new long[connectionHandler.getShardCount()]);
+    }
+
+    /**
+     * Loads every shard in one read transaction and stores in {@code feedSequences[shard]} the last
+     * {@code flight_change} record the loaded flights contain.
+     */
+    public static InMemoryFlightStore load(ConnectionHandler connectionHandler, long[] feedSequences) throws SQLException {
+        InMemoryFlightStore store = new InMemoryFlightStore();
+        store.loadReferenceData(connectionHandler);
+        connectionHandler.scatter((shard, connection) -> {
+            // ATTACH is not allowed inside a transaction
+            boolean hasArchive = !"flight".equals(connectionHandler.getArchive(shard).flightsFrom(connection, null));
+            List<String> sources = hasArchive ? List.of("main.flight", "archive.flight") : List.of("flight");
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                long feedSequence = FlightChangeFeed.lastSequence(connection);
+                int loaded = 0;
+                for (String source : sources) {
+                    loaded += store.loadFlights(connection, source, 0, source.startsWith("archive"));
+                }
+                synchronized (feedSequences) {
+                    feedSequences[shard] = feedSequence;
+                }
+                return loaded;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+        return store;
+    }
+
+    // Helicopters, pilots and the flight id sequence
+    void loadReferenceData(ConnectionHandler connectionHandler) throws SQLException {
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT id, seria_num, mark, hours_before_repair, repair_date FROM helicopter;");
+            while (rs.next()) {
+                putHelicopter(rs.getInt("id"), rs.getString("seria_num"), rs.getString("mark"), rs.getDouble("hours_before_repair"), rs.getString("repair_date"));
+            }
+            rs = statement.executeQuery("SELECT id, tabel_num, last_name, position, helicopter_id FROM pilot;");
+            while (rs.next()) {
+                putPilot(rs.getInt("id"), rs.getString("tabel_num"), rs.getString("last_name"), rs.getString("position"), rs.getInt("helicopter_id"));
+            }
+            rs = statement.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = 'flight';");
+            if (rs.next()) {
+                synchronized (this) {
+                    lastFlightId = Math.max(lastFlightId, rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    // Loads the flights of source with an id above afterId, replacing any copy already held
+    int loadFlights(Connection connection, String source, int afterId, boolean archived) throws SQLException {
+        final String sql = "SELECT id, date, helicopter_id, code, goods_weight, passangers, flight_hours, price FROM %s WHERE id > ?;";
+        int loaded = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql.formatted(source))) {
+            statement.setInt(1, afterId);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                Flight flight = new Flight(rs.getInt("id"), rs.getString("date"), rs.getInt("helicopter_id"), rs.getString("code"),
+                        rs.getDouble("goods_weight"), rs.getInt("passangers"), rs.getDouble("flight_hours"), rs.getDouble("price"));
+                synchronized (this) {
+                    removeFlight(flight.id());
+                    putFlight(flight, archived);
+                }
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    synchronized void putHelicopter(int id, String seriaNum, String mark, double limit, String repairDate) {
+        helicopters.put(id, new HelicopterRow(id, seriaNum, mark, limit, repairDate, toDay(repairDate)));
+    }
+
+    synchronized void putPilot(int id, String tabelNum, String lastName, String position, int helicopterId) {
+        pilots.put(id, new PilotRow(id, tabelNum, lastName, position, helicopterId));
+    }
+
+    // Makes the helicopters and pilots those of the reference snapshot, dropping the ones it no longer has
+    synchronized void replaceReferenceData(ReferenceCache.Snapshot reference) {
+        for (int id : helicopters.keys()) {
+            if (!reference.helicopters().containsKey(id)) {
+                helicopters.remove(id);
+            }
+        }
+        for (int id : pilots.keys()) {
+            if (!reference.pilots().containsKey(id)) {
+                pilots.remove(id);
+            }
+        }
+        reference.helicopters().values().forEach(helicopter -> putHelicopter(helicopter.id(), helicopter.seriaNum(), helicopter.mark(),
+                helicopter.hoursBeforeRepair(), helicopter.repairDate()));
+        reference.pilots().values().forEach(pilot -> putPilot(pilot.id(), pilot.tabelNum(), pilot.lastName(), pilot.position(), pilot.helicopterId()));
+    }
+
+    synchronized void putFlight(Flight flight, boolean archived) {
+        putFlight(flight.id(), toDay(flight.date()), flight.helicopterId(), encodeCode(flight.code()),
+                flight.goodsWeight(), flight.passengers(), flight.flightHours(), flight.price(), archived);
+    }
+
+    synchronized void putFlight(int id, int day, int helicopterId, byte code, double goodsWeight, int passengers, double hours, double price, boolean archived) {
+        FlightSeries series = seriesByHelicopter.computeIfAbsent(helicopterId, FlightSeries::new);
+        series.insert(id, day, code, goodsWeight, passengers, hours, price, archived);
+        seriesByFlight.put(id, series);
+        lastFlightId = Math.max(lastFlightId, id);
+        version++;
+    }
+
+    // Replaces the flight with this id wherever it is, archived or not
+    synchronized void upsertFlight(Flight flight) {
+        removeFlight(flight.id());
+        putFlight(flight, false);
+    }
+
+    // Removes the flight only while it still belongs to this helicopter, for deletes that may arrive after the re-insert
+    synchronized boolean removeFlight(int flightId, int helicopterId) {
+        FlightSeries series = seriesByFlight.get(flightId);
+        return series != null && series.helicopterId == helicopterId && removeFlight(flightId);
+    }
+
+    synchronized boolean removeFlight(int flightId) {
+        FlightSeries series = seriesByFlight.remove(flightId);
+        if (series == null) {
+            return false;
+        }
+        series.remove(series.indexOf(flightId));
+        version++;
+        return true;
+    }
+
+    @FunctionalInterface
+    interface FlightRowConsumer {
+        void accept(int id, int day, int helicopterId, byte code, double goodsWeight, int passengers, double hours, double price, boolean archived);
+    }
+
+    // Visits every flight helicopter by helicopter, in date and id order within a helicopter
+    synchronized void forEachFlight(FlightRowConsumer consumer) {
+        seriesByHelicopter.forEach((helicopterId, series) -> {
+            for (int i = 0; i < series.size; i++) {
+                consumer.accept(series.ids[i], series.days[i], helicopterId, series.codes[i], series.goodsWeights[i],
+                        series.passengers[i], series.hours[i], series.prices[i], series.archived[i]);
+            }
+        });
+    }
+
+    synchronized int flightCount() {
+        return seriesByFlight.size();
+    }
+
+    synchronized int lastFlightId() {
+        return lastFlightId;
+    }
+
+    // Grows with every change, so callers can tell whether anything happened since they last looked
+    synchronized long version() {
+        return version;
+    }
+
+    @Override
+    public synchronized List<Resource> getResources() {
+        List<Resource> resources = new ArrayList<>(helicopters.size());
+        helicopters.forEach((id, helicopter) -> resources.add(resourceOf(helicopter)));
+        resources.sort(Comparator.comparing(Resource::seriaNum));
+        return resources;
+    }
+
+    @Override
+    public synchronized Optional<Resource> getResource(int helicopterId) {
+        HelicopterRow helicopter = helicopters.get(helicopterId);
+        return helicopter == null ? Optional.empty() : Optional.of(resourceOf(helicopter));
+    }
+
+    @Override
+    public synchronized Optional<Helicopter> getHelicopter(int helicopterId) {
+        HelicopterRow helicopter = helicopters.get(helicopterId);
+        return helicopter == null ? Optional.empty() : Optional.of(new Helicopter(helicopter.id(), helicopter.seriaNum(), helicopter.mark()));
+    }
+
+    @Override
+    public synchronized List<CrewMember> getCrew(int helicopterId) {
+        List<PilotRow> crew = new ArrayList<>();
+        pilots.forEach((id, pilot) -> {
+            if (pilot.helicopterId() == helicopterId) {
+                crew.add(pilot);
+            }
+        });
+        crew.sort(Comparator.comparingInt(PilotRow::id));
+        return crew.stream().map(pilot -> new CrewMember(pilot.tabelNum(), pilot.lastName(), pilot.position())).toList();
+    }
+
+    @Override
+    public synchronized OptionalInt getPilotHelicopter(int pilotId) {
+        PilotRow pilot = pilots.get(pilotId);
+        return pilot == null ? OptionalInt.empty() : OptionalInt.of(pilot.helicopterId());
+    }
+
+    @Override
+    public synchronized List<Flight> getFlights(int helicopterId, String startDate, String endDate) {
+        FlightSeries series = seriesByHelicopter.get(helicopterId);
+        if (series == null) {
+            return List.of();
+        }
+        int from = startDate == null ? 0 : series.lowerBound(toDay(startDate));
+        int to = endDate == null ? series.size : series.lowerBound(toDay(endDate) + 1);
+        List<Flight> flights = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            flights.add(series.get(i));
+        }
+        return flights;
+    }
+
+    @Override
+    public synchronized HelicopterTotals getHelicopterTotals(int helicopterId) {
+        FlightSeries series = seriesByHelicopter.get(helicopterId);
+        if (series == null) {
+            return new HelicopterTotals(0, 0, 0, 0);
+        }
+        long passengers = 0;
+        double goodsWeight = 0;
+        double earned = 0;
+        for (int i = 0; i < series.size; i++) {
+            passengers += series.passengers[i];
+            goodsWeight += series.goodsWeights[i];
+            earned += series.prices[i];
+        }
+        return new HelicopterTotals(series.size, passengers, goodsWeight, earned);
+    }
+
+    @Override
+    public synchronized Optional<HelicopterSummary> getHelicopterSummary(int helicopterId) {
+        return getResource(helicopterId).map(resource -> new HelicopterSummary(resource, getFlights(helicopterId, null, null), getHelicopterTotals(helicopterId)));
+    }
+
+    @Override
+    public synchronized FlightTotals sumFlightsByCode(String code) {
+        byte encoded = encodeCode(code);
+        FlightTotals[] totals = {new FlightTotals(0, 0, 0)};
+        seriesByHelicopter.forEach((helicopterId, series) -> {
+            int flights = 0;
+            double goodsWeight = 0;
+            double earned = 0;
+            for (int i = 0; i < series.size; i++) {
+                if (series.codes[i] == encoded) {
+                    flights++;
+                    goodsWeight += series.goodsWeights[i];
+                    earned += series.prices[i];
+                }
+            }
+            totals[0] = totals[0].plus(new FlightTotals(flights, goodsWeight, earned));
+        });
+        return totals[0];
+    }
+
+    @Override
+    public synchronized Optional<HelicopterValue> findHelicopterWithMaxFlights() {
+        return findTop(series -> series.size);
+    }
+
+    @Override
+    public synchronized Optional<HelicopterValue> findHelicopterWithMaxEarnings() {
+        return findTop(series -> series.sumPrices(0, series.size));
+    }
+
+    @Override
+    public synchronized Map<Integer, Double> getEarningsByHelicopter(String startDate, String endDate) {
+        int startDay = toDay(startDate);
+        int endDay = toDay(endDate);
+        Map<Integer, Double> earnings = new TreeMap<>();
+        seriesByHelicopter.forEach((helicopterId, series) -> {
+            int from = series.lowerBound(startDay);
+            int to = series.lowerBound(endDay + 1);
+            if (from < to) {
+                earnings.put(helicopterId, series.sumPrices(from, to));
+            }
+        });
+        return earnings;
+    }
+
+    // Month boundaries are found by binary search, so each month is one sequential run of the series
+    @Override
+    public synchronized List<MonthlyTotals> getMonthlyTotals(String startDate, String endDate) {
+        YearMonth first = YearMonth.parse(startDate.substring(0, 7));
+        int monthCount = (int) first.until(YearMonth.parse(endDate.substring(0, 7)), ChronoUnit.MONTHS) + 1;
+        if (monthCount <= 0) {
+            return List.of();
+        }
+        String[] months = new String[monthCount];
+        int[] bounds = new int[monthCount + 1];
+        for (int m = 0; m < monthCount; m++) {
+            months[m] = first.plusMonths(m).toString();
+            bounds[m] = m == 0 ? toDay(startDate) : (int) first.plusMonths(m).atDay(1).toEpochDay();
+        }
+        bounds[monthCount] = toDay(endDate) + 1;
+
+        List<MonthlyTotals> totals = new ArrayList<>();
+        int[] helicopterIds = seriesByHelicopter.keys();
+        Arrays.sort(helicopterIds);
+        for (int helicopterId : helicopterIds) {
+            FlightSeries series = seriesByHelicopter.get(helicopterId);
+            if (series.lowerBound(bounds[0]) >= series.lowerBound(bounds[monthCount])) {
+                continue;
+            }
+            Double previous = null;
+            int from = series.lowerBound(bounds[0]);
+            for (int m = 0; m < monthCount; m++) {
+                int to = series.lowerBound(bounds[m + 1]);
+                double hours = 0;
+                double earnings = 0;
+                for (int i = from; i < to; i++) {
+                    hours += series.hours[i];
+                    earnings += series.prices[i];
+                }
+                totals.add(new MonthlyTotals(helicopterId, months[m], to - from, hours, earnings, previous == null ? null : earnings - previous));
+                previous = earnings;
+                from = to;
+            }
+        }
+        return totals;
+    }
+
+    @Override
+    public synchronized OptionalDouble sumEarnings(int helicopterId, String startDate, String endDate, String code, int[] flightIds) {
+        FlightSeries series = seriesByHelicopter.get(helicopterId);
+        if (series == null) {
+            return OptionalDouble.empty();
+        }
+        int[] selected = null;
+        if (flightIds != null) {
+            selected = flightIds.clone();
+            Arrays.sort(selected);
+        }
+        byte encoded = code == null ? -1 : encodeCode(code);
+        boolean found = false;
+        double earned = 0;
+        for (int i = series.lowerBound(toDay(startDate)), to = series.lowerBound(toDay(endDate) + 1); i < to; i++) {
+            if ((code == null || series.codes[i] == encoded) && (selected == null || Arrays.binarySearch(selected, series.ids[i]) >= 0)) {
+                found = true;
+                earned += series.prices[i];
+            }
+        }
+        return found ? OptionalDouble.of(earned) : OptionalDouble.empty();
+    }
+
+    @Override
+    public synchronized Optional<Flight> getFlight(int flightId) {
+        FlightSeries series = seriesByFlight.get(flightId);
+        if (series == null) {
+            return Optional.empty();
+        }
+        int index = series.indexOf(flightId);
+        return series.archived[index] ? Optional.empty() : Optional.of(series.get(index));
+    }
+
+    @Override
+    public synchronized AddResult addFlight(Flight flight) {
+        Optional<Resource> resource = getResource(flight.helicopterId());
+        if (resource.isEmpty() || resource.get().flownAfterRepair() + flight.flightHours() > resource.get().limit()) {
+            return new AddResult(resource, null);
+        }
+        Flight added = new Flight(lastFlightId + 1, flight.date(), flight.helicopterId(), flight.code(),
+                flight.goodsWeight(), flight.passengers(), flight.flightHours(), flight.price());
+        putFlight(added, false);
+        return new AddResult(resource, added);
+    }
+
+    @Override
+    public synchronized Optional<Flight> updateFlight(int flightId, UnaryOperator<Flight> change) {
+        Optional<Flight> before = deleteFlight(flightId);
+        before.ifPresent(flight -> {
+            Flight after = change.apply(flight);
+            putFlight(new Flight(flightId, after.date(), after.helicopterId(), after.code(),
+                    after.goodsWeight(), after.passengers(), after.flightHours(), after.price()), false);
+        });
+        return before;
+    }
+
+    @Override
+    public synchronized Optional<Flight> deleteFlight(int flightId) {
+        Optional<Flight> before = getFlight(flightId);
+        before.ifPresent(flight -> removeFlight(flightId));
+        return before;
+    }
+
+    @Override
+    public synchronized int countFlights(FlightFilter filter) {
+        return selectFlights(filter).size();
+    }
+
+    @Override
+    public synchronized BulkResult bulkUpdateFlights(FlightFilter filter, FlightPatch patch) {
+        List<Flight> before = selectFlights(filter);
+        Set<Integer> helicopterIds = new TreeSet<>();
+        before.forEach(flight -> helicopterIds.add(flight.helicopterId()));
+        if (patch.helicopterId() != null) {
+            helicopterIds.add(patch.helicopterId());
+        }
+        Map<Integer, Double> flownBefore = new HashMap<>();
+        for (int helicopterId : helicopterIds) {
+            getResource(helicopterId).ifPresent(resource -> flownBefore.put(helicopterId, resource.flownAfterRepair()));
+        }
+
+        List<Flight> after = before.stream().map(patch::applyTo).toList();
+        before.forEach(flight -> removeFlight(flight.id()));
+        after.forEach(flight -> putFlight(flight, false));
+
+        List<Resource> exceeded = new ArrayList<>();
+        for (int helicopterId : flownBefore.keySet()) {
+            Resource resource = getResource(helicopterId).orElseThrow();
+            if (resource.remaining() < 0 && resource.flownAfterRepair() > flownBefore.get(helicopterId)) {
+                exceeded.add(resource);
+            }
+        }
+        if (!exceeded.isEmpty()) {
+            after.forEach(flight -> removeFlight(flight.id()));
+            before.forEach(flight -> putFlight(flight, false));
+            return new BulkResult(List.of(), List.of(), exceeded);
+        }
+        return new BulkResult(before, after, List.of());
+    }
+
+    @Override
+    public synchronized List<Flight> bulkDeleteFlights(FlightFilter filter) {
+        List<Flight> deleted = selectFlights(filter);
+        deleted.forEach(flight -> removeFlight(flight.id()));
+        return deleted;
+    }
+
+    @Override
+    public synchronized int archiveFlightsBefore(String beforeDate) {
+        int beforeDay = toDay(beforeDate);
+        int[] archived = {0};
+        seriesByHelicopter.forEach((helicopterId, series) -> {
+            HelicopterRow helicopter = helicopters.get(helicopterId);
+            if (helicopter == null) {
+                return;
+            }
+            for (int i = 0, to = series.lowerBound(Math.min(beforeDay, helicopter.repairDay())); i < to; i++) {
+                if (!series.archived[i]) {
+                    series.archived[i] = true;
+                    archived[0]++;
+                }
+            }
+        });
+        version += archived[0];
+        return archived[0];
+    }
+
+    // Flights matching the filter that are not archived, ordered by id
+    private List<Flight> selectFlights(FlightFilter filter) {
+        int[] ids = filter.flightIds();
+        byte code = filter.code() == null ? -1 : encodeCode(filter.code());
+        List<Flight> flights = new ArrayList<>();
+        IntObjectHashMap.IntObjectConsumer<FlightSeries> collect = (helicopterId, series) -> {
+            int from = filter.startDate() == null ? 0 : series.lowerBound(toDay(filter.startDate()));
+            int to = filter.endDate() == null ? series.size : series.lowerBound(toDay(filter.endDate()) + 1);
+            for (int i = from; i < to; i++) {
+                if (!series.archived[i] && (code < 0 || series.codes[i] == code) && (ids == null || Arrays.binarySearch(ids, series.ids[i]) >= 0)) {
+                    flights.add(series.get(i));
+                }
+            }
+        };
+        if (filter.helicopterId() != null) {
+            FlightSeries series = seriesByHelicopter.get(filter.helicopterId());
+            if (series != null) {
+                collect.accept(filter.helicopterId(), series);
+            }
+        } else {
+            seriesByHelicopter.forEach(collect);
+        }
+        flights.sort(Comparator.comparingInt(Flight::id));
+        return flights;
+    }
+
+    private Resource resourceOf(HelicopterRow helicopter) {
+        FlightSeries series = seriesByHelicopter.get(helicopter.id());
+        double flown = 0;
+        if (series != null) {
+            for (int i = series.lowerBound(helicopter.repairDay()); i < series.size; i++) {
+                flown += series.hours[i];
+            }
+        }
+        return new Resource(helicopter.id(), helicopter.seriaNum(), helicopter.limit(), helicopter.repairDate(), flown);
+    }
+
+    private Optional<HelicopterValue> findTop(ToDoubleFunction<FlightSeries> metric) {
+        HelicopterValue[] top = {null};
+        seriesByHelicopter.forEach((helicopterId, series) -> {
+            if (series.size == 0) {
+                return;
+            }
+            double value = metric.applyAsDouble(series);
+            if (top[0] == null || value > top[0].value() || (value == top[0].value() && helicopterId < top[0].helicopterId())) {
+                top[0] = new HelicopterValue(helicopterId, value);
+            }
+        });
+        return Optional.ofNullable(top[0]);
+    }
+
+    private static int toDay(String date) {
+        return (int) LocalDate.parse(date).toEpochDay();
+    }
+
+    private static byte encodeCode(String code) {
+        for (byte i = 0; i < CODES.length; i++) {
+            if (CODES[i].equals(code)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown flight code: " + code);
+    }
+
+    private static final class FlightSeries {
+        private final int helicopterId;
+        private int size;
+        private int[] ids = new int[8];
+        private int[] days = new int[8];
+        private byte[] codes = new byte[8];
+        private double[] goodsWeights = new double[8];
+        private int[] passengers = new int[8];
+        private double[] hours = new double[8];
+        private double[] prices = new double[8];
+        private boolean[] archived = new boolean[8];
+
+        FlightSeries(int helicopterId) {
+            this.helicopterId = helicopterId;
+        }
+
+        // first index whose date is not before day
+        int lowerBound(int day) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (days[middle] < day) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int indexOf(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        double sumPrices(int from, int to) {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += prices[i];
+            }
+            return sum;
+        }
+
+        Flight get(int index) {
+            return new Flight(ids[index], LocalDate.ofEpochDay(days[index]).toString(), helicopterId, CODES[codes[index]],
+                    goodsWeights[index], passengers[index], hours[index], prices[index]);
+        }
+
+        void insert(int id, int day, byte code, double goodsWeight, int passengerCount, double flightHours, double price, boolean isArchived) {
+            int index;
+            if (size == 0 || days[size - 1] < day || (days[size - 1] == day && ids[size - 1] < id)) {
+                index = size;
+            } else {
+                index = lowerBound(day);
+                while (index < size && days[index] == day && ids[index] < id) {
+                    index++;
+                }
+            }
+            if (size == ids.length) {
+                grow();
+            }
+            shift(index, index + 1, size - index);
+            ids[index] = id;
+            days[index] = day;
+            codes[index] = code;
+            goodsWeights[index] = goodsWeight;
+            passengers[index] = passengerCount;
+            hours[index] = flightHours;
+            prices[index] = price;
+            archived[index] = isArchived;
+            size++;
+        }
+
+        void remove(int index) {
+            shift(index + 1, index, size - index - 1);
+            size--;
+        }
+
+        private void shift(int from, int to, int length) {
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(days, from, days, to, length);
+            System.arraycopy(codes, from, codes, to, length);
+            System.arraycopy(goodsWeights, from, goodsWeights, to, length);
+            System.arraycopy(passengers, from, passengers, to, length);
+            System.arraycopy(hours, from, hours, to, length);
+            System.arraycopy(prices, from, prices, to, length);
+            System.arraycopy(archived, from, archived, to, length);
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            days = Arrays.copyOf(days, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+            goodsWeights = Arrays.copyOf(goodsWeights, capacity);
+            passengers = Arrays.copyOf(passengers, capacity);
+            hours = Arrays.copyOf(hours, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            archived = Arrays.copyOf(archived, capacity);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package flight;
+
+import java.util.function.IntFunction;
+
+/**
+ * Open-addressing hash map with unboxed {@code int} keys and linear probing.
+ */
+class IntObjectHashMap<V> {
+    private static final int FREE = 0;
+    private static final int REMOVED = 1;
+    private static final int USED = 2;
+
+    private int[] keys;
+    private Object[] values;
+    private byte[] states;
+    private int size;
+    private int occupied;
+
+    IntObjectHashMap() {
+        this(16);
+    }
+
+    IntObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        states = new byte[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    V computeIfAbsent(int key, IntFunction<V> factory) {
+        V value = get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        int slot = find(key);
+        if (slot >= 0) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        if ((occupied + 1) * 4 > keys.length * 3) {
+            rehash(size * 4 > keys.length ? keys.length * 2 : keys.length);
+        }
+        int mask = keys.length - 1;
+        slot = mix(key) & mask;
+        while (states[slot] == USED) {
+            slot = (slot + 1) & mask;
+        }
+        if (states[slot] == FREE) {
+            occupied++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        states[slot] = USED;
+        size++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        values[slot] = null;
+        states[slot] = REMOVED;
+        size--;
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(IntObjectConsumer<V> consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (states[slot] == USED) {
+                consumer.accept(keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    int[] keys() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (states[slot] == USED) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    interface IntObjectConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (states[slot] != FREE) {
+            if (states[slot] == USED && keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        byte[] oldStates = states;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        states = new byte[capacity];
+        size = 0;
+        occupied = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldStates[slot] == USED) {
+                put(oldKeys[slot], cast(oldValues[slot]));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V cast(Object value) {
+        return (V) value;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,27 +1,52 @@
 package flight;
 
+import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 public class Main {
+    private static final String CDS_TRAINING_ARG = "--cds-training";
     private static final ConsoleManager consoleManager;
-    private static final ConnectionHandler connectionHandler;
+    private static final Tenants tenants;
     private static final AuthManager authManager;
-    private static final UserStrategy adminStrategy;
-    private static final UserStrategy pilotStrategy;
 
     static {
-        connectionHandler = new ConnectionHandler();
+        tenants = new Tenants(new Properties());
+        tenants.closeOnShutdown();
         consoleManager = new ConsoleManager(System.out, new Scanner(System.in));
-        authManager = new AuthManager(consoleManager, connectionHandler);
-        adminStrategy = new AdminStrategy(consoleManager, connectionHandler);
-        pilotStrategy = new PilotStrategy(consoleManager, connectionHandler);
+        authManager = tenants.isEnabled() ? new AuthManager(consoleManager, tenants) : new AuthManager(consoleManager, tenants.getDefault());
     }
 
     public static void main(String[] args) {
+        CompletableFuture<Void> warmUp = authManager.warmUp();
+        if (args.length > 0 && CDS_TRAINING_ARG.equals(args[0])) {
+            trainClassDataSharing(warmUp);
+            return;
+        }
         printWelcomeMessage();
-        User auth = authManager.getAuth();
-        UserStrategy curStrategy = (auth.role() == UserRole.PILOT) ? pilotStrategy : adminStrategy;
-        curStrategy.apply(auth);
+        // with several bases the process stays up for the next sign-in; /end at the prompt exits
+        do {
+            User auth = authManager.getAuth();
+            UserStrategy curStrategy = createStrategy(auth.role(), authManager.getConnectionHandler());
+            curStrategy.apply(auth);
+            authManager.signOut();
+        } while (tenants.isEnabled());
+    }
+
+    private static UserStrategy createStrategy(UserRole role, ConnectionHandler connectionHandler) {
+        return switch (role) {
+            case PILOT -> new PilotStrategy(consoleManager, connectionHandler);
+            case ADMIN -> new AdminStrategy(consoleManager, connectionHandler);
+        };
+    }
+
+    // Used by the "app" build profile to load the startup classes before the AppCDS archive is dumped
+    private static void trainClassDataSharing(CompletableFuture<Void> warmUp) {
+        printWelcomeMessage();
+        warmUp.join();
+        for (UserRole role : UserRole.values()) {
+            createStrategy(role, tenants.getDefault());
+        }
     }
 
     private static void printWelcomeMessage() {
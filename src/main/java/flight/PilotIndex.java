@@ -0,0 +1,208 @@
+package flight;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prefix and typo-tolerant search over {@code pilot.last_name}, {@code tabel_num} and {@code position}.
+ * <p>
+ * Words of those columns are kept in a sorted array, so a prefix is one binary search and a scan; a query with
+ * no prefix hit falls back to words within a small edit distance. The index is rebuilt whenever
+ * {@link ReferenceCache} hands out a new snapshot.
+ */
+public class PilotIndex {
+    private static final String HELICOPTERS_TABLE = "temp.search_helicopter_ids";
+    private static final String TOTALS_SQL = """
+            SELECT f.helicopter_id, COUNT(f.id) as flights, COALESCE(SUM(f.flight_hours), 0.0) as hours, COALESCE(SUM(f.price), 0.0) as earnings
+            FROM %s h
+            JOIN flight f ON f.helicopter_id = h.id
+            WHERE f.date >= ?
+            GROUP BY f.helicopter_id;
+            """.formatted(HELICOPTERS_TABLE);
+
+    /** {@code seriaNum} is {@code null} when the pilot's helicopter does not exist. */
+    public record Match(ReferenceCache.PilotRef pilot, int distance, String seriaNum, int recentFlights, double recentHours, double recentEarnings) {
+    }
+
+    private record Totals(int flights, double hours, double earnings) {
+    }
+
+    private record Index(ReferenceCache.Snapshot reference, String[] words, int[][] pilotIds) {
+    }
+
+    private final ConnectionHandler connectionHandler;
+    private final int recentDays;
+    private final int maxResults;
+    private volatile Index index;
+
+    public PilotIndex(ConnectionHandler connectionHandler, int recentDays, int maxResults) {
+        this.connectionHandler = connectionHandler;
+        this.recentDays = recentDays;
+        this.maxResults = maxResults;
+    }
+
+    public int getRecentDays() {
+        return recentDays;
+    }
+
+    /** Prefix matches first (distance 0), then the closest misspellings; at most {@code maxResults}. */
+    public List<Match> search(String query) throws SQLException {
+        String term = normalize(query);
+        if (term.isEmpty()) {
+            return List.of();
+        }
+        Index current = current();
+
+        Map<Integer, Integer> distances = new LinkedHashMap<>();
+        int from = lowerBound(current.words, term);
+        for (int i = from; i < current.words.length && current.words[i].startsWith(term); i++) {
+            for (int id : current.pilotIds[i]) {
+                distances.putIfAbsent(id, 0);
+            }
+        }
+        if (distances.isEmpty()) {
+            int maxEdits = term.length() <= 3 ? 0 : term.length() <= 6 ? 1 : 2;
+            TreeMap<Integer, List<Integer>> byDistance = new TreeMap<>();
+            for (int i = 0; i < current.words.length && maxEdits > 0; i++) {
+                int distance = editDistance(term, current.words[i], maxEdits);
+                if (distance <= maxEdits) {
+                    for (int id : current.pilotIds[i]) {
+                        byDistance.computeIfAbsent(distance, d -> new ArrayList<>()).add(id);
+                    }
+                }
+            }
+            byDistance.forEach((distance, ids) -> ids.forEach(id -> distances.putIfAbsent(id, distance)));
+        }
+        if (distances.isEmpty()) {
+            return List.of();
+        }
+
+        List<ReferenceCache.PilotRef> pilots = new ArrayList<>();
+        for (int id : distances.keySet()) {
+            if (pilots.size() == maxResults) {
+                break;
+            }
+            pilots.add(current.reference.pilot(id));
+        }
+        Map<Integer, Totals> totals = loadTotals(pilots);
+        List<Match> matches = new ArrayList<>(pilots.size());
+        for (ReferenceCache.PilotRef pilot : pilots) {
+            ReferenceCache.HelicopterRef helicopter = current.reference.helicopter(pilot.helicopterId());
+            Totals row = totals.getOrDefault(pilot.helicopterId(), new Totals(0, 0, 0));
+            matches.add(new Match(pilot, distances.get(pilot.id()), helicopter == null ? null : helicopter.seriaNum(), row.flights(), row.hours(), row.earnings()));
+        }
+        return matches;
+    }
+
+    private Index current() throws SQLException {
+        ReferenceCache.Snapshot reference = connectionHandler.getReferenceCache().get();
+        Index loaded = index;
+        if (loaded != null && loaded.reference == reference) {
+            return loaded;
+        }
+        synchronized (this) {
+            if (index == null || index.reference != reference) {
+                index = build(reference);
+            }
+            return index;
+        }
+    }
+
+    private static Index build(ReferenceCache.Snapshot reference) {
+        TreeMap<String, List<Integer>> words = new TreeMap<>();
+        reference.pilots().values().stream().sorted(Comparator.comparingInt(ReferenceCache.PilotRef::id)).forEach(pilot -> {
+            for (String field : new String[]{pilot.tabelNum(), pilot.lastName(), pilot.position()}) {
+                for (String word : normalize(field).split("\\s+")) {
+                    if (!word.isEmpty()) {
+                        List<Integer> ids = words.computeIfAbsent(word, w -> new ArrayList<>());
+                        if (ids.isEmpty() || ids.get(ids.size() - 1) != pilot.id()) {
+                            ids.add(pilot.id());
+                        }
+                    }
+                }
+            }
+        });
+        String[] keys = words.keySet().toArray(new String[0]);
+        int[][] ids = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            ids[i] = words.get(keys[i]).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new Index(reference, keys, ids);
+    }
+
+    // Every helicopter's flights live on one shard, so each shard is asked only about its own helicopters
+    private Map<Integer, Totals> loadTotals(List<ReferenceCache.PilotRef> pilots) throws SQLException {
+        int[] helicopterIds = pilots.stream().mapToInt(ReferenceCache.PilotRef::helicopterId).distinct().toArray();
+        String since = LocalDate.now().minusDays(recentDays).toString();
+        Map<Integer, Totals> totals = new HashMap<>();
+        for (Map<Integer, Totals> partial : connectionHandler.scatter((shard, connection) -> {
+            int[] own = Arrays.stream(helicopterIds).filter(id -> connectionHandler.shardOf(id) == shard).toArray();
+            Map<Integer, Totals> rows = new HashMap<>();
+            if (own.length == 0) {
+                return rows;
+            }
+            TempIds.load(connection, HELICOPTERS_TABLE, own);
+            try (PreparedStatement statement = connection.prepareStatement(TOTALS_SQL)) {
+                statement.setString(1, since);
+                ResultSet rs = statement.executeQuery();
+                while (rs.next()) {
+                    rows.put(rs.getInt("helicopter_id"), new Totals(rs.getInt("flights"), rs.getDouble("hours"), rs.getDouble("earnings")));
+                }
+            } finally {
+                TempIds.clear(connection, HELICOPTERS_TABLE);
+            }
+            return rows;
+        })) {
+            totals.putAll(partial);
+        }
+        return totals;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private static int lowerBound(String[] words, String term) {
+        int index = Arrays.binarySearch(words, term);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // Levenshtein distance, or max + 1 as soon as it is known to exceed max
+    private static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            int best = row[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                row[j] = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                best = Math.min(best, row[j]);
+            }
+            if (best > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,78 @@
+package flight;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * Session-local view of a pilot's helicopter: resource, flights and totals, read once at login.
+ * <p>
+ * Before each use the changes committed to the database are brought into the change log, at most once per
+ * check interval, and the log is checked for records past the loaded sequence; only when one of them touches
+ * this helicopter, or the reference data (its limit and repair date) changed, is the view read again, so pilot
+ * commands normally need no more than that check.
+ */
+public class PilotSession {
+    private final ConnectionHandler connectionHandler;
+    private final int helicopterId;
+    private Optional<FlightStore.HelicopterSummary> summary;
+    private long loadedSequence;
+    private long loadedGeneration;
+    private long loadedReferenceVersion;
+    private long reloads;
+
+    public PilotSession(ConnectionHandler connectionHandler, int helicopterId) {
+        this.connectionHandler = connectionHandler;
+        this.helicopterId = helicopterId;
+    }
+
+    public Optional<FlightStore.HelicopterSummary> get() throws SQLException {
+        FlightChangeLog changeLog;
+        try {
+            changeLog = connectionHandler.getChangeLog();
+        } catch (IOException e) {
+            // without the change log there is no way to tell the view is current
+            return load(-1);
+        }
+        connectionHandler.syncChangesIfDue();
+        long lastSequence = changeLog.lastSequence();
+        if (summary == null || loadedGeneration != connectionHandler.getChangeGeneration()
+                || loadedReferenceVersion != connectionHandler.getReferenceCache().get().version()
+                || (lastSequence != loadedSequence && touchesHelicopter(changeLog))) {
+            return load(lastSequence);
+        }
+        loadedSequence = lastSequence;
+        return summary;
+    }
+
+    /** How many times the view was read from the store, including the first load. */
+    public long getReloads() {
+        return reloads;
+    }
+
+    // The versions are taken before the read, so a change committed meanwhile triggers another reload
+    private Optional<FlightStore.HelicopterSummary> load(long sequence) throws SQLException {
+        loadedGeneration = connectionHandler.getChangeGeneration();
+        loadedReferenceVersion = connectionHandler.getReferenceCache().get().version();
+        summary = connectionHandler.getFlightStore().getHelicopterSummary(helicopterId);
+        loadedSequence = sequence;
+        reloads++;
+        return summary;
+    }
+
+    private boolean touchesHelicopter(FlightChangeLog changeLog) {
+        try {
+            FlightChangeReader reader = changeLog.reader(loadedSequence + 1);
+            FlightChange change;
+            while ((change = reader.poll()) != null) {
+                if ((change.before() != null && change.before().helicopterId() == helicopterId)
+                        || (change.after() != null && change.after().helicopterId() == helicopterId)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
@@ -1,16 +1,16 @@
 package flight;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 
 public class PilotStrategy implements UserStrategy {
     private final Map<String, Function<User, Boolean>> commands;
     private final ConnectionHandler connectionHandler;
     private final ConsoleManager consoleManager;
+    private PilotSession session;
 
     public PilotStrategy(ConsoleManager consoleManager, ConnectionHandler connectionHandler) {
         this.consoleManager = consoleManager;
@@ -18,15 +18,15 @@ public class PilotStrategy implements UserStrategy {
 
         this.commands = Map.of(
                 "/flights_info", user -> {
-                    printFlightsInfo(user.helicopterId());
+                    printFlightsInfo();
                     return false;
                 },
                 "/flight_limit", user -> {
-                    printFlightLimitInfo(user.helicopterId());
+                    printFlightLimitInfo();
                     return false;
                 },
                 "/flight_statistic", user -> {
-                    printFlightStatistics(user.helicopterId());
+                    printFlightStatistics();
                     return false;
                 },
                 "/help", user -> {
@@ -47,6 +47,12 @@ public class PilotStrategy implements UserStrategy {
 
     @Override
     public void apply(User user) {
+        session = new PilotSession(connectionHandler, user.helicopterId());
+        try {
+            session.get();
+        } catch (SQLException e) {
+            // loaded by the first command instead
+        }
         Function<User, Boolean> func = null;
         do {
             String input = consoleManager.getInput(
@@ -60,93 +66,65 @@ public class PilotStrategy implements UserStrategy {
         while (func.apply(user) == false);
     }
 
-    private void printFlightsInfo(int helicopterId) {
-        final String sql = """
-                select date, code, goods_weight, passangers, flight_hours, price
-                from flight
-                where helicopter_id = ?;
-                """;
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-
-            statement.setInt(1, helicopterId);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.isBeforeFirst()) {
-                consoleManager.printMessage("date|code|goods_weight|passengers|flight_hours|price");
-            } else {
+    private void printFlightsInfo() {
+        try {
+            List<Flight> flights = session.get().map(FlightStore.HelicopterSummary::flights).orElse(List.of());
+            if (flights.isEmpty()) {
                 consoleManager.printMessage("Data not found");
-            }
-            while (resultSet.next()) {
-                String date = resultSet.getString("date");
-                String code = resultSet.getString("code");
-                Double goodsWeight = resultSet.getDouble("goods_weight");
-                Integer passengers = resultSet.getInt("passangers");
-                Double flightHours = resultSet.getDouble("flight_hours");
-                Double price = resultSet.getDouble("price");
-
-                consoleManager.printMessage("%s|%s|%.2f|%d|%.2f|%.2f".formatted(date, code, goodsWeight, passengers, flightHours, price));
+            } else {
+                TableRenderer table = new TableRenderer(consoleManager, "|")
+                        .column("date", 10).column("code", 7).column("goods_weight", 0).column("passengers", 0).column("flight_hours", 0).column("price", 0)
+                        .printHeader();
+                for (Flight flight : flights) {
+                    table.text(flight.date()).text(flight.code()).decimal(flight.goodsWeight()).number(flight.passengers())
+                            .decimal(flight.flightHours()).decimal(flight.price()).endRow();
+                }
             }
             consoleManager.printMessage("");
+        } catch (DatabaseBusyException e) {
+            consoleManager.printMessage(e.getMessage() + "\n");
         } catch (SQLException e) {
-            throw new RuntimeException("Error with db");
+            throw new RuntimeException("Error with db", e);
         }
     }
 
-    private void printFlightLimitInfo(int helicopterId) {
-        final String sql = """
-                select h.hours_before_repair as flight_limit, sum(f.flight_hours) as hours
-                from helicopter h
-                left join flight f on h.id = f.helicopter_id and f.date > h.repair_date
-                where h.id = ?;
-                """;
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-
-            statement.setInt(1, helicopterId);
-            ResultSet resultSet = statement.executeQuery();
-            if (resultSet.isBeforeFirst()) {
-                consoleManager.printMessage("limit|flied|difference");
-            } else {
+    private void printFlightLimitInfo() {
+        try {
+            Optional<FlightStore.Resource> resource = session.get().map(FlightStore.HelicopterSummary::resource);
+            if (resource.isEmpty()) {
                 consoleManager.printMessage("Helicopter not found\n");
+                return;
             }
 
-            resultSet.next();
-            Double limit = resultSet.getDouble("flight_limit");
-            Double hours = resultSet.getDouble("hours");
-            Double dif = limit - hours;
-            consoleManager.printMessage("%.2f|%.2f|%.2f\n".formatted(limit, hours, dif));
+            double limit = resource.get().limit();
+            double hours = resource.get().flownAfterRepair();
+            double dif = resource.get().remaining();
+            new TableRenderer(consoleManager, "|").column("limit", 8).column("flied", 8).column("difference", 0)
+                    .printHeader()
+                    .decimal(limit).decimal(hours).decimal(dif).endRow();
+            if (connectionHandler.getResourceAlerts().isBelowThreshold(limit, dif)) {
+                consoleManager.printMessage("Warning: remaining resource is below the alert threshold, plan a repair\n");
+            } else {
+                consoleManager.printMessage("");
+            }
+        } catch (DatabaseBusyException e) {
+            consoleManager.printMessage(e.getMessage() + "\n");
         } catch (SQLException e) {
-            throw new RuntimeException("Error with db");
+            throw new RuntimeException("Error with db", e);
         }
     }
 
-    private void printFlightStatistics(int helicopterId) {
-        final String sql = """
-                select sum(f.passangers) as passengers, sum(f.goods_weight) as weight
-                from flight f
-                where f.helicopter_id = ?;
-                """;
-
-        try (Connection connection = connectionHandler.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-
-            statement.setInt(1, helicopterId);
-            ResultSet resultSet = statement.executeQuery();
-
-            if (resultSet.isBeforeFirst()) {
-                consoleManager.printMessage("passengers|goods_weight");
-            } else {
-                consoleManager.printMessage("Helicopter not found\n");
-            }
-
-            resultSet.next();
-            Integer passengers = resultSet.getInt("passengers");
-            Double weight = resultSet.getDouble("weight");
-            consoleManager.printMessage("%d|%.2f\n".formatted(passengers, weight));
+    private void printFlightStatistics() {
+        try {
+            FlightStore.HelicopterTotals totals = session.get().map(FlightStore.HelicopterSummary::totals).orElse(new FlightStore.HelicopterTotals(0, 0, 0, 0));
+            new TableRenderer(consoleManager, "|").column("passengers", 0).column("goods_weight", 0)
+                    .printHeader()
+                    .number(totals.passengers()).decimal(totals.goodsWeight()).endRow();
+            consoleManager.printMessage("");
+        } catch (DatabaseBusyException e) {
+            consoleManager.printMessage(e.getMessage() + "\n");
         } catch (SQLException e) {
-            throw new RuntimeException("Error with db");
+            throw new RuntimeException("Error with db", e);
         }
     }
 }
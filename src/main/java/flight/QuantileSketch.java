@@ -0,0 +1,137 @@
+package flight;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a relative error bound (DDSketch).
+ * <p>
+ * Positive values fall into logarithmic buckets {@code (gamma^(k-1), gamma^k]} with
+ * {@code gamma = (1 + accuracy) / (1 - accuracy)}, so any reported quantile is within {@code accuracy} of a true
+ * value; zero and below share one bucket. Buckets only count, which makes removal exact and merging a sum. The
+ * bucket range follows the spread of the values, not their number, so a quantile costs the same for any count.
+ */
+public final class QuantileSketch {
+    private static final double MIN_POSITIVE = 1e-9;
+
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+    private long zeroCount;
+    private long count;
+    private int offset;
+    private long[] buckets = new long[0];
+
+    public QuantileSketch(double accuracy) {
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /** Takes back one earlier {@link #add}; a value that was never added is ignored. */
+    public void remove(double value) {
+        add(value, -1);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("Sketches of different accuracy: " + accuracy + " and " + other.accuracy);
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        if (other.buckets.length > 0) {
+            ensure(other.offset);
+            ensure(other.offset + other.buckets.length - 1);
+            for (int i = 0; i < other.buckets.length; i++) {
+                buckets[other.offset - offset + i] += other.buckets[i];
+            }
+        }
+    }
+
+    /** Value at rank {@code q * (count - 1)}, {@code q} in [0, 1]; {@code NaN} when the sketch is empty. */
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (Math.max(0, Math.min(1, q)) * (count - 1));
+        if (rank < zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen > rank) {
+                return 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, offset + buckets.length - 1) / (gamma + 1);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(accuracy);
+        out.writeLong(zeroCount);
+        out.writeInt(offset);
+        out.writeInt(buckets.length);
+        for (long bucket : buckets) {
+            out.writeLong(bucket);
+        }
+    }
+
+    public static QuantileSketch read(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readDouble());
+        sketch.zeroCount = in.readLong();
+        sketch.count = sketch.zeroCount;
+        sketch.offset = in.readInt();
+        sketch.buckets = new long[in.readInt()];
+        for (int i = 0; i < sketch.buckets.length; i++) {
+            sketch.buckets[i] = in.readLong();
+            sketch.count += sketch.buckets[i];
+        }
+        return sketch;
+    }
+
+    private void add(double value, long delta) {
+        if (value <= MIN_POSITIVE) {
+            if (zeroCount + delta >= 0) {
+                zeroCount += delta;
+                count += delta;
+            }
+            return;
+        }
+        int index = (int) Math.ceil(Math.log(value) / logGamma);
+        ensure(index);
+        if (buckets[index - offset] + delta >= 0) {
+            buckets[index - offset] += delta;
+            count += delta;
+        }
+    }
+
+    // Grows the bucket array so that it covers index
+    private void ensure(int index) {
+        if (buckets.length == 0) {
+            offset = index;
+            buckets = new long[1];
+        } else if (index < offset) {
+            long[] grown = new long[buckets.length + offset - index];
+            System.arraycopy(buckets, 0, grown, offset - index, buckets.length);
+            buckets = grown;
+            offset = index;
+        } else if (index >= offset + buckets.length) {
+            buckets = Arrays.copyOf(buckets, index - offset + 1);
+        }
+    }
+}
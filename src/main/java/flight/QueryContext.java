@@ -0,0 +1,146 @@
+package flight;
+
+import org.sqlite.ProgressHandler;
+import org.sqlite.SQLiteConnection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time limit, cancellation and progress of the statements one command runs.
+ * <p>
+ * While a context is current, every connection checked out of a {@link ConnectionLimiter} gets a SQLite
+ * progress handler and every statement it creates gets {@code setQueryTimeout}. SQLite only applies that
+ * timeout to lock waits, so the handler interrupts the running statement once the connection has been
+ * busy for longer than the timeout, and {@link #cancel()} interrupts it through {@link Statement#cancel()}.
+ */
+public final class QueryContext {
+    private static final ThreadLocal<QueryContext> CURRENT = new ThreadLocal<>();
+    // SQLite virtual machine instructions between two progress callbacks
+    private static final int PROGRESS_STEPS = 10_000;
+
+    private final int timeoutSeconds;
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private final AtomicLong steps = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+
+    /** {@code timeoutSeconds} of 0 means no limit. */
+    public QueryContext(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public static QueryContext current() {
+        return CURRENT.get();
+    }
+
+    public void run(Runnable task) {
+        QueryContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            task.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /** Makes the caller's context, if any, current while {@code task} runs on another thread. */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        QueryContext context = CURRENT.get();
+        if (context == null) {
+            return task;
+        }
+        return () -> {
+            QueryContext previous = CURRENT.get();
+            CURRENT.set(context);
+            try {
+                return task.call();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /** SQLite progress callbacks so far, roughly one per {@value #PROGRESS_STEPS} VM instructions. */
+    public long getSteps() {
+        return steps.get();
+    }
+
+    static Connection track(Connection connection) throws SQLException {
+        QueryContext context = CURRENT.get();
+        return context == null ? connection : context.attach(connection);
+    }
+
+    private Connection attach(Connection connection) throws SQLException {
+        long deadline = timeoutSeconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds) : 0;
+        SQLiteConnection sqlite = connection.unwrap(SQLiteConnection.class);
+        ProgressHandler.setHandler(sqlite, PROGRESS_STEPS, new ProgressHandler() {
+            @Override
+            protected int progress() {
+                steps.incrementAndGet();
+                if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                    timedOut = true;
+                }
+                return cancelled || timedOut ? 1 : 0;
+            }
+        });
+
+        List<Statement> opened = new ArrayList<>();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                // the connection goes back to the pool, so nothing of this context may stay on it
+                opened.forEach(statements::remove);
+                try {
+                    ProgressHandler.clearHandler(sqlite);
+                } finally {
+                    connection.close();
+                }
+                return null;
+            }
+            Object result;
+            try {
+                result = method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement statement) {
+                statement.setQueryTimeout(timeoutSeconds);
+                opened.add(statement);
+                statements.add(statement);
+            }
+            return result;
+        });
+    }
+}
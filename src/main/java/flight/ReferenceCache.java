@@ -0,0 +1,205 @@
+package flight;
+
+import org.sqlite.SQLiteConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copy-on-write cache of the {@code helicopter} and {@code pilot} tables.
+ * <p>
+ * Readers get an immutable {@link Snapshot} that is replaced as a whole on refresh. Triggers on both
+ * tables bump the counter in {@code reference_version}; it is compared with the snapshot at most once
+ * per check interval, and {@link #invalidate()} forces the next read to reload.
+ */
+public class ReferenceCache {
+    private static final String VERSION_TABLE = "reference_version";
+    private static final List<String> TABLES = List.of("helicopter", "pilot");
+    public static final String REPAIR_TABLE = "temp.helicopter_repair";
+    private static final String FLOWN_SQL = """
+            SELECT r.id, SUM(f.flight_hours) as flown_after_repair
+            FROM %s r
+            JOIN flight f ON f.helicopter_id = r.id AND f.date >= r.repair_date
+            GROUP BY r.id;
+            """.formatted(REPAIR_TABLE);
+
+    public record HelicopterRef(int id, String seriaNum, String mark, double hoursBeforeRepair, String repairDate) {
+    }
+
+    public record PilotRef(int id, String tabelNum, String lastName, String position, int helicopterId) {
+    }
+
+    /** Crews are ordered by pilot id. */
+    public record Snapshot(long version, Map<Integer, HelicopterRef> helicopters, Map<Integer, PilotRef> pilots, Map<Integer, List<PilotRef>> crews) {
+        public HelicopterRef helicopter(int id) {
+            return helicopters.get(id);
+        }
+
+        public PilotRef pilot(int id) {
+            return pilots.get(id);
+        }
+
+        public List<PilotRef> crew(int helicopterId) {
+            return crews.getOrDefault(helicopterId, List.of());
+        }
+
+        /** Whether {@code other} has other helicopters, limits or repair dates than this snapshot. */
+        public boolean changesResources(Snapshot other) {
+            if (other == this) {
+                return false;
+            }
+            if (!other.helicopters.keySet().equals(helicopters.keySet())) {
+                return true;
+            }
+            for (HelicopterRef helicopter : helicopters.values()) {
+                HelicopterRef changed = other.helicopter(helicopter.id());
+                if (changed.hoursBeforeRepair() != helicopter.hoursBeforeRepair() || !changed.repairDate().equals(helicopter.repairDate())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ConnectionHandler connectionHandler;
+    private final long checkIntervalNanos;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private volatile long checkedAt;
+    // physical connection -> snapshot its repair table was filled from
+    private final Map<Connection, Snapshot> repairLoaded = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public ReferenceCache(ConnectionHandler connectionHandler, long checkIntervalMillis) {
+        this.connectionHandler = connectionHandler;
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+    }
+
+    public Snapshot get() throws SQLException {
+        Snapshot snapshot = current.get();
+        if (snapshot != null && System.nanoTime() - checkedAt < checkIntervalNanos) {
+            return snapshot;
+        }
+        try (Connection connection = connectionHandler.getConnection()) {
+            long version = readVersion(connection);
+            checkedAt = System.nanoTime();
+            snapshot = current.get();
+            if (snapshot != null && snapshot.version() == version) {
+                return snapshot;
+            }
+            Snapshot loaded = load(connection, version);
+            // a concurrent refresh may have installed a newer version already
+            current.accumulateAndGet(loaded, (old, fresh) -> old != null && old.version() > fresh.version() ? old : fresh);
+            return current.get();
+        }
+    }
+
+    public void invalidate() {
+        current.set(null);
+    }
+
+    /**
+     * Fills {@link #REPAIR_TABLE} {@code (id, repair_date)} on {@code connection} with every helicopter of
+     * {@code snapshot}, so queries on shards and the replica join the primary's repair dates. The table outlives
+     * the checkout, so it is refilled only when the connection last saw another snapshot; inside a caller's
+     * transaction it is filled every time, since a rollback would undo it.
+     */
+    public void loadRepairDates(Connection connection, Snapshot snapshot) throws SQLException {
+        Connection physical = connection.unwrap(SQLiteConnection.class);
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit && repairLoaded.get(physical) == snapshot) {
+            return;
+        }
+        repairLoaded.remove(physical);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + REPAIR_TABLE + " (id integer PRIMARY KEY, repair_date date NOT NULL);");
+            statement.execute("DELETE FROM " + REPAIR_TABLE + ";");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO " + REPAIR_TABLE + " VALUES (?, ?);")) {
+            for (HelicopterRef helicopter : snapshot.helicopters().values()) {
+                insert.setInt(1, helicopter.id());
+                insert.setString(2, helicopter.repairDate());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            if (autoCommit) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        if (autoCommit) {
+            repairLoaded.put(physical, snapshot);
+        }
+    }
+
+    /** Hours each helicopter flew since its repair on the flights of {@code connection}, whose {@link #REPAIR_TABLE} is filled. */
+    public static Map<Integer, Double> readFlownAfterRepair(Connection connection) throws SQLException {
+        Map<Integer, Double> flown = new HashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery(FLOWN_SQL);
+            while (rs.next()) {
+                flown.put(rs.getInt("id"), rs.getDouble("flown_after_repair"));
+            }
+        }
+        return flown;
+    }
+
+    /** The version table and the triggers that bump it; a migration run once per database when it is opened. */
+    public static void createVersionTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " (id integer PRIMARY KEY CHECK (id = 0), version integer NOT NULL);");
+            statement.execute("INSERT OR IGNORE INTO " + VERSION_TABLE + " VALUES (0, 0);");
+            for (String table : TABLES) {
+                for (String event : List.of("INSERT", "UPDATE", "DELETE")) {
+                    statement.execute("CREATE TRIGGER IF NOT EXISTS %s_version_%s AFTER %s ON %s BEGIN UPDATE %s SET version = version + 1; END;"
+                            .formatted(table, event.toLowerCase(Locale.ROOT), event, table, VERSION_TABLE));
+                }
+            }
+        }
+    }
+
+    private static long readVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version FROM " + VERSION_TABLE + ";")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Snapshot load(Connection connection, long version) throws SQLException {
+        Map<Integer, HelicopterRef> helicopters = new HashMap<>();
+        Map<Integer, PilotRef> pilots = new HashMap<>();
+        Map<Integer, List<PilotRef>> crews = new HashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT id, seria_num, mark, hours_before_repair, repair_date FROM helicopter;");
+            while (rs.next()) {
+                helicopters.put(rs.getInt("id"), new HelicopterRef(rs.getInt("id"), rs.getString("seria_num"), rs.getString("mark"),
+                        rs.getDouble("hours_before_repair"), rs.getString("repair_date")));
+            }
+            rs = statement.executeQuery("SELECT id, tabel_num, last_name, position, helicopter_id FROM pilot ORDER BY id;");
+            while (rs.next()) {
+                PilotRef pilot = new PilotRef(rs.getInt("id"), rs.getString("tabel_num"), rs.getString("last_name"), rs.getString("position"), rs.getInt("helicopter_id"));
+                pilots.put(pilot.id(), pilot);
+                crews.computeIfAbsent(pilot.helicopterId(), id -> new ArrayList<>()).add(pilot);
+            }
+        }
+        crews.replaceAll((id, crew) -> List.copyOf(crew));
+        return new Snapshot(version, Map.copyOf(helicopters), Map.copyOf(pilots), Map.copyOf(crews));
+    }
+}
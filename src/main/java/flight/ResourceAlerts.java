@@ -0,0 +1,158 @@
+package flight;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Tracks hours flown since the last repair per helicopter and raises an alert when the remaining
+ * resource drops below a threshold.
+ * <p>
+ * The totals are loaded with one aggregate query on first use and then kept up to date from
+ * {@link FlightChangeLog} events, so each write costs a constant-time delta instead of a fleet scan.
+ * Limits and repair dates come from the {@link ReferenceCache}; when they change, the totals are loaded again.
+ */
+public class ResourceAlerts extends FlightChangeView<ResourceAlerts.Fleet> {
+    public record Resource(int helicopterId, double limit, double flown) {
+        public double remaining() {
+            return limit - flown;
+        }
+    }
+
+    private static final class State {
+        private final double limit;
+        private final String repairDate;
+        private double flown;
+        private boolean alerted;
+
+        private State(double limit, String repairDate, double flown) {
+            this.limit = limit;
+            this.repairDate = repairDate;
+            this.flown = flown;
+        }
+    }
+
+    record Fleet(ReferenceCache.Snapshot reference, Map<Integer, State> helicopters) {
+    }
+
+    private final double percentRemaining;
+    private final double hoursRemaining;
+    private final Path logPath;
+    private final List<String> unwritten = new ArrayList<>();
+    private IOException writeError;
+
+    public ResourceAlerts(ConnectionHandler connectionHandler, double percentRemaining, double hoursRemaining, Path logPath) {
+        super(connectionHandler);
+        this.percentRemaining = percentRemaining;
+        this.hoursRemaining = hoursRemaining;
+        this.logPath = logPath;
+    }
+
+    public double getPercentRemaining() {
+        return percentRemaining;
+    }
+
+    public double getHoursRemaining() {
+        return hoursRemaining;
+    }
+
+    public boolean isBelowThreshold(double limit, double remaining) {
+        return remaining < limit * percentRemaining / 100 || remaining < hoursRemaining;
+    }
+
+    public List<Resource> getActiveAlerts() throws SQLException {
+        Fleet fleet = state();
+        List<Resource> active = new ArrayList<>();
+        synchronized (this) {
+            new TreeMap<>(fleet.helicopters()).forEach((id, state) -> {
+                if (state.alerted) {
+                    active.add(new Resource(id, state.limit, state.flown));
+                }
+            });
+        }
+        return active;
+    }
+
+    /** The last {@code limit} alerts, including those still waiting to be written to the log. */
+    public List<String> getRecentAlerts(int limit) throws IOException {
+        List<String> lines = Files.isRegularFile(logPath) ? new ArrayList<>(Files.readAllLines(logPath, StandardCharsets.UTF_8)) : new ArrayList<>();
+        synchronized (this) {
+            unwritten.forEach(line -> lines.add(line.stripTrailing()));
+        }
+        return lines.subList(Math.max(0, lines.size() - limit), lines.size());
+    }
+
+    /** Why the last alerts could not be written to the log; they are kept in memory and retried with the next alert. */
+    public synchronized Optional<IOException> getWriteError() {
+        return Optional.ofNullable(writeError);
+    }
+
+    @Override
+    protected Loaded<Fleet> load(FlightChangeLog changeLog) throws SQLException {
+        ReferenceCache referenceCache = connectionHandler.getReferenceCache();
+        ReferenceCache.Snapshot reference = referenceCache.get();
+        long sequence = changeLog.lastSequence();
+        long[] baseline = newBaseline();
+        Map<Integer, State> loaded = new HashMap<>();
+        reference.helicopters().values().forEach(helicopter ->
+                loaded.put(helicopter.id(), new State(helicopter.hoursBeforeRepair(), helicopter.repairDate(), 0)));
+        for (Map<Integer, Double> partial : scatterWithBaseline(false, baseline, (shard, connection) -> {
+            referenceCache.loadRepairDates(connection, reference);
+            return null;
+        }, (shard, connection) -> ReferenceCache.readFlownAfterRepair(connection))) {
+            partial.forEach((id, flown) -> loaded.get(id).flown += flown);
+        }
+        loaded.values().forEach(state -> state.alerted = isBelowThreshold(state.limit, state.limit - state.flown));
+        return new Loaded<>(new Fleet(reference, loaded), sequence, baseline);
+    }
+
+    @Override
+    protected boolean isStale(Fleet fleet) throws SQLException {
+        return fleet.reference().changesResources(connectionHandler.getReferenceCache().get());
+    }
+
+    @Override
+    protected void apply(Fleet fleet, FlightChange change) {
+        apply(fleet, change.before(), -1);
+        apply(fleet, change.after(), 1);
+    }
+
+    private void apply(Fleet fleet, Flight flight, int sign) {
+        if (flight == null) {
+            return;
+        }
+        State state = fleet.helicopters().get(flight.helicopterId());
+        if (state == null || flight.date().compareTo(state.repairDate) < 0) {
+            return;
+        }
+        state.flown += sign * flight.flightHours();
+        boolean below = isBelowThreshold(state.limit, state.limit - state.flown);
+        if (below && !state.alerted) {
+            writeAlert(flight.helicopterId(), state);
+        }
+        state.alerted = below;
+    }
+
+    private void writeAlert(int helicopterId, State state) {
+        String line = "%s|%d|%.2f|%.2f|%.2f%n".formatted(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS), helicopterId, state.limit, state.flown, state.limit - state.flown);
+        unwritten.add(line);
+        try {
+            Files.writeString(logPath, String.join("", unwritten), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            unwritten.clear();
+            writeError = null;
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package flight;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projects when each helicopter will use up its resource from the average daily flight hours over a
+ * sliding window of days.
+ * <p>
+ * The window ends at the latest flight date in the fleet, but never after today, so a flight entered with a
+ * future date does not empty it. Each helicopter keeps a ring buffer of per-day hours and its running sum, so a
+ * {@link FlightChangeLog} event is a constant-time delta and a fleet-wide forecast costs one pass over the
+ * helicopters; the database is read on first use and again when limits or repair dates change.
+ */
+public class ResourceForecast extends FlightChangeView<ResourceForecast.Fleet> {
+    private static final String LAST_DATE_SQL = "SELECT MAX(date) FROM flight WHERE date <= ?;";
+    private static final String DAILY_HOURS_SQL = """
+            SELECT helicopter_id, date, SUM(flight_hours) as hours
+            FROM flight
+            WHERE date > ? AND date <= ?
+            GROUP BY helicopter_id, date;
+            """;
+
+    /**
+     * {@code depletionDate} is {@code null} when the helicopter has not flown inside the window.
+     */
+    public record Forecast(int helicopterId, String seriaNum, double limit, double flown, double hoursPerDay, LocalDate depletionDate) {
+        public double remaining() {
+            return limit - flown;
+        }
+    }
+
+    private static final class State {
+        private final double limit;
+        private final String repairDate;
+        private final double[] days;
+        private double flown;
+        private double windowHours;
+
+        private State(double limit, String repairDate, int windowDays) {
+            this.limit = limit;
+            this.repairDate = repairDate;
+            this.days = new double[windowDays];
+        }
+    }
+
+    static final class Fleet {
+        private final ReferenceCache.Snapshot reference;
+        private final Map<Integer, State> helicopters;
+        private long lastDay;
+
+        private Fleet(ReferenceCache.Snapshot reference, Map<Integer, State> helicopters, long lastDay) {
+            this.reference = reference;
+            this.helicopters = helicopters;
+            this.lastDay = lastDay;
+        }
+    }
+
+    private final int windowDays;
+
+    public ResourceForecast(ConnectionHandler connectionHandler, int windowDays) {
+        super(connectionHandler);
+        this.windowDays = windowDays;
+    }
+
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    /** Most urgent first: exhausted, then by depletion date, then helicopters without recent flights. */
+    public List<Forecast> getForecasts() throws SQLException {
+        Fleet fleet = state();
+        List<Forecast> forecasts = new ArrayList<>(fleet.helicopters.size());
+        synchronized (this) {
+            LocalDate last = LocalDate.ofEpochDay(fleet.lastDay);
+            fleet.helicopters.forEach((id, state) -> {
+                double hoursPerDay = state.windowHours / windowDays;
+                double remaining = state.limit - state.flown;
+                LocalDate depletion = null;
+                if (remaining <= 0) {
+                    depletion = last;
+                } else if (hoursPerDay > 0) {
+                    depletion = last.plusDays((long) Math.ceil(remaining / hoursPerDay));
+                }
+                forecasts.add(new Forecast(id, fleet.reference.helicopter(id).seriaNum(), state.limit, state.flown, hoursPerDay, depletion));
+            });
+        }
+        forecasts.sort(Comparator.comparing(Forecast::depletionDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparingDouble(Forecast::remaining));
+        return forecasts;
+    }
+
+    public LocalDate getWindowEnd() throws SQLException {
+        Fleet fleet = state();
+        synchronized (this) {
+            return LocalDate.ofEpochDay(fleet.lastDay);
+        }
+    }
+
+    // Each shard's window ends at its own last flight, which is never after the fleet's, so the days it
+    // reads cover its part of the fleet window; they are added once the fleet's last day is known
+    @Override
+    protected Loaded<Fleet> load(FlightChangeLog changeLog) throws SQLException {
+        ReferenceCache referenceCache = connectionHandler.getReferenceCache();
+        ReferenceCache.Snapshot reference = referenceCache.get();
+        long sequence = changeLog.lastSequence();
+        long[] baseline = newBaseline();
+        String today = LocalDate.now().toString();
+        Map<Integer, State> loaded = new HashMap<>();
+        reference.helicopters().values().forEach(helicopter ->
+                loaded.put(helicopter.id(), new State(helicopter.hoursBeforeRepair(), helicopter.repairDate(), windowDays)));
+
+        record DayHours(int helicopterId, long day, double hours) {
+        }
+        record ShardWindow(Map<Integer, Double> flown, String lastDate, List<DayHours> days) {
+        }
+        List<ShardWindow> windows = scatterWithBaseline(false, baseline, (shard, connection) -> {
+            referenceCache.loadRepairDates(connection, reference);
+            return null;
+        }, (shard, connection) -> {
+            Map<Integer, Double> flown = ReferenceCache.readFlownAfterRepair(connection);
+            String lastDate;
+            try (PreparedStatement statement = connection.prepareStatement(LAST_DATE_SQL)) {
+                statement.setString(1, today);
+                ResultSet resultSet = statement.executeQuery();
+                lastDate = resultSet.next() ? resultSet.getString(1) : null;
+            }
+            List<DayHours> days = new ArrayList<>();
+            if (lastDate != null) {
+                try (PreparedStatement statement = connection.prepareStatement(DAILY_HOURS_SQL)) {
+                    statement.setString(1, LocalDate.parse(lastDate).minusDays(windowDays).toString());
+                    statement.setString(2, lastDate);
+                    ResultSet resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        days.add(new DayHours(resultSet.getInt("helicopter_id"), LocalDate.parse(resultSet.getString("date")).toEpochDay(), resultSet.getDouble("hours")));
+                    }
+                }
+            }
+            return new ShardWindow(flown, lastDate, days);
+        });
+
+        String lastDate = null;
+        for (ShardWindow window : windows) {
+            window.flown().forEach((id, flown) -> loaded.get(id).flown += flown);
+            if (window.lastDate() != null && (lastDate == null || window.lastDate().compareTo(lastDate) > 0)) {
+                lastDate = window.lastDate();
+            }
+        }
+        Fleet fleet = new Fleet(reference, loaded, lastDate == null ? LocalDate.now().toEpochDay() : LocalDate.parse(lastDate).toEpochDay());
+        for (ShardWindow window : windows) {
+            for (DayHours day : window.days()) {
+                State state = loaded.get(day.helicopterId());
+                if (state != null) {
+                    addToWindow(fleet, state, day.day(), day.hours());
+                }
+            }
+        }
+        return new Loaded<>(fleet, sequence, baseline);
+    }
+
+    @Override
+    protected boolean isStale(Fleet fleet) throws SQLException {
+        return fleet.reference.changesResources(connectionHandler.getReferenceCache().get());
+    }
+
+    @Override
+    protected void apply(Fleet fleet, FlightChange change) {
+        apply(fleet, change.before(), -1);
+        apply(fleet, change.after(), 1);
+    }
+
+    private void apply(Fleet fleet, Flight flight, int sign) {
+        if (flight == null) {
+            return;
+        }
+        State state = fleet.helicopters.get(flight.helicopterId());
+        if (state == null) {
+            return;
+        }
+        if (flight.date().compareTo(state.repairDate) >= 0) {
+            state.flown += sign * flight.flightHours();
+        }
+        long day = LocalDate.parse(flight.date()).toEpochDay();
+        if (day > fleet.lastDay && day <= LocalDate.now().toEpochDay()) {
+            slideTo(fleet, day);
+        }
+        addToWindow(fleet, state, day, sign * flight.flightHours());
+        if (sign < 0 && day == fleet.lastDay && lastDayIsEmpty(fleet)) {
+            // the window may end earlier now; only the database knows where
+            reset();
+        }
+    }
+
+    private void addToWindow(Fleet fleet, State state, long day, double hours) {
+        if (day <= fleet.lastDay - windowDays || day > fleet.lastDay) {
+            return;
+        }
+        state.days[(int) Math.floorMod(day, (long) windowDays)] += hours;
+        state.windowHours += hours;
+    }
+
+    private boolean lastDayIsEmpty(Fleet fleet) {
+        int slot = (int) Math.floorMod(fleet.lastDay, (long) windowDays);
+        for (State state : fleet.helicopters.values()) {
+            if (Math.abs(state.days[slot]) > 1e-9) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Clears the slots of the days that fall out of the window, for every helicopter
+    private void slideTo(Fleet fleet, long day) {
+        long shift = Math.min(day - fleet.lastDay, windowDays);
+        for (State state : fleet.helicopters.values()) {
+            for (long d = fleet.lastDay + 1; d <= fleet.lastDay + shift; d++) {
+                int slot = (int) Math.floorMod(d, (long) windowDays);
+                state.windowHours -= state.days[slot];
+                state.days[slot] = 0;
+            }
+        }
+        fleet.lastDay = day;
+    }
+}
@@ -0,0 +1,142 @@
+package flight;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.sqlite.SQLiteConnection;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only copy of the primary database for heavy reports.
+ * <p>
+ * A background job copies the primary with the SQLite online backup API into a temporary file and
+ * atomically swaps it in; pooled replica connections are then evicted so they reopen the new file.
+ * Reports join the copy with the live archive, so a move to the archive {@link #invalidate invalidates} the
+ * replica until a refresh started after the move completes.
+ */
+public class SnapshotReplica implements AutoCloseable {
+    private static final int BACKUP_SLEEP_MILLIS = 20;
+    private static final int BACKUP_BUSY_RETRIES = 50;
+
+    private final ConnectionHandler primary;
+    private final Path replicaPath;
+    private final Duration interval;
+    private final int pagesPerStep;
+    private final int poolSize;
+    private final ScheduledExecutorService scheduler;
+    private volatile HikariDataSource dataSource;
+    private final AtomicLong required = new AtomicLong();
+    private volatile Instant snapshotTime;
+    private volatile long covered;
+
+    public SnapshotReplica(ConnectionHandler primary, Path replicaPath, Duration interval, int pagesPerStep, int poolSize) {
+        this.primary = primary;
+        this.replicaPath = replicaPath.toAbsolutePath();
+        this.interval = interval;
+        this.pagesPerStep = pagesPerStep;
+        this.poolSize = poolSize;
+        if (Files.exists(this.replicaPath) && lastModified().plus(interval).isAfter(Instant.now())) {
+            snapshotTime = lastModified();
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "db-replica-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Starts the periodic refresh; the first one runs at once unless the file on disk is still fresh. */
+    public void start() {
+        long initialDelay = snapshotTime == null ? 0 : interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, initialDelay, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (dataSource == null) {
+            synchronized (this) {
+                if (snapshotTime == null) {
+                    refresh();
+                }
+                if (dataSource == null) {
+                    HikariConfig config = new HikariConfig();
+                    config.setJdbcUrl("jdbc:sqlite:" + replicaPath + "?open_mode=1");
+                    config.setReadOnly(true);
+                    config.setMaximumPoolSize(poolSize);
+                    dataSource = new HikariDataSource(config);
+                }
+            }
+        }
+        return QueryContext.track(dataSource.getConnection());
+    }
+
+    public Optional<Duration> getLag() {
+        Instant taken = snapshotTime;
+        return taken == null ? Optional.empty() : Optional.of(Duration.between(taken, Instant.now()));
+    }
+
+    /** Whether the copy reflects every {@link #invalidate} so far; reports read the primary while it does not. */
+    public boolean isCurrent() {
+        return covered >= required.get();
+    }
+
+    /** Marks the copy as behind the primary and its archive; only a refresh started after this call clears it. */
+    public void invalidate() {
+        required.incrementAndGet();
+    }
+
+    public synchronized void refresh() throws SQLException {
+        long target = required.get();
+        Path tempPath = replicaPath.resolveSibling(replicaPath.getFileName() + ".tmp");
+        Instant started = Instant.now();
+        try (Connection connection = primary.getConnection()) {
+            connection.unwrap(SQLiteConnection.class).getDatabase()
+                    .backup("main", tempPath.toString(), null, BACKUP_SLEEP_MILLIS, BACKUP_BUSY_RETRIES, pagesPerStep);
+        }
+        try {
+            Files.move(tempPath, replicaPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new SQLException("Can't replace replica " + replicaPath, e);
+        }
+        snapshotTime = started;
+        covered = target;
+        if (dataSource != null) {
+            dataSource.getHikariPoolMXBean().softEvictConnections();
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private Instant lastModified() {
+        try {
+            return Files.getLastModifiedTime(replicaPath).toInstant();
+        } catch (IOException e) {
+            return Instant.EPOCH;
+        }
+    }
+}
@@ -0,0 +1,815 @@
+package flight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link FlightStore} over the SQLite shards, archives and report replica of a {@link ConnectionHandler}.
+ */
+public class SqliteFlightStore implements FlightStore {
+    private static final String SELECTED_FLIGHTS_TABLE = "temp.selected_flight_ids";
+    private static final String BULK_FLIGHTS_TABLE = "temp.bulk_flight_ids";
+    private static final String BULK_HELICOPTERS_TABLE = "temp.bulk_helicopter_ids";
+    private static final String FLIGHT_COLUMNS = "id, date, helicopter_id, code, goods_weight, passangers, flight_hours, price";
+    // helicopter ids and repair dates come from the reference cache through its temp table
+    private static final String BULK_RESOURCE_SQL = """
+            SELECT r.id, COALESCE(SUM(f.flight_hours), 0.0) as flown_after_repair
+            FROM %s r
+            LEFT JOIN flight f ON f.helicopter_id = r.id AND f.date >= r.repair_date
+            WHERE r.id IN (SELECT id FROM %s)
+            GROUP BY r.id;
+            """.formatted(ReferenceCache.REPAIR_TABLE, BULK_HELICOPTERS_TABLE);
+    private record ShardValue(int shard, HelicopterValue value) {
+    }
+
+    @FunctionalInterface
+    private interface BulkStep {
+        // false rolls back every shard
+        boolean run(int shard, Connection connection) throws SQLException;
+    }
+
+    private final ConnectionHandler connectionHandler;
+
+    public SqliteFlightStore(ConnectionHandler connectionHandler) {
+        this.connectionHandler = connectionHandler;
+    }
+
+    @Override
+    public List<Resource> getResources() throws SQLException {
+        return readResources(true);
+    }
+
+    @Override
+    public List<Resource> getCurrentResources() throws SQLException {
+        return readResources(false);
+    }
+
+    private List<Resource> readResources(boolean fromReplica) throws SQLException {
+        ReferenceCache referenceCache = connectionHandler.getReferenceCache();
+        ReferenceCache.Snapshot reference = referenceCache.get();
+        Map<Integer, Double> flown = new HashMap<>();
+        ConnectionHandler.ShardTask<Map<Integer, Double>> task = (shard, connection) -> {
+            referenceCache.loadRepairDates(connection, reference);
+            return ReferenceCache.readFlownAfterRepair(connection);
+        };
+        for (Map<Integer, Double> partial : fromReplica ? connectionHandler.scatterReport(task) : connectionHandler.scatter(task)) {
+            partial.forEach((id, hours) -> flown.merge(id, hours, Double::sum));
+        }
+
+        List<Resource> resources = new ArrayList<>(reference.helicopters().size());
+        for (ReferenceCache.HelicopterRef helicopter : reference.helicopters().values()) {
+            resources.add(toResource(helicopter, flown.getOrDefault(helicopter.id(), 0.0)));
+        }
+        resources.sort(Comparator.comparing(Resource::seriaNum));
+        return resources;
+    }
+
+    @Override
+    public Optional<Resource> getResource(int helicopterId) throws SQLException {
+        ReferenceCache.HelicopterRef helicopter = connectionHandler.getReferenceCache().get().helicopter(helicopterId);
+        if (helicopter == null) {
+            return Optional.empty();
+        }
+        try (Connection connection = connectionHandler.getShardConnection(connectionHandler.shardOf(helicopterId))) {
+            return Optional.of(readResource(connection, helicopter));
+        }
+    }
+
+    @Override
+    public Optional<Helicopter> getHelicopter(int helicopterId) throws SQLException {
+        ReferenceCache.HelicopterRef helicopter = connectionHandler.getReferenceCache().get().helicopter(helicopterId);
+        return helicopter == null ? Optional.empty() : Optional.of(new Helicopter(helicopter.id(), helicopter.seriaNum(), helicopter.mark()));
+    }
+
+    @Override
+    public List<CrewMember> getCrew(int helicopterId) throws SQLException {
+        return connectionHandler.getReferenceCache().get().crew(helicopterId).stream()
+                .map(pilot -> new CrewMember(pilot.tabelNum(), pilot.lastName(), pilot.position()))
+                .toList();
+    }
+
+    @Override
+    public OptionalInt getPilotHelicopter(int pilotId) throws SQLException {
+        ReferenceCache.PilotRef pilot = connectionHandler.getReferenceCache().get().pilot(pilotId);
+        return pilot == null ? OptionalInt.empty() : OptionalInt.of(pilot.helicopterId());
+    }
+
+    @Override
+    public List<Flight> getFlights(int helicopterId, String startDate, String endDate) throws SQLException {
+        final String sql = """
+                SELECT %s
+                FROM %s f
+                WHERE f.helicopter_id = ? AND f.date >= ? AND f.date <= ?
+                ORDER BY f.date, f.id;
+                """;
+        int shard = connectionHandler.shardOf(helicopterId);
+        try (Connection connection = connectionHandler.getShardConnection(shard);
+             PreparedStatement statement = connection.prepareStatement(sql.formatted(FLIGHT_COLUMNS, flightsFrom(shard, connection, startDate)))) {
+            statement.setInt(1, helicopterId);
+            statement.setString(2, startDate == null ? "" : startDate);
+            statement.setString(3, endDate == null ? "9999-12-31" : endDate);
+            ResultSet rs = statement.executeQuery();
+            List<Flight> flights = new ArrayList<>();
+            while (rs.next()) {
+                flights.add(readFlight(rs));
+            }
+            return flights;
+        }
+    }
+
+    @Override
+    public HelicopterTotals getHelicopterTotals(int helicopterId) throws SQLException {
+        final String sql = """
+                SELECT COUNT(f.id) as flights, COALESCE(SUM(f.passangers), 0) as passengers,
+                       COALESCE(SUM(f.goods_weight), 0.0) as goods_weight, COALESCE(SUM(f.price), 0.0) as earned
+                FROM %s f
+                WHERE f.helicopter_id = ?;
+                """;
+        int shard = connectionHandler.shardOf(helicopterId);
+        try (Connection connection = connectionHandler.getShardConnection(shard);
+             PreparedStatement statement = connection.prepareStatement(sql.formatted(flightsFrom(shard, connection, null)))) {
+            statement.setInt(1, helicopterId);
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return new HelicopterTotals(rs.getInt("flights"), rs.getLong("passengers"), rs.getDouble("goods_weight"), rs.getDouble("earned"));
+        }
+    }
+
+    // Archiving only moves flights older than the repair date, so the hours since repair can be summed from the same rows
+    @Override
+    public Optional<HelicopterSummary> getHelicopterSummary(int helicopterId) throws SQLException {
+        ReferenceCache.HelicopterRef helicopter = connectionHandler.getReferenceCache().get().helicopter(helicopterId);
+        if (helicopter == null) {
+            return Optional.empty();
+        }
+        List<Flight> flights = getFlights(helicopterId, null, null);
+        double flownAfterRepair = 0;
+        long passengers = 0;
+        double goodsWeight = 0;
+        double earned = 0;
+        for (Flight flight : flights) {
+            if (flight.date().compareTo(helicopter.repairDate()) >= 0) {
+                flownAfterRepair += flight.flightHours();
+            }
+            passengers += flight.passengers();
+            goodsWeight += flight.goodsWeight();
+            earned += flight.price();
+        }
+        return Optional.of(new HelicopterSummary(toResource(helicopter, flownAfterRepair), flights,
+                new HelicopterTotals(flights.size(), passengers, goodsWeight, earned)));
+    }
+
+    @Override
+    public FlightTotals sumFlightsByCode(String code) throws SQLException {
+        final String sql = """
+                SELECT
+                   COUNT(f.id) as total_flights,
+                   COALESCE(SUM(f.goods_weight), 0.0) as total_goods_weight,
+                   COALESCE(SUM(f.price), 0.0) as total_money_earned
+                FROM %s f
+                WHERE f.code = ?;
+                """;
+        List<FlightTotals> partials = connectionHandler.scatterReport((shard, connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql.formatted(flightsFrom(shard, connection, null)))) {
+                statement.setString(1, code);
+                ResultSet rs = statement.executeQuery();
+                rs.next();
+                return new FlightTotals(rs.getInt("total_flights"), rs.getDouble("total_goods_weight"), rs.getDouble("total_money_earned"));
+            }
+        });
+        return partials.stream().reduce(new FlightTotals(0, 0, 0), FlightTotals::plus);
+    }
+
+    @Override
+    public Optional<HelicopterValue> findHelicopterWithMaxFlights() throws SQLException {
+        return findTopHelicopter("""
+                SELECT helicopter_id, COUNT(id) as flight_count
+                FROM %s
+                GROUP BY helicopter_id
+                ORDER BY flight_count DESC, helicopter_id
+                LIMIT 1;
+                """);
+    }
+
+    @Override
+    public Optional<HelicopterValue> findHelicopterWithMaxEarnings() throws SQLException {
+        return findTopHelicopter("""
+                SELECT f.helicopter_id, SUM(f.price) as total_earnings
+                FROM %s f
+                GROUP BY f.helicopter_id
+                ORDER BY total_earnings DESC, f.helicopter_id
+                LIMIT 1;
+                """);
+    }
+
+    @Override
+    public Map<Integer, Double> getEarningsByHelicopter(String startDate, String endDate) throws SQLException {
+        final String sql = """
+                SELECT helicopter_id, SUM(price) as earnings
+                FROM %s
+                WHERE date BETWEEN ? AND ?
+                GROUP BY helicopter_id;
+                """;
+        List<Map<Integer, Double>> partials = connectionHandler.scatterReport((shard, connection) -> {
+            Map<Integer, Double> earnings = new LinkedHashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(sql.formatted(flightsFrom(shard, connection, startDate)))) {
+                statement.setString(1, startDate);
+                statement.setString(2, endDate);
+                ResultSet rs = statement.executeQuery();
+                while (rs.next()) {
+                    earnings.put(rs.getInt("helicopter_id"), rs.getDouble("earnings"));
+                }
+            }
+            return earnings;
+        });
+
+        Map<Integer, Double> earnings = new TreeMap<>();
+        partials.forEach(earnings::putAll);
+        return earnings;
+    }
+
+    // One grouping pass and one window pass per shard; months without flights come from the calendar CTE
+    @Override
+    public List<MonthlyTotals> getMonthlyTotals(String startDate, String endDate) throws SQLException {
+        final String sql = """
+                WITH RECURSIVE months(month) AS (
+                    SELECT substr(?, 1, 7)
+                    UNION ALL
+                    SELECT strftime('%%Y-%%m', month || '-01', '+1 month') FROM months WHERE month < substr(?, 1, 7)
+                ),
+                totals AS (
+                    SELECT helicopter_id, substr(date, 1, 7) as month, COUNT(*) as flights, SUM(flight_hours) as hours, SUM(price) as earnings
+                    FROM %s
+                    WHERE date BETWEEN ? AND ?
+                    GROUP BY helicopter_id, month
+                ),
+                grid AS (
+                    SELECT h.helicopter_id, m.month FROM (SELECT DISTINCT helicopter_id FROM totals) h CROSS JOIN months m
+                )
+                SELECT g.helicopter_id, g.month, COALESCE(t.flights, 0) as flights, COALESCE(t.hours, 0.0) as hours,
+                       COALESCE(t.earnings, 0.0) as earnings,
+                       COALESCE(t.earnings, 0.0) - LAG(COALESCE(t.earnings, 0.0)) OVER (PARTITION BY g.helicopter_id ORDER BY g.month) as earnings_change
+                FROM grid g
+                LEFT JOIN totals t ON t.helicopter_id = g.helicopter_id AND t.month = g.month
+                ORDER BY g.helicopter_id, g.month;
+                """;
+        List<List<MonthlyTotals>> partials = connectionHandler.scatterReport((shard, connection) -> {
+            List<MonthlyTotals> rows = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(sql.formatted(flightsFrom(shard, connection, startDate)))) {
+                statement.setString(1, startDate);
+                statement.setString(2, endDate);
+                statement.setString(3, startDate);
+                statement.setString(4, endDate);
+                ResultSet rs = statement.executeQuery();
+                while (rs.next()) {
+                    double change = rs.getDouble("earnings_change");
+                    Double earningsChange = rs.wasNull() ? null : change;
+                    rows.add(new MonthlyTotals(rs.getInt("helicopter_id"), rs.getString("month"), rs.getInt("flights"), rs.getDouble("hours"),
+                            rs.getDouble("earnings"), earningsChange));
+                }
+            }
+            return rows;
+        });
+
+        // every helicopter lives on one shard, so merging is only a matter of order
+        List<MonthlyTotals> totals = new ArrayList<>();
+        partials.forEach(totals::addAll);
+        if (partials.size() > 1) {
+            totals.sort(Comparator.comparingInt(MonthlyTotals::helicopterId).thenComparing(MonthlyTotals::month));
+        }
+        return totals;
+    }
+
+    @Override
+    public OptionalDouble sumEarnings(int helicopterId, String startDate, String endDate, String code, int[] flightIds) throws SQLException {
+        int shard = connectionHandler.shardOf(helicopterId);
+        try (Connection connection = connectionHandler.getShardConnection(shard)) {
+            StringBuilder sql = new StringBuilder("SELECT SUM(f.price) FROM " + flightsFrom(shard, connection, startDate) + " f ");
+            if (flightIds != null) {
+                sql.append("JOIN ").append(SELECTED_FLIGHTS_TABLE).append(" s ON s.id = f.id ");
+            }
+            sql.append("WHERE f.helicopter_id = ? AND f.date BETWEEN ? AND ?");
+            if (code != null) {
+                sql.append(" AND f.code = ?");
+            }
+
+            if (flightIds != null) {
+                TempIds.load(connection, SELECTED_FLIGHTS_TABLE, flightIds);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(sql.append(";").toString())) {
+                statement.setInt(1, helicopterId);
+                statement.setString(2, startDate);
+                statement.setString(3, endDate);
+                if (code != null) {
+                    statement.setString(4, code);
+                }
+                ResultSet rs = statement.executeQuery();
+                rs.next();
+                double earnings = rs.getDouble(1);
+                return rs.wasNull() ? OptionalDouble.empty() : OptionalDouble.of(earnings);
+            } finally {
+                if (flightIds != null) {
+                    TempIds.clear(connection, SELECTED_FLIGHTS_TABLE);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<Flight> getFlight(int flightId) throws SQLException {
+        int shard = locateFlightShard(flightId);
+        if (shard < 0) {
+            return Optional.empty();
+        }
+        try (Connection connection = connectionHandler.getShardConnection(shard)) {
+            return readFlight(connection, flightId);
+        }
+    }
+
+    @Override
+    public AddResult addFlight(Flight flight) throws SQLException {
+        int shard = connectionHandler.shardOf(flight.helicopterId());
+        final String insertSql = "INSERT INTO flight (" + FLIGHT_COLUMNS + ") VALUES (" +
+                connectionHandler.flightIdExpression(shard) + ", ?, ?, ?, ?, ?, ?, ?);";
+
+        try (Connection connection = connectionHandler.getShardConnection(shard)) {
+            connection.setAutoCommit(false);
+            try {
+                ReferenceCache.HelicopterRef helicopter = connectionHandler.getReferenceCache().get().helicopter(flight.helicopterId());
+                Optional<Resource> resource = helicopter == null ? Optional.empty() : Optional.of(readResource(connection, helicopter));
+                if (resource.isEmpty() || resource.get().flownAfterRepair() + flight.flightHours() > resource.get().limit()) {
+                    connection.rollback();
+                    return new AddResult(resource, null);
+                }
+
+                try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+                    bindFlight(statement, flight);
+                    statement.executeUpdate();
+                }
+                Flight added = readFlight(connection, lastInsertId(connection)).orElseThrow();
+                connection.commit();
+                return new AddResult(resource, added);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Flight> updateFlight(int flightId, UnaryOperator<Flight> change) throws SQLException {
+        int shard = locateFlightShard(flightId);
+        if (shard < 0) {
+            return Optional.empty();
+        }
+
+        final String updateSql = """
+                UPDATE flight SET date = ?, helicopter_id = ?, code = ?, goods_weight = ?, passangers = ?, flight_hours = ?, price = ?
+                WHERE id = ?;
+                """;
+        try (Connection connection = connectionHandler.getShardConnection(shard)) {
+            connection.setAutoCommit(false);
+            try {
+                Optional<Flight> before = readFlight(connection, flightId);
+                if (before.isEmpty()) {
+                    connection.rollback();
+                    return before;
+                }
+                Flight after = change.apply(before.get());
+                int targetShard = connectionHandler.shardOf(after.helicopterId());
+                if (targetShard != shard) {
+                    moveFlight(connection, targetShard, flightId, after);
+                    return before;
+                }
+                try (PreparedStatement statement = connection.prepareStatement(updateSql)) {
+                    bindFlight(statement, after);
+                    statement.setInt(8, flightId);
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                return before;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Flight> deleteFlight(int flightId) throws SQLException {
+        int shard = locateFlightShard(flightId);
+        if (shard < 0) {
+            return Optional.empty();
+        }
+        try (Connection connection = connectionHandler.getShardConnection(shard);
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM flight WHERE id = ?;")) {
+            connection.setAutoCommit(false);
+            try {
+                Optional<Flight> before = readFlight(connection, flightId);
+                statement.setInt(1, flightId);
+                statement.executeUpdate();
+                connection.commit();
+                return before;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public int countFlights(FlightFilter filter) throws SQLException {
+        List<Integer> counts = connectionHandler.scatter((shard, connection) -> {
+            if (filter.helicopterId() != null && connectionHandler.shardOf(filter.helicopterId()) != shard) {
+                return 0;
+            }
+            if (filter.flightIds() != null) {
+                TempIds.load(connection, SELECTED_FLIGHTS_TABLE, filter.flightIds());
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM flight WHERE " + filterClause(filter) + ";")) {
+                bindFilter(statement, filter);
+                ResultSet rs = statement.executeQuery();
+                rs.next();
+                return rs.getInt(1);
+            } finally {
+                if (filter.flightIds() != null) {
+                    TempIds.clear(connection, SELECTED_FLIGHTS_TABLE);
+                }
+            }
+        });
+        return counts.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Override
+    public BulkResult bulkUpdateFlights(FlightFilter filter, FlightPatch patch) throws SQLException {
+        List<Flight> before = new ArrayList<>();
+        List<Flight> after = new ArrayList<>();
+        List<Resource> exceeded = new ArrayList<>();
+        ReferenceCache referenceCache = connectionHandler.getReferenceCache();
+        ReferenceCache.Snapshot reference = referenceCache.get();
+        ConnectionHandler.ShardTask<Void> loadRepairDates = (shard, connection) -> {
+            referenceCache.loadRepairDates(connection, reference);
+            return null;
+        };
+        inShardTransactions(filter, loadRepairDates, (shard, connection) -> {
+            List<Flight> selected = selectBulkFlights(connection, filter);
+            if (selected.isEmpty()) {
+                return true;
+            }
+            if (patch.helicopterId() != null && connectionHandler.shardOf(patch.helicopterId()) != shard) {
+                throw new SQLException("Массовый перенос рейсов в вертолет из другого шарда не поддерживается");
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + BULK_HELICOPTERS_TABLE + " (id INTEGER PRIMARY KEY);");
+                statement.execute("DELETE FROM " + BULK_HELICOPTERS_TABLE + ";");
+                statement.execute("INSERT INTO " + BULK_HELICOPTERS_TABLE + " SELECT DISTINCT helicopter_id FROM flight WHERE id IN (SELECT id FROM " + BULK_FLIGHTS_TABLE + ");");
+                if (patch.helicopterId() != null) {
+                    statement.execute("INSERT OR IGNORE INTO " + BULK_HELICOPTERS_TABLE + " VALUES (" + patch.helicopterId() + ");");
+                }
+            }
+            Map<Integer, Resource> resourcesBefore = readBulkResources(connection, reference);
+            executeBulkUpdate(connection, patch);
+            for (Resource resource : readBulkResources(connection, reference).values()) {
+                Resource previous = resourcesBefore.get(resource.helicopterId());
+                if (resource.remaining() < 0 && resource.flownAfterRepair() > previous.flownAfterRepair()) {
+                    exceeded.add(resource);
+                }
+            }
+            before.addAll(selected);
+            after.addAll(readBulkFlights(connection));
+            return exceeded.isEmpty();
+        });
+        if (!exceeded.isEmpty()) {
+            return new BulkResult(List.of(), List.of(), exceeded);
+        }
+        before.sort(Comparator.comparingInt(Flight::id));
+        after.sort(Comparator.comparingInt(Flight::id));
+        return new BulkResult(before, after, List.of());
+    }
+
+    @Override
+    public List<Flight> bulkDeleteFlights(FlightFilter filter) throws SQLException {
+        List<Flight> deleted = new ArrayList<>();
+        inShardTransactions(filter, (shard, connection) -> {
+            deleted.addAll(selectBulkFlights(connection, filter));
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM flight WHERE id IN (SELECT id FROM " + BULK_FLIGHTS_TABLE + ");");
+            }
+            return true;
+        });
+        deleted.sort(Comparator.comparingInt(Flight::id));
+        return deleted;
+    }
+
+    @Override
+    public int archiveFlightsBefore(String beforeDate) throws SQLException {
+        int chunkSize = Integer.parseInt(connectionHandler.getProperty("db.archive_chunk_size"));
+        ReferenceCache referenceCache = connectionHandler.getReferenceCache();
+        ReferenceCache.Snapshot reference = referenceCache.get();
+        List<Integer> moved = connectionHandler.scatterArchiving((shard, connection) -> {
+            referenceCache.loadRepairDates(connection, reference);
+            return connectionHandler.getArchive(shard).archiveBefore(connection, beforeDate, chunkSize);
+        });
+        return moved.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private String flightsFrom(int shard, Connection connection, String startDate) throws SQLException {
+        return connectionHandler.getArchive(shard).flightsFrom(connection, startDate);
+    }
+
+    // Рейсы вертолета хранятся целиком в одном шарде, поэтому достаточно сравнить лидеров шардов
+    private Optional<HelicopterValue> findTopHelicopter(String sql) throws SQLException {
+        List<ShardValue> partials = connectionHandler.scatterReport((shard, connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql.formatted(flightsFrom(shard, connection, null)))) {
+                ResultSet rs = statement.executeQuery();
+                return rs.next() ? new ShardValue(shard, new HelicopterValue(rs.getInt(1), rs.getDouble(2))) : null;
+            }
+        });
+        HelicopterValue top = null;
+        for (ShardValue partial : partials) {
+            if (partial == null) {
+                continue;
+            }
+            HelicopterValue value = partial.value();
+            if (top == null || value.value() > top.value() || (value.value() == top.value() && value.helicopterId() < top.helicopterId())) {
+                top = value;
+            }
+        }
+        return Optional.ofNullable(top);
+    }
+
+    private int locateFlightShard(int flightId) throws SQLException {
+        if (connectionHandler.getShardCount() == 1) {
+            return 0;
+        }
+        List<Boolean> found = connectionHandler.scatter((shard, connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM flight WHERE id = ?;")) {
+                statement.setInt(1, flightId);
+                return statement.executeQuery().next();
+            }
+        });
+        return found.indexOf(true);
+    }
+
+    private Resource readResource(Connection connection, ReferenceCache.HelicopterRef helicopter) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COALESCE(SUM(flight_hours), 0.0) FROM flight WHERE helicopter_id = ? AND date >= ?;")) {
+            statement.setInt(1, helicopter.id());
+            statement.setString(2, helicopter.repairDate());
+            ResultSet rs = statement.executeQuery();
+            rs.next();
+            return toResource(helicopter, rs.getDouble(1));
+        }
+    }
+
+    private static Resource toResource(ReferenceCache.HelicopterRef helicopter, double flownAfterRepair) {
+        return new Resource(helicopter.id(), helicopter.seriaNum(), helicopter.hoursBeforeRepair(), helicopter.repairDate(), flownAfterRepair);
+    }
+
+    private Optional<Flight> readFlight(Connection connection, int flightId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + FLIGHT_COLUMNS + " FROM flight WHERE id = ?;")) {
+            statement.setInt(1, flightId);
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? Optional.of(readFlight(rs)) : Optional.empty();
+        }
+    }
+
+    private Flight readFlight(ResultSet rs) throws SQLException {
+        return new Flight(rs.getInt("id"), rs.getString("date"), rs.getInt("helicopter_id"), rs.getString("code"),
+                rs.getDouble("goods_weight"), rs.getInt("passangers"), rs.getDouble("flight_hours"), rs.getDouble("price"));
+    }
+
+    private void bindFlight(PreparedStatement statement, Flight flight) throws SQLException {
+        statement.setString(1, flight.date());
+        statement.setInt(2, flight.helicopterId());
+        statement.setString(3, flight.code());
+        statement.setDouble(4, flight.goodsWeight());
+        statement.setInt(5, flight.passengers());
+        statement.setDouble(6, flight.flightHours());
+        statement.setDouble(7, flight.price());
+    }
+
+    private int lastInsertId(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT last_insert_rowid();")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Рейс, переписанный на вертолет из другого шарда, переносится туда с тем же ID
+    // Вставка в целевой шард и удаление из исходного идут в двух открытых транзакциях; если исходный шард не
+    // смог зафиксировать удаление, копия убирается из целевого, чтобы рейс не оказался в обоих
+    private void moveFlight(Connection source, int targetShard, int flightId, Flight flight) throws SQLException {
+        final String insertSql = """
+                INSERT INTO flight (date, helicopter_id, code, goods_weight, passangers, flight_hours, price, id)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?);
+                """;
+        try (Connection target = connectionHandler.getShardConnection(targetShard)) {
+            target.setAutoCommit(false);
+            try {
+                try (PreparedStatement insert = target.prepareStatement(insertSql)) {
+                    bindFlight(insert, flight);
+                    insert.setInt(8, flightId);
+                    insert.executeUpdate();
+                }
+                try (PreparedStatement delete = source.prepareStatement("DELETE FROM flight WHERE id = ?;")) {
+                    delete.setInt(1, flightId);
+                    delete.executeUpdate();
+                }
+                target.commit();
+            } catch (SQLException e) {
+                target.rollback();
+                throw e;
+            } finally {
+                target.setAutoCommit(true);
+            }
+
+            try {
+                source.commit();
+            } catch (SQLException e) {
+                try (PreparedStatement undo = target.prepareStatement("DELETE FROM flight WHERE id = ?;")) {
+                    undo.setInt(1, flightId);
+                    undo.executeUpdate();
+                } catch (SQLException undoFailure) {
+                    e.addSuppressed(undoFailure);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void inShardTransactions(FlightFilter filter, BulkStep step) throws SQLException {
+        inShardTransactions(filter, (shard, connection) -> null, step);
+    }
+
+    // Все шарды держат транзакцию открытой до конца, чтобы откатить изменения целиком;
+    // prepare выполняется до начала транзакции шарда
+    private void inShardTransactions(FlightFilter filter, ConnectionHandler.ShardTask<?> prepare, BulkStep step) throws SQLException {
+        List<Connection> connections = new ArrayList<>();
+        boolean commit = false;
+        try {
+            for (int shard = 0; shard < connectionHandler.getShardCount(); shard++) {
+                if (filter.helicopterId() != null && connectionHandler.shardOf(filter.helicopterId()) != shard) {
+                    continue;
+                }
+                Connection connection = connectionHandler.getShardConnection(shard);
+                connections.add(connection);
+                if (filter.flightIds() != null) {
+                    TempIds.load(connection, SELECTED_FLIGHTS_TABLE, filter.flightIds());
+                }
+                prepare.run(shard, connection);
+                connection.setAutoCommit(false);
+                if (!step.run(shard, connection)) {
+                    return;
+                }
+            }
+            commit = true;
+        } finally {
+            SQLException failure = null;
+            for (Connection connection : connections) {
+                try {
+                    if (!connection.getAutoCommit()) {
+                        if (commit) {
+                            connection.commit();
+                        } else {
+                            connection.rollback();
+                        }
+                        connection.setAutoCommit(true);
+                    }
+                    if (filter.flightIds() != null) {
+                        TempIds.clear(connection, SELECTED_FLIGHTS_TABLE);
+                    }
+                } catch (SQLException e) {
+                    failure = failure == null ? e : failure;
+                } finally {
+                    connection.close();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private List<Flight> selectBulkFlights(Connection connection, FlightFilter filter) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + BULK_FLIGHTS_TABLE + " (id INTEGER PRIMARY KEY);");
+            statement.execute("DELETE FROM " + BULK_FLIGHTS_TABLE + ";");
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + BULK_FLIGHTS_TABLE + " SELECT id FROM flight WHERE " + filterClause(filter) + ";")) {
+            bindFilter(statement, filter);
+            statement.executeUpdate();
+        }
+        return readBulkFlights(connection);
+    }
+
+    private List<Flight> readBulkFlights(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT " + FLIGHT_COLUMNS + " FROM flight WHERE id IN (SELECT id FROM " + BULK_FLIGHTS_TABLE + ") ORDER BY id;");
+            List<Flight> flights = new ArrayList<>();
+            while (rs.next()) {
+                flights.add(readFlight(rs));
+            }
+            return flights;
+        }
+    }
+
+    private Map<Integer, Resource> readBulkResources(Connection connection, ReferenceCache.Snapshot reference) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery(BULK_RESOURCE_SQL);
+            Map<Integer, Resource> resources = new HashMap<>();
+            while (rs.next()) {
+                Resource resource = toResource(reference.helicopter(rs.getInt("id")), rs.getDouble("flown_after_repair"));
+                resources.put(resource.helicopterId(), resource);
+            }
+            return resources;
+        }
+    }
+
+    private void executeBulkUpdate(Connection connection, FlightPatch patch) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        addAssignment(columns, values, "date", patch.date());
+        addAssignment(columns, values, "helicopter_id", patch.helicopterId());
+        addAssignment(columns, values, "code", patch.code());
+        addAssignment(columns, values, "goods_weight", patch.goodsWeight());
+        addAssignment(columns, values, "passangers", patch.passengers());
+        addAssignment(columns, values, "flight_hours", patch.flightHours());
+        addAssignment(columns, values, "price", patch.price());
+        if (columns.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE flight SET " + String.join(", ", columns) +
+                " WHERE id IN (SELECT id FROM " + BULK_FLIGHTS_TABLE + ");")) {
+            for (int i = 0; i < values.size(); i++) {
+                statement.setObject(i + 1, values.get(i));
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static void addAssignment(List<String> columns, List<Object> values, String column, Object value) {
+        if (value != null) {
+            columns.add(column + " = ?");
+            values.add(value);
+        }
+    }
+
+    private static String filterClause(FlightFilter filter) {
+        StringBuilder clause = new StringBuilder("1 = 1");
+        if (filter.flightIds() != null) {
+            clause.append(" AND id IN (SELECT id FROM ").append(SELECTED_FLIGHTS_TABLE).append(")");
+        }
+        if (filter.helicopterId() != null) {
+            clause.append(" AND helicopter_id = ?");
+        }
+        if (filter.startDate() != null) {
+            clause.append(" AND date >= ?");
+        }
+        if (filter.endDate() != null) {
+            clause.append(" AND date <= ?");
+        }
+        if (filter.code() != null) {
+            clause.append(" AND code = ?");
+        }
+        return clause.toString();
+    }
+
+    private static void bindFilter(PreparedStatement statement, FlightFilter filter) throws SQLException {
+        int index = 1;
+        if (filter.helicopterId() != null) {
+            statement.setInt(index++, filter.helicopterId());
+        }
+        if (filter.startDate() != null) {
+            statement.setString(index++, filter.startDate());
+        }
+        if (filter.endDate() != null) {
+            statement.setString(index++, filter.endDate());
+        }
+        if (filter.code() != null) {
+            statement.setString(index, filter.code());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package flight;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Writes report rows straight into a reused char buffer and hands it to {@link ConsoleManager#printRow}.
+ * <p>
+ * Columns have a fixed width (at least the header's): text is left-aligned, numbers right-aligned,
+ * and longer values simply widen their row. Numbers are written digit by digit with a fixed
+ * precision, so a row costs no boxing, no {@link java.util.Formatter} and no intermediate strings
+ * (except for values that sit on a rounding tie).
+ */
+public final class TableRenderer {
+    private static final ThreadLocal<char[]> BUFFERS = ThreadLocal.withInitial(() -> new char[256]);
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    private final ConsoleManager consoleManager;
+    private final String separator;
+    private String[] headers = new String[0];
+    private int[] widths = new int[0];
+    private char[] buffer;
+    private int length;
+    private int column;
+
+    public TableRenderer(ConsoleManager consoleManager, String separator) {
+        this.consoleManager = consoleManager;
+        this.separator = separator;
+        this.buffer = BUFFERS.get();
+    }
+
+    public TableRenderer column(String header, int width) {
+        headers = Arrays.copyOf(headers, headers.length + 1);
+        widths = Arrays.copyOf(widths, widths.length + 1);
+        headers[headers.length - 1] = header;
+        widths[widths.length - 1] = Math.max(width, header.length());
+        return this;
+    }
+
+    public TableRenderer printHeader() {
+        for (String header : headers) {
+            text(header);
+        }
+        return endRow();
+    }
+
+    public TableRenderer text(CharSequence value) {
+        int start = beginCell();
+        String chars = value == null ? "-" : value.toString();
+        ensure(chars.length());
+        chars.getChars(0, chars.length(), buffer, length);
+        length += chars.length();
+        padRight(start);
+        return this;
+    }
+
+    public TableRenderer number(long value) {
+        int start = beginCell();
+        int digits = writeLong(value);
+        alignRight(start, digits);
+        return this;
+    }
+
+    public TableRenderer decimal(double value) {
+        return decimal(value, 2);
+    }
+
+    /** Rounds half up to {@code precision} (at most 6) digits after the point. */
+    public TableRenderer decimal(double value, int precision) {
+        int start = beginCell();
+        int written;
+        double scaled = Math.abs(value) * POWERS_OF_TEN[precision];
+        if (Double.isNaN(value) || Double.isInfinite(value) || scaled >= Long.MAX_VALUE) {
+            String chars = Double.toString(value);
+            ensure(chars.length());
+            chars.getChars(0, chars.length(), buffer, length);
+            length += chars.length();
+            written = chars.length();
+        } else {
+            long units = Math.round(scaled);
+            if (Math.abs(scaled - Math.floor(scaled) - 0.5) < 1e-6) {
+                // near a tie the binary product misleads (1.005 * 100 < 100.5), so round the shortest decimal form like Formatter does
+                units = new BigDecimal(Double.toString(Math.abs(value))).setScale(precision, RoundingMode.HALF_UP).unscaledValue().longValue();
+            }
+            int from = length;
+            if (value < 0 && units != 0) {
+                ensure(1);
+                buffer[length++] = '-';
+            }
+            writeLong(units / POWERS_OF_TEN[precision]);
+            if (precision > 0) {
+                ensure(precision + 1);
+                buffer[length++] = '.';
+                long fraction = units % POWERS_OF_TEN[precision];
+                for (int i = precision - 1; i >= 0; i--) {
+                    buffer[length + i] = (char) ('0' + fraction % 10);
+                    fraction /= 10;
+                }
+                length += precision;
+            }
+            written = length - from;
+        }
+        alignRight(start, written);
+        return this;
+    }
+
+    public TableRenderer endRow() {
+        consoleManager.printRow(buffer, length);
+        length = 0;
+        column = 0;
+        return this;
+    }
+
+    private int beginCell() {
+        if (column > 0) {
+            ensure(separator.length());
+            separator.getChars(0, separator.length(), buffer, length);
+            length += separator.length();
+        }
+        return length;
+    }
+
+    private int width() {
+        return column < widths.length ? widths[column] : 0;
+    }
+
+    // The last column is not padded, so rows carry no trailing spaces
+    private void padRight(int start) {
+        int pad = column < widths.length - 1 ? width() - (length - start) : 0;
+        if (pad > 0) {
+            ensure(pad);
+            Arrays.fill(buffer, length, length + pad, ' ');
+            length += pad;
+        }
+        column++;
+    }
+
+    private void alignRight(int start, int written) {
+        int pad = width() - written;
+        if (pad > 0) {
+            ensure(pad);
+            System.arraycopy(buffer, start, buffer, start + pad, written);
+            Arrays.fill(buffer, start, start + pad, ' ');
+            length += pad;
+        }
+        column++;
+    }
+
+    private int writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            String chars = Long.toString(value);
+            ensure(chars.length());
+            chars.getChars(0, chars.length(), buffer, length);
+            length += chars.length();
+            return chars.length();
+        }
+        int from = length;
+        if (value < 0) {
+            ensure(1);
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[length + i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return length - from;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            BUFFERS.set(buffer);
+        }
+    }
+}
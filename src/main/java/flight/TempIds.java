@@ -0,0 +1,49 @@
+package flight;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Id lists handed to SQL through a temp table of the connection: {@code IN (?,?,...)} runs into SQLite's
+ * host parameter limit and is prepared anew for every list length.
+ */
+final class TempIds {
+    private static final int BATCH_SIZE = 1000;
+
+    private TempIds() {
+    }
+
+    /** Replaces the contents of {@code table}, created as {@code (id INTEGER PRIMARY KEY)} if missing, with {@code ids}. */
+    static void load(Connection connection, String table, int[] ids) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + table + " (id INTEGER PRIMARY KEY);");
+            statement.execute("DELETE FROM " + table + ";");
+        }
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement insertStmt = connection.prepareStatement("INSERT OR IGNORE INTO " + table + " (id) VALUES (?);")) {
+            for (int i = 0; i < ids.length; i++) {
+                insertStmt.setInt(1, ids[i]);
+                insertStmt.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insertStmt.executeBatch();
+                }
+            }
+            insertStmt.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    static void clear(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM " + table + ";");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package flight;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Operating bases served by one process, each a directory under {@code tenants.dir} with its own database.
+ * <p>
+ * A base gets its own {@link ConnectionHandler}, created on first sign-in, whose pools hold at most
+ * {@code tenants.pool_size} connections. Every file the handler uses (archive, shards, replica, snapshot, change
+ * log, alerts) lives in the base's directory under the name it has by default. At most {@code tenants.max_open}
+ * handlers stay open: when there are more, the least recently used bases nobody is signed in to are closed,
+ * which releases their pools, file handles and caches. With {@code tenants.dir} empty there are no
+ * bases and the default handler serves everything.
+ */
+public class Tenants implements AutoCloseable {
+    private static final String SQLITE_URL_PREFIX = "jdbc:sqlite:";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+    // properties that name a file or directory of one database
+    private static final List<String> PATH_PROPERTIES = List.of(
+            "db.url", "db.archive_path", "db.shard_url_pattern", "db.shard_archive_pattern", "db.replica.path",
+            "snapshot.path", "changelog.dir", "alerts.log_path");
+
+    public final class Lease implements AutoCloseable {
+        private final String name;
+        private final Tenant tenant;
+        private boolean released;
+
+        private Lease(String name, Tenant tenant) {
+            this.name = name;
+            this.tenant = tenant;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ConnectionHandler getConnectionHandler() {
+            return tenant.connectionHandler;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    private static final class Tenant {
+        private final ConnectionHandler connectionHandler;
+        private int leases;
+
+        private Tenant(ConnectionHandler connectionHandler) {
+            this.connectionHandler = connectionHandler;
+        }
+    }
+
+    private final Properties overrides;
+    private final ConnectionHandler defaultHandler;
+    private final Path dir;
+    private final int maxOpen;
+    // access order, so iteration starts at the least recently used base
+    private final LinkedHashMap<String, Tenant> open = new LinkedHashMap<>(16, 0.75f, true);
+
+    public Tenants(Properties overrides) {
+        this.overrides = overrides;
+        this.defaultHandler = new ConnectionHandler(overrides);
+        String tenantsDir = defaultHandler.getProperty("tenants.dir");
+        this.dir = tenantsDir == null || tenantsDir.isBlank() ? null : Path.of(tenantsDir);
+        this.maxOpen = Integer.parseInt(defaultHandler.getProperty("tenants.max_open"));
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    /** Handler of the database in {@code db.url}, used when there are no bases. */
+    public ConnectionHandler getDefault() {
+        return defaultHandler;
+    }
+
+    /** Bases with a database, in name order. */
+    public List<String> names() throws IOException {
+        if (dir == null || !Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> children = Files.list(dir)) {
+            return children.map(child -> child.getFileName().toString()).filter(this::exists).sorted().toList();
+        }
+    }
+
+    public boolean exists(String name) {
+        return dir != null && name != null && NAME.matcher(name).matches() && Files.isRegularFile(tenantPath(name, "db.url"));
+    }
+
+    /** Opens the base if needed and keeps it open until the lease is closed. */
+    public Lease open(String name) {
+        if (!exists(name)) {
+            throw new IllegalArgumentException("Unknown base: " + name);
+        }
+        synchronized (this) {
+            Tenant tenant = open.computeIfAbsent(name, key -> new Tenant(new ConnectionHandler(tenantOverrides(key))));
+            tenant.leases++;
+            evictIdle();
+            return new Lease(name, tenant);
+        }
+    }
+
+    /** Names of the open bases, least recently used first. */
+    public synchronized List<String> openNames() {
+        return new ArrayList<>(open.keySet());
+    }
+
+    /** Closes every base and the default handler when the JVM exits, including by {@code /end} at the sign-in prompt. */
+    public Thread closeOnShutdown() {
+        Thread hook = new Thread(this::close, "tenants-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    @Override
+    public void close() {
+        List<Tenant> closing;
+        synchronized (this) {
+            closing = new ArrayList<>(open.values());
+            open.clear();
+        }
+        closing.forEach(tenant -> tenant.connectionHandler.close());
+        defaultHandler.close();
+    }
+
+    private synchronized void release(Lease lease) {
+        if (!lease.released) {
+            lease.released = true;
+            lease.tenant.leases--;
+            evictIdle();
+        }
+    }
+
+    // Closed under the lock, so a base is never open twice on the same files while it is being closed
+    private void evictIdle() {
+        Iterator<Tenant> lru = open.values().iterator();
+        while (open.size() > maxOpen && lru.hasNext()) {
+            Tenant tenant = lru.next();
+            if (tenant.leases == 0) {
+                lru.remove();
+                tenant.connectionHandler.close();
+            }
+        }
+    }
+
+    private Properties tenantOverrides(String name) {
+        Properties properties = new Properties();
+        properties.putAll(overrides);
+        for (String property : PATH_PROPERTIES) {
+            String path = tenantPath(name, property).toString();
+            properties.setProperty(property, property.endsWith("_url_pattern") || property.equals("db.url") ? SQLITE_URL_PREFIX + path : path);
+        }
+        properties.setProperty("db.pool_size", defaultHandler.getProperty("tenants.pool_size"));
+        return properties;
+    }
+
+    // The default location's file name, inside the base's directory
+    private Path tenantPath(String name, String property) {
+        String value = defaultHandler.getProperty(property);
+        if (value.startsWith(SQLITE_URL_PREFIX)) {
+            value = value.substring(SQLITE_URL_PREFIX.length());
+        }
+        return dir.resolve(name).resolve(Path.of(value).getFileName());
+    }
+}
@@ -0,0 +1,120 @@
+import flight.BackgroundJobs;
+import flight.ConnectionHandler;
+import flight.QueryContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+public class BackgroundJobsTest {
+    // runs for minutes unless it is interrupted
+    private static final String SLOW_SQL = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n) SELECT COUNT(*) FROM (SELECT i FROM n LIMIT 10000000000);";
+
+    @TempDir
+    Path dir;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Properties overrides = TestDatabase.overrides(dir, TestDatabase.create(dir.resolve("flights.sqlite")));
+        overrides.setProperty("db.pool_size", "1");
+        connectionHandler = new ConnectionHandler(overrides);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void cancelInterruptsTheRunningStatement() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs();
+        BackgroundJobs.Job job = jobs.start("/slow", 0, console -> {
+            try (Connection connection = connectionHandler.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeQuery(SLOW_SQL).next();
+                console.printMessage("finished");
+            } catch (SQLException e) {
+                console.printMessage("interrupted: " + e.getMessage());
+            }
+        });
+        waitFor(() -> job.getSteps() > 0);
+        Assertions.assertEquals(BackgroundJobs.State.RUNNING, job.getState());
+
+        Assertions.assertTrue(jobs.cancel(job.getId()));
+        waitFor(() -> job.getState() != BackgroundJobs.State.RUNNING);
+        Assertions.assertEquals(BackgroundJobs.State.CANCELLED, job.getState());
+        Assertions.assertTrue(job.getOutput().startsWith("interrupted"), job.getOutput());
+        Assertions.assertFalse(jobs.cancel(job.getId()));
+
+        // the only pooled connection is back and carries no progress handler of the job
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            Assertions.assertTrue(statement.executeQuery("SELECT COUNT(*) FROM (SELECT 1 FROM flight);").next());
+        }
+    }
+
+    @Test
+    public void timeoutInterruptsALongStatement() {
+        QueryContext context = new QueryContext(1);
+        long start = System.nanoTime();
+        context.run(() -> Assertions.assertThrows(SQLException.class, () -> {
+            try (Connection connection = connectionHandler.getConnection();
+                 Statement statement = connection.createStatement()) {
+                Assertions.assertEquals(1, statement.getQueryTimeout());
+                statement.executeQuery(SLOW_SQL).next();
+            }
+        }));
+        Assertions.assertTrue(context.isTimedOut());
+        Assertions.assertFalse(context.isCancelled());
+        Assertions.assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    }
+
+    @Test
+    public void cancelAllWaitsForTheRunningJobs() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs();
+        BackgroundJobs.Job done = jobs.start("/quick", 0, console -> console.printMessage("done"));
+        BackgroundJobs.Job slow = jobs.start("/slow", 0, console -> {
+            try (Connection connection = connectionHandler.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeQuery(SLOW_SQL).next();
+            } catch (SQLException e) {
+                console.printMessage("interrupted: " + e.getMessage());
+            }
+        });
+        waitFor(() -> slow.getSteps() > 0);
+
+        Assertions.assertEquals(1, jobs.cancelAll());
+        Assertions.assertEquals(BackgroundJobs.State.DONE, done.getState());
+        Assertions.assertEquals(BackgroundJobs.State.CANCELLED, slow.getState());
+        Assertions.assertEquals(0, jobs.cancelAll());
+    }
+
+    @Test
+    public void onlyTheLastFinishedJobsAreKept() throws Exception {
+        BackgroundJobs jobs = new BackgroundJobs(2);
+        for (int i = 0; i < 4; i++) {
+            jobs.start("/quick", 0, console -> console.printMessage("done"));
+            jobs.cancelAll();
+        }
+        Assertions.assertEquals(List.of(2, 3, 4), jobs.list().stream().map(BackgroundJobs.Job::getId).toList());
+        Assertions.assertTrue(jobs.get(1).isEmpty());
+        Assertions.assertEquals("done", jobs.get(4).orElseThrow().getOutput().strip());
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "timed out waiting");
+            Thread.sleep(10);
+        }
+    }
+}
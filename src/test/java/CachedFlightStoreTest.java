@@ -0,0 +1,101 @@
+import flight.CachedFlightStore;
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+
+public class CachedFlightStoreTest extends FlightStoreConformanceTest {
+    @Override
+    protected FlightStore createStore(ConnectionHandler connectionHandler) throws Exception {
+        return open(connectionHandler);
+    }
+
+    @Override
+    protected void configure(Properties overrides) {
+        overrides.setProperty("reference.check_interval_ms", "0");
+    }
+
+    @Test
+    public void restartRestoresSnapshotAndCatchesUp() throws Exception {
+        ((CachedFlightStore) store).saveSnapshot();
+
+        store.deleteFlight(3).orElseThrow();
+        store.updateFlight(1, flight -> new Flight(flight.id(), flight.date(), flight.helicopterId(), flight.code(),
+                flight.goodsWeight(), flight.passengers(), flight.flightHours(), 1100)).orElseThrow();
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO flight VALUES (6, '2024-04-01', 2, 'special', 5, 1, 2, 700);");
+            statement.execute("UPDATE flight SET price = 3100 WHERE id = 2;");
+        }
+
+        try (FlightStore restored = open(connectionHandler)) {
+            List<Flight> flights = restored.getFlights(1, null, null);
+            Assertions.assertEquals(List.of(1, 2), flights.stream().map(Flight::id).toList());
+            Assertions.assertEquals(1100, flights.get(0).price());
+            Assertions.assertEquals(3100, flights.get(1).price());
+            Assertions.assertEquals(List.of(4, 5, 6), restored.getFlights(2, null, null).stream().map(Flight::id).toList());
+        }
+    }
+
+    @Test
+    public void snapshotMissingAChangeFallsBackToFullLoad() throws Exception {
+        ((CachedFlightStore) store).saveSnapshot();
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE flight SET price = 3100 WHERE id = 2;");
+            // lost before it reached the change log
+            statement.execute("DELETE FROM flight_change;");
+        }
+
+        try (FlightStore restored = open(connectionHandler)) {
+            Assertions.assertEquals(3100, restored.getFlights(1, "2024-02-01", "2024-02-01").get(0).price());
+        }
+    }
+
+    @Test
+    public void changesOutsideTheStoreAndRepairsReachTheMemoryCopy() throws Exception {
+        Assertions.assertEquals(75, store.getResource(1).orElseThrow().remaining(), 1e-9);
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE flight SET flight_hours = 30 WHERE id = 2;");
+        }
+        connectionHandler.syncChanges();
+        Assertions.assertEquals(65, store.getResource(1).orElseThrow().remaining(), 1e-9);
+
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE helicopter SET repair_date = '2024-03-01' WHERE id = 1;");
+        }
+        Assertions.assertEquals(100, store.getResource(1).orElseThrow().remaining(), 1e-9);
+    }
+
+    @Test
+    public void corruptSnapshotFallsBackToFullLoad() throws Exception {
+        ((CachedFlightStore) store).saveSnapshot();
+        Path snapshot = Path.of(connectionHandler.getProperty("snapshot.path"));
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 10] ^= 1;
+        Files.write(snapshot, bytes);
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE flight SET price = 3100 WHERE id = 2;");
+        }
+
+        try (FlightStore restored = open(connectionHandler)) {
+            Assertions.assertEquals(3100, restored.getFlights(1, "2024-02-01", "2024-02-01").get(0).price());
+        }
+    }
+
+    private static FlightStore open(ConnectionHandler connectionHandler) throws Exception {
+        return CachedFlightStore.open(connectionHandler, Path.of(connectionHandler.getProperty("snapshot.path")), Duration.ofHours(1));
+    }
+}
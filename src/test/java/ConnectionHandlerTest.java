@@ -0,0 +1,61 @@
+import flight.ConnectionHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletionException;
+
+public class ConnectionHandlerTest {
+    @TempDir
+    Path dir;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS);
+        connectionHandler = new ConnectionHandler(TestDatabase.overrides(dir, db));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void failedWarmUpCompletesExceptionally() {
+        connectionHandler.warmUp("SELECT id FROM helicopter;").join();
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class,
+                () -> connectionHandler.warmUp("SELECT id FROM helicopter;", "SELECT id FROM no_such_table;").join());
+        Assertions.assertInstanceOf(SQLException.class, e.getCause());
+    }
+
+    @Test
+    public void openingTheDatabaseMigratesItOnce() throws Exception {
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("PRAGMA user_version;");
+            rs.next();
+            int version = rs.getInt(1);
+            Assertions.assertTrue(version > 0);
+            rs = statement.executeQuery("SELECT count(*) FROM sqlite_master WHERE type = 'trigger' AND sql LIKE '%reference_version%';");
+            rs.next();
+            Assertions.assertEquals(6, rs.getInt(1));
+
+            statement.execute("DROP INDEX flight_date_id;");
+            try (ConnectionHandler reopened = new ConnectionHandler(TestDatabase.overrides(dir, dir.resolve("flights.sqlite")))) {
+                reopened.getConnection().close();
+            }
+            rs = statement.executeQuery("SELECT count(*) FROM sqlite_master WHERE name = 'flight_date_id';");
+            rs.next();
+            Assertions.assertEquals(0, rs.getInt(1), "a migrated database is not migrated again");
+        }
+    }
+}
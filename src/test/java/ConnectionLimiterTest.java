@@ -0,0 +1,144 @@
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import flight.ConnectionLimiter;
+import flight.DatabaseBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+public class ConnectionLimiterTest {
+    private static final String COUNT_TO = "WITH RECURSIVE n(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM n WHERE x < ?) SELECT COUNT(*) FROM n;";
+    private static final String LIST_TO = "WITH RECURSIVE n(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM n WHERE x < ?) SELECT x FROM n;";
+
+    @TempDir
+    Path dir;
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + dir.resolve("limiter.sqlite"));
+        config.setMaximumPoolSize(2);
+        dataSource = new HikariDataSource(config);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void requestsOverTheLimitAreShedWhenTheQueueIsFull() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(dataSource, true, 1, 1_000, 0, 50);
+        try (Connection first = limiter.getConnection(); Connection second = limiter.getConnection()) {
+            long start = System.nanoTime();
+            Assertions.assertThrows(DatabaseBusyException.class, limiter::getConnection);
+            Assertions.assertTrue(System.nanoTime() - start < 1_000_000_000L);
+            Assertions.assertEquals(2, limiter.getMetrics().inFlight());
+        }
+        ConnectionLimiter.Metrics metrics = limiter.getMetrics();
+        Assertions.assertEquals(0, metrics.inFlight());
+        Assertions.assertEquals(2, metrics.admitted());
+        Assertions.assertEquals(1, metrics.shed());
+    }
+
+    @Test
+    public void queuedRequestGetsTheReleasedConnection() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(dataSource, true, 1, 1_000, 4, 5_000);
+        Connection first = limiter.getConnection();
+        Connection second = limiter.getConnection();
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                first.close();
+            } catch (Exception ignored) {
+            }
+        });
+        releaser.start();
+        try (Connection third = limiter.getConnection()) {
+            Assertions.assertTrue(third.isValid(1));
+        }
+        second.close();
+        releaser.join();
+        Assertions.assertEquals(0, limiter.getMetrics().shed());
+    }
+
+    @Test
+    public void statementsThatAllRunSlowerThanTheBaselineShrinkTheLimit() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(dataSource, true, 1, 10, 4, 50);
+        Thread.sleep(20);
+        try (Connection connection = limiter.getConnection(); Connection ignored = limiter.getConnection();
+             PreparedStatement counting = connection.prepareStatement(COUNT_TO);
+             PreparedStatement listing = connection.prepareStatement(LIST_TO)) {
+            for (int i = 0; i < 16; i++) {
+                count(counting, 10);
+            }
+            Assertions.assertEquals(2, limiter.getMetrics().limit(), 1e-9);
+            // the first row comes back at once, the time goes into draining the rest
+            for (int i = 0; i < 8; i++) {
+                drain(listing, 200_000);
+            }
+        }
+        Assertions.assertEquals(1.6, limiter.getMetrics().limit(), 1e-9);
+        try (Connection ignored = limiter.getConnection()) {
+            Assertions.assertThrows(DatabaseBusyException.class, limiter::getConnection);
+        }
+    }
+
+    @Test
+    public void heavyReportAmongFastStatementsKeepsTheLimit() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(dataSource, true, 1, 10, 4, 50);
+        Thread.sleep(20);
+        try (Connection connection = limiter.getConnection(); Connection ignored = limiter.getConnection();
+             PreparedStatement statement = connection.prepareStatement(COUNT_TO)) {
+            for (int i = 0; i < 16; i++) {
+                count(statement, 10);
+            }
+            for (int i = 0; i < 8; i++) {
+                count(statement, i == 3 ? 3_000_000 : 10);
+            }
+        }
+        Assertions.assertEquals(2, limiter.getMetrics().limit(), 1e-9);
+    }
+
+    @Test
+    public void longHoldsWithFastStatementsKeepTheLimit() throws Exception {
+        ConnectionLimiter limiter = new ConnectionLimiter(dataSource, true, 1, 10, 4, 50);
+        Thread.sleep(20);
+        try (Connection connection = limiter.getConnection();
+             PreparedStatement statement = connection.prepareStatement(COUNT_TO)) {
+            count(statement, 10);
+            Thread.sleep(30);
+            count(statement, 10);
+        }
+        ConnectionLimiter.Metrics metrics = limiter.getMetrics();
+        Assertions.assertEquals(2, metrics.limit(), 1e-9);
+        Assertions.assertTrue(metrics.averageHoldMillis() >= 30);
+    }
+
+    private static void count(PreparedStatement statement, int to) throws Exception {
+        statement.setInt(1, to);
+        try (ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            Assertions.assertEquals(to, rs.getInt(1));
+        }
+    }
+
+    private static void drain(PreparedStatement statement, int to) throws Exception {
+        statement.setInt(1, to);
+        int rows = 0;
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rows++;
+            }
+        }
+        Assertions.assertEquals(to, rows);
+    }
+}
@@ -0,0 +1,90 @@
+import flight.ConnectionHandler;
+import flight.DatabaseVerifier;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time of {@code /verify_db} over a large flight table and the slowest single-row write made while it runs.
+ * <p>
+ * Usage: {@code java -cp <test classpath> DatabaseVerifierBenchmark [flights] [threads]}
+ */
+public class DatabaseVerifierBenchmark {
+    private static final int HELICOPTERS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int flights = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        Path dir = Files.createTempDirectory("flight-verify");
+        Path db = dir.resolve("flights.sqlite");
+        long created = System.nanoTime();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement statement = connection.createStatement()) {
+            TestDatabase.createTables(statement);
+            statement.execute("""
+                    WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < %d)
+                    INSERT INTO helicopter SELECT i, 'S-' || i, 'bell', '2010-01-01', 1000, '2020-01-01', 1000000 FROM n;
+                    """.formatted(HELICOPTERS));
+            // one flight in a million is broken, so the report has something to stream
+            statement.execute("""
+                    WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < %d)
+                    INSERT INTO flight SELECT i, date('2020-01-01', '+' || (i %% 1800) || ' days'), i %% %d + 1,
+                        CASE WHEN i %% 3 = 0 THEN 'special' ELSE 'usual' END, i %% 500, i %% 10,
+                        CASE WHEN i %% 1000000 = 0 THEN -1 ELSE 1 + i %% 7 END, 100 + i %% 900 FROM n;
+                    """.formatted(flights, HELICOPTERS));
+        }
+        System.out.printf("created %d flights in %.1f s%n", flights, (System.nanoTime() - created) / 1e9);
+
+        Properties overrides = new Properties();
+        overrides.setProperty("db.url", "jdbc:sqlite:" + db);
+        overrides.setProperty("db.shards", "1");
+        overrides.setProperty("db.archive_path", dir.resolve("archive.sqlite").toString());
+        overrides.setProperty("db.replica.enabled", "false");
+        overrides.setProperty("verify.threads", String.valueOf(threads));
+
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+            DatabaseVerifier.Report alone = connectionHandler.getDatabaseVerifier().verify(finding -> {
+            });
+            System.out.printf("verified %d flights in %d chunks with %d threads: %.2f s, %d findings%n",
+                    alone.rows(), alone.chunks(), threads, alone.elapsed().toMillis() / 1000.0, alone.total());
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong slowestWrite = new AtomicLong();
+            AtomicLong writes = new AtomicLong();
+            Thread writer = new Thread(() -> {
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    try (Connection connection = connectionHandler.getConnection();
+                         PreparedStatement statement = connection.prepareStatement(
+                                 "INSERT INTO flight (date, helicopter_id, code, goods_weight, passangers, flight_hours, price) VALUES ('2025-01-01', 1, 'usual', 1, 1, 1, 1);")) {
+                        statement.executeUpdate();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    slowestWrite.accumulateAndGet(System.nanoTime() - start, Math::max);
+                    writes.incrementAndGet();
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            writer.start();
+            DatabaseVerifier.Report withWrites = connectionHandler.getDatabaseVerifier().verify(finding -> {
+            });
+            running.set(false);
+            writer.join();
+            System.out.printf("with a writer: %.2f s, %d writes, slowest %.1f ms%n",
+                    withWrites.elapsed().toMillis() / 1000.0, writes.get(), slowestWrite.get() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import flight.ConnectionHandler;
+import flight.DatabaseVerifier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class DatabaseVerifierTest {
+    @TempDir
+    Path dir;
+    private Properties overrides;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), """
+                INSERT INTO helicopter VALUES
+                    (1, 'b-200', 'bell', '2010-01-01', 1000, '2024-01-01', 100),
+                    (2, 'a-100', 'boeng', '2012-01-01', 1500, '2023-06-01', 50),
+                    (3, 'c-300', 'mil', '2015-01-01', 2000, '2022-13-01', 500);
+                """, """
+                INSERT INTO pilot VALUES
+                    (1, 'T-1', 'Ivanov', 'captain', 10, 'Moscow', 1980, 1),
+                    (2, 'T-2', 'Petrov', 'captain', 5, 'Kazan', 1985, 9);
+                """, """
+                INSERT INTO flight VALUES
+                    (1, '2024-02-01', 1, 'usual', 100, 2, 10, 1000),
+                    (2, '2024-02-01', 7, 'usual', 100, 2, 10, 1000),
+                    (3, '2024-02-02', 1, 'usual', 100, 2, 5, -5),
+                    (4, '2024-02-30', 1, 'usual', 100, 2, 5, 500),
+                    (5, '2024-02-03', 1, 'special', 2000, 0, 5, 500),
+                    (6, '2024-02-04', 1, 'usual', 100, 2, 'abc', 500),
+                    (7, '2009-01-01', 1, 'usual', 100, 2, 5, 500),
+                    (8, '2024-03-01', 2, 'usual', 100, 2, 30, 500),
+                    (9, '2024-03-02', 2, 'special', 100, 0, 30, 500),
+                    (10, '2024-03-03', 3, 'usual', 100, 2, 8, 800);
+                """);
+
+        overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("verify.chunk_rows", "2");
+        overrides.setProperty("verify.threads", "3");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    public void findsEveryKindOfProblemAcrossChunks(int shards) throws Exception {
+        overrides.setProperty("db.shards", String.valueOf(shards));
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+            List<String> findings = new ArrayList<>();
+            DatabaseVerifier.Report report = connectionHandler.getDatabaseVerifier().verify(finding ->
+                    findings.add(finding.kind() + " " + finding.flightId() + " " + finding.helicopterId()));
+
+            Assertions.assertEquals(10, report.rows());
+            Assertions.assertEquals(Map.of(
+                    DatabaseVerifier.Kind.ORPHAN, 2L,
+                    DatabaseVerifier.Kind.OUT_OF_RANGE, 3L,
+                    DatabaseVerifier.Kind.INVALID_DATE, 3L,
+                    DatabaseVerifier.Kind.RESOURCE_OVERRUN, 1L
+            ), report.counts());
+            Assertions.assertEquals(List.of(
+                    "INVALID_DATE 4 1", "INVALID_DATE 7 1", "INVALID_DATE null 3", "ORPHAN 2 7", "ORPHAN null 9",
+                    "OUT_OF_RANGE 3 1", "OUT_OF_RANGE 5 1", "OUT_OF_RANGE 6 1", "RESOURCE_OVERRUN null 2"
+            ), findings.stream().sorted().toList());
+        }
+    }
+}
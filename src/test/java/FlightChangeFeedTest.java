@@ -0,0 +1,48 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightChange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlightChangeFeedTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void committedChangesReachTheLogWhoeverMadeThem() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, TestDatabase.FLIGHTS);
+        try (ConnectionHandler first = new ConnectionHandler(TestDatabase.overrides(dir, db));
+             ConnectionHandler second = new ConnectionHandler(TestDatabase.overrides(dir, db))) {
+            Flight added = second.getFlightStore().addFlight(new Flight(0, "2024-04-01", 2, "usual", 0, 0, 7, 0)).flight();
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db);
+                 Statement statement = connection.createStatement()) {
+                statement.execute("UPDATE flight SET price = 250 WHERE id = 5;");
+                connection.setAutoCommit(false);
+                statement.execute("DELETE FROM flight WHERE id = 3;");
+                connection.rollback();
+            }
+            Assertions.assertEquals(1, first.getFlightStore().archiveFlightsBefore("2024-01-01"));
+
+            Assertions.assertEquals(2, first.syncChanges());
+            Assertions.assertEquals(2, second.syncChanges());
+
+            List<FlightChange> changes = new ArrayList<>();
+            second.getChangeLog().reader(1).replay(changes::add);
+            Assertions.assertEquals(2, changes.size());
+            Assertions.assertEquals(new FlightChange(1, FlightChange.Type.INSERT, null, added, 0, 1), changes.get(0));
+            FlightChange update = changes.get(1);
+            Assertions.assertEquals(FlightChange.Type.UPDATE, update.type());
+            Assertions.assertEquals(200, update.before().price());
+            Assertions.assertEquals(250, update.after().price());
+            Assertions.assertEquals(2, update.sourceSequence());
+        }
+    }
+}
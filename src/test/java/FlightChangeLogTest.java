@@ -0,0 +1,62 @@
+import flight.Flight;
+import flight.FlightChange;
+import flight.FlightChangeLog;
+import flight.FlightChangeReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlightChangeLogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void tailAcrossSegments() throws Exception {
+        Flight flight = new Flight(7, "2024-05-01", 3, "special", 120.5, 4, 2.5, 900);
+        try (FlightChangeLog log = new FlightChangeLog(dir, 256)) {
+            for (int i = 0; i < 10; i++) {
+                log.append(FlightChange.Type.UPDATE, flight, flight);
+            }
+            Assertions.assertEquals(10, log.lastSequence());
+
+            FlightChangeReader reader = log.reader(4);
+            FlightChange change = reader.poll();
+            Assertions.assertEquals(4, change.sequence());
+            Assertions.assertEquals(flight, change.after());
+            Assertions.assertEquals(6, reader.replay(c -> {}));
+
+            log.append(FlightChange.Type.DELETE, flight, null);
+            change = reader.poll();
+            Assertions.assertEquals(11, change.sequence());
+            Assertions.assertNull(change.after());
+            Assertions.assertNull(reader.poll());
+        }
+        try (FlightChangeLog reopened = new FlightChangeLog(dir, 256)) {
+            Assertions.assertEquals(11, reopened.lastSequence());
+        }
+    }
+
+    @Test
+    public void writersSharingTheDirectoryNeverReuseASequence() throws Exception {
+        Flight flight = new Flight(7, "2024-05-01", 3, "special", 120.5, 4, 2.5, 900);
+        try (FlightChangeLog first = new FlightChangeLog(dir, 256); FlightChangeLog second = new FlightChangeLog(dir, 256)) {
+            List<Long> seenBySecond = new ArrayList<>();
+            second.addListener(change -> seenBySecond.add(change.sequence()));
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertEquals(2 * i + 1, first.append(FlightChange.Type.INSERT, null, flight));
+                Assertions.assertEquals(2 * i + 2, second.append(FlightChange.Type.DELETE, flight, null));
+            }
+
+            List<FlightChange> changes = new ArrayList<>();
+            first.reader(1).replay(changes::add);
+            Assertions.assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), changes.stream().map(FlightChange::sequence).toList());
+            Assertions.assertEquals(FlightChange.Type.DELETE, changes.get(5).type());
+            // the records of the other writer reach the listeners before the own one
+            Assertions.assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), seenBySecond);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightChange;
+import flight.FlightDistributions;
+import flight.QuantileSketch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+public class FlightDistributionsTest {
+    private static final double ACCURACY = 0.01;
+
+    @TempDir
+    Path dir;
+    private Properties overrides;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // helicopter 1 flies 1..100 hours on usual flights, helicopter 2 one special flight
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), """
+                WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 100)
+                INSERT INTO flight SELECT i, '2024-01-01', 1, 'usual', 0, 1, i, i * 100 FROM n;
+                """, "INSERT INTO flight VALUES (101, '2024-01-02', 2, 'special', 500, 0, 7, 9000);");
+
+        overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("distribution.accuracy", String.valueOf(ACCURACY));
+    }
+
+    @Test
+    public void sketchQuantilesStayWithinTheRelativeError() {
+        Random random = new Random(42);
+        double[] values = new double[100_000];
+        QuantileSketch sketch = new QuantileSketch(ACCURACY);
+        QuantileSketch other = new QuantileSketch(ACCURACY);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.exp(random.nextGaussian() * 2);
+            (i % 2 == 0 ? sketch : other).add(values[i]);
+        }
+        sketch.merge(other);
+        sketch.add(123456);
+        sketch.remove(123456);
+        Arrays.sort(values);
+
+        Assertions.assertEquals(values.length, sketch.count());
+        for (double q : new double[]{0, 0.1, 0.5, 0.9, 0.95, 0.99, 1}) {
+            double exact = values[(int) (q * (values.length - 1))];
+            Assertions.assertEquals(exact, sketch.quantile(q), exact * ACCURACY, "q=" + q);
+        }
+    }
+
+    @Test
+    public void followsTheChangeLogAndSurvivesARestart() throws Exception {
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+            FlightDistributions distributions = connectionHandler.getFlightDistributions();
+            FlightDistributions.Percentiles hours = hours(distributions.getPercentiles(1, null));
+            Assertions.assertEquals(100, hours.count());
+            Assertions.assertEquals(50, hours.p50(), 50 * ACCURACY);
+            Assertions.assertEquals(99, hours.p99(), 99 * ACCURACY);
+            Assertions.assertEquals(101, hours(distributions.getPercentiles(null, null)).count());
+            Assertions.assertEquals(7, hours(distributions.getPercentiles(null, "special")).p50(), 7 * ACCURACY);
+
+            // the flight rows themselves do not matter here, only what the log says about them
+            connectionHandler.getChangeLog().append(FlightChange.Type.DELETE, new Flight(100, "2024-01-01", 1, "usual", 0, 1, 100, 10000), null);
+            connectionHandler.getChangeLog().append(FlightChange.Type.UPDATE, new Flight(99, "2024-01-01", 1, "usual", 0, 1, 99, 9900),
+                    new Flight(99, "2024-01-01", 2, "special", 0, 1, 3, 9900));
+            Assertions.assertEquals(98, hours(distributions.getPercentiles(1, null)).count());
+            Assertions.assertEquals(98, hours(distributions.getPercentiles(1, null)).max(), 98 * ACCURACY);
+            Assertions.assertEquals(2, hours(distributions.getPercentiles(2, "special")).count());
+        }
+
+        // a rebuild would see 101 flights again, so the counts prove the saved file and the log were used
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+            connectionHandler.getChangeLog().append(FlightChange.Type.INSERT, null, new Flight(102, "2024-01-03", 2, "special", 0, 0, 11, 100));
+            FlightDistributions distributions = connectionHandler.getFlightDistributions();
+            Assertions.assertEquals(98, hours(distributions.getPercentiles(1, null)).count());
+            Assertions.assertEquals(3, hours(distributions.getPercentiles(2, null)).count());
+        }
+    }
+
+    @Test
+    public void changesNeverLoadTheSketchesAndALoadFailureReachesTheReader() throws Exception {
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+            FlightDistributions distributions = connectionHandler.getFlightDistributions();
+            connectionHandler.getChangeLog().append(FlightChange.Type.INSERT, null, new Flight(102, "2024-01-03", 2, "special", 0, 0, 11, 100));
+            Assertions.assertFalse(Files.exists(dir.resolve("changelog").resolve("flightDistributions.bin")));
+
+            try (Connection connection = connectionHandler.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("ALTER TABLE flight RENAME TO flight_old;");
+            }
+            Assertions.assertThrows(SQLException.class, () -> distributions.getPercentiles(null, null));
+        }
+    }
+
+    private static FlightDistributions.Percentiles hours(List<FlightDistributions.Percentiles> percentiles) {
+        return percentiles.get(FlightDistributions.Metric.FLIGHT_HOURS.ordinal());
+    }
+}
@@ -0,0 +1,92 @@
+import flight.FlightPlanner;
+import flight.FlightStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class FlightPlannerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readsThePlanFileAndReportsTheBadLine() throws Exception {
+        Path file = dir.resolve("plan.csv");
+        Files.writeString(file, """
+                date,code,hours
+                # morning
+                2025-01-10, usual, 2.5
+                2025-01-11;SPECIAL;4
+
+                2025-01-12 usual 1
+                """);
+        List<FlightPlanner.PlannedFlight> flights = FlightPlanner.read(file);
+        Assertions.assertEquals(List.of(
+                new FlightPlanner.PlannedFlight(3, "2025-01-10", "usual", 2.5),
+                new FlightPlanner.PlannedFlight(4, "2025-01-11", "special", 4),
+                new FlightPlanner.PlannedFlight(6, "2025-01-12", "usual", 1)
+        ), flights);
+
+        Files.writeString(file, "2025-01-10,usual,2\n2025-02-30,usual,1\n");
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> FlightPlanner.read(file));
+        Assertions.assertTrue(e.getMessage().startsWith("line 2:"), e.getMessage());
+        Files.writeString(file, "2025-01-10,usual,-2\n");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FlightPlanner.read(file));
+    }
+
+    @Test
+    public void longestFlightsGoToTheHelicopterWithTheMostResourceLeft() {
+        List<FlightStore.Resource> fleet = List.of(
+                new FlightStore.Resource(1, "b-200", 100, "2024-01-01", 90),
+                new FlightStore.Resource(2, "a-100", 50, "2023-06-01", 30),
+                new FlightStore.Resource(3, "c-300", 500, "2022-01-01", 500)
+        );
+        List<FlightPlanner.PlannedFlight> flights = List.of(
+                new FlightPlanner.PlannedFlight(1, "2025-01-02", "usual", 8),
+                new FlightPlanner.PlannedFlight(2, "2025-01-01", "special", 15),
+                new FlightPlanner.PlannedFlight(3, "2025-01-03", "usual", 25),
+                new FlightPlanner.PlannedFlight(4, "2025-01-01", "usual", 10)
+        );
+
+        FlightPlanner.Plan plan = FlightPlanner.plan(flights, fleet);
+
+        // 20 h are left on helicopter 2 and 10 h on helicopter 1: the 25 h flight fits nowhere, 15 h goes to
+        // helicopter 2, 10 h to helicopter 1, and 8 h is more than the 5 h still left on helicopter 2
+        Assertions.assertEquals(List.of(2, 4), plan.schedule().stream().map(assignment -> assignment.flight().line()).toList());
+        Assertions.assertEquals(List.of(2, 1), plan.schedule().stream().map(assignment -> assignment.resource().helicopterId()).toList());
+        Assertions.assertEquals(List.of(1, 3), plan.unassigned().stream().map(FlightPlanner.PlannedFlight::line).toList());
+        Assertions.assertEquals(List.of(0.0, 5.0, 0.0), plan.loads().stream().map(FlightPlanner.Load::remaining).toList());
+    }
+
+    @Test
+    public void largePlanNeverExceedsAResource() {
+        Random random = new Random(7);
+        List<FlightStore.Resource> fleet = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            fleet.add(new FlightStore.Resource(id, "S-" + id, 2000, "2024-01-01", random.nextInt(2000)));
+        }
+        List<FlightPlanner.PlannedFlight> flights = new ArrayList<>();
+        for (int line = 1; line <= 100_000; line++) {
+            flights.add(new FlightPlanner.PlannedFlight(line, "2025-%02d-%02d".formatted(1 + line % 12, 1 + line % 28), "usual", 0.5 + random.nextInt(8)));
+        }
+
+        FlightPlanner.Plan plan = FlightPlanner.plan(flights, fleet);
+
+        Assertions.assertEquals(flights.size(), plan.schedule().size() + plan.unassigned().size());
+        Map<Integer, Double> planned = new HashMap<>();
+        plan.schedule().forEach(assignment -> planned.merge(assignment.resource().helicopterId(), assignment.flight().hours(), Double::sum));
+        for (FlightStore.Resource resource : fleet) {
+            Assertions.assertTrue(resource.flownAfterRepair() + planned.getOrDefault(resource.helicopterId(), 0.0) <= resource.limit());
+        }
+        // whatever is left over is shorter than the biggest remainder, or it would have been placed
+        double mostLeft = plan.loads().stream().mapToDouble(FlightPlanner.Load::remaining).max().orElseThrow();
+        plan.unassigned().forEach(flight -> Assertions.assertTrue(flight.hours() > mostLeft));
+    }
+}
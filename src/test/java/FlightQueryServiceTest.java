@@ -0,0 +1,203 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightQueryService;
+import flight.FlightStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class FlightQueryServiceTest {
+    private static final int FLIGHTS = 2500;
+
+    @TempDir
+    Path dir;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // several flights share a date, so the order has to fall back to the id
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), """
+                INSERT INTO helicopter VALUES
+                    (1, 'b-200', 'bell', '2010-01-01', 1000, '2024-01-01', 100000),
+                    (2, 'a-100', 'boeng', '2012-01-01', 1500, '2023-06-01', 100000);
+                """, """
+                WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < %d)
+                INSERT INTO flight SELECT i, date('2024-01-01', '+' || (i * 7 %% 300) || ' days'), 1 + i %% 2, 'usual', i, 1, 0.5, i * 10 FROM n;
+                """.formatted(FLIGHTS));
+
+        Properties overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("db.pool_size", "1");
+        overrides.setProperty("query.fetch_size", "100");
+        connectionHandler = new ConnectionHandler(overrides);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void streamsEveryFlightInOrderInSmallRequests() throws Exception {
+        Collector<Flight> collector = new Collector<>(7, Long.MAX_VALUE);
+        connectionHandler.getQueryService().flights(null, null, null).subscribe(collector);
+        List<Flight> flights = collector.result.get(10, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(FLIGHTS, flights.size());
+        List<Flight> sorted = new ArrayList<>(flights);
+        sorted.sort(Comparator.comparing(Flight::date).thenComparingInt(Flight::id));
+        Assertions.assertEquals(sorted, flights);
+        Assertions.assertEquals(connectionHandler.getFlightStore().getFlights(2, "2024-03-01", "2024-05-01"),
+                collect(connectionHandler.getQueryService().flights(2, "2024-03-01", "2024-05-01")));
+    }
+
+    @Test
+    public void pagesFollowTheIndexesAcrossLiveAndArchivedFlights() throws Exception {
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE helicopter SET repair_date = '2024-06-01';");
+        }
+        Assertions.assertTrue(connectionHandler.getFlightStore().archiveFlightsBefore("2024-06-01") > 0);
+
+        try (Connection connection = connectionHandler.getConnection()) {
+            List<String> tables = connectionHandler.getArchive(0).flightTables(connection, null);
+            Assertions.assertEquals(2, tables.size());
+            for (boolean byHelicopter : new boolean[]{false, true}) {
+                List<String> plan = new ArrayList<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("EXPLAIN QUERY PLAN " + FlightQueryService.flightsPageSql(tables, byHelicopter))) {
+                    while (rs.next()) {
+                        plan.add(rs.getString("detail"));
+                    }
+                }
+                String index = byHelicopter ? "flight_helicopter_date_id" : "flight_date_id";
+                Assertions.assertEquals(2, plan.stream().filter(step -> step.contains("USING INDEX " + index) || step.contains("USING COVERING INDEX " + index)).count(), plan.toString());
+                Assertions.assertTrue(plan.stream().noneMatch(step -> step.contains("TEMP B-TREE")), plan.toString());
+            }
+        }
+
+        List<Flight> flights = collect(connectionHandler.getQueryService().flights(null, null, null));
+        Assertions.assertEquals(FLIGHTS, flights.size());
+        List<Flight> sorted = new ArrayList<>(flights);
+        sorted.sort(Comparator.comparing(Flight::date).thenComparingInt(Flight::id));
+        Assertions.assertEquals(sorted, flights);
+        Assertions.assertEquals(connectionHandler.getFlightStore().getFlights(1, "2024-03-01", "2024-08-01"),
+                collect(connectionHandler.getQueryService().flights(1, "2024-03-01", "2024-08-01")));
+    }
+
+    @Test
+    public void cancelStopsTheStreamAndLeavesNoConnectionBehind() throws Exception {
+        Collector<Flight> collector = new Collector<>(1, 10);
+        connectionHandler.getQueryService().flights(null, null, null).subscribe(collector);
+        Assertions.assertTrue(collector.cancelled.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        Assertions.assertEquals(10, collector.items.size());
+        Assertions.assertFalse(collector.result.isDone());
+        // the pool has a single connection
+        try (Connection ignored = connectionHandler.getConnection()) {
+            Assertions.assertNotNull(ignored);
+        }
+    }
+
+    @Test
+    public void nonPositiveRequestFailsTheStream() throws Exception {
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        connectionHandler.getQueryService().flights(null, null, null).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(0);
+            }
+
+            @Override
+            public void onNext(Flight item) {
+                error.completeExceptionally(new AssertionError("unexpected " + item));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.complete(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                error.completeExceptionally(new AssertionError("completed"));
+            }
+        });
+        Assertions.assertInstanceOf(IllegalArgumentException.class, error.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void earningsMatchTheStore() throws Exception {
+        Map<Integer, Double> streamed = collect(connectionHandler.getQueryService().earningsByHelicopter("2024-02-01", "2024-06-30")).stream()
+                .collect(Collectors.toMap(FlightStore.HelicopterValue::helicopterId, FlightStore.HelicopterValue::value));
+        Assertions.assertEquals(connectionHandler.getFlightStore().getEarningsByHelicopter("2024-02-01", "2024-06-30"), streamed);
+    }
+
+    private static <T> List<T> collect(Flow.Publisher<T> publisher) throws Exception {
+        Collector<T> collector = new Collector<>(Long.MAX_VALUE, Long.MAX_VALUE);
+        publisher.subscribe(collector);
+        return collector.result.get(10, TimeUnit.SECONDS);
+    }
+
+    // Requests {@code batch} items at a time and cancels after {@code cancelAfter}
+    private static final class Collector<T> implements Flow.Subscriber<T> {
+        private final long batch;
+        private final long cancelAfter;
+        private final List<T> items = new ArrayList<>();
+        private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        private long outstanding;
+
+        private Collector(long batch, long cancelAfter) {
+            this.batch = batch;
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            outstanding = batch;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            if (items.size() == cancelAfter) {
+                subscription.cancel();
+                cancelled.countDown();
+            } else if (--outstanding == 0) {
+                outstanding = batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(items);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import flight.CachedFlightStore;
+import flight.ConnectionHandler;
+import flight.FlightSnapshot;
+import flight.FlightStore;
+import flight.InMemoryFlightStore;
+import flight.SqliteFlightStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the same mix of command queries against the SQLite and in-memory {@link FlightStore}s.
+ * <p>
+ * Usage: {@code java -cp <test classpath> FlightStoreBenchmark [helicopters] [flights]}
+ */
+public class FlightStoreBenchmark {
+    private static final int ROUNDS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int helicopters = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int flights = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        Path dir = Files.createTempDirectory("flight-store");
+        Path db = dir.resolve("flights.sqlite");
+        createDatabase(db, helicopters, flights);
+
+        Properties overrides = new Properties();
+        overrides.setProperty("db.url", "jdbc:sqlite:" + db);
+        overrides.setProperty("db.shards", "1");
+        overrides.setProperty("db.archive_path", dir.resolve("archive.sqlite").toString());
+        overrides.setProperty("changelog.dir", dir.resolve("changelog").toString());
+        Path snapshot = dir.resolve("flights.snapshot");
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+            long loadStart = System.nanoTime();
+            long[] feedSequences = new long[connectionHandler.getShardCount()];
+            InMemoryFlightStore memory = InMemoryFlightStore.load(connectionHandler, feedSequences);
+            System.out.printf("in-memory load: %.1f ms%n", (System.nanoTime() - loadStart) / 1e6);
+
+            long writeStart = System.nanoTime();
+            FlightSnapshot.write(memory, snapshot, connectionHandler.getChangeLog().lastSequence(), feedSequences, connectionHandler);
+            System.out.printf("snapshot write: %.1f ms (%d bytes)%n", (System.nanoTime() - writeStart) / 1e6, Files.size(snapshot));
+            long restoreStart = System.nanoTime();
+            try (FlightStore ignored = CachedFlightStore.open(connectionHandler, snapshot, Duration.ofHours(1))) {
+                System.out.printf("snapshot restore: %.1f ms%n", (System.nanoTime() - restoreStart) / 1e6);
+            }
+
+            for (FlightStore store : new FlightStore[]{new SqliteFlightStore(connectionHandler), memory}) {
+                run(store, helicopters);
+                long start = System.nanoTime();
+                run(store, helicopters);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %.0f rounds/s%n", store.getClass().getSimpleName(), ROUNDS / seconds);
+
+                store.getMonthlyTotals("2020-01-01", "2024-12-31");
+                long trendStart = System.nanoTime();
+                int rows = store.getMonthlyTotals("2020-01-01", "2024-12-31").size();
+                System.out.printf("%s: 5-year monthly totals in %.1f ms (%d rows)%n", store.getClass().getSimpleName(), (System.nanoTime() - trendStart) / 1e6, rows);
+            }
+        }
+    }
+
+    private static void run(FlightStore store, int helicopters) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < ROUNDS; i++) {
+            int helicopterId = random.nextInt(1, helicopters + 1);
+            store.getResource(helicopterId);
+            store.getFlights(helicopterId, "2023-01-01", "2023-03-31");
+            store.sumEarnings(helicopterId, "2022-01-01", "2024-12-31", "special", null);
+            if (i % 100 == 0) {
+                store.sumFlightsByCode("usual");
+                store.getEarningsByHelicopter("2023-01-01", "2023-12-31");
+            }
+        }
+    }
+
+    private static void createDatabase(Path path, int helicopters, int flights) throws Exception {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             Statement statement = connection.createStatement()) {
+            TestDatabase.createTables(statement);
+            for (int i = 1; i <= helicopters; i++) {
+                statement.execute("INSERT INTO helicopter VALUES (%d, 'S-%d', 'bell', '2010-01-01', 1000, '2023-01-01', 1000000);".formatted(i, i));
+            }
+
+            connection.setAutoCommit(false);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            LocalDate first = LocalDate.of(2020, 1, 1);
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO flight (date, helicopter_id, code, goods_weight, passangers, flight_hours, price) VALUES (?, ?, ?, ?, ?, ?, ?);")) {
+                for (int i = 0; i < flights; i++) {
+                    insert.setString(1, first.plusDays(random.nextInt(5 * 365)).toString());
+                    insert.setInt(2, random.nextInt(1, helicopters + 1));
+                    insert.setString(3, random.nextBoolean() ? "usual" : "special");
+                    insert.setDouble(4, random.nextInt(500));
+                    insert.setInt(5, random.nextInt(10));
+                    insert.setDouble(6, random.nextInt(1, 10));
+                    insert.setDouble(7, random.nextInt(100, 5000));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Behaviour every {@link FlightStore} must share; subclasses only say how to build the store over the fixture database.
+ */
+public abstract class FlightStoreConformanceTest {
+    private static final double DELTA = 1e-9;
+
+    @TempDir
+    Path dir;
+    protected ConnectionHandler connectionHandler;
+    protected FlightStore store;
+
+    protected abstract FlightStore createStore(ConnectionHandler connectionHandler) throws Exception;
+
+    /** Lets a subclass change the layout, e.g. the shard count, before the store is built. */
+    protected void configure(Properties overrides) {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, """
+                INSERT INTO pilot VALUES
+                    (1, 't1', 'Ivanov', 'Pilot', 5, 'addr', 1980, 1),
+                    (2, 't2', 'Petrov', 'Shturman', 3, 'addr', 1985, 1),
+                    (3, 't3', 'Sidorov', 'Pilot', 7, 'addr', 1990, 2);
+                """, TestDatabase.FLIGHTS);
+        Properties overrides = TestDatabase.overrides(dir, db);
+        configure(overrides);
+        connectionHandler = new ConnectionHandler(overrides);
+        store = createStore(connectionHandler);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.close();
+        connectionHandler.close();
+    }
+
+    @Test
+    public void resourcesAreOrderedBySeriaAndCountOnlyFlightsSinceRepair() throws Exception {
+        List<FlightStore.Resource> resources = store.getResources();
+        Assertions.assertEquals(List.of("a-100", "b-200", "c-300"), resources.stream().map(FlightStore.Resource::seriaNum).toList());
+        Assertions.assertEquals(34, resources.get(0).flownAfterRepair(), DELTA);
+        Assertions.assertEquals(25, resources.get(1).flownAfterRepair(), DELTA);
+        Assertions.assertEquals(0, resources.get(2).flownAfterRepair(), DELTA);
+        Assertions.assertEquals(75, store.getResource(1).orElseThrow().remaining(), DELTA);
+        Assertions.assertTrue(store.getResource(42).isEmpty());
+    }
+
+    @Test
+    public void flightsAreOrderedByDateThenId() throws Exception {
+        Assertions.assertEquals(List.of(1, 2, 3), store.getFlights(1, null, null).stream().map(Flight::id).toList());
+        Assertions.assertEquals(List.of(2, 3), store.getFlights(1, "2024-02-01", "2024-02-01").stream().map(Flight::id).toList());
+        Assertions.assertEquals(new Flight(4, "2023-07-01", 2, "special", 300, 1, 30, 4500), store.getFlights(2, "2023-01-01", "2023-12-31").get(0));
+        Assertions.assertTrue(store.getFlights(3, null, null).isEmpty());
+    }
+
+    @Test
+    public void reportsAggregateAllHelicopters() throws Exception {
+        Assertions.assertEquals(new FlightStore.FlightTotals(3, 160, 1700), store.sumFlightsByCode("usual"));
+        Assertions.assertEquals(new FlightStore.HelicopterValue(1, 3), store.findHelicopterWithMaxFlights().orElseThrow());
+        Assertions.assertEquals(new FlightStore.HelicopterValue(2, 4700), store.findHelicopterWithMaxEarnings().orElseThrow());
+        Assertions.assertEquals(Map.of(1, 3500.0, 2, 200.0), store.getEarningsByHelicopter("2024-01-01", "2024-12-31"));
+        Assertions.assertEquals(new FlightStore.HelicopterTotals(3, 6, 350, 4500), store.getHelicopterTotals(1));
+    }
+
+    @Test
+    public void monthlyTotalsCoverEveryMonthOfThePeriod() throws Exception {
+        Assertions.assertEquals(List.of(
+                new FlightStore.MonthlyTotals(1, "2024-01", 0, 0, 0, null),
+                new FlightStore.MonthlyTotals(1, "2024-02", 2, 25, 3500, 3500.0),
+                new FlightStore.MonthlyTotals(1, "2024-03", 0, 0, 0, -3500.0),
+                new FlightStore.MonthlyTotals(2, "2024-01", 0, 0, 0, null),
+                new FlightStore.MonthlyTotals(2, "2024-02", 0, 0, 0, 0.0),
+                new FlightStore.MonthlyTotals(2, "2024-03", 1, 4, 200, 200.0)
+        ), store.getMonthlyTotals("2024-01-15", "2024-03-31"));
+        Assertions.assertEquals(List.of(), store.getMonthlyTotals("2024-02-02", "2024-02-28"));
+    }
+
+    @Test
+    public void maxReportsBreakTiesByLowestHelicopterId() throws Exception {
+        store.addFlight(new Flight(0, "2024-04-01", 2, "usual", 0, 0, 1, 0));
+        Assertions.assertEquals(1, store.findHelicopterWithMaxFlights().orElseThrow().helicopterId());
+    }
+
+    @Test
+    public void pilotEarningsNarrowByCodeAndIds() throws Exception {
+        int helicopterId = store.getPilotHelicopter(2).orElseThrow();
+        Assertions.assertEquals(1, helicopterId);
+        Assertions.assertEquals(4500, store.sumEarnings(helicopterId, "2020-01-01", "2030-01-01", null, null).orElseThrow(), DELTA);
+        Assertions.assertEquals(1500, store.sumEarnings(helicopterId, "2020-01-01", "2030-01-01", "usual", null).orElseThrow(), DELTA);
+        Assertions.assertEquals(3000, store.sumEarnings(helicopterId, "2024-01-01", "2030-01-01", null, new int[]{2, 4, 99}).orElseThrow(), DELTA);
+        Assertions.assertTrue(store.sumEarnings(helicopterId, "2020-01-01", "2030-01-01", null, new int[]{4}).isEmpty());
+        Assertions.assertTrue(store.getPilotHelicopter(99).isEmpty());
+    }
+
+    @Test
+    public void helicopterAndCrewLookups() throws Exception {
+        Assertions.assertEquals(new FlightStore.Helicopter(2, "a-100", "boeng"), store.getHelicopter(2).orElseThrow());
+        Assertions.assertEquals(List.of("Ivanov", "Petrov"), store.getCrew(1).stream().map(FlightStore.CrewMember::lastName).toList());
+        Assertions.assertTrue(store.getCrew(3).isEmpty());
+    }
+
+    @Test
+    public void helicopterSummaryMatchesTheSeparateReads() throws Exception {
+        store.archiveFlightsBefore("2023-12-31");
+        for (int helicopterId : new int[]{1, 2, 3}) {
+            FlightStore.HelicopterSummary summary = store.getHelicopterSummary(helicopterId).orElseThrow();
+            Assertions.assertEquals(store.getResource(helicopterId).orElseThrow(), summary.resource());
+            Assertions.assertEquals(store.getFlights(helicopterId, null, null), summary.flights());
+            Assertions.assertEquals(store.getHelicopterTotals(helicopterId), summary.totals());
+        }
+        Assertions.assertTrue(store.getHelicopterSummary(42).isEmpty());
+    }
+
+    @Test
+    public void addFlightChecksRemainingResource() throws Exception {
+        FlightStore.AddResult added = store.addFlight(new Flight(0, "2024-05-01", 1, "usual", 10, 1, 75, 100));
+        Assertions.assertTrue(added.added());
+        Assertions.assertEquals(new Flight(6, "2024-05-01", 1, "usual", 10, 1, 75, 100), added.flight());
+
+        FlightStore.AddResult rejected = store.addFlight(new Flight(0, "2024-05-02", 1, "usual", 10, 1, 0.5, 100));
+        Assertions.assertFalse(rejected.added());
+        Assertions.assertEquals(100, rejected.resource().orElseThrow().flownAfterRepair(), DELTA);
+
+        Assertions.assertTrue(store.addFlight(new Flight(0, "2024-05-02", 42, "usual", 10, 1, 1, 100)).resource().isEmpty());
+    }
+
+    @Test
+    public void updateAndDeleteReturnThePreviousRow() throws Exception {
+        Flight before = store.updateFlight(5, flight -> new Flight(flight.id(), "2024-01-15", 1, flight.code(),
+                flight.goodsWeight(), flight.passengers(), flight.flightHours(), 250)).orElseThrow();
+        Assertions.assertEquals(new Flight(5, "2024-03-15", 2, "usual", 10, 3, 4, 200), before);
+        Assertions.assertEquals(List.of(1, 5, 2, 3), store.getFlights(1, null, null).stream().map(Flight::id).toList());
+        Assertions.assertEquals(250, store.getFlight(5).orElseThrow().price(), DELTA);
+
+        Assertions.assertEquals(before.id(), store.deleteFlight(5).orElseThrow().id());
+        Assertions.assertTrue(store.getFlight(5).isEmpty());
+        Assertions.assertTrue(store.deleteFlight(5).isEmpty());
+        Assertions.assertTrue(store.updateFlight(5, flight -> flight).isEmpty());
+    }
+
+    @Test
+    public void archivedFlightsStayReadableButNotEditable() throws Exception {
+        Assertions.assertEquals(1, store.archiveFlightsBefore("2024-12-31"));
+        Assertions.assertEquals(0, store.archiveFlightsBefore("2024-12-31"));
+        Assertions.assertTrue(store.getFlight(1).isEmpty());
+        Assertions.assertTrue(store.deleteFlight(1).isEmpty());
+        Assertions.assertTrue(store.getFlight(4).isPresent());
+        Assertions.assertEquals(List.of(1, 2, 3), store.getFlights(1, null, null).stream().map(Flight::id).toList());
+        Assertions.assertEquals(new FlightStore.FlightTotals(2, 500, 7500), store.sumFlightsByCode("special"));
+    }
+
+    @Test
+    public void bulkDeleteRemovesEveryMatchingFlight() throws Exception {
+        FlightStore.FlightFilter filter = new FlightStore.FlightFilter(null, 1, "2024-01-01", null, null);
+        Assertions.assertEquals(2, store.countFlights(filter));
+        FlightStore.FlightFilter byIds = new FlightStore.FlightFilter(new int[]{4, 1}, null, null, null, "special");
+        Assertions.assertEquals(1, store.countFlights(byIds));
+        Assertions.assertTrue(byIds.matches(new Flight(4, "2023-07-01", 2, "special", 300, 1, 30, 4500)));
+        Assertions.assertFalse(byIds.matches(new Flight(2, "2024-02-01", 1, "special", 200, 0, 20, 3000)));
+        Assertions.assertEquals(List.of(2, 3), store.bulkDeleteFlights(filter).stream().map(Flight::id).toList());
+        Assertions.assertEquals(List.of(1), store.getFlights(1, null, null).stream().map(Flight::id).toList());
+        Assertions.assertEquals(0, store.countFlights(filter));
+    }
+
+    @Test
+    public void bulkUpdateMovesFlightsWithinTheResourceLimit() throws Exception {
+        FlightStore.BulkResult result = store.bulkUpdateFlights(new FlightStore.FlightFilter(null, 1, null, null, "usual"),
+                new FlightStore.FlightPatch(null, 2, null, null, null, null, null));
+        Assertions.assertTrue(result.applied());
+        Assertions.assertEquals(List.of(1, 3), result.before().stream().map(Flight::id).toList());
+        Assertions.assertEquals(new Flight(3, "2024-02-01", 2, "usual", 50, 4, 5, 500), result.after().get(1));
+        Assertions.assertEquals(List.of(1, 4, 3, 5), store.getFlights(2, null, null).stream().map(Flight::id).toList());
+        Assertions.assertEquals(39, store.getResource(2).orElseThrow().flownAfterRepair(), DELTA);
+    }
+
+    @Test
+    public void bulkUpdateOverTheResourceLimitChangesNothing() throws Exception {
+        FlightStore.BulkResult result = store.bulkUpdateFlights(new FlightStore.FlightFilter(new int[]{2}, null, null, null, null),
+                new FlightStore.FlightPatch(null, 2, null, null, null, null, 1.0));
+        Assertions.assertFalse(result.applied());
+        Assertions.assertEquals(List.of(2), result.exceeded().stream().map(FlightStore.Resource::helicopterId).toList());
+        Assertions.assertEquals(54, result.exceeded().get(0).flownAfterRepair(), DELTA);
+        Assertions.assertEquals(List.of(1, 2, 3), store.getFlights(1, null, null).stream().map(Flight::id).toList());
+        Assertions.assertEquals(3000, store.getFlight(2).orElseThrow().price(), DELTA);
+    }
+}
@@ -0,0 +1,10 @@
+import flight.ConnectionHandler;
+import flight.FlightStore;
+import flight.InMemoryFlightStore;
+
+public class InMemoryFlightStoreTest extends FlightStoreConformanceTest {
+    @Override
+    protected FlightStore createStore(ConnectionHandler connectionHandler) throws Exception {
+        return InMemoryFlightStore.load(connectionHandler);
+    }
+}
@@ -0,0 +1,327 @@
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import flight.AdminStrategy;
+import flight.AuthManager;
+import flight.ConnectionHandler;
+import flight.ConsoleManager;
+import flight.DatabaseBusyException;
+import flight.FlightStore;
+import flight.PilotStrategy;
+import flight.User;
+import flight.UserRole;
+import flight.UserStrategy;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * Runs concurrent scripted operator sessions through {@link AuthManager}, {@link AdminStrategy} and {@link PilotStrategy}
+ * against a copy of the database and reports latency, pool wait, {@code SQLITE_BUSY} and shed request counts per command.
+ * <p>
+ * Usage: {@code java -cp <test classpath> [-Ddb.pool_size=N] LoadTestHarness [sessions] [operations per session] [mix] [database]},
+ * where mix is a list of weights such as {@code login=1,pilot=6,report=2,add_flight=1}. Credentials come from
+ * {@code -Dload.pilot=login:password} and {@code -Dload.admin=login:password}, the random seed from {@code -Dload.seed}.
+ */
+public class LoadTestHarness {
+    private static final String LOGIN_PROMPT = "Input login:";
+    private static final Set<String> COMMAND_PROMPTS = Set.of("Input command", "Введите команду:");
+    private static final String[] PILOT_COMMANDS = {"/flights_info", "/flight_limit", "/flight_statistic"};
+    private static final String[] REPORT_COMMANDS = {
+            "/helicopter_flight_hours_resource", "/special_flights_summary", "/regular_flights_summary",
+            "/helicopter_max_flights_info", "/crew_max_earnings_flights", "/helicopter_flights_period"
+    };
+    private static final String SHED_MESSAGE = new DatabaseBusyException().getMessage();
+    private static final PrintStream NULL_SINK = new PrintStream(OutputStream.nullOutputStream());
+    // pool wait nanos and acquisition timeouts of the current session thread
+    private static final ThreadLocal<long[]> POOL_WAIT = ThreadLocal.withInitial(() -> new long[2]);
+
+    private record Segment(String input) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Map<String, Integer> mix = parseMix(args.length > 2 ? args[2] : "login=1,pilot=6,report=2,add_flight=1");
+        Path source = Path.of(args.length > 3 ? args[3] : "src/main/resources/flightDb.sqlite");
+        String[] pilot = System.getProperty("load.pilot", "al9696:kotiki").split(":", 2);
+        String[] admin = System.getProperty("load.admin", "admin:admin").split(":", 2);
+        long seed = Long.getLong("load.seed", 1);
+
+        Path dir = Files.createTempDirectory("flight-load");
+        Path db = dir.resolve("flights.sqlite");
+        Files.copy(source, db);
+        Properties overrides = new Properties();
+        overrides.setProperty("db.url", "jdbc:sqlite:" + db);
+        overrides.setProperty("db.archive_path", dir.resolve("archive.sqlite").toString());
+        overrides.setProperty("db.replica.path", dir.resolve("replica.sqlite").toString());
+        overrides.setProperty("changelog.dir", dir.resolve("changelog").toString());
+        overrides.setProperty("alerts.log_path", dir.resolve("alerts.log").toString());
+        overrides.setProperty("snapshot.path", dir.resolve("snapshot.bin").toString());
+
+        MetricsTrackerFactory metrics = (poolName, poolStats) -> new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                POOL_WAIT.get()[0] += elapsedAcquiredNanos;
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                POOL_WAIT.get()[1]++;
+            }
+        };
+
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides, metrics)) {
+            int[] helicopterIds = connectionHandler.getFlightStore().getResources().stream().mapToInt(FlightStore.Resource::helicopterId).toArray();
+            ExecutorService executor = Executors.newFixedThreadPool(sessions);
+            List<Future<Map<String, CommandStats>>> results = new ArrayList<>(sessions);
+            long start = System.nanoTime();
+            for (int session = 0; session < sessions; session++) {
+                List<Segment> script = script(new Random(seed + session), operations, mix, helicopterIds, pilot, admin);
+                results.add(executor.submit(() -> runSession(connectionHandler, script)));
+            }
+            Map<String, CommandStats> total = new TreeMap<>();
+            for (Future<Map<String, CommandStats>> result : results) {
+                result.get().forEach((command, stats) -> total.computeIfAbsent(command, c -> new CommandStats()).merge(stats));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+
+            System.out.printf("sessions=%d operations=%d pool_size=%s mix=%s elapsed=%.1f s%n",
+                    sessions, operations, connectionHandler.getProperty("db.pool_size"), mix, seconds);
+            System.out.printf("%-36s %7s %8s %8s %8s %8s %8s %10s %8s %6s %6s %6s%n",
+                    "command", "count", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "wait ms", "timeouts", "busy", "shed", "errors");
+            total.forEach((command, stats) -> stats.print(command, seconds));
+            connectionHandler.getPoolMetrics().forEach((pool, state) -> System.out.printf("%s: %s%n", pool, state));
+        }
+    }
+
+    private static Map<String, CommandStats> runSession(ConnectionHandler connectionHandler, List<Segment> script) {
+        Map<String, CommandStats> stats = new TreeMap<>();
+        for (Segment segment : script) {
+            TimedConsoleManager consoleManager = new TimedConsoleManager(new Scanner(segment.input()), stats);
+            try {
+                User user = new AuthManager(consoleManager, connectionHandler).getAuth();
+                UserStrategy strategy = user.role() == UserRole.ADMIN
+                        ? new AdminStrategy(consoleManager, connectionHandler)
+                        : new PilotStrategy(consoleManager, connectionHandler);
+                strategy.apply(user);
+                consoleManager.finish(false);
+            } catch (RuntimeException e) {
+                // the rest of the segment is skipped, the next one logs in again
+                consoleManager.busy |= isBusy(e);
+                consoleManager.shed |= e.getCause() instanceof DatabaseBusyException;
+                consoleManager.finish(true);
+            }
+        }
+        return stats;
+    }
+
+    // Each segment logs in, runs its operations and logs out; a login operation or a change of role starts a new one
+    private static List<Segment> script(Random random, int operations, Map<String, Integer> mix, int[] helicopterIds, String[] pilot, String[] admin) {
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder current = null;
+        UserRole role = null;
+        for (int i = 0; i < operations; i++) {
+            String operation = pick(random, mix, totalWeight);
+            UserRole needed = switch (operation) {
+                case "pilot" -> UserRole.PILOT;
+                case "login" -> role != null ? role : (random.nextBoolean() ? UserRole.PILOT : UserRole.ADMIN);
+                default -> UserRole.ADMIN;
+            };
+            if (current == null || role != needed || "login".equals(operation)) {
+                if (current != null) {
+                    segments.add(new Segment(current.append("/out\n").toString()));
+                }
+                String[] credentials = needed == UserRole.PILOT ? pilot : admin;
+                current = new StringBuilder().append(credentials[0]).append('\n').append(credentials[1]).append('\n');
+                role = needed;
+            }
+            switch (operation) {
+                case "pilot" -> current.append(PILOT_COMMANDS[random.nextInt(PILOT_COMMANDS.length)]).append('\n');
+                case "report" -> {
+                    String command = REPORT_COMMANDS[random.nextInt(REPORT_COMMANDS.length)];
+                    current.append(command).append('\n');
+                    if ("/helicopter_flights_period".equals(command)) {
+                        current.append(helicopterIds[random.nextInt(helicopterIds.length)]).append("\n2020-01-01\n2030-12-31\n");
+                    }
+                }
+                case "add_flight" -> current.append("/add_flight\n")
+                        .append(LocalDate.of(2024, 1, 1).plusDays(random.nextInt(366))).append('\n')
+                        .append(helicopterIds[random.nextInt(helicopterIds.length)]).append('\n')
+                        .append(random.nextBoolean() ? "usual" : "special").append('\n')
+                        .append(random.nextInt(500)).append('\n')
+                        .append(random.nextInt(10)).append('\n')
+                        .append("0.1\n")
+                        .append(random.nextInt(100, 5000)).append('\n');
+                default -> {
+                }
+            }
+        }
+        if (current != null) {
+            segments.add(new Segment(current.append("/out\n").toString()));
+        }
+        return segments;
+    }
+
+    private static String pick(Random random, Map<String, Integer> mix, int totalWeight) {
+        int ticket = random.nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            ticket -= entry.getValue();
+            if (ticket < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.split("=", 2);
+            if (!Set.of("login", "pilot", "report", "add_flight").contains(pair[0].trim())) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + pair[0]);
+            }
+            weights.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    private static boolean isBusy(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("SQLITE_BUSY")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Times every command from the line that names it to the next prompt, a login from its prompt to the first
+     * command prompt.
+     */
+    private static final class TimedConsoleManager extends ConsoleManager {
+        private final Map<String, CommandStats> stats;
+        private String command;
+        private long startNanos;
+        private long waitAtStart;
+        private long timeoutsAtStart;
+        private boolean busy;
+        private boolean shed;
+
+        TimedConsoleManager(Scanner scanner, Map<String, CommandStats> stats) {
+            super(NULL_SINK, scanner);
+            this.stats = stats;
+        }
+
+        @Override
+        public <T> T getInput(Class<T> clazz, String message, String errMessage, Predicate<T> predicate) {
+            boolean commandPrompt = COMMAND_PROMPTS.contains(message);
+            if (commandPrompt || LOGIN_PROMPT.equals(message)) {
+                finish(false);
+            }
+            T value = super.getInput(clazz, message, errMessage, predicate);
+            if (LOGIN_PROMPT.equals(message)) {
+                start("login");
+            } else if (commandPrompt && !"/out".equals(value)) {
+                start((String) value);
+            }
+            return value;
+        }
+
+        @Override
+        public void printMessage(String message) {
+            if (command != null && message.contains("SQLITE_BUSY")) {
+                busy = true;
+            }
+            if (command != null && message.contains(SHED_MESSAGE)) {
+                shed = true;
+            }
+            super.printMessage(message);
+        }
+
+        void finish(boolean failed) {
+            if (command == null) {
+                return;
+            }
+            long[] wait = POOL_WAIT.get();
+            stats.computeIfAbsent(command, c -> new CommandStats())
+                    .add(System.nanoTime() - startNanos, wait[0] - waitAtStart, wait[1] - timeoutsAtStart, busy, shed, failed);
+            command = null;
+        }
+
+        private void start(String name) {
+            long[] wait = POOL_WAIT.get();
+            command = name;
+            busy = false;
+            shed = false;
+            waitAtStart = wait[0];
+            timeoutsAtStart = wait[1];
+            startNanos = System.nanoTime();
+        }
+    }
+
+    private static final class CommandStats {
+        private long[] latencies = new long[64];
+        private int count;
+        private long waitNanos;
+        private long timeouts;
+        private int busy;
+        private int shed;
+        private int errors;
+
+        void add(long latency, long wait, long timeoutCount, boolean isBusy, boolean isShed, boolean failed) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            waitNanos += wait;
+            timeouts += timeoutCount;
+            busy += isBusy ? 1 : 0;
+            shed += isShed ? 1 : 0;
+            errors += failed ? 1 : 0;
+        }
+
+        void merge(CommandStats other) {
+            if (count + other.count > latencies.length) {
+                latencies = Arrays.copyOf(latencies, count + other.count);
+            }
+            System.arraycopy(other.latencies, 0, latencies, count, other.count);
+            count += other.count;
+            waitNanos += other.waitNanos;
+            timeouts += other.timeouts;
+            busy += other.busy;
+            shed += other.shed;
+            errors += other.errors;
+        }
+
+        void print(String command, double seconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            System.out.printf("%-36s %7d %8.1f %8.2f %8.2f %8.2f %8.2f %10.3f %8d %6d %6d %6d%n",
+                    command, count, count / seconds, percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[count - 1] / 1e6, waitNanos / 1e6 / count, timeouts, busy, shed, errors);
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            return sorted[Math.max(0, (int) Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import flight.ConnectionHandler;
+import flight.PilotIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+
+public class PilotIndexTest {
+    @TempDir
+    Path dir;
+    private Path db;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        String recent = LocalDate.now().minusDays(5).toString();
+        db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, """
+                INSERT INTO pilot VALUES
+                    (1, 't1', 'Ivanov', 'Pilot', 5, 'addr', 1980, 1),
+                    (2, 't2', 'Ivashin', 'Shturman', 3, 'addr', 1985, 1),
+                    (3, 't3', 'Sidorov', 'Pilot', 7, 'addr', 1990, 2);
+                """, """
+                INSERT INTO flight VALUES
+                    (1, '2020-05-01', 1, 'usual', 100, 2, 10, 1000),
+                    (2, '%1$s', 1, 'special', 200, 0, 20, 3000),
+                    (3, '%1$s', 2, 'usual', 50, 4, 5, 500);
+                """.formatted(recent));
+
+        Properties overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("pilot_search.recent_days", "30");
+        overrides.setProperty("reference.check_interval_ms", "0");
+        connectionHandler = new ConnectionHandler(overrides);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void prefixMatchesComeWithRecentHelicopterTotals() throws Exception {
+        List<PilotIndex.Match> matches = connectionHandler.getPilotIndex().search("IVA");
+        Assertions.assertEquals(List.of(1, 2), matches.stream().map(match -> match.pilot().id()).toList());
+        PilotIndex.Match first = matches.get(0);
+        Assertions.assertEquals(0, first.distance());
+        Assertions.assertEquals("b-200", first.seriaNum());
+        Assertions.assertEquals(1, first.recentFlights());
+        Assertions.assertEquals(20, first.recentHours(), 1e-9);
+        Assertions.assertEquals(3000, first.recentEarnings(), 1e-9);
+
+        Assertions.assertEquals(List.of(1, 3), connectionHandler.getPilotIndex().search("pilot").stream().map(match -> match.pilot().id()).toList());
+        Assertions.assertEquals(List.of(3), connectionHandler.getPilotIndex().search("t3").stream().map(match -> match.pilot().id()).toList());
+    }
+
+    @Test
+    public void misspelledNamesFallBackToEditDistance() throws Exception {
+        List<PilotIndex.Match> matches = connectionHandler.getPilotIndex().search("Sidorof");
+        Assertions.assertEquals(1, matches.size());
+        Assertions.assertEquals(3, matches.get(0).pilot().id());
+        Assertions.assertEquals(1, matches.get(0).distance());
+        Assertions.assertTrue(connectionHandler.getPilotIndex().search("xyz").isEmpty());
+    }
+
+    @Test
+    public void indexFollowsChangesToThePilotTable() throws Exception {
+        Assertions.assertTrue(connectionHandler.getPilotIndex().search("Petrov").isEmpty());
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE pilot SET last_name = 'Petrov' WHERE id = 2;");
+        }
+        Assertions.assertEquals(List.of(2), connectionHandler.getPilotIndex().search("petr").stream().map(match -> match.pilot().id()).toList());
+        Assertions.assertTrue(connectionHandler.getPilotIndex().search("Ivashin").isEmpty());
+    }
+}
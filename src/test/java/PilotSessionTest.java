@@ -0,0 +1,99 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightStore;
+import flight.PilotSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+public class PilotSessionTest {
+    @TempDir
+    Path dir;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, """
+                INSERT INTO flight VALUES
+                    (1, '2024-02-01', 1, 'usual', 100, 2, 10, 1000),
+                    (2, '2024-03-15', 2, 'usual', 10, 3, 4, 200);
+                """);
+        Properties overrides = TestDatabase.overrides(dir, db);
+        // the tests sync the change log themselves, and see every reference change at once
+        overrides.setProperty("changelog.check_interval_ms", "600000");
+        overrides.setProperty("reference.check_interval_ms", "0");
+        connectionHandler = new ConnectionHandler(overrides);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void reloadsOnlyWhenAChangeTouchesTheHelicopter() throws Exception {
+        PilotSession session = new PilotSession(connectionHandler, 1);
+        Assertions.assertEquals(List.of(1), session.get().orElseThrow().flights().stream().map(Flight::id).toList());
+        session.get();
+        Assertions.assertEquals(1, session.getReloads());
+
+        FlightStore store = connectionHandler.getFlightStore();
+        store.addFlight(new Flight(0, "2024-04-01", 2, "usual", 0, 0, 1, 10));
+        connectionHandler.syncChanges();
+        session.get();
+        Assertions.assertEquals(1, session.getReloads());
+
+        store.addFlight(new Flight(0, "2024-04-01", 1, "usual", 0, 0, 5, 10));
+        connectionHandler.syncChanges();
+        FlightStore.HelicopterSummary summary = session.get().orElseThrow();
+        Assertions.assertEquals(2, session.getReloads());
+        Assertions.assertEquals(15, summary.resource().flownAfterRepair(), 1e-9);
+        Assertions.assertEquals(2, summary.totals().flights());
+    }
+
+    @Test
+    public void changeMissingFromTheLogReloadsTheView() throws Exception {
+        PilotSession session = new PilotSession(connectionHandler, 1);
+        session.get();
+        connectionHandler.getFlightStore().addFlight(new Flight(0, "2024-04-01", 1, "usual", 0, 0, 5, 10));
+        Assertions.assertEquals(1, session.get().orElseThrow().totals().flights());
+
+        connectionHandler.reloadChangeViews();
+        Assertions.assertEquals(2, session.get().orElseThrow().totals().flights());
+        Assertions.assertEquals(2, session.getReloads());
+        session.get();
+        Assertions.assertEquals(2, session.getReloads());
+    }
+
+    @Test
+    public void changesOfOtherWritersAndRepairsReloadTheView() throws Exception {
+        PilotSession session = new PilotSession(connectionHandler, 1);
+        Assertions.assertEquals(10, session.get().orElseThrow().resource().flownAfterRepair(), 1e-9);
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("flights.sqlite"));
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO flight VALUES (3, '2024-04-01', 1, 'usual', 0, 0, 5, 10);");
+            connectionHandler.syncChanges();
+            Assertions.assertEquals(15, session.get().orElseThrow().resource().flownAfterRepair(), 1e-9);
+            Assertions.assertEquals(2, session.getReloads());
+
+            statement.execute("UPDATE helicopter SET repair_date = '2024-03-01' WHERE id = 1;");
+            Assertions.assertEquals(5, session.get().orElseThrow().resource().flownAfterRepair(), 1e-9);
+            Assertions.assertEquals(3, session.getReloads());
+        }
+    }
+
+    @Test
+    public void unknownHelicopterHasNoView() throws Exception {
+        Assertions.assertTrue(new PilotSession(connectionHandler, 42).get().isEmpty());
+    }
+}
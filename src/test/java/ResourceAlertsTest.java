@@ -0,0 +1,136 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightChange;
+import flight.ResourceAlerts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+public class ResourceAlertsTest {
+    @TempDir
+    Path dir;
+    private ConnectionHandler connectionHandler;
+    private Path logPath;
+    private ResourceAlerts alerts;
+
+    // Helicopter 2 has 16 of 50 hours left, so with a 20% threshold it alerts below 10 hours
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, TestDatabase.FLIGHTS);
+        Properties overrides = TestDatabase.overrides(dir, db);
+        // the tests sync the change log themselves, and see every reference change at once
+        overrides.setProperty("changelog.check_interval_ms", "600000");
+        overrides.setProperty("reference.check_interval_ms", "0");
+        connectionHandler = new ConnectionHandler(overrides);
+        logPath = dir.resolve("alerts.log");
+        alerts = new ResourceAlerts(connectionHandler, 20, 5, logPath);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void thresholdIsStrictOnBothLimits() {
+        Assertions.assertFalse(alerts.isBelowThreshold(100, 20));
+        Assertions.assertTrue(alerts.isBelowThreshold(100, 19.99));
+        Assertions.assertFalse(alerts.isBelowThreshold(10, 5));
+        Assertions.assertTrue(alerts.isBelowThreshold(10, 4.99));
+        Assertions.assertTrue(alerts.isBelowThreshold(100, -1));
+        Assertions.assertFalse(alerts.isBelowThreshold(0, 5));
+    }
+
+    @Test
+    public void totalsAreLoadedOnFirstUse() throws Exception {
+        connectionHandler.getFlightStore().addFlight(new Flight(0, "2024-04-01", 2, "usual", 0, 0, 7, 0));
+        Assertions.assertEquals(List.of(new ResourceAlerts.Resource(2, 50, 41)), alerts.getActiveAlerts());
+        Assertions.assertFalse(Files.exists(logPath));
+    }
+
+    @Test
+    public void changeInTheLoadedTotalsIsNotCountedTwice() throws Exception {
+        connectionHandler.syncChanges();
+        connectionHandler.getChangeLog().addListener(alerts);
+        connectionHandler.getFlightStore().addFlight(new Flight(0, "2024-04-01", 2, "usual", 0, 0, 7, 0));
+        Assertions.assertEquals(List.of(new ResourceAlerts.Resource(2, 50, 41)), alerts.getActiveAlerts());
+
+        connectionHandler.syncChanges();
+        Assertions.assertEquals(List.of(new ResourceAlerts.Resource(2, 50, 41)), alerts.getActiveAlerts());
+    }
+
+    @Test
+    public void committedChangesRaiseAlertsAndRepairsClearThem() throws Exception {
+        connectionHandler.getChangeLog().addListener(alerts);
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+        connectionHandler.getFlightStore().addFlight(new Flight(0, "2024-04-01", 2, "usual", 0, 0, 7, 0));
+        connectionHandler.syncChanges();
+        Assertions.assertEquals(List.of(new ResourceAlerts.Resource(2, 50, 41)), alerts.getActiveAlerts());
+        Assertions.assertEquals(1, alerts.getRecentAlerts(10).size());
+
+        try (Connection connection = connectionHandler.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE helicopter SET repair_date = '2024-03-20' WHERE id = 2;");
+        }
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+    }
+
+    @Test
+    public void alertIsRaisedOnEachCrossingDownwards() throws Exception {
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+        Flight flight = new Flight(6, "2024-04-01", 2, "usual", 0, 0, 7, 0);
+        alerts.accept(new FlightChange(1, FlightChange.Type.INSERT, null, flight));
+        Assertions.assertEquals(List.of(2), alerts.getActiveAlerts().stream().map(ResourceAlerts.Resource::helicopterId).toList());
+        Assertions.assertTrue(alerts.getRecentAlerts(10).get(0).endsWith("|2|50.00|41.00|9.00"));
+
+        alerts.accept(new FlightChange(2, FlightChange.Type.DELETE, flight, null));
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+        Assertions.assertEquals(1, alerts.getRecentAlerts(10).size());
+
+        alerts.accept(new FlightChange(3, FlightChange.Type.INSERT, null, flight));
+        Assertions.assertEquals(2, alerts.getRecentAlerts(10).size());
+        Assertions.assertEquals(1, alerts.getRecentAlerts(1).size());
+    }
+
+    @Test
+    public void updatesMoveHoursBetweenHelicopters() throws Exception {
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+        Flight before = new Flight(5, "2024-03-15", 2, "usual", 10, 3, 4, 200);
+        Flight longer = new Flight(5, "2024-03-15", 2, "usual", 10, 3, 11, 200);
+        alerts.accept(new FlightChange(1, FlightChange.Type.UPDATE, before, longer));
+        Assertions.assertEquals(List.of(new ResourceAlerts.Resource(2, 50, 41)), alerts.getActiveAlerts());
+
+        Flight moved = new Flight(5, "2024-03-15", 1, "usual", 10, 3, 11, 200);
+        alerts.accept(new FlightChange(2, FlightChange.Type.UPDATE, longer, moved));
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+
+        // flights before the last repair do not count against the resource
+        alerts.accept(new FlightChange(3, FlightChange.Type.INSERT, null, new Flight(6, "2023-12-31", 1, "usual", 0, 0, 90, 0)));
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+    }
+
+    @Test
+    public void alertsThatCannotBeWrittenAreKeptAndRetried() throws Exception {
+        Assertions.assertEquals(List.of(), alerts.getActiveAlerts());
+        Files.createDirectory(logPath);
+        Flight flight = new Flight(6, "2024-04-01", 2, "usual", 0, 0, 7, 0);
+        alerts.accept(new FlightChange(1, FlightChange.Type.INSERT, null, flight));
+        Assertions.assertTrue(alerts.getWriteError().isPresent());
+        Assertions.assertEquals(1, alerts.getRecentAlerts(10).size());
+
+        Files.delete(logPath);
+        alerts.accept(new FlightChange(2, FlightChange.Type.DELETE, flight, null));
+        alerts.accept(new FlightChange(3, FlightChange.Type.INSERT, null, flight));
+        Assertions.assertTrue(alerts.getWriteError().isEmpty());
+        Assertions.assertEquals(2, Files.readAllLines(logPath).size());
+        Assertions.assertEquals(2, alerts.getRecentAlerts(10).size());
+    }
+}
@@ -0,0 +1,94 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightChange;
+import flight.ResourceForecast;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+
+public class ResourceForecastTest {
+    @TempDir
+    Path dir;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, TestDatabase.FLIGHTS);
+        Properties overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("forecast.window_days", "30");
+        // the tests sync the change log themselves, and see every reference change at once
+        overrides.setProperty("changelog.check_interval_ms", "600000");
+        overrides.setProperty("reference.check_interval_ms", "0");
+        connectionHandler = new ConnectionHandler(overrides);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void projectsFromTheWindowAverageAndSlidesWithNewFlights() throws Exception {
+        ResourceForecast forecast = connectionHandler.getResourceForecast();
+        List<ResourceForecast.Forecast> forecasts = forecast.getForecasts();
+        Assertions.assertEquals(LocalDate.parse("2024-03-15"), forecast.getWindowEnd());
+        Assertions.assertEquals(List.of(2, 1, 3), forecasts.stream().map(ResourceForecast.Forecast::helicopterId).toList());
+        Assertions.assertEquals(4.0 / 30, forecasts.get(0).hoursPerDay(), 1e-9);
+        Assertions.assertEquals(LocalDate.parse("2024-07-13"), forecasts.get(0).depletionDate());
+        Assertions.assertNull(forecasts.get(1).depletionDate());
+
+        Flight flight = new Flight(6, "2024-03-20", 1, "usual", 0, 1, 30, 100);
+        connectionHandler.getChangeLog().append(FlightChange.Type.INSERT, null, flight);
+        forecasts = forecast.getForecasts();
+        Assertions.assertEquals(LocalDate.parse("2024-03-20"), forecast.getWindowEnd());
+        Assertions.assertEquals(1, forecasts.get(0).helicopterId());
+        Assertions.assertEquals(45, forecasts.get(0).remaining(), 1e-9);
+        Assertions.assertEquals(LocalDate.parse("2024-05-04"), forecasts.get(0).depletionDate());
+
+        connectionHandler.getChangeLog().append(FlightChange.Type.DELETE, flight, null);
+        Assertions.assertEquals(List.of(2, 1, 3), forecast.getForecasts().stream().map(ResourceForecast.Forecast::helicopterId).toList());
+    }
+
+    @Test
+    public void changeMissingFromTheLogIsPickedUpAfterAReload() throws Exception {
+        ResourceForecast forecast = connectionHandler.getResourceForecast();
+        Assertions.assertEquals(LocalDate.parse("2024-03-15"), forecast.getWindowEnd());
+        connectionHandler.getFlightStore().addFlight(new Flight(0, "2024-03-20", 1, "usual", 0, 1, 30, 100));
+        Assertions.assertEquals(LocalDate.parse("2024-03-15"), forecast.getWindowEnd());
+
+        connectionHandler.reloadChangeViews();
+        Assertions.assertEquals(LocalDate.parse("2024-03-20"), forecast.getWindowEnd());
+        Assertions.assertEquals(45, forecast.getForecasts().get(0).remaining(), 1e-9);
+    }
+
+    @Test
+    public void futureFlightsDoNotMoveTheWindowEnd() throws Exception {
+        ResourceForecast forecast = connectionHandler.getResourceForecast();
+        Assertions.assertEquals(LocalDate.parse("2024-03-15"), forecast.getWindowEnd());
+        connectionHandler.getFlightStore().addFlight(new Flight(0, "2099-01-01", 2, "usual", 0, 1, 1, 100));
+        connectionHandler.syncChanges();
+        Assertions.assertEquals(LocalDate.parse("2024-03-15"), forecast.getWindowEnd());
+        Assertions.assertEquals(4.0 / 30, forecast.getForecasts().get(0).hoursPerDay(), 1e-9);
+    }
+
+    @Test
+    public void repairReloadsTheResources() throws Exception {
+        ResourceForecast forecast = connectionHandler.getResourceForecast();
+        Assertions.assertEquals(34, forecast.getForecasts().get(0).flown(), 1e-9);
+        try (Connection connection = connectionHandler.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE helicopter SET repair_date = '2024-01-01', hours_before_repair = 10 WHERE id = 2;");
+        }
+        ResourceForecast.Forecast repaired = forecast.getForecasts().stream().filter(f -> f.helicopterId() == 2).findFirst().orElseThrow();
+        Assertions.assertEquals(4, repaired.flown(), 1e-9);
+        Assertions.assertEquals(10, repaired.limit(), 1e-9);
+    }
+}
@@ -0,0 +1,293 @@
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import flight.AdminStrategy;
+import flight.AuthManager;
+import flight.ConnectionHandler;
+import flight.ConsoleManager;
+import flight.PilotStrategy;
+import flight.User;
+import flight.UserRole;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Connection checkouts and executed statements of every console command against a small fixture database.
+ * <p>
+ * Each command runs twice and the second run is measured, so caches filled on first use are not counted; the
+ * reference cache keeps its production check interval, as commands typed in a session do. A budget is the count
+ * the command has today: when a change adds a round trip the test fails, and when it removes one the budget
+ * should be lowered with it.
+ * Rows per helicopter are several, so a query per row shows up as a count well over the budget.
+ */
+public class RoundTripBudgetTest {
+    private static final String COUNTING_URL_PREFIX = "jdbc:counting:";
+    private static final Set<String> COMMAND_PROMPTS = Set.of("Введите команду:", "Input command");
+    private static final AtomicInteger STATEMENTS = new AtomicInteger();
+
+    static {
+        try {
+            DriverManager.registerDriver(new CountingDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    record Count(int checkouts, int statements) {
+    }
+
+    record Case(UserRole role, String warmUp, String script, int checkouts, int statements) {
+        @Override
+        public String toString() {
+            return role + " " + script.lines().findFirst().orElse("session start");
+        }
+    }
+
+    @TempDir
+    static Path fixtureDir;
+    private static Path fixture;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void createFixture() throws Exception {
+        fixture = fixtureDir.resolve("flights.sqlite");
+        TestDatabase.create(fixture, """
+                INSERT INTO helicopter VALUES
+                    (1, 'b-200', 'bell', '2010-01-01', 1000, '2024-03-01', 500),
+                    (2, 'a-100', 'boeng', '2012-01-01', 1500, '2023-06-01', 400),
+                    (3, 'm-8', 'mil', '2015-01-01', 3000, '2023-12-01', 600);
+                """, """
+                INSERT INTO pilot VALUES
+                    (1, 't-1', 'ivanov', 'commander', 10, 'north', 1980, 1),
+                    (2, 't-2', 'petrov', 'navigator', 5, 'north', 1985, 1),
+                    (3, 't-3', 'sidorov', 'commander', 12, 'south', 1978, 2),
+                    (4, 't-4', 'smirnov', 'engineer', 3, 'south', 1990, 2),
+                    (5, 't-5', 'kuznetsov', 'commander', 8, 'west', 1982, 3),
+                    (6, 't-6', 'popov', 'navigator', 6, 'west', 1986, 3);
+                """, """
+                WITH RECURSIVE n(id) AS (SELECT 1 UNION ALL SELECT id + 1 FROM n WHERE id < 24)
+                INSERT INTO flight SELECT id, printf('2024-%02d-%02d', 1 + id % 6, 1 + id), 1 + id % 3, CASE WHEN id % 4 = 0 THEN 'special' ELSE 'usual' END,
+                    10 * id, id % 5, 1 + id % 4, 100 * id FROM n;
+                """, """
+                INSERT INTO auth VALUES
+                    (1, 'admin', 'admin', 'admin', NULL),
+                    (2, 'pilot', 'pilot', 'pilot', 1);
+                """);
+        // a database that has been started once is migrated already
+        try (ConnectionHandler connectionHandler = new ConnectionHandler(TestDatabase.overrides(fixtureDir, fixture))) {
+            connectionHandler.warmUp().join();
+        }
+    }
+
+    static Stream<Case> commands() {
+        return Stream.of(
+                admin("/helicopter_flight_hours_resource", 1, 1),
+                admin("/helicopter_flights_period\n1\n2024-01-01\n2024-12-31", 1, 1),
+                admin("/special_flights_summary", 1, 1),
+                admin("/regular_flights_summary", 1, 1),
+                // the top helicopter, then its flights; its details and crew come from the reference cache
+                admin("/helicopter_max_flights_info", 2, 2),
+                admin("/crew_max_earnings_flights", 2, 2),
+                admin("/crew_member_flights_info\nH\n2", 1, 1),
+                admin("/crew_member_flights_info\nP\n3", 1, 1),
+                admin("/distribution\nall\nall", 0, 0),
+                admin("/distribution\n1\nusual", 0, 0),
+                // the matched pilots' helicopters go through a temp table, like the flight ids below
+                admin("/find_pilot\nivan", 1, 5),
+                // a change is then read back from flight_change into the change log
+                admin("/add_flight\n2024-07-01\n3\nusual\n100\n2\n1\n500", 2, 5),
+                admin("/plan_flights {dir}/plan.csv", 1, 1),
+                admin("/update_flight_info\n7\n\n\n\n\n\n2\n", 2, 3),
+                new Case(UserRole.ADMIN, "/delete_flight\n3\nyes", "/delete_flight\n4\nyes", 2, 3),
+                admin("/bulk_update_flights\n\n2\n2024-01-01\n2024-12-31\nusual\n\n\n\n\n\n3\n\nyes", 3, 13),
+                new Case(UserRole.ADMIN, "/bulk_delete_flights\n5\n\n\n\n\nyes", "/bulk_delete_flights\n6,9\n\n\n\n\nyes", 3, 15),
+                admin("/calculate_crew_earnings_period\n2024-01-01\n2024-12-31", 1, 1),
+                admin("/earnings_trend\n2024-01-01\n2024-12-31", 1, 1),
+                admin("/pilot_earnings_period\n3\n2024-01-01\n2024-12-31", 1, 1),
+                admin("/pilot_earnings_specific_flights\n3\n2024-01-01\n2024-12-31\nids\n1,4,7", 1, 5),
+                admin("/pilot_earnings_specific_flights\n3\n2024-01-01\n2024-12-31\ntype\nusual", 1, 1),
+                // the chunk's move is kept out of flight_change by the mute row it inserts and deletes
+                new Case(UserRole.ADMIN, "/archive_flights\n2024-01-15", "/archive_flights\n2024-02-15", 1, 7),
+                admin("/alerts", 0, 0),
+                admin("/resource_forecast", 0, 0),
+                // /verify_db is left out: it opens read-only connections of its own, past the pool and this driver
+                admin("/pool_status", 0, 0),
+                admin("/jobs", 0, 0),
+                // loading the pilot's view when the session starts, after bringing the committed changes into the log;
+                // the first use of the shards also checks that the primary's flights were not moved to shards
+                new Case(UserRole.PILOT, "", "", 4, 6),
+                pilot("/flights_info", 0, 0),
+                pilot("/flight_limit", 0, 0),
+                pilot("/flight_statistic", 0, 0)
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("commands")
+    public void commandStaysWithinItsBudget(Case budget) throws Exception {
+        Files.writeString(dir.resolve("plan.csv"), "date,code,hours\n2024-08-01,usual,3\n2024-08-02,special,5\n");
+        AtomicInteger checkouts = new AtomicInteger();
+        try (ConnectionHandler connectionHandler = countingHandler(checkouts)) {
+            String script = (budget.warmUp().isEmpty() ? "" : budget.warmUp() + "\n")
+                    + (budget.script().isEmpty() ? "" : budget.script() + "\n") + "/out\n";
+            List<Count> marks = new ArrayList<>();
+            ConsoleManager consoleManager = new ConsoleManager(new PrintStream(OutputStream.nullOutputStream()), new Scanner(script.replace("{dir}", dir.toString()))) {
+                @Override
+                public <T> T getInput(Class<T> clazz, String message, String errMessage, Predicate<T> predicate) {
+                    if (COMMAND_PROMPTS.contains(message)) {
+                        marks.add(count(checkouts));
+                    }
+                    return super.getInput(clazz, message, errMessage, predicate);
+                }
+            };
+
+            marks.add(count(checkouts));
+            if (budget.role() == UserRole.PILOT) {
+                new PilotStrategy(consoleManager, connectionHandler).apply(new User(UserRole.PILOT, 1, 1));
+            } else {
+                new AdminStrategy(consoleManager, connectionHandler).apply(new User(UserRole.ADMIN, 0, 0));
+            }
+
+            assertWithinBudget(budget.checkouts(), budget.statements(), marks.get(marks.size() - 2), marks.get(marks.size() - 1));
+        }
+    }
+
+    @Test
+    public void signInStaysWithinItsBudget() throws Exception {
+        AtomicInteger checkouts = new AtomicInteger();
+        try (ConnectionHandler connectionHandler = countingHandler(checkouts)) {
+            ConsoleManager consoleManager = new ConsoleManager(new PrintStream(OutputStream.nullOutputStream()), new Scanner("pilot\npilot\npilot\npilot\n"));
+            AuthManager authManager = new AuthManager(consoleManager, connectionHandler);
+            authManager.getAuth();
+
+            Count before = count(checkouts);
+            User user = authManager.getAuth();
+            Assertions.assertEquals(new User(UserRole.PILOT, 1, 1), user);
+            // login, password and user are separate queries; the pilot's helicopter comes from the reference cache
+            assertWithinBudget(3, 3, before, count(checkouts));
+        }
+    }
+
+    private static void assertWithinBudget(int checkouts, int statements, Count before, Count after) {
+        Count used = new Count(after.checkouts() - before.checkouts(), after.statements() - before.statements());
+        Assertions.assertTrue(used.checkouts() <= checkouts && used.statements() <= statements,
+                "budget is %d checkouts and %d statements, used %s".formatted(checkouts, statements, used));
+    }
+
+    private static Case admin(String script, int checkouts, int statements) {
+        return new Case(UserRole.ADMIN, script, script, checkouts, statements);
+    }
+
+    private static Case pilot(String script, int checkouts, int statements) {
+        return new Case(UserRole.PILOT, script, script, checkouts, statements);
+    }
+
+    private static Count count(AtomicInteger checkouts) {
+        return new Count(checkouts.get(), STATEMENTS.get());
+    }
+
+    private ConnectionHandler countingHandler(AtomicInteger checkouts) throws Exception {
+        Path db = Files.copy(fixture, dir.resolve("flights.sqlite"));
+        MetricsTrackerFactory metrics = (poolName, poolStats) -> new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                checkouts.incrementAndGet();
+            }
+        };
+        Properties overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("db.url", COUNTING_URL_PREFIX + "sqlite:" + db);
+        ConnectionHandler connectionHandler = new ConnectionHandler(overrides, metrics);
+        // opened and migrated at startup, as Main does, so the first command pays only for itself
+        connectionHandler.warmUp().join();
+        return connectionHandler;
+    }
+
+    /** {@code jdbc:counting:<url>} opens {@code jdbc:<url>} and counts every statement executed on it. */
+    public static final class CountingDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            Connection connection = DriverManager.getConnection("jdbc:" + url.substring(COUNTING_URL_PREFIX.length()), info);
+            return (Connection) proxy(Connection.class, connection);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith(COUNTING_URL_PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        // statements are counted by their execute calls; unwrap goes to the real object, which QueryContext
+        // needs to install its progress handler
+        private static Object proxy(Class<?> type, Object target) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                if (method.getName().startsWith("execute")) {
+                    STATEMENTS.incrementAndGet();
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                return result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType()) ? proxy(method.getReturnType(), result) : result;
+            };
+            return Proxy.newProxyInstance(RoundTripBudgetTest.class.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightStore;
+import flight.SqliteFlightStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The conformance suite on two shards: helicopter 2 lives on shard 0, helicopters 1 and 3 on shard 1.
+ */
+public class ShardedSqliteFlightStoreTest extends SqliteFlightStoreTest {
+    @Override
+    protected void configure(Properties overrides) {
+        overrides.setProperty("db.shards", "2");
+    }
+
+    @Test
+    public void shardsAreBootstrappedFromThePrimary() throws Exception {
+        // reference data stays in the primary alone, flights leave it
+        for (int shard = 0; shard < 2; shard++) {
+            try (Connection connection = connectionHandler.getShardConnection(shard)) {
+                Assertions.assertEquals(List.of(), ids(connection, "SELECT id FROM helicopter ORDER BY id;"));
+                Assertions.assertEquals(List.of(), ids(connection, "SELECT id FROM pilot ORDER BY id;"));
+            }
+        }
+        try (Connection connection = connectionHandler.getShardConnection(0)) {
+            Assertions.assertEquals(List.of(4, 5), ids(connection, "SELECT id FROM flight ORDER BY id;"));
+        }
+        try (Connection connection = connectionHandler.getShardConnection(1)) {
+            Assertions.assertEquals(List.of(1, 2, 3), ids(connection, "SELECT id FROM flight ORDER BY id;"));
+        }
+        try (Connection connection = connectionHandler.getConnection()) {
+            Assertions.assertEquals(List.of(), ids(connection, "SELECT id FROM flight;"));
+            Assertions.assertEquals(List.of(1, 2, 3), ids(connection, "SELECT id FROM helicopter ORDER BY id;"));
+        }
+    }
+
+    @Test
+    public void archivedFlightsMoveToTheShardArchivesAndTheLayoutIsKept() throws Exception {
+        Path splitDir = Files.createDirectories(dir.resolve("split"));
+        Path db = TestDatabase.create(splitDir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, TestDatabase.FLIGHTS);
+        Properties overrides = TestDatabase.overrides(splitDir, db);
+        try (ConnectionHandler unsharded = new ConnectionHandler(overrides)) {
+            Assertions.assertEquals(1, new SqliteFlightStore(unsharded).archiveFlightsBefore("2024-01-01"));
+        }
+
+        overrides.setProperty("db.shards", "2");
+        try (ConnectionHandler sharded = new ConnectionHandler(overrides)) {
+            FlightStore split = new SqliteFlightStore(sharded);
+            Assertions.assertEquals(List.of(1, 2, 3), split.getFlights(1, null, null).stream().map(Flight::id).toList());
+            Assertions.assertEquals(List.of(4, 5), split.getFlights(2, null, null).stream().map(Flight::id).toList());
+        }
+
+        overrides.setProperty("db.shards", "1");
+        try (ConnectionHandler unsharded = new ConnectionHandler(overrides)) {
+            Assertions.assertThrows(IllegalStateException.class, unsharded::getShardCount);
+        }
+    }
+
+    @Test
+    public void flightsAreRoutedByHelicopter() throws Exception {
+        Assertions.assertEquals(0, connectionHandler.shardOf(2));
+        Assertions.assertEquals(1, connectionHandler.shardOf(1));
+        Assertions.assertEquals(1, connectionHandler.shardOf(3));
+        int id = store.addFlight(new Flight(0, "2024-05-01", 2, "usual", 10, 1, 1, 100)).flight().id();
+        try (Connection connection = connectionHandler.getShardConnection(0)) {
+            Assertions.assertTrue(ids(connection, "SELECT id FROM flight;").contains(id));
+        }
+        try (Connection connection = connectionHandler.getShardConnection(1)) {
+            Assertions.assertFalse(ids(connection, "SELECT id FROM flight;").contains(id));
+        }
+    }
+
+    @Test
+    @Override
+    public void addFlightChecksRemainingResource() throws Exception {
+        FlightStore.AddResult added = store.addFlight(new Flight(0, "2024-05-01", 1, "usual", 10, 1, 75, 100));
+        Assertions.assertTrue(added.added());
+        Assertions.assertEquals(new Flight(7, "2024-05-01", 1, "usual", 10, 1, 75, 100), added.flight());
+
+        FlightStore.AddResult rejected = store.addFlight(new Flight(0, "2024-05-02", 1, "usual", 10, 1, 0.5, 100));
+        Assertions.assertFalse(rejected.added());
+        Assertions.assertTrue(store.addFlight(new Flight(0, "2024-05-02", 42, "usual", 10, 1, 1, 100)).resource().isEmpty());
+    }
+
+    @Test
+    public void newIdsStayUniqueAcrossShards() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int helicopterId : new int[]{1, 2, 1, 2, 3}) {
+            ids.add(store.addFlight(new Flight(0, "2024-05-01", helicopterId, "usual", 0, 0, 0, 0)).flight().id());
+        }
+        Assertions.assertEquals(List.of(7, 6, 9, 8, 11), ids);
+        Assertions.assertEquals("(SELECT ((MAX(COALESCE(MAX(id), 0), 5) - 0) / 2 + 1) * 2 + 0 FROM flight)",
+                connectionHandler.flightIdExpression(0));
+    }
+
+    @Test
+    public void updateMovesTheFlightToTheTargetShard() throws Exception {
+        store.updateFlight(4, flight -> new Flight(flight.id(), flight.date(), 3, flight.code(),
+                flight.goodsWeight(), flight.passengers(), flight.flightHours(), flight.price())).orElseThrow();
+        try (Connection connection = connectionHandler.getShardConnection(0)) {
+            Assertions.assertEquals(List.of(5), ids(connection, "SELECT id FROM flight ORDER BY id;"));
+        }
+        try (Connection connection = connectionHandler.getShardConnection(1)) {
+            Assertions.assertEquals(List.of(1, 2, 3, 4), ids(connection, "SELECT id FROM flight ORDER BY id;"));
+        }
+        Assertions.assertEquals(new Flight(4, "2023-07-01", 3, "special", 300, 1, 30, 4500), store.getFlight(4).orElseThrow());
+    }
+
+    @Test
+    public void failedMoveLeavesTheFlightOnTheSourceShard() throws Exception {
+        try (Connection connection = connectionHandler.getShardConnection(1);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TRIGGER reject_insert BEFORE INSERT ON flight BEGIN SELECT RAISE(ABORT, 'rejected'); END;");
+        }
+        Assertions.assertThrows(SQLException.class, () -> store.updateFlight(4, flight -> new Flight(flight.id(), flight.date(), 3,
+                flight.code(), flight.goodsWeight(), flight.passengers(), flight.flightHours(), flight.price())));
+        Assertions.assertEquals(new Flight(4, "2023-07-01", 2, "special", 300, 1, 30, 4500), store.getFlight(4).orElseThrow());
+        try (Connection connection = connectionHandler.getShardConnection(1)) {
+            Assertions.assertEquals(List.of(1, 2, 3), ids(connection, "SELECT id FROM flight ORDER BY id;"));
+        }
+    }
+
+    @Test
+    @Override
+    public void bulkUpdateMovesFlightsWithinTheResourceLimit() throws Exception {
+        FlightStore.FlightFilter filter = new FlightStore.FlightFilter(null, 1, null, null, "usual");
+        Assertions.assertThrows(SQLException.class, () -> store.bulkUpdateFlights(filter,
+                new FlightStore.FlightPatch(null, 2, null, null, null, null, null)));
+        Assertions.assertEquals(List.of(1, 2, 3), store.getFlights(1, null, null).stream().map(Flight::id).toList());
+
+        FlightStore.BulkResult result = store.bulkUpdateFlights(filter, new FlightStore.FlightPatch(null, 3, null, null, null, null, null));
+        Assertions.assertTrue(result.applied());
+        Assertions.assertEquals(List.of(1, 3), store.getFlights(3, null, null).stream().map(Flight::id).toList());
+    }
+
+    @Test
+    @Override
+    public void bulkUpdateOverTheResourceLimitChangesNothing() throws Exception {
+        FlightStore.BulkResult result = store.bulkUpdateFlights(new FlightStore.FlightFilter(new int[]{2, 4}, null, null, null, null),
+                new FlightStore.FlightPatch(null, null, null, null, null, 100.0, null));
+        Assertions.assertFalse(result.applied());
+        Assertions.assertTrue(result.exceeded().stream().anyMatch(resource -> resource.helicopterId() == 2));
+        Assertions.assertEquals(20, store.getFlight(2).orElseThrow().flightHours(), 1e-9);
+        Assertions.assertEquals(30, store.getFlight(4).orElseThrow().flightHours(), 1e-9);
+    }
+
+    private static List<Integer> ids(Connection connection, String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,114 @@
+import flight.ConnectionHandler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Write and fleet-wide report throughput of the sharded backend for 1 to 8 shards.
+ * <p>
+ * Usage: {@code java -cp <test classpath> ShardingBenchmark [helicopters] [flights per writer]}
+ */
+public class ShardingBenchmark {
+    private static final int WRITERS = 8;
+    private static final int BATCH = 100;
+    private static final int REPORTS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int helicopters = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int flightsPerWriter = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+
+        for (int shards : new int[]{1, 2, 4, 8}) {
+            Path dir = Files.createTempDirectory("flight-shards");
+            Path primary = dir.resolve("primary.sqlite");
+            createPrimary(primary, helicopters);
+
+            Properties overrides = new Properties();
+            overrides.setProperty("db.url", "jdbc:sqlite:" + primary);
+            overrides.setProperty("db.shards", String.valueOf(shards));
+            overrides.setProperty("db.shard_url_pattern", "jdbc:sqlite:" + dir.resolve("shard%d.sqlite"));
+            overrides.setProperty("db.shard_archive_pattern", dir.resolve("archive%d.sqlite").toString());
+            overrides.setProperty("db.archive_path", dir.resolve("archive.sqlite").toString());
+            overrides.setProperty("db.pool_size", String.valueOf(WRITERS));
+
+            try (ConnectionHandler connectionHandler = new ConnectionHandler(overrides)) {
+                double writes = measureWrites(connectionHandler, helicopters, flightsPerWriter);
+                double reports = measureReports(connectionHandler);
+                System.out.printf("shards=%d writes=%.0f flights/s reports=%.1f reports/s%n", shards, writes, reports);
+            }
+        }
+    }
+
+    private static void createPrimary(Path path, int helicopters) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+             Statement statement = connection.createStatement()) {
+            TestDatabase.createTables(statement);
+            for (int i = 1; i <= helicopters; i++) {
+                statement.execute("INSERT INTO helicopter VALUES (%d, 'S-%d', 'bell', '2010-01-01', 1000, '2020-01-01', 1000000);".formatted(i, i));
+            }
+        }
+    }
+
+    private static double measureWrites(ConnectionHandler connectionHandler, int helicopters, int flightsPerWriter) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            futures.add(writers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int written = 0; written < flightsPerWriter; written += BATCH) {
+                    int helicopterId = random.nextInt(1, helicopters + 1);
+                    int shard = connectionHandler.shardOf(helicopterId);
+                    String sql = "INSERT INTO flight (id, date, helicopter_id, code, goods_weight, passangers, flight_hours, price) VALUES (" +
+                            connectionHandler.flightIdExpression(shard) + ", '2024-05-01', ?, 'usual', 100, 2, 1.5, 500);";
+                    try (Connection connection = connectionHandler.getShardConnection(shard);
+                         PreparedStatement statement = connection.prepareStatement(sql)) {
+                        connection.setAutoCommit(false);
+                        for (int i = 0; i < BATCH; i++) {
+                            statement.setInt(1, helicopterId);
+                            statement.executeUpdate();
+                        }
+                        connection.commit();
+                        connection.setAutoCommit(true);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        writers.shutdown();
+        return WRITERS * (double) flightsPerWriter / seconds;
+    }
+
+    private static double measureReports(ConnectionHandler connectionHandler) throws SQLException {
+        long start = System.nanoTime();
+        for (int i = 0; i < REPORTS; i++) {
+            connectionHandler.scatter((shard, connection) -> {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT helicopter_id, SUM(price) FROM flight GROUP BY helicopter_id;")) {
+                    double total = 0;
+                    while (rs.next()) {
+                        total += rs.getDouble(2);
+                    }
+                    return total;
+                }
+            });
+        }
+        return REPORTS / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,149 @@
+import flight.ConnectionHandler;
+import flight.Flight;
+import flight.FlightStore;
+import flight.SnapshotReplica;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+
+public class SnapshotReplicaTest {
+    private static final String COUNT_HELICOPTERS = "SELECT COUNT(*) FROM helicopter;";
+
+    @TempDir
+    Path dir;
+    private Path db;
+    private ConnectionHandler connectionHandler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        db = TestDatabase.create(dir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS);
+        connectionHandler = new ConnectionHandler(TestDatabase.overrides(dir, db));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        connectionHandler.close();
+    }
+
+    @Test
+    public void refreshPicksUpChangesOfThePrimary() throws Exception {
+        try (SnapshotReplica replica = new SnapshotReplica(connectionHandler, dir.resolve("replica.sqlite"), Duration.ofHours(1), 1, 2)) {
+            Assertions.assertEquals(3, count(replica));
+            addHelicopter(connectionHandler);
+            Assertions.assertEquals(3, count(replica));
+
+            replica.refresh();
+            Assertions.assertEquals(4, count(replica));
+            Assertions.assertFalse(Files.exists(dir.resolve("replica.sqlite.tmp")));
+        }
+    }
+
+    @Test
+    public void lagIsKnownOnlyOnceASnapshotExists() throws Exception {
+        Path replicaPath = dir.resolve("replica.sqlite");
+        try (SnapshotReplica replica = new SnapshotReplica(connectionHandler, replicaPath, Duration.ofHours(1), 1, 2)) {
+            Assertions.assertTrue(replica.getLag().isEmpty());
+            replica.refresh();
+            Duration lag = replica.getLag().orElseThrow();
+            Assertions.assertFalse(lag.isNegative());
+            Assertions.assertTrue(lag.compareTo(Duration.ofMinutes(1)) < 0);
+        }
+
+        // A file younger than the interval is reused after a restart instead of being copied again
+        try (SnapshotReplica replica = new SnapshotReplica(connectionHandler, replicaPath, Duration.ofHours(1), 1, 2)) {
+            Assertions.assertTrue(replica.getLag().isPresent());
+        }
+        Thread.sleep(5);
+        try (SnapshotReplica replica = new SnapshotReplica(connectionHandler, replicaPath, Duration.ofMillis(1), 1, 2)) {
+            Assertions.assertTrue(replica.getLag().isEmpty());
+        }
+    }
+
+    @Test
+    public void heavyReportsReadTheReplicaOnlyWhenEnabled() throws Exception {
+        Path replicaPath = dir.resolve("replica.sqlite");
+        Files.copy(db, replicaPath);
+        Properties overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("db.replica.enabled", "true");
+        overrides.setProperty("db.replica.interval_sec", "3600");
+        try (ConnectionHandler withReplica = new ConnectionHandler(overrides)) {
+            addHelicopter(withReplica);
+            Assertions.assertTrue(withReplica.isReplicaEnabled());
+            Assertions.assertTrue(withReplica.getReplicaLag().isPresent());
+            Assertions.assertEquals(List.of(3), withReplica.scatterReport((shard, connection) -> count(connection)));
+            Assertions.assertEquals(List.of(4), withReplica.scatter((shard, connection) -> count(connection)));
+        }
+
+        Assertions.assertFalse(connectionHandler.isReplicaEnabled());
+        Assertions.assertTrue(connectionHandler.getReplicaLag().isEmpty());
+        Assertions.assertEquals(List.of(4), connectionHandler.scatterReport((shard, connection) -> count(connection)));
+    }
+
+    @Test
+    public void currentResourcesIgnoreTheReplica() throws Exception {
+        Files.copy(db, dir.resolve("replica.sqlite"));
+        Properties overrides = TestDatabase.overrides(dir, db);
+        overrides.setProperty("db.replica.enabled", "true");
+        overrides.setProperty("db.replica.interval_sec", "3600");
+        try (ConnectionHandler withReplica = new ConnectionHandler(overrides)) {
+            FlightStore store = withReplica.getFlightStore();
+            store.addFlight(new Flight(0, "2024-05-01", 1, "usual", 0, 0, 7, 0));
+            Assertions.assertEquals(7, store.getResource(1).orElseThrow().flownAfterRepair(), 1e-9);
+            Assertions.assertEquals(0, flown(store.getResources(), 1), 1e-9);
+            Assertions.assertEquals(7, flown(store.getCurrentResources(), 1), 1e-9);
+        }
+    }
+
+    @Test
+    public void archivedFlightsAreNotCountedTwiceByReports() throws Exception {
+        Path archivedDir = Files.createDirectories(dir.resolve("archived"));
+        Path archivedDb = TestDatabase.create(archivedDir.resolve("flights.sqlite"), TestDatabase.HELICOPTERS, TestDatabase.FLIGHTS);
+        Properties overrides = TestDatabase.overrides(archivedDir, archivedDb);
+        overrides.setProperty("db.replica.enabled", "true");
+        overrides.setProperty("db.replica.interval_sec", "3600");
+        try (ConnectionHandler withReplica = new ConnectionHandler(overrides)) {
+            FlightStore store = withReplica.getFlightStore();
+            Assertions.assertEquals(3, store.sumFlightsByCode("usual").flights());
+            Assertions.assertEquals(1, store.archiveFlightsBefore("2024-01-01"));
+            // the replica joins its flights with the live archive, so it must not still hold the moved one
+            Assertions.assertEquals(3, store.sumFlightsByCode("usual").flights());
+        }
+    }
+
+    private static double flown(List<FlightStore.Resource> resources, int helicopterId) {
+        return resources.stream().filter(resource -> resource.helicopterId() == helicopterId).findFirst().orElseThrow().flownAfterRepair();
+    }
+
+    private static void addHelicopter(ConnectionHandler connectionHandler) throws SQLException {
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO helicopter VALUES (4, 'd-400', 'mil', '2016-01-01', 2500, '2024-01-01', 300);");
+        }
+    }
+
+    private static int count(SnapshotReplica replica) throws SQLException {
+        try (Connection connection = replica.getConnection()) {
+            return count(connection);
+        }
+    }
+
+    private static int count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(COUNT_HELICOPTERS)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import flight.ConnectionHandler;
+import flight.FlightStore;
+import flight.SqliteFlightStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+public class SqliteFlightStoreTest extends FlightStoreConformanceTest {
+    @Override
+    protected FlightStore createStore(ConnectionHandler connectionHandler) {
+        return new SqliteFlightStore(connectionHandler);
+    }
+
+    @Test
+    public void resourcesFollowARepairOnConnectionsThatReadTheOldOne() throws Exception {
+        Assertions.assertEquals(25, store.getResource(1).orElseThrow().flownAfterRepair(), 1e-9);
+        Assertions.assertEquals(25, store.getResources().get(1).flownAfterRepair(), 1e-9);
+
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE helicopter SET repair_date = '2024-02-02' WHERE id = 1;");
+        }
+        connectionHandler.getReferenceCache().invalidate();
+
+        Assertions.assertEquals(0, store.getResources().get(1).flownAfterRepair(), 1e-9);
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures time-to-first-prompt of the packaged application.
+ * <p>
+ * Usage: {@code java -cp target/test-classes StartupBenchmark target/flyings-1.0-SNAPSHOT.jar [runs] [jvm options...]},
+ * e.g. pass {@code -XX:SharedArchiveFile=target/flyings.jsa} to compare against the AppCDS archive.
+ */
+public class StartupBenchmark {
+    private static final String FIRST_PROMPT = "Input login:";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: StartupBenchmark <jar> [runs] [jvm options...]");
+            return;
+        }
+        Path jar = Path.of(args[0]);
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<String> jvmOptions = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : List.of();
+
+        measure(jar, jvmOptions);
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            millis[i] = measure(jar, jvmOptions);
+        }
+        Arrays.sort(millis);
+        System.out.printf("runs=%d min=%dms median=%dms max=%dms%n", runs, millis[0], millis[runs / 2], millis[runs - 1]);
+    }
+
+    private static long measure(Path jar, List<String> jvmOptions) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(jar.toString());
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+             OutputStream input = process.getOutputStream()) {
+            String line;
+            while ((line = reader.readLine()) != null && !line.contains(FIRST_PROMPT)) {
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            if (line == null) {
+                throw new IllegalStateException("Application exited before the login prompt");
+            }
+            input.write("/end\n".getBytes(StandardCharsets.UTF_8));
+            input.flush();
+            process.waitFor();
+            return elapsed;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import flight.ConsoleManager;
+import flight.Flight;
+import flight.TableRenderer;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/**
+ * Compares the old {@code String.formatted} report rows with {@link TableRenderer}: time and bytes allocated per row.
+ * <p>
+ * Usage: {@code java -cp <test classpath> TableRendererBenchmark [rows]}
+ */
+public class TableRendererBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Flight[] flights = new Flight[1024];
+        for (int i = 0; i < flights.length; i++) {
+            flights[i] = new Flight(i + 1, "2024-%02d-%02d".formatted(i % 12 + 1, i % 28 + 1), i % 64, i % 3 == 0 ? "special" : "usual",
+                    i * 1.37, i % 20, 0.5 + i % 7, 1000 + i * 3.1);
+        }
+        ConsoleManager consoleManager = new ConsoleManager(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8), new Scanner(""));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean last = round == ROUNDS - 1;
+            measure("formatted", rows, last, () -> {
+                for (int i = 0; i < rows; i++) {
+                    Flight flight = flights[i & 1023];
+                    consoleManager.printMessage("%d | %s | %s | %.2f | %d | %.2f | %.2f".formatted(
+                            flight.id(), flight.date(), flight.code(), flight.goodsWeight(), flight.passengers(), flight.flightHours(), flight.price()));
+                }
+            });
+            measure("TableRenderer", rows, last, () -> {
+                TableRenderer table = new TableRenderer(consoleManager, " | ").column("ID Рейса", 0).column("Дата", 10).column("Тип", 7)
+                        .column("Груз (кг)", 10).column("Пассажиры", 0).column("Часы налета", 0).column("Стоимость", 12);
+                for (int i = 0; i < rows; i++) {
+                    Flight flight = flights[i & 1023];
+                    table.number(flight.id()).text(flight.date()).text(flight.code()).decimal(flight.goodsWeight())
+                            .number(flight.passengers()).decimal(flight.flightHours()).decimal(flight.price()).endRow();
+                }
+            });
+        }
+    }
+
+    private static void measure(String name, int rows, boolean print, Runnable task) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        task.run();
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        if (print) {
+            System.out.printf("%-14s %8.1f ns/row %10.1f B/row%n", name, (double) nanos / rows, (double) bytes / rows);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+import flight.ConsoleManager;
+import flight.TableRenderer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Scanner;
+
+public class TableRendererTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ConsoleManager consoleManager = new ConsoleManager(new PrintStream(out, true, StandardCharsets.UTF_8), new Scanner(""));
+
+    @Test
+    public void columnsArePaddedToTheirWidth() {
+        new TableRenderer(consoleManager, " | ").column("ID", 4).column("Серия", 6).column("Часы", 0)
+                .printHeader()
+                .number(7).text("b-200").decimal(12.5).endRow()
+                .number(-12345).text(null).decimal(-0.004).endRow();
+        Assertions.assertEquals(String.join(System.lineSeparator(),
+                "ID   | Серия  | Часы",
+                "   7 | b-200  | 12.50",
+                "-12345 | -      | 0.00", ""), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void decimalsMatchTheFormatter() {
+        double[] values = {0, 0.005, 0.015, 1.005, 2.675, 99.995, -3.14159, 123456789.987, 1e-9, 4500};
+        TableRenderer table = new TableRenderer(consoleManager, "|").column("v", 0);
+        for (double value : values) {
+            table.decimal(value).endRow();
+        }
+        StringBuilder expected = new StringBuilder();
+        for (double value : values) {
+            String formatted = String.format(Locale.ROOT, "%.2f", value);
+            expected.append("-0.00".equals(formatted) ? "0.00" : formatted).append(System.lineSeparator());
+        }
+        Assertions.assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+    }
+}
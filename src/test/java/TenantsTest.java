@@ -0,0 +1,140 @@
+import flight.AuthManager;
+import flight.ConnectionHandler;
+import flight.ConsoleManager;
+import flight.Tenants;
+import flight.User;
+import flight.UserRole;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.Scanner;
+
+public class TenantsTest {
+    private static final List<String> BASES = List.of("north", "south", "west");
+
+    @TempDir
+    Path dir;
+    private Tenants tenants;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        for (String base : BASES) {
+            TestDatabase.create(Files.createDirectories(dir.resolve(base)).resolve("flightDb.sqlite"),
+                    "INSERT INTO helicopter VALUES (1, '%s-1', 'bell', '2010-01-01', 1000, '2024-01-01', 100);".formatted(base),
+                    "INSERT INTO auth VALUES (1, 'admin', '%s', 'admin', NULL);".formatted(base));
+        }
+        // a directory without a database is not a base
+        Files.createDirectories(dir.resolve("empty"));
+
+        Properties overrides = new Properties();
+        overrides.setProperty("tenants.dir", dir.toString());
+        overrides.setProperty("tenants.max_open", "2");
+        overrides.setProperty("db.replica.enabled", "false");
+        tenants = new Tenants(overrides);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        tenants.close();
+    }
+
+    @Test
+    public void everyBaseUsesItsOwnFiles() throws Exception {
+        Assertions.assertEquals(BASES, tenants.names());
+        Assertions.assertFalse(tenants.exists("empty"));
+        Assertions.assertFalse(tenants.exists("../north"));
+
+        try (Tenants.Lease north = tenants.open("north"); Tenants.Lease south = tenants.open("south")) {
+            Assertions.assertEquals("north-1", seriaNum(north.getConnectionHandler()));
+            Assertions.assertEquals("south-1", seriaNum(south.getConnectionHandler()));
+            Assertions.assertEquals(dir.resolve("south").resolve("changelog").toString(), south.getConnectionHandler().getProperty("changelog.dir"));
+            Assertions.assertEquals("2", south.getConnectionHandler().getProperty("db.pool_size"));
+        }
+    }
+
+    @Test
+    public void closesTheLeastRecentlyUsedIdleBase() throws Exception {
+        Tenants.Lease north = tenants.open("north");
+        ConnectionHandler northHandler = north.getConnectionHandler();
+        seriaNum(northHandler);
+        try (Tenants.Lease south = tenants.open("south")) {
+            seriaNum(south.getConnectionHandler());
+        }
+        ConnectionHandler southHandler;
+        try (Tenants.Lease west = tenants.open("west")) {
+            // north is older but still signed in to, so south is the one closed
+            Assertions.assertEquals(List.of("north", "west"), tenants.openNames());
+            seriaNum(west.getConnectionHandler());
+        }
+        try (Tenants.Lease south = tenants.open("south")) {
+            southHandler = south.getConnectionHandler();
+            Assertions.assertEquals("south-1", seriaNum(southHandler));
+        }
+        Assertions.assertEquals("north-1", seriaNum(northHandler));
+
+        north.close();
+        north.close();
+        try (Tenants.Lease west = tenants.open("west")) {
+            Assertions.assertEquals(List.of("south", "west"), tenants.openNames());
+        }
+        Assertions.assertThrows(SQLException.class, northHandler::getConnection);
+        Assertions.assertEquals("south-1", seriaNum(southHandler));
+    }
+
+    @Test
+    public void shutdownClosesEveryOpenBase() throws Exception {
+        Tenants.Lease north = tenants.open("north");
+        ConnectionHandler northHandler = north.getConnectionHandler();
+        ConnectionHandler southHandler;
+        try (Tenants.Lease south = tenants.open("south")) {
+            southHandler = south.getConnectionHandler();
+            seriaNum(southHandler);
+        }
+        seriaNum(northHandler);
+
+        Thread hook = tenants.closeOnShutdown();
+        Assertions.assertTrue(Runtime.getRuntime().removeShutdownHook(hook));
+        hook.run();
+
+        Assertions.assertEquals(List.of(), tenants.openNames());
+        Assertions.assertThrows(SQLException.class, northHandler::getConnection);
+        Assertions.assertThrows(SQLException.class, southHandler::getConnection);
+        north.close();
+    }
+
+    @Test
+    public void signInAsksForTheBaseFirst() {
+        ConsoleManager consoleManager = new ConsoleManager(new PrintStream(OutputStream.nullOutputStream()),
+                new Scanner("nowhere\nsouth\nadmin\nnorth\nadmin\nsouth\n"));
+        AuthManager authManager = new AuthManager(consoleManager, tenants);
+
+        User user = authManager.getAuth();
+
+        Assertions.assertEquals(UserRole.ADMIN, user.role());
+        Assertions.assertEquals("jdbc:sqlite:" + dir.resolve("south").resolve("flightDb.sqlite"), authManager.getConnectionHandler().getProperty("db.url"));
+        authManager.signOut();
+        Assertions.assertNull(authManager.getConnectionHandler());
+    }
+
+    private static String seriaNum(ConnectionHandler connectionHandler) throws SQLException {
+        try (Connection connection = connectionHandler.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT seria_num FROM helicopter;")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
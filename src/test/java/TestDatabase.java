@@ -0,0 +1,80 @@
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Flight database fixture shared by the tests and benchmarks: the schema of {@code flightDb.sqlite}, the
+ * helicopters most tests fly, and overrides that keep every file a {@code ConnectionHandler} writes in one
+ * directory.
+ */
+final class TestDatabase {
+    static final String HELICOPTERS = """
+            INSERT INTO helicopter VALUES
+                (1, 'b-200', 'bell', '2010-01-01', 1000, '2024-01-01', 100),
+                (2, 'a-100', 'boeng', '2012-01-01', 1500, '2023-06-01', 50),
+                (3, 'c-300', 'mil', '2015-01-01', 2000, '2022-01-01', 500);
+            """;
+    static final String FLIGHTS = """
+            INSERT INTO flight VALUES
+                (1, '2023-05-01', 1, 'usual', 100, 2, 10, 1000),
+                (2, '2024-02-01', 1, 'special', 200, 0, 20, 3000),
+                (3, '2024-02-01', 1, 'usual', 50, 4, 5, 500),
+                (4, '2023-07-01', 2, 'special', 300, 1, 30, 4500),
+                (5, '2024-03-15', 2, 'usual', 10, 3, 4, 200);
+            """;
+
+    private TestDatabase() {
+    }
+
+    static void createTables(Statement statement) throws SQLException {
+        statement.execute("""
+                CREATE TABLE helicopter (id integer PRIMARY KEY AUTOINCREMENT, seria_num varchar(20) NOT NULL, mark varchar(20) NOT NULL,
+                    creation_date date NOT NULL, max_weight real NOT NULL, repair_date date NOT NULL, hours_before_repair integer NOT NULL);
+                """);
+        statement.execute("""
+                CREATE TABLE pilot (id integer PRIMARY KEY AUTOINCREMENT, tabel_num varchar(20) NOT NULL, last_name varchar(20) NOT NULL,
+                    position varchar(20) NOT NULL, experience integer NOT NULL, addres varchar(50) NOT NULL, birth_year integer NOT NULL,
+                    helicopter_id integer NOT NULL);
+                """);
+        statement.execute("""
+                CREATE TABLE flight (id integer PRIMARY KEY AUTOINCREMENT, date date NOT NULL, helicopter_id integer NOT NULL,
+                    code varchar(20) NOT NULL, goods_weight real NOT NULL, passangers integer NOT NULL, flight_hours real NOT NULL, price real NOT NULL);
+                """);
+        statement.execute("""
+                CREATE TABLE auth (id integer PRIMARY KEY AUTOINCREMENT, login varchar(20) NOT NULL, password varchar(20) NOT NULL,
+                    role varchar(10) NOT NULL, pilot_id integer);
+                """);
+    }
+
+    /** Creates the database with its tables and then runs {@code statements} on it. */
+    static Path create(Path db, String... statements) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + db);
+             Statement statement = connection.createStatement()) {
+            createTables(statement);
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+        return db;
+    }
+
+    /** One unsharded database at {@code db}, read from the primary, with the archive, shards, change log and alerts in {@code dir}. */
+    static Properties overrides(Path dir, Path db) {
+        Properties overrides = new Properties();
+        overrides.setProperty("db.url", "jdbc:sqlite:" + db);
+        overrides.setProperty("db.shards", "1");
+        overrides.setProperty("db.shard_url_pattern", "jdbc:sqlite:" + dir.resolve("shard%d.sqlite"));
+        overrides.setProperty("db.shard_archive_pattern", dir.resolve("archive%d.sqlite").toString());
+        overrides.setProperty("db.archive_path", dir.resolve("archive.sqlite").toString());
+        overrides.setProperty("db.replica.enabled", "false");
+        overrides.setProperty("db.replica.path", dir.resolve("replica.sqlite").toString());
+        overrides.setProperty("store.type", "sqlite");
+        overrides.setProperty("snapshot.path", dir.resolve("snapshot.bin").toString());
+        overrides.setProperty("changelog.dir", dir.resolve("changelog").toString());
+        overrides.setProperty("alerts.log_path", dir.resolve("alerts.log").toString());
+        return overrides;
+    }
+}